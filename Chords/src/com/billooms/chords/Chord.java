@@ -37,6 +37,15 @@ public class Chord {
   public Chord() {
   }
 
+  /**
+   * Construct a copy of the given chord.
+   *
+   * @param chord chord to copy
+   */
+  public Chord(Chord chord) {
+    this.chordMask = chord.getChordMask();
+  }
+
   /**
    * Construct a chord from the given triad.
    *
@@ -81,7 +90,7 @@ public class Chord {
    */
   public int getPitchMask(Note root) {
     // make a 24 bit copy of the chord mask and shift it by the pitch
-    return (((chordMask << 12) | chordMask) >> root.getNumber()) & MASK12ALL;
+    return (((chordMask << 12) | chordMask) >> (root.getNumber() % 12)) & MASK12ALL;
   }
 
   /**
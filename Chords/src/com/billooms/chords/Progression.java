@@ -0,0 +1,113 @@
+package com.billooms.chords;
+
+import com.billooms.notes.Note;
+import java.util.ArrayList;
+
+/**
+ * A sequence of chords, each with its own root note.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class Progression {
+
+  /** Root note of each chord. */
+  private final ArrayList<Note> roots = new ArrayList<>();
+  /** Chords in order. */
+  private final ArrayList<Chord> chords = new ArrayList<>();
+
+  /**
+   * Construct an empty progression.
+   */
+  public Progression() {
+  }
+
+  /**
+   * Add a chord to the end of the progression.
+   * A copy of the chord is kept so later changes to it don't change the progression.
+   *
+   * @param root root note
+   * @param chord chord
+   */
+  public void add(Note root, Chord chord) {
+    roots.add(root);
+    chords.add(new Chord(chord));
+  }
+
+  /**
+   * Get the number of chords in the progression.
+   *
+   * @return number of chords
+   */
+  public int size() {
+    return chords.size();
+  }
+
+  /**
+   * Get the root note of the given chord.
+   *
+   * @param i index of the chord
+   * @return root note
+   */
+  public Note getRoot(int i) {
+    return roots.get(i);
+  }
+
+  /**
+   * Get the given chord.
+   *
+   * @param i index of the chord
+   * @return chord
+   */
+  public Chord getChord(int i) {
+    return chords.get(i);
+  }
+
+  /**
+   * Get the pitch mask of the given chord on its root.
+   *
+   * @param i index of the chord
+   * @return 12 bit pitch mask with A-natural being the left-most bit
+   */
+  public int getPitchMask(int i) {
+    return chords.get(i).getPitchMask(roots.get(i));
+  }
+
+  /**
+   * Get a list of notes for the given chord on its root.
+   *
+   * @param i index of the chord
+   * @return list of notes
+   */
+  public ArrayList<Note> getNotes(int i) {
+    return chords.get(i).getNotes(roots.get(i));
+  }
+
+  /**
+   * Get a new progression with every root moved up by the given number of semitones.
+   * The roots use the default spelling (naturals or sharps).
+   *
+   * @param semitones semitones (negative values are taken as moving up to the same pitch)
+   * @return new progression
+   */
+  public Progression transpose(int semitones) {
+    final int shift = ((semitones % 12) + 12) % 12;
+    Progression prog = new Progression();
+    for (int i = 0; i < chords.size(); i++) {
+      prog.add(new Note(roots.get(i).getNumber() + shift), chords.get(i));
+    }
+    return prog;
+  }
+}
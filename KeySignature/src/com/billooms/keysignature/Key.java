@@ -175,6 +175,25 @@ public class Key {
     return notes;
   }
   
+  /**
+   * Get a new key with the same scale whose first note is the given number of
+   * semitones higher.
+   * When there is a choice, the key signature with the fewest sharps/flats is used.
+   * 
+   * @param semitones semitones (negative values move down)
+   * @return new key
+   */
+  public Key transpose(int semitones) {
+    final int tonic = (((getFirstNote().getNumber() + semitones) % 12) + 12) % 12;
+    KeySignature best = null;
+    for (KeySignature ks : KeySignature.getKeyByNote(tonic, isMajor())) {
+      if ((best == null) || (ks.getSharpFlats().size() < best.getSharpFlats().size())) {
+        best = ks;
+      }
+    }
+    return new Key(best, scale);
+  }
+  
   /**
    * Get the pitch mask for this key.
    * 
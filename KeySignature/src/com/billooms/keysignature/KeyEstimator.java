@@ -0,0 +1,305 @@
+package com.billooms.keysignature;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.Arrays;
+
+/**
+ * Streaming estimate of the current key from a stream of notes.
+ * A sliding window of the most recent notes is kept as a histogram of the 12
+ * pitches and correlated (Krumhansl-Kessler) against a profile for each of the
+ * 12 tonics of every scale.
+ * All running sums are updated incrementally, so adding a note takes a fixed
+ * amount of work regardless of the window size.
+ * A PROP_KEY property change is fired when the estimated key changes.
+ *
+ * This is not thread safe -- notes should all be added from the same thread.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class KeyEstimator {
+
+  /** KeyEstimator can fire propertyChanges. */
+  private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+  /** Property name used when the estimated key changes. */
+  public final static String PROP_KEY = "EstimatedKey";
+
+  /** Default number of notes in the sliding window. */
+  public final static int DEFAULT_WINDOW = 32;
+  /** Minimum number of notes before any key is reported. */
+  private final static int MIN_NOTES = 8;
+  /** A new key must correlate this much better than the current key before changing. */
+  private final static double SWITCH_MARGIN = 0.05;
+
+  /** Krumhansl-Kessler major profile starting with the tonic. */
+  private final static double[] MAJOR_PROFILE =
+    {6.35, 2.23, 3.48, 2.33, 4.38, 4.09, 2.52, 5.19, 2.39, 3.66, 2.29, 2.88};
+  /** Krumhansl-Kessler minor profile starting with the tonic. */
+  private final static double[] MINOR_PROFILE =
+    {6.33, 2.68, 3.52, 5.38, 2.60, 3.53, 2.54, 4.75, 3.98, 2.69, 3.34, 3.17};
+
+  /** Number of candidate keys (12 tonics for every scale). */
+  private final static int NUM_CANDIDATES = 12 * Scale.SIZE;
+  /** Profile weight for each candidate and pitch -- index is candidate * 12 + pitch. */
+  private final static double[] WEIGHT = new double[NUM_CANDIDATES * 12];
+  /** Sum of the profile weights for each scale. */
+  private final static double[] PROFILE_SUM = new double[Scale.SIZE];
+  /** Sum of the squared profile weights for each scale. */
+  private final static double[] PROFILE_SUMSQ = new double[Scale.SIZE];
+  /** Key signature for each candidate -- candidate is scale.ordinal() * 12 + tonic. */
+  private final static KeySignature[] KEYSIGS = new KeySignature[NUM_CANDIDATES];
+
+  static {
+    for (Scale scale : Scale.values()) {
+      double[] profile = getProfile(scale);
+      for (double w : profile) {
+        PROFILE_SUM[scale.ordinal()] += w;
+        PROFILE_SUMSQ[scale.ordinal()] += w * w;
+      }
+      for (int tonic = 0; tonic < 12; tonic++) {
+        int c = scale.ordinal() * 12 + tonic;
+        for (int pitch = 0; pitch < 12; pitch++) {
+          WEIGHT[c * 12 + pitch] = profile[(pitch - tonic + 12) % 12];
+        }
+        // choose the key signature with the fewest sharps/flats for the tonic
+        for (KeySignature keySig : KeySignature.getKeyByNote(tonic, scale.isMajor())) {
+          if ((KEYSIGS[c] == null) || (keySig.getSharpFlats().size() < KEYSIGS[c].getSharpFlats().size())) {
+            KEYSIGS[c] = keySig;
+          }
+        }
+      }
+    }
+  }
+
+  /** Ring buffer of the pitches (0 through 11) in the window. */
+  private final int[] window;
+  /** Next position to write in the ring buffer. */
+  private int head = 0;
+  /** Number of notes currently in the window. */
+  private int count = 0;
+  /** Number of notes in the window for each pitch. */
+  private final int[] histogram = new int[12];
+  /** Sum of the histogram squared. */
+  private int sumSq = 0;
+  /** Sum of histogram * profile weight for each candidate. */
+  private final double[] dot = new double[NUM_CANDIDATES];
+  /** Current candidate (or -1 if there is no estimate yet). */
+  private int current = -1;
+
+  /**
+   * Construct a new key estimator with the default window size.
+   */
+  public KeyEstimator() {
+    this(DEFAULT_WINDOW);
+  }
+
+  /**
+   * Construct a new key estimator.
+   *
+   * @param size number of notes in the sliding window
+   */
+  public KeyEstimator(int size) {
+    window = new int[Math.max(size, MIN_NOTES)];
+  }
+
+  /**
+   * Add a note to the window and update the estimated key.
+   * This fires a PROP_KEY property change if the estimated key changes.
+   *
+   * @param number note number based on 12 chromatic notes starting with A (may be octaves up)
+   */
+  public void addNote(int number) {
+    final int pitch = ((number % 12) + 12) % 12;
+    if (count == window.length) {
+      remove(window[head]);   // drop the oldest note
+    } else {
+      count++;
+    }
+    window[head] = pitch;
+    head = (head + 1) % window.length;
+    add(pitch);
+    update();
+  }
+
+  /**
+   * Clear the window and forget the current estimate.
+   */
+  public void reset() {
+    head = 0;
+    count = 0;
+    sumSq = 0;
+    current = -1;
+    Arrays.fill(histogram, 0);
+    Arrays.fill(dot, 0.0);
+  }
+
+  /**
+   * Get the currently estimated key.
+   *
+   * @return estimated key (or null if there are not enough notes yet)
+   */
+  public Key getKey() {
+    return makeKey(current);
+  }
+
+  /**
+   * Get the correlation of the current window with the given tonic and scale.
+   *
+   * @param tonic note number of the tonic based on 12 chromatic notes starting with A
+   * @param scale scale
+   * @return correlation from -1 to 1 (0 if the window is empty)
+   */
+  public double getCorrelation(int tonic, Scale scale) {
+    return correlation(scale.ordinal() * 12 + (tonic % 12));
+  }
+
+  /**
+   * Update the running sums for a pitch entering the window.
+   *
+   * @param pitch pitch 0 through 11
+   */
+  private void add(int pitch) {
+    sumSq += 2 * histogram[pitch] + 1;
+    histogram[pitch]++;
+    for (int c = 0; c < NUM_CANDIDATES; c++) {
+      dot[c] += WEIGHT[c * 12 + pitch];
+    }
+  }
+
+  /**
+   * Update the running sums for a pitch leaving the window.
+   *
+   * @param pitch pitch 0 through 11
+   */
+  private void remove(int pitch) {
+    histogram[pitch]--;
+    sumSq -= 2 * histogram[pitch] + 1;
+    for (int c = 0; c < NUM_CANDIDATES; c++) {
+      dot[c] -= WEIGHT[c * 12 + pitch];
+    }
+  }
+
+  /**
+   * Pearson correlation of the histogram with the profile of the given candidate.
+   *
+   * @param c candidate
+   * @return correlation from -1 to 1
+   */
+  private double correlation(int c) {
+    final int s = c / 12;
+    final double num = 12 * dot[c] - count * PROFILE_SUM[s];
+    final double den = (12.0 * sumSq - (double) count * count) *
+        (12 * PROFILE_SUMSQ[s] - PROFILE_SUM[s] * PROFILE_SUM[s]);
+    if (den <= 0.0) {
+      return 0.0;
+    }
+    return num / Math.sqrt(den);
+  }
+
+  /**
+   * Find the best candidate and fire a property change if it is different.
+   */
+  private void update() {
+    if (count < MIN_NOTES) {
+      return;
+    }
+    int best = 0;
+    double bestCorr = correlation(0);
+    for (int c = 1; c < NUM_CANDIDATES; c++) {
+      double corr = correlation(c);
+      if (corr > bestCorr) {
+        best = c;
+        bestCorr = corr;
+      }
+    }
+    if ((best != current) && ((current < 0) || (bestCorr > correlation(current) + SWITCH_MARGIN))) {
+      Key old = makeKey(current);
+      current = best;
+      pcs.firePropertyChange(PROP_KEY, old, makeKey(current));
+    }
+  }
+
+  /**
+   * Make a new key for the given candidate.
+   *
+   * @param c candidate
+   * @return new key (or null if c is negative)
+   */
+  private static Key makeKey(int c) {
+    if (c < 0) {
+      return null;
+    }
+    return new Key(KEYSIGS[c], Scale.values()[c / 12]);
+  }
+
+  /**
+   * Get the profile for the given scale starting with the tonic.
+   * The harmonic and melodic minors swap weights for the raised 7th (and 6th).
+   *
+   * @param scale scale
+   * @return array of 12 weights
+   */
+  private static double[] getProfile(Scale scale) {
+    double[] profile;
+    switch (scale) {
+      case MAJOR:
+        return MAJOR_PROFILE.clone();
+      case HARMONIC:
+        profile = MINOR_PROFILE.clone();
+        swap(profile, 10, 11);    // raised 7th
+        return profile;
+      case MELODIC:
+        profile = MINOR_PROFILE.clone();
+        swap(profile, 10, 11);    // raised 7th
+        swap(profile, 8, 9);      // raised 6th
+        return profile;
+      case MINOR:
+      default:
+        return MINOR_PROFILE.clone();
+    }
+  }
+
+  /**
+   * Swap two elements of the given array.
+   *
+   * @param a array
+   * @param i first index
+   * @param j second index
+   */
+  private static void swap(double[] a, int i, int j) {
+    double t = a[i];
+    a[i] = a[j];
+    a[j] = t;
+  }
+
+  /**
+   * Add the given listener to this object.
+   *
+   * @param listener listener
+   */
+  public void addPropertyChangeListener(PropertyChangeListener listener) {
+    pcs.addPropertyChangeListener(listener);
+  }
+
+  /**
+   * Remove the given listener to this object.
+   *
+   * @param listener listener
+   */
+  public void removePropertyChangeListener(PropertyChangeListener listener) {
+    pcs.removePropertyChangeListener(listener);
+  }
+}
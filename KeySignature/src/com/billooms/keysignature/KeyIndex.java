@@ -0,0 +1,186 @@
+package com.billooms.keysignature;
+
+import com.billooms.notes.Note;
+import static com.billooms.notes.SharpFlat.NATURAL;
+import java.util.ArrayList;
+
+/**
+ * Reverse index from a set of pitches to the keys whose scale contains them.
+ * The index is computed once for all 4096 possible 12 bit pitch masks and
+ * covers every key signature and scale (including enharmonic twins such as
+ * B major and C-flat major).
+ * For each pitch mask the keys are ranked by the number of accidentals
+ * in the key which are NOT in the given pitches (fewest first).
+ * Ties are broken by the number of sharps/flats in the key signature.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class KeyIndex {
+
+  /** Number of possible 12 bit pitch masks. */
+  private final static int NUM_MASKS = 4096;
+  /** Mask to find the 12th (left-most) bit. */
+  private final static int MASK12 = 0b100000000000;
+  /** Mask to find all 12 bits. */
+  private final static int MASK12ALL = 0b111111111111;
+  /** Number of keys (every key signature with every scale). */
+  private final static int NUM_KEYS = KeySignature.SIZE * Scale.SIZE;
+
+  /** Pitch mask of each key -- index is keySig.ordinal() * Scale.SIZE + scale.ordinal(). */
+  private final static int[] KEY_MASKS = new int[NUM_KEYS];
+  /** Mask of the pitches in each key that are sharp/flat/double sharp. */
+  private final static int[] ACCIDENTAL_MASKS = new int[NUM_KEYS];
+  /** Number of sharps or flats in the key signature of each key. */
+  private final static int[] SIGNATURE_SIZE = new int[NUM_KEYS];
+  /** Ranked key indices for each pitch mask -- NUM_KEYS slots per mask. */
+  private final static byte[] RANKED = new byte[NUM_MASKS * NUM_KEYS];
+  /** Number of keys containing each pitch mask (valid entries in RANKED). */
+  private final static byte[] COUNT = new byte[NUM_MASKS];
+
+  static {
+    for (KeySignature keySig : KeySignature.values()) {
+      for (Scale scale : Scale.values()) {
+        int k = keySig.ordinal() * Scale.SIZE + scale.ordinal();
+        Key key = new Key(keySig, scale);
+        int accidentals = 0;
+        for (Note note : key.getNotes()) {
+          if (note.getSharpFlat() != NATURAL) {
+            accidentals = accidentals | note.getPitchMask();
+          }
+        }
+        KEY_MASKS[k] = key.getPitchMask();
+        ACCIDENTAL_MASKS[k] = accidentals;
+        SIGNATURE_SIZE[k] = keySig.getSharpFlats().size();
+      }
+    }
+    final int[] rank = new int[NUM_KEYS];    // scratch for sorting
+    for (int mask = 0; mask < NUM_MASKS; mask++) {
+      final int base = mask * NUM_KEYS;
+      int n = 0;
+      for (int k = 0; k < NUM_KEYS; k++) {
+        if ((KEY_MASKS[k] & mask) == mask) {    // key contains all of the pitches
+          // primary: accidentals outside the pitches, secondary: size of signature
+          int r = Integer.bitCount(ACCIDENTAL_MASKS[k] & ~mask) * 16 + SIGNATURE_SIZE[k];
+          // insertion sort keeps the original key order for equal ranks
+          int j = n;
+          while ((j > 0) && (rank[j - 1] > r)) {
+            rank[j] = rank[j - 1];
+            RANKED[base + j] = RANKED[base + j - 1];
+            j--;
+          }
+          rank[j] = r;
+          RANKED[base + j] = (byte) k;
+          n++;
+        }
+      }
+      COUNT[mask] = (byte) n;
+    }
+  }
+
+  /**
+   * This class only has static methods.
+   */
+  private KeyIndex() {
+  }
+
+  /**
+   * Get the number of keys whose scale contains all of the given pitches.
+   *
+   * @param pitchMask 12 bit pitch mask with A-natural being the left-most bit
+   * @return number of keys
+   */
+  public static int getCount(int pitchMask) {
+    return COUNT[pitchMask & MASK12ALL];
+  }
+
+  /**
+   * Get all keys whose scale contains all of the given pitches.
+   * The best fit (fewest accidentals outside of the pitches) is first.
+   *
+   * @param pitchMask 12 bit pitch mask with A-natural being the left-most bit
+   * @return ranked list of keys (or empty list if there are none)
+   */
+  public static ArrayList<Key> getKeys(int pitchMask) {
+    final int mask = pitchMask & MASK12ALL;
+    final int base = mask * NUM_KEYS;
+    ArrayList<Key> list = new ArrayList<>(COUNT[mask]);
+    for (int i = 0; i < COUNT[mask]; i++) {
+      list.add(makeKey(RANKED[base + i]));
+    }
+    return list;
+  }
+
+  /**
+   * Get all keys whose scale contains all of the given notes.
+   * The best fit (fewest accidentals outside of the notes) is first.
+   *
+   * @param notes list of notes (octaves are ignored)
+   * @return ranked list of keys (or empty list if there are none)
+   */
+  public static ArrayList<Key> getKeys(ArrayList<Note> notes) {
+    return getKeys(getPitchMask(notes));
+  }
+
+  /**
+   * Get the key that best fits the given pitches.
+   *
+   * @param pitchMask 12 bit pitch mask with A-natural being the left-most bit
+   * @return best key (or null if no key contains all of the pitches)
+   */
+  public static Key getBestKey(int pitchMask) {
+    final int mask = pitchMask & MASK12ALL;
+    if (COUNT[mask] == 0) {
+      return null;
+    }
+    return makeKey(RANKED[mask * NUM_KEYS]);
+  }
+
+  /**
+   * Get the number of accidentals of the given key that are not in the given pitches.
+   *
+   * @param key key
+   * @param pitchMask 12 bit pitch mask with A-natural being the left-most bit
+   * @return number of accidentals outside of the pitches
+   */
+  public static int getAccidentalsOutside(Key key, int pitchMask) {
+    int k = key.getKeySignature().ordinal() * Scale.SIZE + key.getScale().ordinal();
+    return Integer.bitCount(ACCIDENTAL_MASKS[k] & ~pitchMask & MASK12ALL);
+  }
+
+  /**
+   * Get a 12 bit pitch mask for the given list of notes.
+   *
+   * @param notes list of notes
+   * @return 12 bit pitch mask
+   */
+  public static int getPitchMask(ArrayList<Note> notes) {
+    int mask = 0;
+    for (Note note : notes) {
+      mask = mask | (MASK12 >> (note.getNumber() % 12));   // notes may be octaves up
+    }
+    return mask;
+  }
+
+  /**
+   * Make a new key from the given index.
+   *
+   * @param k index into the key tables
+   * @return new key
+   */
+  private static Key makeKey(int k) {
+    return new Key(KeySignature.values()[k / Scale.SIZE], Scale.values()[k % Scale.SIZE]);
+  }
+}
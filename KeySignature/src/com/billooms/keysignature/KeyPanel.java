@@ -67,7 +67,7 @@ public class KeyPanel extends JPanel implements PropertyChangeListener {
    */
   private void updateForm() {
     if (key.getKeySignature() != null) {
-      scaleCombo.setSelectedItem(key.getScale());
+      scaleCombo.setSelectedIndex(key.getScale().ordinal());
       keyCombo.setSelectedIndex(key.getKeySignature().ordinal());
       keyPicture.setIcon(key.getKeySignature().getIcon());
       keyLabel.setText(key.toString());
@@ -84,6 +84,31 @@ public class KeyPanel extends JPanel implements PropertyChangeListener {
     return key;
   }
   
+  /**
+   * Select the given key signature and scale on this panel.
+   * This fires propertyChanges from the key which will update the form.
+   * 
+   * @param newKey key to select
+   */
+  public void selectKey(Key newKey) {
+    if (newKey != null) {
+      key.setKeySignature(newKey.getKeySignature());
+      key.setScale(newKey.getScale());
+    }
+  }
+  
+  /**
+   * Select the key that best fits the given pitches.
+   * 
+   * @param pitchMask 12 bit pitch mask with A-natural being the left-most bit
+   * @return true: a key was found, false: no key contains all of the pitches
+   */
+  public boolean selectKeyFor(int pitchMask) {
+    Key best = KeyIndex.getBestKey(pitchMask);
+    selectKey(best);
+    return best != null;
+  }
+  
   /**
    * Play the current scale.
    */
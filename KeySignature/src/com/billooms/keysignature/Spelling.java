@@ -0,0 +1,151 @@
+package com.billooms.keysignature;
+
+import com.billooms.notes.BasicNote;
+import com.billooms.notes.Note;
+import com.billooms.notes.SharpFlat;
+import static com.billooms.notes.SharpFlat.*;
+import java.util.ArrayList;
+
+/**
+ * Table of how each of the 12 pitches is spelled in every key.
+ * Pitches of the key's scale are spelled as in the scale (including double sharps).
+ * Other pitches are spelled as a natural if possible, otherwise as a flat in
+ * keys with flats and as a sharp in all other keys.
+ * The table is computed once for every key signature and scale.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class Spelling {
+
+  /** Number of letter names (steps) above the root for each chord tone 0 through 11 semitones up. */
+  private final static int[] CHORD_STEPS = {0, 1, 1, 2, 2, 3, 4, 4, 4, 5, 6, 6};
+  /** Number of keys (every key signature with every scale). */
+  private final static int NUM_KEYS = KeySignature.SIZE * Scale.SIZE;
+
+  /** Base note for each key and pitch -- index is key * 12 + pitch. */
+  private final static BasicNote[] BASE_NOTES = new BasicNote[NUM_KEYS * 12];
+  /** Sharp/flat for each key and pitch -- index is key * 12 + pitch. */
+  private final static SharpFlat[] SHARP_FLATS = new SharpFlat[NUM_KEYS * 12];
+
+  static {
+    for (KeySignature keySig : KeySignature.values()) {
+      for (Scale scale : Scale.values()) {
+        final int base = index(keySig, scale) * 12;
+        for (Note note : new Key(keySig, scale).getNotes()) {
+          BASE_NOTES[base + (note.getNumber() % 12)] = note.getBaseNote();
+          SHARP_FLATS[base + (note.getNumber() % 12)] = note.getSharpFlat();
+        }
+        for (int pitch = 0; pitch < 12; pitch++) {
+          if (BASE_NOTES[base + pitch] == null) {
+            for (BasicNote bn : BasicNote.values()) {
+              if (bn.getNum() == pitch) {
+                BASE_NOTES[base + pitch] = bn;
+                SHARP_FLATS[base + pitch] = NATURAL;
+              } else if ((BASE_NOTES[base + pitch] == null) && keySig.hasFlats() && (bn.getNum() == (pitch + 1) % 12)) {
+                BASE_NOTES[base + pitch] = bn;
+                SHARP_FLATS[base + pitch] = FLAT;
+              } else if ((BASE_NOTES[base + pitch] == null) && !keySig.hasFlats() && (bn.getNum() == (pitch + 11) % 12)) {
+                BASE_NOTES[base + pitch] = bn;
+                SHARP_FLATS[base + pitch] = SHARP;
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * This class only has static methods.
+   */
+  private Spelling() {
+  }
+
+  /**
+   * Spell the given note number in the given key.
+   *
+   * @param key key
+   * @param number note number based on 12 chromatic notes starting with A (may be octaves up)
+   * @return new note with the same number
+   */
+  public static Note spell(Key key, int number) {
+    final int i = index(key.getKeySignature(), key.getScale()) * 12 + (number % 12);
+    return new Note(number, BASE_NOTES[i], SHARP_FLATS[i]);
+  }
+
+  /**
+   * Spell all of the given notes in the given key.
+   *
+   * @param key key
+   * @param notes list of notes
+   * @return new list of notes with the same numbers
+   */
+  public static ArrayList<Note> spell(Key key, ArrayList<Note> notes) {
+    ArrayList<Note> list = new ArrayList<>(notes.size());
+    for (Note note : notes) {
+      list.add(spell(key, note.getNumber()));
+    }
+    return list;
+  }
+
+  /**
+   * Spell the notes of a chord on the given root.
+   * Each note is spelled by its interval above the root (for example, 
+   * the 3rd of F-sharp major is A-sharp) unless that would need a double flat, 
+   * in which case the note is spelled for the key.
+   *
+   * @param key key
+   * @param root root of the chord (already spelled)
+   * @param notes list of notes of the chord
+   * @return new list of notes with the same numbers
+   */
+  public static ArrayList<Note> spell(Key key, Note root, ArrayList<Note> notes) {
+    ArrayList<Note> list = new ArrayList<>(notes.size());
+    for (Note note : notes) {
+      final int interval = (((note.getNumber() - root.getNumber()) % 12) + 12) % 12;
+      final BasicNote bn = BasicNote.values()[(root.getBaseNote().ordinal() + CHORD_STEPS[interval]) % 7];
+      switch (((note.getNumber() - bn.getNum()) % 12 + 12) % 12) {
+        case 0:
+          list.add(new Note(note.getNumber(), bn, NATURAL));
+          break;
+        case 1:
+          list.add(new Note(note.getNumber(), bn, SHARP));
+          break;
+        case 2:
+          list.add(new Note(note.getNumber(), bn, DOUBLESHARP));
+          break;
+        case 11:
+          list.add(new Note(note.getNumber(), bn, FLAT));
+          break;
+        default:
+          list.add(spell(key, note.getNumber()));
+          break;
+      }
+    }
+    return list;
+  }
+
+  /**
+   * Get the index of the given key signature and scale.
+   *
+   * @param keySig key signature
+   * @param scale scale
+   * @return index
+   */
+  private static int index(KeySignature keySig, Scale scale) {
+    return keySig.ordinal() * Scale.SIZE + scale.ordinal();
+  }
+}
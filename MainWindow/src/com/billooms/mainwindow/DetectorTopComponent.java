@@ -0,0 +1,219 @@
+package com.billooms.mainwindow;
+
+import com.billooms.notes.AudioInput;
+import com.billooms.notes.Note;
+import com.billooms.pedals.PedalDetector;
+import com.billooms.pedals.PedalPosition;
+import com.billooms.pedals.Pedals;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.io.IOException;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.windows.TopComponent;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * Window that listens to a student play and compares the pedals that are
+ * heard (see PedalDetector) with the pedals of the main window.
+ * The sound comes from the default capture line, or from a WAV file for
+ * testing.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+@TopComponent.Description(
+    preferredID = "DetectorTopComponent",
+    persistenceType = TopComponent.PERSISTENCE_NEVER
+)
+@TopComponent.Registration(mode = "output", openAtStartup = false)
+@ActionID(category = "Window", id = "com.billooms.mainwindow.DetectorTopComponent")
+@ActionReference(path = "Menu/Window")
+@TopComponent.OpenActionRegistration(
+    displayName = "#CTL_DetectorAction",
+    preferredID = "DetectorTopComponent"
+)
+@Messages({
+  "CTL_DetectorAction=Pedal Check",
+  "CTL_DetectorTopComponent=Pedal Check",
+  "HINT_DetectorTopComponent=Compare the pedals that are heard with the pedals that are set",
+  "CTL_DetectorListen=Listen",
+  "CTL_DetectorFile=Play WAV...",
+  "CTL_DetectorStop=Stop",
+  "MSG_DetectorStopped=Stopped",
+  "MSG_DetectorListening=Listening",
+  "# {0} - file name",
+  "MSG_DetectorFile=Playing {0}",
+  "# {0} - reason",
+  "MSG_DetectorUnavailable=No input: {0}",
+  "# {0} - pedals",
+  "MSG_DetectorHeard=Heard: {0}",
+  "# {0} - pedals",
+  "MSG_DetectorSet=Set:   {0}",
+  "# {0} - pitches",
+  "MSG_DetectorPitches=Pitches: {0}",
+  "MSG_DetectorRight=The pedals are right",
+  "# {0} - number of pedals",
+  "MSG_DetectorWrong={0} pedal(s) are different"
+})
+public final class DetectorTopComponent extends TopComponent {
+
+  /** Mask to find the 12th bit. */
+  private final static int MASK12 = 0b100000000000;
+
+  /** Detects the pedals that are heard. */
+  private final PedalDetector detector = new PedalDetector();
+  /** Pedals of the main window (null until the first start). */
+  private Pedals pedals = null;
+  /** Input that is being heard (null if none). */
+  private AudioInput input = null;
+  /** Whether the detector is listening or why it isn't. */
+  private final JLabel statusLabel = new JLabel(Bundle.MSG_DetectorStopped());
+  /** Pedals that are heard. */
+  private final JLabel heardLabel = new JLabel(" ");
+  /** Pedals that are set in the main window. */
+  private final JLabel setLabel = new JLabel(" ");
+  /** Pitches that are heard. */
+  private final JLabel pitchesLabel = new JLabel(" ");
+  /** Whether the pedals that are heard are the ones that are set. */
+  private final JLabel compareLabel = new JLabel(" ");
+
+  public DetectorTopComponent() {
+    setName(Bundle.CTL_DetectorTopComponent());
+    setToolTipText(Bundle.HINT_DetectorTopComponent());
+    setLayout(new BorderLayout());
+    JButton listenButton = new JButton(Bundle.CTL_DetectorListen());
+    listenButton.addActionListener(e -> listen());
+    JButton fileButton = new JButton(Bundle.CTL_DetectorFile());
+    fileButton.addActionListener(e -> playFile());
+    JButton stopButton = new JButton(Bundle.CTL_DetectorStop());
+    stopButton.addActionListener(e -> stop());
+    JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEADING));
+    buttons.add(listenButton);
+    buttons.add(fileButton);
+    buttons.add(stopButton);
+    buttons.add(statusLabel);
+    add(buttons, BorderLayout.NORTH);
+    JPanel labels = new JPanel(new GridLayout(0, 1));
+    labels.add(heardLabel);
+    labels.add(setLabel);
+    labels.add(compareLabel);
+    labels.add(pitchesLabel);
+    add(labels, BorderLayout.CENTER);
+    detector.addPropertyChangeListener(evt -> compare());
+  }
+
+  /**
+   * Start listening to the default capture line.
+   */
+  private void listen() {
+    try {
+      start(AudioInput.openLine());
+      statusLabel.setText(Bundle.MSG_DetectorListening());
+    } catch (LineUnavailableException | IllegalArgumentException ex) {
+      statusLabel.setText(Bundle.MSG_DetectorUnavailable(ex.getMessage()));
+    }
+  }
+
+  /**
+   * Start listening to a WAV file that the user chooses.
+   */
+  private void playFile() {
+    final JFileChooser chooser = new JFileChooser();
+    if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    try {
+      start(AudioInput.openFile(chooser.getSelectedFile()));
+      statusLabel.setText(Bundle.MSG_DetectorFile(chooser.getSelectedFile().getName()));
+    } catch (IOException | UnsupportedAudioFileException ex) {
+      statusLabel.setText(Bundle.MSG_DetectorUnavailable(ex.getMessage()));
+    }
+  }
+
+  /**
+   * Start detecting from the given input, following the main window's
+   * pedals the first time.
+   *
+   * @param newInput input
+   */
+  private void start(AudioInput newInput) {
+    stop();
+    if (pedals == null) {
+      pedals = MainWindowTopComponent.findInstance().getPedals();
+      pedals.addPropertyChangeListener(evt -> {
+        if (evt.getPropertyName().equals(Pedals.PROP_PEDALS)) {
+          compare();
+        }
+      });
+    }
+    detector.reset();
+    input = newInput;
+    detector.start(input);
+    compare();
+  }
+
+  /**
+   * Stop detecting and close the input (if any).
+   */
+  private void stop() {
+    detector.stop();
+    if (input != null) {
+      input.close();
+      input = null;
+    }
+    statusLabel.setText(Bundle.MSG_DetectorStopped());
+  }
+
+  /**
+   * Show the pedals that are heard next to the pedals that are set.
+   */
+  private void compare() {
+    if (pedals == null) {
+      return;
+    }
+    final PedalPosition set = pedals.getPedalPositions();
+    final PedalPosition heard = detector.getPedals();
+    setLabel.setText(Bundle.MSG_DetectorSet(set.toString()));
+    if (heard == null) {
+      heardLabel.setText(" ");
+      compareLabel.setText(" ");
+      pitchesLabel.setText(" ");
+      return;
+    }
+    heardLabel.setText(Bundle.MSG_DetectorHeard(heard.toString()));
+    final int wrong = detector.countWrong(set);
+    compareLabel.setText((wrong == 0) ? Bundle.MSG_DetectorRight() : Bundle.MSG_DetectorWrong(wrong));
+    final StringBuilder str = new StringBuilder();
+    for (int p = 0; p < 12; p++) {
+      if ((detector.getHeardPitches() & (MASK12 >> p)) != 0) {
+        str.append(new Note(p).toString()).append(' ');
+      }
+    }
+    pitchesLabel.setText(Bundle.MSG_DetectorPitches(str.toString()));
+  }
+
+  @Override
+  public void componentClosed() {
+    stop();
+  }
+}
@@ -1,17 +1,20 @@
 package com.billooms.mainwindow;
 
+import com.billooms.chords.Chord;
 import com.billooms.keysignature.Key;
 import com.billooms.keysignature.Scale;
 import com.billooms.notes.Note;
 import com.billooms.notes.NotePlayer;
-import static com.billooms.notes.SharpFlat.DOUBLESHARP;
+import com.billooms.pedals.HarmonicFunction;
 import com.billooms.pedals.PedalPosition;
+import com.billooms.pedals.PedalPresets;
 import com.billooms.pedals.Pedals;
 import java.util.ArrayList;
 import org.netbeans.api.settings.ConvertAsProperties;
 import org.openide.awt.ActionID;
 import org.openide.awt.ActionReference;
 import org.openide.windows.TopComponent;
+import org.openide.windows.WindowManager;
 import org.openide.util.NbBundle.Messages;
 
 /**
@@ -77,80 +80,132 @@ public final class MainWindowTopComponent extends TopComponent {
     pedals = pedalPanel.getPedals();
     
     chordPanel.initialize(player);
+    
+    functionCombo.removeAllItems();
+    for (HarmonicFunction f : HarmonicFunction.values()) {
+      functionCombo.addItem(f.getAbbreviation() + "  " + f.getName());
+    }
+    functionCombo.setSelectedIndex(HarmonicFunction.TONIC.ordinal());
+  }
+  
+  /**
+   * Find the main window (it is made if it hasn't been already).
+   * 
+   * @return main window
+   */
+  static MainWindowTopComponent findInstance() {
+    return (MainWindowTopComponent) WindowManager.getDefault().findTopComponent("MainWindowTopComponent");
+  }
+  
+  /**
+   * Get the pedals from the PedalPanel.
+   * 
+   * @return pedals
+   */
+  Pedals getPedals() {
+    return pedals;
+  }
+  
+  /**
+   * Get the key from the KeyPanel.
+   * 
+   * @return key
+   */
+  Key getKey() {
+    return key;
+  }
+  
+  /**
+   * Get the Note Player that is shared with the panels.
+   * 
+   * @return note player
+   */
+  NotePlayer getPlayer() {
+    return player;
+  }
+  
+  /**
+   * Get the chord that is selected on the ChordPanel.
+   * 
+   * @return chord
+   */
+  Chord getChord() {
+    return chordPanel.getChord();
+  }
+  
+  /**
+   * Get the root note that is selected on the ChordPanel.
+   * 
+   * @return root note
+   */
+  Note getRootNote() {
+    return chordPanel.getRootNote();
   }
   
   /**
    * Set the pedals for the current key signature.
    */
   private void setPedalsForKey() {
-    pedals.setAllNatural();
-    ArrayList<Note> notes = key.getNotes();
-    if (hasDoubleSharps(notes)) {   // handle double sharps differently
-      int pitchMask = key.getPitchMask();
-      ArrayList<PedalPosition> pedalsForPitchMask = pedals.pedalsForPitchMask(pitchMask);
-      if (!pedalsForPitchMask.isEmpty()) {
-        pedals.setPedals(pedalsForPitchMask.get(0));
-      }
-    } else {
-      pedals.setPedals(key.getNotes()); // this gives the preferred setting in the event of multiple
-    }
+    pedals.setPedals(key);
     pedalPanel.setFirstNote(key.getFirstNote());
     pedalPanel.findAlternates();
   }
   
   /**
-   * Determine if the given list of notes contains a double sharp.
+   * Select the given key on the KeyPanel and set the pedals for it.
    * 
-   * @param notes list of notes
-   * @return true: contains a double sharp
+   * @param newKey key
    */
-  private boolean hasDoubleSharps(ArrayList<Note> notes) {
-    for (Note note : notes) {
-      if (note.getSharpFlat() == DOUBLESHARP) {
-        return true;
-      }
-    }
-    return false;
+  void setPedalsForKey(Key newKey) {
+    keyPanel.selectKey(newKey);
+    setPedalsForKey();
+  }
+  
+  /**
+   * Select the key on the KeyPanel that best fits the given pitches.
+   * 
+   * @param pitchMask 12 bit pitch mask with A-natural being the left-most bit
+   * @return true: a key was found, false: no key contains all of the pitches
+   */
+  boolean selectKeyFor(int pitchMask) {
+    return keyPanel.selectKeyFor(pitchMask);
   }
   
   /**
    * Change the pedals for a tonic glissando.
-   * This is done by replacing the 4th and 7th of the scale by other notes.
+   * This uses the MAJOR scale of the current key signature.
    */
   private void setPedalsForTonic() {
     key.setScale(Scale.MAJOR);
-    setPedalsForKey();        // first set the pedals for the key
-    ArrayList<Note> noteList = key.getNotes();
-    Note note4 = noteList.get(3);    // get the 4th note of the scale
-    Note note7 = noteList.get(6);    // get the 7th note of the scale
-    noteList.remove(note4);          // and remove them
-    noteList.remove(note7);
-    Note alt4 = pedals.findAlternate(note4, noteList);  // find an alternate for the 4th
-    Note alt7 = pedals.findAlternate(note7, noteList);  // find an alternate for the 7th
-    pedals.setPedals(alt4);     // set the pedals to the enharmonics
-    pedals.setPedals(alt7); 
-    pedalPanel.setFirstNote(key.getFirstNote());
-    pedalPanel.findAlternates();
+    setPedalsForFunction(HarmonicFunction.TONIC);
   }
   
   /**
    * Change the pedals for a V7 glissando.
-   * This is done by replacing the 1st and 3rd of the scale by other notes.
+   * This uses the MAJOR scale of the current key signature.
    */
   private void setPedalsForV7() {
     key.setScale(Scale.MAJOR);
-    setPedalsForKey();        // first set the pedals for the key
-    ArrayList<Note> noteList = key.getNotes();
-    Note note1 = noteList.get(0);    // get the 1st note of the scale
-    Note note3 = noteList.get(2);    // get the 3rd note of the scale
-    noteList.remove(note1);          // and remove them
-    noteList.remove(note3);
-    Note alt1 = pedals.findAlternate(note1, noteList);  // find an enharmonic for the 1st
-    Note alt3 = pedals.findAlternate(note3, noteList);  // find an alternate for the 3rd
-    pedals.setPedals(alt1);     // set the pedals to the enharmonics
-    pedals.setPedals(alt3);
-    pedalPanel.setFirstNote(new Note(key.getFirstNote().getNumber() + 7));
-    pedalPanel.findAlternates();
+    setPedalsForFunction(HarmonicFunction.V7);
+  }
+  
+  /**
+   * Change the pedals for a glissando of the given harmonic function in the current key.
+   * The pedal settings are looked up in the PedalPresets table.
+   * 
+   * @param function harmonic function
+   */
+  private void setPedalsForFunction(HarmonicFunction function) {
+    PedalPosition pedPos = PedalPresets.getPedals(key, function);
+    if (pedPos != null) {
+      msgLabel.setText(pedPos.toString());
+      pedals.setPedals(pedPos);
+      pedalPanel.setFirstNote(PedalPresets.getFirstNote(key, function));
+      pedalPanel.findAlternates();
+    } else {
+      msgLabel.setText("no pedals for " + function.getAbbreviation() + " in " + key.toString());
+      pedalPanel.setAltComboEnable(false);
+    }
   }
   
   private void setPedalsForChord() {
@@ -182,6 +237,8 @@ public final class MainWindowTopComponent extends TopComponent {
     chordPanel = new com.billooms.chords.ChordPanel();
     setPedalsForChordButton = new javax.swing.JButton();
     msgLabel = new javax.swing.JLabel();
+    functionCombo = new javax.swing.JComboBox<>();
+    setPedalsForFunctionButton = new javax.swing.JButton();
 
     setToolTipText(org.openide.util.NbBundle.getMessage(MainWindowTopComponent.class, "MainWindowTopComponent.toolTipText")); // NOI18N
 
@@ -219,6 +276,17 @@ public final class MainWindowTopComponent extends TopComponent {
 
     org.openide.awt.Mnemonics.setLocalizedText(msgLabel, org.openide.util.NbBundle.getMessage(MainWindowTopComponent.class, "MainWindowTopComponent.msgLabel.text")); // NOI18N
 
+    functionCombo.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "Item 1", "Item 2", "Item 3", "Item 4" }));
+    functionCombo.setToolTipText(org.openide.util.NbBundle.getMessage(MainWindowTopComponent.class, "MainWindowTopComponent.functionCombo.toolTipText")); // NOI18N
+
+    org.openide.awt.Mnemonics.setLocalizedText(setPedalsForFunctionButton, org.openide.util.NbBundle.getMessage(MainWindowTopComponent.class, "MainWindowTopComponent.setPedalsForFunctionButton.text")); // NOI18N
+    setPedalsForFunctionButton.setToolTipText(org.openide.util.NbBundle.getMessage(MainWindowTopComponent.class, "MainWindowTopComponent.setPedalsForFunctionButton.toolTipText")); // NOI18N
+    setPedalsForFunctionButton.addActionListener(new java.awt.event.ActionListener() {
+      public void actionPerformed(java.awt.event.ActionEvent evt) {
+        setPedalsForFunctionButtonActionPerformed(evt);
+      }
+    });
+
     javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
     this.setLayout(layout);
     layout.setHorizontalGroup(
@@ -237,6 +305,11 @@ public final class MainWindowTopComponent extends TopComponent {
             .addComponent(tonicButton)
             .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
             .addComponent(v7Button))
+          .addGroup(layout.createSequentialGroup()
+            .addContainerGap()
+            .addComponent(functionCombo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+            .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+            .addComponent(setPedalsForFunctionButton))
           .addGroup(layout.createSequentialGroup()
             .addComponent(setPedalsForChordButton)
             .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
@@ -254,6 +327,10 @@ public final class MainWindowTopComponent extends TopComponent {
           .addComponent(setPedalsForKeyButton)
           .addComponent(tonicButton)
           .addComponent(v7Button))
+        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+          .addComponent(functionCombo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+          .addComponent(setPedalsForFunctionButton))
         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
         .addComponent(chordPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
@@ -286,12 +363,20 @@ public final class MainWindowTopComponent extends TopComponent {
     }
   }//GEN-LAST:event_setPedalsForChordButtonActionPerformed
 
+  private void setPedalsForFunctionButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_setPedalsForFunctionButtonActionPerformed
+    if (setPedalsForFunctionButton.isFocusOwner() && (functionCombo.getSelectedIndex() >= 0)) {
+      setPedalsForFunction(HarmonicFunction.values()[functionCombo.getSelectedIndex()]);
+    }
+  }//GEN-LAST:event_setPedalsForFunctionButtonActionPerformed
+
   // Variables declaration - do not modify//GEN-BEGIN:variables
   private com.billooms.chords.ChordPanel chordPanel;
+  private javax.swing.JComboBox<String> functionCombo;
   private com.billooms.keysignature.KeyPanel keyPanel;
   private javax.swing.JLabel msgLabel;
   private com.billooms.pedals.PedalPanel pedalPanel;
   private javax.swing.JButton setPedalsForChordButton;
+  private javax.swing.JButton setPedalsForFunctionButton;
   private javax.swing.JButton setPedalsForKeyButton;
   private javax.swing.JButton tonicButton;
   private javax.swing.JButton v7Button;
@@ -0,0 +1,195 @@
+package com.billooms.mainwindow;
+
+import com.billooms.keysignature.Key;
+import com.billooms.pedals.MidiChordInput;
+import com.billooms.pedals.MidiChordInput.Suggestion;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.beans.PropertyChangeEvent;
+import javax.sound.midi.MidiUnavailableException;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.windows.TopComponent;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * Window that follows the chords held on a MIDI keyboard and shows the pedals
+ * suggested for them (see MidiChordInput).
+ * The suggestions start from the pedals of the main window, and are set on
+ * them if wanted. The key estimated from the playing is shown too, and the
+ * main window can be set to it (such as after a modulation).
+ * The pitches of a passage are collected so the main window can select the
+ * key that best fits them (see KeyPanel.selectKeyFor).
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+@TopComponent.Description(
+    preferredID = "MidiInputTopComponent",
+    persistenceType = TopComponent.PERSISTENCE_NEVER
+)
+@TopComponent.Registration(mode = "output", openAtStartup = false)
+@ActionID(category = "Window", id = "com.billooms.mainwindow.MidiInputTopComponent")
+@ActionReference(path = "Menu/Window")
+@TopComponent.OpenActionRegistration(
+    displayName = "#CTL_MidiInputAction",
+    preferredID = "MidiInputTopComponent"
+)
+@Messages({
+  "CTL_MidiInputAction=MIDI Input",
+  "CTL_MidiInputTopComponent=MIDI Input",
+  "HINT_MidiInputTopComponent=Suggest pedals for the chords held on a MIDI keyboard",
+  "CTL_MidiInputConnect=Connect",
+  "CTL_MidiInputDisconnect=Disconnect",
+  "CTL_MidiInputApply=Set the pedals",
+  "MSG_MidiInputNotConnected=Not connected",
+  "MSG_MidiInputConnected=Connected -- hold a chord",
+  "# {0} - reason",
+  "MSG_MidiInputUnavailable=No MIDI input: {0}",
+  "MSG_MidiInputNoPedals=no pedals for the chord",
+  "CTL_MidiInputUseKey=Set Pedals for Key",
+  "# {0} - key",
+  "MSG_MidiInputKey=Estimated key: {0}",
+  "CTL_MidiInputSelectKey=Select Key for Passage",
+  "CTL_MidiInputClearPassage=New Passage",
+  "MSG_MidiInputNoKey=no key contains all the pitches of the passage"
+})
+public final class MidiInputTopComponent extends TopComponent {
+
+  /** Input from the MIDI keyboard (null until the first connect). */
+  private MidiChordInput input = null;
+  /** Whether the input is connected or why it isn't. */
+  private final JLabel statusLabel = new JLabel(Bundle.MSG_MidiInputNotConnected());
+  /** Name of the chord that is held. */
+  private final JLabel chordLabel = new JLabel(" ");
+  /** Pedals suggested for the chord. */
+  private final JLabel pedalsLabel = new JLabel(" ");
+  /** Key estimated from the playing. */
+  private final JLabel keyLabel = new JLabel(" ");
+  /** Sets the main window to the estimated key. */
+  private final JButton useKeyButton = new JButton(Bundle.CTL_MidiInputUseKey());
+  /** Key that was last estimated (null if none). */
+  private Key key = null;
+  /** Every pitch held since the passage was started. */
+  private int passage = 0;
+  /** True to set the pedals to each suggestion. */
+  private final JCheckBox applyBox = new JCheckBox(Bundle.CTL_MidiInputApply(), true);
+
+  public MidiInputTopComponent() {
+    setName(Bundle.CTL_MidiInputTopComponent());
+    setToolTipText(Bundle.HINT_MidiInputTopComponent());
+    setLayout(new BorderLayout());
+    JButton connectButton = new JButton(Bundle.CTL_MidiInputConnect());
+    connectButton.addActionListener(e -> connect());
+    JButton disconnectButton = new JButton(Bundle.CTL_MidiInputDisconnect());
+    disconnectButton.addActionListener(e -> disconnect());
+    applyBox.addActionListener(e -> {
+      if (input != null) {
+        input.setApply(applyBox.isSelected());
+      }
+    });
+    JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEADING));
+    buttons.add(connectButton);
+    buttons.add(disconnectButton);
+    buttons.add(applyBox);
+    buttons.add(statusLabel);
+    add(buttons, BorderLayout.NORTH);
+    useKeyButton.setEnabled(false);
+    useKeyButton.addActionListener(e -> {
+      if (key != null) {
+        MainWindowTopComponent.findInstance().setPedalsForKey(key);
+      }
+    });
+    JButton selectKeyButton = new JButton(Bundle.CTL_MidiInputSelectKey());
+    selectKeyButton.addActionListener(e -> {
+      if ((passage != 0) && !MainWindowTopComponent.findInstance().selectKeyFor(passage)) {
+        statusLabel.setText(Bundle.MSG_MidiInputNoKey());
+      }
+    });
+    JButton clearButton = new JButton(Bundle.CTL_MidiInputClearPassage());
+    clearButton.addActionListener(e -> passage = 0);
+    JPanel keyPanel = new JPanel(new FlowLayout(FlowLayout.LEADING));
+    keyPanel.add(keyLabel);
+    keyPanel.add(useKeyButton);
+    keyPanel.add(selectKeyButton);
+    keyPanel.add(clearButton);
+    JPanel labels = new JPanel(new GridLayout(0, 1));
+    labels.add(chordLabel);
+    labels.add(pedalsLabel);
+    labels.add(keyPanel);
+    add(labels, BorderLayout.CENTER);
+  }
+
+  /**
+   * Connect to the default MIDI input, making the input for the main
+   * window's pedals the first time.
+   */
+  private void connect() {
+    if (input == null) {
+      input = new MidiChordInput(MainWindowTopComponent.findInstance().getPedals());
+      input.addPropertyChangeListener(this::suggestionChanged);
+    }
+    input.setApply(applyBox.isSelected());
+    try {
+      input.connect();
+      statusLabel.setText(Bundle.MSG_MidiInputConnected());
+    } catch (MidiUnavailableException ex) {
+      statusLabel.setText(Bundle.MSG_MidiInputUnavailable(ex.getMessage()));
+    }
+  }
+
+  /**
+   * Disconnect from the MIDI input (if connected).
+   */
+  private void disconnect() {
+    if (input != null) {
+      input.close();
+    }
+    statusLabel.setText(Bundle.MSG_MidiInputNotConnected());
+  }
+
+  /**
+   * Show a new suggestion.
+   *
+   * @param evt PROP_SUGGESTION property change from the input
+   */
+  private void suggestionChanged(PropertyChangeEvent evt) {
+    if (!evt.getPropertyName().equals(MidiChordInput.PROP_SUGGESTION)) {
+      return;
+    }
+    final Suggestion s = (Suggestion) evt.getNewValue();
+    passage |= s.getPitchMask();
+    key = s.getKey();
+    keyLabel.setText((key == null) ? " " : Bundle.MSG_MidiInputKey(key.toString()));
+    useKeyButton.setEnabled(key != null);
+    if (s.getPitchMask() == 0) {
+      chordLabel.setText(" ");
+      pedalsLabel.setText(" ");
+      return;
+    }
+    chordLabel.setText(s.getChordName().isEmpty() ? " " : s.getChordName().replace('\n', '/'));
+    pedalsLabel.setText((s.getPedals() == null) ? Bundle.MSG_MidiInputNoPedals() : s.getPedals().toString());
+  }
+
+  @Override
+  public void componentClosed() {
+    disconnect();
+  }
+}
@@ -0,0 +1,198 @@
+package com.billooms.mainwindow;
+
+import com.billooms.chords.Progression;
+import com.billooms.pedals.PedalPlan;
+import com.billooms.pedals.Pedals;
+import com.billooms.pedals.ProgressionPlayer;
+import com.billooms.pedals.ProgressionPlayer.Cue;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.beans.PropertyChangeEvent;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.windows.TopComponent;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * Window for building a chord progression from the chords of the main
+ * window, playing it (see ProgressionPlayer) and showing the cue for each
+ * pedal change as it comes up.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+@TopComponent.Description(
+    preferredID = "ProgressionTopComponent",
+    persistenceType = TopComponent.PERSISTENCE_NEVER
+)
+@TopComponent.Registration(mode = "output", openAtStartup = false)
+@ActionID(category = "Window", id = "com.billooms.mainwindow.ProgressionTopComponent")
+@ActionReference(path = "Menu/Window")
+@TopComponent.OpenActionRegistration(
+    displayName = "#CTL_ProgressionAction",
+    preferredID = "ProgressionTopComponent"
+)
+@Messages({
+  "CTL_ProgressionAction=Progression",
+  "CTL_ProgressionTopComponent=Progression",
+  "HINT_ProgressionTopComponent=Play a chord progression with cues for the pedal changes",
+  "CTL_ProgressionAdd=Add Chord",
+  "CTL_ProgressionClear=Clear",
+  "CTL_ProgressionPlay=Play",
+  "CTL_ProgressionStop=Stop",
+  "CTL_ProgressionTempo=Tempo",
+  "CTL_ProgressionBeats=Beats per chord",
+  "CTL_ProgressionLead=Cue beats ahead",
+  "CTL_ProgressionClick=Click on cues",
+  "# {0} - number of pedal changes",
+  "MSG_ProgressionChanges={0} pedal changes",
+  "# {0} - cue",
+  "MSG_ProgressionSetup=Set up: {0}"
+})
+public final class ProgressionTopComponent extends TopComponent {
+
+  /** Progression that is built and played. */
+  private Progression prog = new Progression();
+  /** Plays the progression (null until the first play). */
+  private ProgressionPlayer progPlayer = null;
+  /** Chords of the progression. */
+  private final DefaultListModel<String> chords = new DefaultListModel<>();
+  /** Tempo in beats per minute. */
+  private final JSpinner tempoSpinner = new JSpinner(new SpinnerNumberModel(ProgressionPlayer.DEFAULT_TEMPO, 20.0, 240.0, 1.0));
+  /** Number of beats for each chord. */
+  private final JSpinner beatsSpinner = new JSpinner(new SpinnerNumberModel(ProgressionPlayer.DEFAULT_BEATS, 1, 16, 1));
+  /** Number of beats that a cue comes before its chord. */
+  private final JSpinner leadSpinner = new JSpinner(new SpinnerNumberModel(ProgressionPlayer.DEFAULT_LEAD, 0.0, 16.0, 0.5));
+  /** True for a click on each cue. */
+  private final JCheckBox clickBox = new JCheckBox(Bundle.CTL_ProgressionClick());
+  /** Newest cue. */
+  private final JLabel cueLabel = new JLabel(" ");
+  /** Number of pedal changes in the progression. */
+  private final JLabel planLabel = new JLabel(" ");
+
+  public ProgressionTopComponent() {
+    setName(Bundle.CTL_ProgressionTopComponent());
+    setToolTipText(Bundle.HINT_ProgressionTopComponent());
+    setLayout(new BorderLayout());
+    JButton addButton = new JButton(Bundle.CTL_ProgressionAdd());
+    addButton.addActionListener(e -> addChord());
+    JButton clearButton = new JButton(Bundle.CTL_ProgressionClear());
+    clearButton.addActionListener(e -> {
+      stop();
+      prog = new Progression();
+      chords.clear();
+    });
+    JButton playButton = new JButton(Bundle.CTL_ProgressionPlay());
+    playButton.addActionListener(e -> play());
+    JButton stopButton = new JButton(Bundle.CTL_ProgressionStop());
+    stopButton.addActionListener(e -> stop());
+    JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEADING));
+    buttons.add(addButton);
+    buttons.add(clearButton);
+    buttons.add(playButton);
+    buttons.add(stopButton);
+    buttons.add(new JLabel(Bundle.CTL_ProgressionTempo()));
+    buttons.add(tempoSpinner);
+    buttons.add(new JLabel(Bundle.CTL_ProgressionBeats()));
+    buttons.add(beatsSpinner);
+    buttons.add(new JLabel(Bundle.CTL_ProgressionLead()));
+    buttons.add(leadSpinner);
+    buttons.add(clickBox);
+    add(buttons, BorderLayout.NORTH);
+    add(new JScrollPane(new JList<>(chords)), BorderLayout.CENTER);
+    cueLabel.setFont(cueLabel.getFont().deriveFont(Font.BOLD, 18.0f));
+    JPanel labels = new JPanel(new BorderLayout());
+    labels.add(cueLabel, BorderLayout.CENTER);
+    labels.add(planLabel, BorderLayout.EAST);
+    add(labels, BorderLayout.SOUTH);
+  }
+
+  /**
+   * Add the chord that is selected in the main window to the end of the progression.
+   */
+  private void addChord() {
+    final MainWindowTopComponent main = MainWindowTopComponent.findInstance();
+    prog.add(main.getRootNote(), main.getChord());
+    final String name = Pedals.findChordName(prog.getPitchMask(prog.size() - 1));
+    chords.addElement(prog.size() + ": " + (name.isEmpty() ? main.getRootNote().toString() : name.replace('\n', '/')));
+  }
+
+  /**
+   * Play the progression in the main window's key, making the player the
+   * first time.
+   */
+  private void play() {
+    if (prog.size() == 0) {
+      return;
+    }
+    final MainWindowTopComponent main = MainWindowTopComponent.findInstance();
+    if (progPlayer == null) {
+      progPlayer = new ProgressionPlayer(main.getPlayer());
+      progPlayer.addPropertyChangeListener(this::cueChanged);
+    }
+    progPlayer.setTempo(((Number) tempoSpinner.getValue()).doubleValue());
+    progPlayer.setBeats(((Number) beatsSpinner.getValue()).intValue());
+    progPlayer.setLead(((Number) leadSpinner.getValue()).doubleValue());
+    progPlayer.setClick(clickBox.isSelected());
+    cueLabel.setText(" ");
+    final PedalPlan plan = progPlayer.play(prog, main.getKey());
+    planLabel.setText(Bundle.MSG_ProgressionChanges(plan.getTotalChanges()));
+  }
+
+  /**
+   * Stop the progression (if it is playing).
+   */
+  private void stop() {
+    if (progPlayer != null) {
+      progPlayer.stop();
+    }
+  }
+
+  /**
+   * Show a new cue, or clear it when the progression stops.
+   *
+   * @param evt property change from the progression player
+   */
+  private void cueChanged(PropertyChangeEvent evt) {
+    switch (evt.getPropertyName()) {
+      case ProgressionPlayer.PROP_CUE:
+        final Cue cue = (Cue) evt.getNewValue();
+        cueLabel.setText((cue.getBeats() == 0.0) ? Bundle.MSG_ProgressionSetup(cue.getChangedPedals()) : cue.toString());
+        break;
+      case ProgressionPlayer.PROP_PLAYING:
+        if (!progPlayer.isPlaying()) {
+          cueLabel.setText(" ");
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  @Override
+  public void componentClosed() {
+    stop();
+  }
+}
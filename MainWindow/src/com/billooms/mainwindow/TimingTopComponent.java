@@ -0,0 +1,147 @@
+package com.billooms.mainwindow;
+
+import com.billooms.notes.OnsetStats;
+import com.billooms.notes.OnsetStats.Histogram;
+import com.billooms.notes.OnsetStats.PhraseStats;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.util.ArrayList;
+import javax.swing.JButton;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.windows.TopComponent;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * Debug window that shows the note onset latency and jitter from the OnsetStats.
+ * It is refreshed twice a second while it is open.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+@TopComponent.Description(
+    preferredID = "TimingTopComponent",
+    persistenceType = TopComponent.PERSISTENCE_NEVER
+)
+@TopComponent.Registration(mode = "output", openAtStartup = false)
+@ActionID(category = "Window", id = "com.billooms.mainwindow.TimingTopComponent")
+@ActionReference(path = "Menu/Window")
+@TopComponent.OpenActionRegistration(
+    displayName = "#CTL_TimingAction",
+    preferredID = "TimingTopComponent"
+)
+@Messages({
+  "CTL_TimingAction=Note Timing",
+  "CTL_TimingTopComponent=Note Timing",
+  "HINT_TimingTopComponent=Latency and jitter of note onsets",
+  "CTL_TimingClear=Clear"
+})
+public final class TimingTopComponent extends TopComponent {
+
+  /** Time between refreshes in milliseconds. */
+  private final static int REFRESH_MSEC = 500;
+  /** Number of recent phrases that are listed. */
+  private final static int PHRASES = 10;
+  /** Width of the longest histogram bar in characters. */
+  private final static int BAR = 40;
+
+  /** Statistics that are shown. */
+  private final OnsetStats stats = OnsetStats.getDefault();
+  /** Text of the statistics. */
+  private final JTextArea text = new JTextArea();
+  /** Refreshes the text while the window is open. */
+  private final Timer timer = new Timer(REFRESH_MSEC, e -> refresh());
+
+  public TimingTopComponent() {
+    setName(Bundle.CTL_TimingTopComponent());
+    setToolTipText(Bundle.HINT_TimingTopComponent());
+    setLayout(new BorderLayout());
+    text.setEditable(false);
+    text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+    add(new JScrollPane(text), BorderLayout.CENTER);
+    JButton clearButton = new JButton(Bundle.CTL_TimingClear());
+    clearButton.addActionListener(e -> {
+      stats.clear();
+      refresh();
+    });
+    JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEADING));
+    buttons.add(clearButton);
+    add(buttons, BorderLayout.NORTH);
+  }
+
+  /**
+   * Show the current statistics.
+   */
+  private void refresh() {
+    final ArrayList<PhraseStats> phrases = stats.getPhrases();
+    final StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%d notes recorded (the last %d are kept)%n%n", stats.getCount(), OnsetStats.CAPACITY));
+    appendHistogram(sb, "Latency (scheduled to heard)", stats.getLatency());
+    appendHistogram(sb, "Jitter (spacing error between notes)", stats.getJitter());
+    sb.append(String.format("Recent phrases%n"));
+    for (int i = Math.max(0, phrases.size() - PHRASES); i < phrases.size(); i++) {
+      sb.append(String.format("  %s%n", phrases.get(i)));
+    }
+    text.setText(sb.toString());
+  }
+
+  /**
+   * Append a histogram as a bar for each bin (empty bins at the ends are skipped).
+   *
+   * @param sb where to append
+   * @param title title
+   * @param h histogram
+   */
+  private static void appendHistogram(StringBuilder sb, String title, Histogram h) {
+    sb.append(String.format("%s: %s%n", title, h));
+    final int[] counts = h.getCounts();
+    int first = 0;
+    while ((first < counts.length) && (counts[first] == 0)) {
+      first++;
+    }
+    int last = counts.length - 1;
+    while ((last > first) && (counts[last] == 0)) {
+      last--;
+    }
+    int most = 1;
+    for (int c : counts) {
+      most = Math.max(most, c);
+    }
+    for (int i = first; i <= last; i++) {
+      sb.append(String.format("  %8.2f ms %6d ", h.getBinStart(i) / 1000.0, counts[i]));
+      for (int j = 0; j < (counts[i] * BAR + most - 1) / most; j++) {
+        sb.append('#');
+      }
+      sb.append(String.format("%n"));
+    }
+    sb.append(String.format("%n"));
+  }
+
+  @Override
+  public void componentOpened() {
+    refresh();
+    timer.start();
+  }
+
+  @Override
+  public void componentClosed() {
+    timer.stop();
+  }
+}
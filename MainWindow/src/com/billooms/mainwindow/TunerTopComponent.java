@@ -0,0 +1,156 @@
+package com.billooms.mainwindow;
+
+import com.billooms.notes.AudioInput;
+import com.billooms.pedals.Tuner;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.beans.PropertyChangeEvent;
+import javax.sound.sampled.LineUnavailableException;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.windows.TopComponent;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * Window that tunes one string at a time from the default capture line (see
+ * Tuner).
+ * The strings are tuned for the pedals of the main window.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+@TopComponent.Description(
+    preferredID = "TunerTopComponent",
+    persistenceType = TopComponent.PERSISTENCE_NEVER
+)
+@TopComponent.Registration(mode = "output", openAtStartup = false)
+@ActionID(category = "Window", id = "com.billooms.mainwindow.TunerTopComponent")
+@ActionReference(path = "Menu/Window")
+@TopComponent.OpenActionRegistration(
+    displayName = "#CTL_TunerAction",
+    preferredID = "TunerTopComponent"
+)
+@Messages({
+  "CTL_TunerAction=Tuner",
+  "CTL_TunerTopComponent=Tuner",
+  "HINT_TunerTopComponent=Tune each string for the current pedals",
+  "CTL_TunerStart=Start",
+  "CTL_TunerStop=Stop",
+  "MSG_TunerStopped=Stopped",
+  "MSG_TunerListening=Listening -- pluck a string",
+  "# {0} - reason",
+  "MSG_TunerUnavailable=No input line: {0}"
+})
+public final class TunerTopComponent extends TopComponent {
+
+  /** Largest deviation shown on the meter in cents. */
+  private final static int RANGE = 50;
+
+  /** Tuner for the main window's pedals (null until the first start). */
+  private Tuner tuner = null;
+  /** Live input that is being tuned (null if none). */
+  private AudioInput input = null;
+  /** Whether the tuner is listening or why it isn't. */
+  private final JLabel statusLabel = new JLabel(Bundle.MSG_TunerStopped());
+  /** String of the last reading. */
+  private final JLabel stringLabel = new JLabel(" ");
+  /** Cents and frequency of the last reading. */
+  private final JLabel centsLabel = new JLabel(" ");
+  /** Shows the cents of the last reading. */
+  private final JSlider meter = new JSlider(-RANGE, RANGE, 0);
+
+  public TunerTopComponent() {
+    setName(Bundle.CTL_TunerTopComponent());
+    setToolTipText(Bundle.HINT_TunerTopComponent());
+    setLayout(new BorderLayout());
+    JButton startButton = new JButton(Bundle.CTL_TunerStart());
+    startButton.addActionListener(e -> start());
+    JButton stopButton = new JButton(Bundle.CTL_TunerStop());
+    stopButton.addActionListener(e -> stop());
+    JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEADING));
+    buttons.add(startButton);
+    buttons.add(stopButton);
+    buttons.add(statusLabel);
+    add(buttons, BorderLayout.NORTH);
+    stringLabel.setFont(stringLabel.getFont().deriveFont(Font.BOLD, 24.0f));
+    meter.setEnabled(false);
+    meter.setMajorTickSpacing(10);
+    meter.setPaintTicks(true);
+    JPanel reading = new JPanel(new GridLayout(0, 1));
+    reading.add(stringLabel);
+    reading.add(centsLabel);
+    reading.add(meter);
+    add(reading, BorderLayout.CENTER);
+  }
+
+  /**
+   * Start tuning from the default capture line, making the tuner for the
+   * main window's pedals the first time.
+   */
+  private void start() {
+    stop();
+    if (tuner == null) {
+      tuner = new Tuner(MainWindowTopComponent.findInstance().getPedals());
+      tuner.addPropertyChangeListener(this::readingChanged);
+    }
+    try {
+      input = AudioInput.openLine(AudioInput.Analysis.PITCH);
+      tuner.start(input);
+      statusLabel.setText(Bundle.MSG_TunerListening());
+    } catch (LineUnavailableException | IllegalArgumentException ex) {
+      statusLabel.setText(Bundle.MSG_TunerUnavailable(ex.getMessage()));
+    }
+  }
+
+  /**
+   * Stop tuning and close the input (if any).
+   */
+  private void stop() {
+    if (tuner != null) {
+      tuner.stop();
+    }
+    if (input != null) {
+      input.close();
+      input = null;
+    }
+    statusLabel.setText(Bundle.MSG_TunerStopped());
+  }
+
+  /**
+   * Show a new reading.
+   *
+   * @param evt PROP_READING property change from the tuner
+   */
+  private void readingChanged(PropertyChangeEvent evt) {
+    if (!evt.getPropertyName().equals(Tuner.PROP_READING) || !tuner.hasReading()) {
+      return;
+    }
+    final float cents = tuner.getCents();
+    stringLabel.setText(tuner.getString().toString());
+    centsLabel.setText(String.format("%+.1f cents  (%.1f Hz)", cents, tuner.getFrequency()));
+    meter.setValue(Math.round(Math.max(-RANGE, Math.min(RANGE, cents))));
+  }
+
+  @Override
+  public void componentClosed() {
+    stop();
+  }
+}
@@ -0,0 +1,261 @@
+package com.billooms.notes;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Live analysis of sound coming in from a TargetDataLine (a microphone) or, for
+ * testing, from an audio file played in real time.
+ * The sound is read on its own thread and run through a ChromaAnalyzer (to
+ * find the pedals) or a PitchTracker (to tune one string).
+ * After each analysis the result is copied to a snapshot that can be
+ * read from any thread (such as a Swing Timer on the EDT), so nothing is
+ * allocated while the sound is coming in.
+ * The sound is read one hop of the analysis at a time, so pitch tracking
+ * reads in small pieces for low latency.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class AudioInput {
+
+  /** Format that the sound is read in: 16 bit signed little-endian mono. */
+  public final static AudioFormat FORMAT = new AudioFormat(ChromaAnalyzer.FRAME_RATE, 16, 1, true, false);
+
+  /**
+   * How the sound is analyzed.
+   */
+  public enum Analysis {
+    /** Chroma of all the pitches heard (see ChromaAnalyzer). */
+    CHROMA,
+    /** Pitch of a single string (see PitchTracker). */
+    PITCH
+  }
+
+  /** Analyzes the chroma (only used by the input thread, null for PITCH). */
+  private final ChromaAnalyzer analyzer;
+  /** Tracks the pitch (only used by the input thread, null for CHROMA). */
+  private final PitchTracker tracker;
+  /** Number of bytes read at a time (one hop). */
+  private final int chunk;
+  /** Sound that is read. */
+  private final AudioInputStream stream;
+  /** Line the sound comes from (null for a file). */
+  private final TargetDataLine line;
+  /** Running chroma after the most recent analysis (guarded by itself). */
+  private final float[] snapshot = new float[12];
+  /** Frequency and clarity after the most recent pitch analysis (guarded by snapshot). */
+  private final float[] pitch = new float[2];
+  /** Number of samples that have been analyzed. */
+  private volatile long frames = 0;
+  /** True until the input is closed or the sound ends. */
+  private volatile boolean running = true;
+
+  /**
+   * Start analyzing the given sound.
+   *
+   * @param stream sound in FORMAT
+   * @param line line the sound comes from (null for a file, which is paced to real time)
+   * @param analysis how the sound is analyzed
+   */
+  private AudioInput(AudioInputStream stream, TargetDataLine line, Analysis analysis) {
+    this.stream = stream;
+    this.line = line;
+    analyzer = (analysis == Analysis.CHROMA) ? new ChromaAnalyzer() : null;
+    tracker = (analysis == Analysis.PITCH) ? new PitchTracker() : null;
+    chunk = 2 * ((analyzer != null) ? analyzer.getHop() : tracker.getHop());
+  }
+
+  /**
+   * Start analyzing the chroma of the default capture line.
+   *
+   * @return new input
+   * @throws LineUnavailableException if no line can capture in FORMAT
+   */
+  public static AudioInput openLine() throws LineUnavailableException {
+    return openLine(Analysis.CHROMA);
+  }
+
+  /**
+   * Start analyzing the default capture line.
+   *
+   * @param analysis how the sound is analyzed
+   * @return new input
+   * @throws LineUnavailableException if no line can capture in FORMAT
+   */
+  public static AudioInput openLine(Analysis analysis) throws LineUnavailableException {
+    final TargetDataLine line = AudioSystem.getTargetDataLine(FORMAT);
+    final AudioInput input = new AudioInput(new AudioInputStream(line), line, analysis);
+    line.open(FORMAT, 4 * input.chunk);
+    line.start();
+    input.start();
+    return input;
+  }
+
+  /**
+   * Start analyzing the chroma of an audio file (such as a WAV) in real time,
+   * as if it were coming from a line.
+   *
+   * @param file audio file
+   * @return new input
+   * @throws IOException if the file can't be read
+   * @throws UnsupportedAudioFileException if the file is not audio the AudioSystem understands
+   */
+  public static AudioInput openFile(File file) throws IOException, UnsupportedAudioFileException {
+    return openFile(file, Analysis.CHROMA);
+  }
+
+  /**
+   * Start analyzing an audio file (such as a WAV) in real time, as if it
+   * were coming from a line.
+   *
+   * @param file audio file
+   * @param analysis how the sound is analyzed
+   * @return new input
+   * @throws IOException if the file can't be read
+   * @throws UnsupportedAudioFileException if the file is not audio the AudioSystem understands
+   */
+  public static AudioInput openFile(File file, Analysis analysis) throws IOException, UnsupportedAudioFileException {
+    final AudioInput input = new AudioInput(AudioSystem.getAudioInputStream(FORMAT,
+        AudioSystem.getAudioInputStream(new BufferedInputStream(new FileInputStream(file)))), null, analysis);
+    input.start();
+    return input;
+  }
+
+  /**
+   * Start the thread that reads the sound.
+   */
+  private void start() {
+    Thread thread = new Thread(this::run, "AudioInput");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Get the running chroma after the most recent analysis.
+   *
+   * @param dest array of 12 for the chroma of each pitch (A first)
+   */
+  public void getChroma(float[] dest) {
+    synchronized (snapshot) {
+      System.arraycopy(snapshot, 0, dest, 0, 12);
+    }
+  }
+
+  /**
+   * Get the frequency found by the most recent pitch analysis.
+   *
+   * @return frequency in Hz (0 if no pitch was found or the input analyzes CHROMA)
+   */
+  public float getFrequency() {
+    synchronized (snapshot) {
+      return pitch[0];
+    }
+  }
+
+  /**
+   * Get how clearly the pitch was found by the most recent pitch analysis.
+   *
+   * @return 1 for a pure tone down to 0 for no pitch
+   */
+  public float getClarity() {
+    synchronized (snapshot) {
+      return pitch[1];
+    }
+  }
+
+  /**
+   * Get the number of samples that have been analyzed.
+   *
+   * @return number of samples
+   */
+  public long getFrames() {
+    return frames;
+  }
+
+  /**
+   * Determine if sound is still coming in.
+   *
+   * @return true: still running
+   */
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Stop analyzing and close the line or file.
+   */
+  public void close() {
+    running = false;
+  }
+
+  /**
+   * Read and analyze the sound until it ends or the input is closed.
+   */
+  private void run() {
+    final byte[] buffer = new byte[chunk];
+    final long begin = System.nanoTime();
+    try {
+      while (running) {
+        int n = stream.read(buffer, 0, chunk);
+        if (n < 0) {
+          break;
+        }
+        if ((analyzer != null) && (analyzer.process(buffer, 0, n & ~1) > 0)) {
+          synchronized (snapshot) {
+            analyzer.getChroma(snapshot);
+          }
+        }
+        if ((tracker != null) && (tracker.process(buffer, 0, n & ~1) > 0)) {
+          synchronized (snapshot) {
+            pitch[0] = tracker.getFrequency();
+            pitch[1] = tracker.getClarity();
+          }
+        }
+        frames += n / 2;
+        if (line == null) {     // a file: wait until this much would have come in from a line
+          final long due = begin + Math.round(frames * 1.0e9 / ChromaAnalyzer.FRAME_RATE);
+          final long wait = due - System.nanoTime();
+          if (wait > 0) {
+            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+          }
+        }
+      }
+    } catch (IOException ex) {
+      // the line or file went away -- same as the end of the sound
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      running = false;
+      if (line != null) {
+        line.stop();
+        line.close();
+      }
+      try {
+        stream.close();
+      } catch (IOException ex) {
+        // nothing more can be done
+      }
+    }
+  }
+}
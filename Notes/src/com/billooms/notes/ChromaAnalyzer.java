@@ -0,0 +1,287 @@
+package com.billooms.notes;
+
+import java.util.Arrays;
+
+/**
+ * Short-time Fourier analysis of a harp's sound into a chromagram: how much
+ * of each of the 12 pitches (A first) has been heard recently.
+ * Each hop the last window of samples is windowed and transformed, and the
+ * peaks of the spectrum are picked. A peak only counts if it is within
+ * TOLERANCE of an equal-tempered pitch in the harp's range (so noise and
+ * partials between the strings are ignored), and it is added to its pitch.
+ * The chroma of each hop is added to a running chroma that fades with a
+ * half-life of HALF_LIFE seconds, so notes played one after another build up
+ * the set of pitches that the pedals are sounding.
+ * Every buffer is allocated up front, so processing doesn't allocate anything.
+ *
+ * This is not thread safe -- samples should all be processed on the same thread.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class ChromaAnalyzer {
+
+  /** Default samples per second of the input. */
+  public final static float FRAME_RATE = HarpSamples.FRAME_RATE;
+  /** Shortest analysis window in seconds (long enough that low strings are resolved). */
+  private final static double WINDOW_SECONDS = 0.25;
+  /** Number of hops in each window. */
+  private final static int HOPS_PER_WINDOW = 8;
+  /** Number of samples between analyses at the default FRAME_RATE. */
+  public final static int HOP = 1024;
+  /** Lowest frequency that is analyzed (lower strings are found from their harmonics). */
+  private final static double MIN_FREQ = 80.0;
+  /** Highest frequency that is analyzed. */
+  private final static double MAX_FREQ = 5000.0;
+  /** Frequency of A2 (note number 0). */
+  private final static double A2_FREQ = 110.0;
+  /** Largest distance in semitones from an equal-tempered pitch for a peak to count. */
+  private final static double TOLERANCE = 0.35;
+  /** Peaks weaker than this fraction of the strongest peak are ignored (-40 dB). */
+  private final static float RELATIVE_FLOOR = 0.01f;
+  /** Peaks weaker than this amplitude are ignored (-60 dB of full scale). */
+  private final static float ABSOLUTE_FLOOR = 0.001f;
+  /** Half-life of the running chroma in seconds. */
+  public final static float HALF_LIFE = 1.0f;
+
+  /** Samples per second of the input. */
+  private final float frameRate;
+  /** Number of samples in each analysis window (a power of 2). */
+  private final int window;
+  /** Number of samples between analyses. */
+  private final int hop;
+  /** Transform of one window. */
+  private final Fft fft;
+  /** Hann window, scaled so a full-scale sine peaks at an amplitude of 1. */
+  private final float[] hann;
+  /** Ring of the most recent samples. */
+  private final float[] ring;
+  /** Next position to write in the ring. */
+  private int head = 0;
+  /** Number of samples since the last analysis. */
+  private int sinceHop = 0;
+  /** FFT work space (real part). */
+  private final float[] re;
+  /** FFT work space (imaginary part). */
+  private final float[] im;
+  /** Amplitude of each bin. */
+  private final float[] amplitude;
+  /** First bin that is analyzed. */
+  private final int firstBin;
+  /** Last bin that is analyzed. */
+  private final int lastBin;
+  /** Chroma of the most recent window. */
+  private final float[] frameChroma = new float[12];
+  /** Running chroma. */
+  private final float[] chroma = new float[12];
+  /** Factor for the running chroma each hop. */
+  private final float decay;
+  /** Number of analyses so far. */
+  private long hops = 0;
+
+  /**
+   * Construct a new analyzer for input at the default FRAME_RATE.
+   */
+  public ChromaAnalyzer() {
+    this(FRAME_RATE);
+  }
+
+  /**
+   * Construct a new analyzer for input at the given rate.
+   * The window is the smallest power of 2 that is at least WINDOW_SECONDS long.
+   *
+   * @param frameRate samples per second of the input
+   */
+  public ChromaAnalyzer(float frameRate) {
+    this.frameRate = frameRate;
+    window = Integer.highestOneBit((int) Math.ceil(WINDOW_SECONDS * frameRate) - 1) * 2;
+    hop = window / HOPS_PER_WINDOW;
+    fft = new Fft(window);
+    hann = new float[window];
+    ring = new float[window];
+    re = new float[window];
+    im = new float[window];
+    amplitude = new float[window / 2 + 1];
+    double sum = 0.0;
+    for (int i = 0; i < window; i++) {
+      hann[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / window));
+      sum += hann[i];
+    }
+    for (int i = 0; i < window; i++) {
+      hann[i] *= (float) (2.0 / sum);
+    }
+    firstBin = (int) Math.ceil(MIN_FREQ * window / frameRate);
+    lastBin = Math.min(window / 2 - 1, (int) Math.floor(MAX_FREQ * window / frameRate));
+    decay = (float) Math.pow(0.5, hop / (HALF_LIFE * frameRate));
+  }
+
+  /**
+   * Get the number of samples in each analysis window.
+   *
+   * @return number of samples
+   */
+  public int getWindow() {
+    return window;
+  }
+
+  /**
+   * Get the number of samples between analyses.
+   *
+   * @return number of samples
+   */
+  public int getHop() {
+    return hop;
+  }
+
+  /**
+   * Get the samples per second of the input.
+   *
+   * @return samples per second
+   */
+  public float getFrameRate() {
+    return frameRate;
+  }
+
+  /**
+   * Process samples of 16 bit signed little-endian mono audio.
+   *
+   * @param data audio bytes
+   * @param off offset of the first byte
+   * @param len number of bytes (a whole number of samples)
+   * @return number of analyses that were done
+   */
+  public int process(byte[] data, int off, int len) {
+    int n = 0;
+    for (int i = off; i + 1 < off + len; i += 2) {
+      if (add((short) ((data[i] & 0xFF) | (data[i + 1] << 8)) / 32768.0f)) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Process samples.
+   *
+   * @param samples samples from -1 to 1
+   * @param off offset of the first sample
+   * @param len number of samples
+   * @return number of analyses that were done
+   */
+  public int process(float[] samples, int off, int len) {
+    int n = 0;
+    for (int i = off; i < off + len; i++) {
+      if (add(samples[i])) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Get the running chroma.
+   *
+   * @param dest array of 12 for the chroma of each pitch (A first)
+   */
+  public void getChroma(float[] dest) {
+    System.arraycopy(chroma, 0, dest, 0, 12);
+  }
+
+  /**
+   * Get the chroma of the most recent window only.
+   *
+   * @param dest array of 12 for the chroma of each pitch (A first)
+   */
+  public void getFrameChroma(float[] dest) {
+    System.arraycopy(frameChroma, 0, dest, 0, 12);
+  }
+
+  /**
+   * Get the number of analyses so far.
+   *
+   * @return number of analyses
+   */
+  public long getHops() {
+    return hops;
+  }
+
+  /**
+   * Forget everything that was heard.
+   */
+  public void reset() {
+    Arrays.fill(ring, 0.0f);
+    Arrays.fill(frameChroma, 0.0f);
+    Arrays.fill(chroma, 0.0f);
+    head = 0;
+    sinceHop = 0;
+    hops = 0;
+  }
+
+  /**
+   * Add one sample and analyze the window if a hop is finished.
+   *
+   * @param sample sample from -1 to 1
+   * @return true if the window was analyzed
+   */
+  private boolean add(float sample) {
+    ring[head] = sample;
+    head = (head + 1) & (window - 1);
+    if (++sinceHop < hop) {
+      return false;
+    }
+    sinceHop = 0;
+    analyze();
+    return true;
+  }
+
+  /**
+   * Analyze the window and update the chroma.
+   */
+  private void analyze() {
+    for (int i = 0; i < window; i++) {
+      re[i] = hann[i] * ring[(head + i) & (window - 1)];    // oldest sample first
+      im[i] = 0.0f;
+    }
+    fft.transform(re, im, false);
+    float max = 0.0f;
+    for (int k = firstBin - 1; k <= lastBin + 1; k++) {
+      amplitude[k] = (float) Math.hypot(re[k], im[k]);
+      max = Math.max(max, amplitude[k]);
+    }
+    Arrays.fill(frameChroma, 0.0f);
+    final float floor = Math.max(ABSOLUTE_FLOOR, RELATIVE_FLOOR * max);
+    for (int k = firstBin; k <= lastBin; k++) {
+      final float a = amplitude[k];
+      if ((a < floor) || (a <= amplitude[k - 1]) || (a < amplitude[k + 1])) {
+        continue;     // not a peak
+      }
+      // parabola through the log amplitudes for the frequency between the bins
+      final double l = Math.log(amplitude[k - 1] + 1.0e-12);
+      final double c = Math.log(a);
+      final double r = Math.log(amplitude[k + 1] + 1.0e-12);
+      final double den = l - 2.0 * c + r;
+      final double delta = (den < 0.0) ? 0.5 * (l - r) / den : 0.0;
+      final double note = 12.0 * Math.log((k + delta) * frameRate / window / A2_FREQ) / Math.log(2.0);
+      final long nearest = Math.round(note);
+      if ((Math.abs(note - nearest) <= TOLERANCE) && HarpSamples.inRange((int) nearest)) {
+        frameChroma[(int) (((nearest % 12) + 12) % 12)] += a;
+      }
+    }
+    for (int p = 0; p < 12; p++) {
+      chroma[p] = decay * chroma[p] + frameChroma[p];
+    }
+    hops++;
+  }
+}
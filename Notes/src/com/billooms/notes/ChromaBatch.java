@@ -0,0 +1,173 @@
+package com.billooms.notes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Chroma of a whole recording in blocks of a fixed length, computed in
+ * parallel chunks on every core.
+ * The WAV file is memory-mapped one chunk at a time, and only a few chunks
+ * for each core are in progress at once, so a recording of any length is
+ * analyzed with a bounded amount of memory.
+ * Each chunk starts with enough of the previous chunk to fill the analysis
+ * window, so the result is the same as analyzing the whole file in one pass.
+ * The blocks are handed on in order as soon as their chunk is done.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class ChromaBatch {
+
+  /** Number of blocks in each chunk that is analyzed by one task. */
+  private final static int CHUNK_BLOCKS = 32;
+  /** Number of chunks that may be in progress for each thread. */
+  private final static int CHUNKS_PER_THREAD = 2;
+
+  /** File that is analyzed. */
+  private final File file;
+  /** Number of hops in each block. */
+  private final int hopsPerBlock;
+  /** Number of samples between analyses. */
+  private final int hop;
+  /** Number of samples in each analysis window. */
+  private final int window;
+  /** Number of blocks. */
+  private final int blocks;
+  /** Samples per second of the file. */
+  private final float frameRate;
+
+  /**
+   * Prepare to analyze the given WAV file.
+   *
+   * @param file WAV file
+   * @param blockSeconds length of each block in seconds (rounded to a whole number of hops)
+   * @throws IOException if the file can't be read or is not a WAV file
+   */
+  public ChromaBatch(File file, double blockSeconds) throws IOException {
+    this.file = file;
+    try (WavFile wav = new WavFile(file)) {
+      frameRate = wav.getFrameRate();
+      final ChromaAnalyzer analyzer = new ChromaAnalyzer(frameRate);
+      hop = analyzer.getHop();
+      window = analyzer.getWindow();
+      hopsPerBlock = Math.max(1, (int) Math.round(blockSeconds * frameRate / hop));
+      blocks = (int) ((wav.getFrames() + (long) hop * hopsPerBlock - 1) / ((long) hop * hopsPerBlock));
+    }
+  }
+
+  /**
+   * Get the number of blocks.
+   *
+   * @return number of blocks
+   */
+  public int getBlocks() {
+    return blocks;
+  }
+
+  /**
+   * Get the length of each block.
+   *
+   * @return length in seconds
+   */
+  public double getBlockSeconds() {
+    return (double) hop * hopsPerBlock / frameRate;
+  }
+
+  /**
+   * Analyze the file, handing the chroma of each block to the given consumer in order.
+   * The chroma of a block is the sum of the chroma of its hops (see ChromaAnalyzer).
+   *
+   * @param consumer receives an array of 12 (A first) for each block
+   * @throws IOException if the file can't be read
+   */
+  public void analyze(Consumer<float[]> consumer) throws IOException {
+    final int threads = Runtime.getRuntime().availableProcessors();
+    final int chunks = (blocks + CHUNK_BLOCKS - 1) / CHUNK_BLOCKS;
+    final ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "ChromaBatch");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try (WavFile wav = new WavFile(file)) {
+      final ArrayDeque<Future<float[]>> inProgress = new ArrayDeque<>();
+      int next = 0;
+      for (int done = 0; done < chunks; done++) {
+        while ((next < chunks) && (inProgress.size() < threads * CHUNKS_PER_THREAD)) {
+          final int c = next++;
+          inProgress.add(pool.submit(() -> analyzeChunk(wav, c)));
+        }
+        final float[] result = inProgress.remove().get();
+        for (int b = 0; b < result.length / 12; b++) {
+          final float[] chroma = new float[12];
+          System.arraycopy(result, b * 12, chroma, 0, 12);
+          consumer.accept(chroma);
+        }
+      }
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) ex.getCause()).getCause();
+      }
+      throw new IOException(ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ex);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Analyze one chunk.
+   *
+   * @param wav WAV file
+   * @param c chunk
+   * @return chroma of each block of the chunk (12 for each block)
+   */
+  private float[] analyzeChunk(WavFile wav, int c) {
+    final int firstBlock = c * CHUNK_BLOCKS;
+    final int numBlocks = Math.min(CHUNK_BLOCKS, blocks - firstBlock);
+    final long start = (long) firstBlock * hopsPerBlock * hop;
+    final long warmStart = Math.max(0, start - (window - hop));   // fill the window before the first hop
+    final int warmHops = (int) ((start - warmStart) / hop);
+    final int count = (int) (start - warmStart) + numBlocks * hopsPerBlock * hop;
+    final float[] samples = new float[count];
+    try {
+      wav.read(warmStart, samples, count);     // zeros after the end of the file
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    final ChromaAnalyzer analyzer = new ChromaAnalyzer(frameRate);
+    final float[] hopChroma = new float[12];
+    final float[] result = new float[numBlocks * 12];
+    for (int h = 0; h < warmHops + numBlocks * hopsPerBlock; h++) {
+      analyzer.process(samples, h * hop, hop);
+      if (h >= warmHops) {
+        analyzer.getFrameChroma(hopChroma);
+        final int b = (h - warmHops) / hopsPerBlock;
+        for (int p = 0; p < 12; p++) {
+          result[b * 12 + p] += hopChroma[p];
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,182 @@
+package com.billooms.notes;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineUnavailableException;
+import org.openide.util.Exceptions;
+import org.openide.util.RequestProcessor;
+import org.openide.util.lookup.ServiceProvider;
+
+/**
+ * Plays each recorded sample on its own Clip, started by the NoteScheduler.
+ * The clips are opened with the pre-decoded samples of the SampleBank.
+ * This only covers the recorded samples.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+@ServiceProvider(service = PlaybackBackend.class, position = 200)
+public class ClipBackend implements PlaybackBackend {
+
+  /** Length of the silent clip used to measure the latency in frames. */
+  private final static int PROBE_FRAMES = 3200;
+  /** Longest time to wait for the silent clip to start in nanoseconds. */
+  private final static long PROBE_TIMEOUT = 500000000L;
+
+  /** Time a clip takes from being started until it plays in nanoseconds (measured by the probe). */
+  private long startNanos = 0;
+  /** Clip for each sample (null until it is open). */
+  private final AtomicReferenceArray<Clip> clips = new AtomicReferenceArray<>(HarpSamples.SIZE);
+
+  @Override
+  public String getName() {
+    return "Clips";
+  }
+
+  @Override
+  public long probe() {
+    try {
+      Clip clip = AudioSystem.getClip();
+      byte[] silence = new byte[PROBE_FRAMES * NoteMixer.FORMAT.getFrameSize()];
+      clip.open(NoteMixer.FORMAT, silence, 0, silence.length);
+      try {
+        final long t0 = System.nanoTime();
+        clip.start();
+        while (clip.getLongFramePosition() == 0) {
+          if (System.nanoTime() - t0 > PROBE_TIMEOUT) {
+            return -1;    // never started
+          }
+          Thread.sleep(1);
+        }
+        startNanos = System.nanoTime() - t0;
+        return startNanos / 1000;
+      } finally {
+        clip.close();
+      }
+    } catch (LineUnavailableException | IllegalArgumentException ex) {
+      return -1;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return -1;
+    }
+  }
+
+  /**
+   * Start opening a clip for each sample of the SampleBank on a background
+   * thread. Notes are not played until their clip is open.
+   */
+  @Override
+  public void start() {
+    new RequestProcessor("ClipBackend").post(() -> {
+      final SampleBank bank = SampleBank.getDefault();
+      if (bank == null) {
+        return;     // nothing to play
+      }
+      for (int i = 0; i < HarpSamples.SIZE; i++) {
+        final ByteBuffer data = bank.getData(i);
+        if (data == null) {
+          continue;   // not in the bank
+        }
+        final byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        try {
+          Clip clip = AudioSystem.getClip();
+          clip.open(HarpSamples.DECODE_FORMAT, bytes, 0, bytes.length);
+          clips.set(i, clip);
+        } catch (LineUnavailableException ex) {
+          Exceptions.printStackTrace(ex);
+        } catch (IllegalArgumentException ex) {
+          Exceptions.printStackTrace(ex);
+          return;     // no clips at all on this system
+        }
+      }
+    });
+  }
+
+  @Override
+  public void close() {
+    for (int i = 0; i < HarpSamples.SIZE; i++) {
+      Clip clip = clips.getAndSet(i, null);
+      if (clip != null) {
+        clip.close();
+      }
+    }
+  }
+
+  @Override
+  public int getLowest() {
+    return 0;
+  }
+
+  @Override
+  public int getHighest() {
+    return HarpSamples.SIZE - 1;
+  }
+
+  @Override
+  public Phrase schedule(int[] notes, int[] delays) {
+    return NoteScheduler.getDefault().schedule(notes, delays, this::play);
+  }
+
+  /**
+   * Schedule the notes of a timeline.
+   * A clip is always played at its recorded level, so the velocities are ignored.
+   *
+   * @param timeline timeline that starts now
+   * @return phrase that can be used to cancel the notes
+   */
+  @Override
+  public Phrase schedule(Timeline timeline) {
+    return NoteScheduler.getDefault().schedule(timeline, i -> play(timeline.getNote(i)));
+  }
+
+  /**
+   * Start the clip with the given index from the beginning.
+   * This is called on the scheduler's thread.
+   *
+   * @param i index of the clip
+   * @return time the clip will be heard (System.nanoTime, -1 if it wasn't started):
+   * found from the clip's position if it is already playing, else from the
+   * time the probe's clip took to start
+   */
+  private long play(int i) {
+    if ((i < 0) || (i >= HarpSamples.SIZE)) {
+      return -1;      // no recording for this note
+    }
+    final Clip clip = clips.get(i);
+    if (clip == null) {
+      return -1;      // not open yet
+    }
+    if (clip.isRunning()) {
+      clip.stop();      // Stop the clip if it's already playing (repeated notes)
+      clip.flush();     // flush anything in the buffer
+    }
+    clip.setFramePosition(0); // rewind to the beginning
+    clip.start();
+    final long now = System.nanoTime();
+    final long played = clip.getLongFramePosition();
+    if (played > 0) {
+      return now - Math.round(played * 1.0e9 / clip.getFormat().getFrameRate());
+    }
+    return now + startNanos;
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
@@ -0,0 +1,209 @@
+package com.billooms.notes;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Hall reverb by convolution with a recorded impulse response, using a
+ * uniformly partitioned FFT (overlap-save with a frequency domain delay line).
+ * The impulse response is cut into partitions of one MixEngine block, and
+ * each block of the mix costs one forward FFT, one multiply-add of every
+ * partition's spectrum and one inverse FFT, so the latency is zero and the
+ * cost grows only linearly with the length of the impulse response.
+ * The input is the mono sum of the mix; the left and right channels of the
+ * impulse response give the left and right of the reverb, and both are found
+ * with a single inverse FFT (one as the real part, the other as the imaginary part).
+ * Everything is allocated when the reverb is made, so process doesn't allocate.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class ConvolutionReverb {
+
+  /** Longest impulse response that is used in seconds (the rest is cut off). */
+  final static float MAX_SECONDS = 4.0f;
+  /** Frames in each partition (one block of the mix). */
+  private final static int BLOCK = MixEngine.BLOCK;
+  /** FFT size. */
+  private final static int SIZE = 2 * BLOCK;
+  /** Number of FFT bins kept for a real signal (the rest are the complex conjugates). */
+  private final static int BINS = BLOCK + 1;
+
+  /** FFT of SIZE points. */
+  private final Fft fft = new Fft(SIZE);
+  /** Number of partitions. */
+  private final int partitions;
+  /** Spectrum of each partition of the left impulse response (real, imaginary). */
+  private final float[] leftRe, leftIm;
+  /** Spectrum of each partition of the right impulse response (real, imaginary). */
+  private final float[] rightRe, rightIm;
+  /** Spectra of the most recent input blocks (frequency domain delay line). */
+  private final float[] delayRe, delayIm;
+  /** Partition of the delay line that holds the newest block. */
+  private int newest = 0;
+  /** Input of the previous block and this block. */
+  private final float[] input = new float[SIZE];
+  /** FFT work space (real part). */
+  private final float[] workRe = new float[SIZE];
+  /** FFT work space (imaginary part). */
+  private final float[] workIm = new float[SIZE];
+  /** Sum of the left spectra (real, imaginary). */
+  private final float[] sumLeftRe = new float[BINS], sumLeftIm = new float[BINS];
+  /** Sum of the right spectra (real, imaginary). */
+  private final float[] sumRightRe = new float[BINS], sumRightIm = new float[BINS];
+
+  /**
+   * Construct a new reverb for the given impulse response.
+   *
+   * @param left left channel of the impulse response at HarpSamples.FRAME_RATE
+   * @param right right channel of the impulse response (same length as the left)
+   */
+  ConvolutionReverb(float[] left, float[] right) {
+    partitions = Math.max(1, (left.length + BLOCK - 1) / BLOCK);
+    leftRe = new float[partitions * BINS];
+    leftIm = new float[partitions * BINS];
+    rightRe = new float[partitions * BINS];
+    rightIm = new float[partitions * BINS];
+    delayRe = new float[partitions * BINS];
+    delayIm = new float[partitions * BINS];
+    // unit energy, so the reverb is about as loud as the dry sound
+    double energy = 0.0;
+    for (int i = 0; i < left.length; i++) {
+      energy += 0.5 * (left[i] * left[i] + right[i] * right[i]);
+    }
+    final float scale = (energy > 0.0) ? (float) (1.0 / Math.sqrt(energy)) : 0.0f;
+    for (int p = 0; p < partitions; p++) {
+      partitionSpectrum(left, p, scale, leftRe, leftIm);
+      partitionSpectrum(right, p, scale, rightRe, rightIm);
+    }
+  }
+
+  /**
+   * Read an impulse response from an audio file (any format that the
+   * AudioSystem can convert, mono or stereo).
+   *
+   * @param file audio file
+   * @return new reverb
+   * @throws IOException if the file can't be read
+   * @throws UnsupportedAudioFileException if the file is not audio the AudioSystem understands
+   */
+  static ConvolutionReverb load(File file) throws IOException, UnsupportedAudioFileException {
+    byte[] bytes;
+    try (AudioInputStream ais = AudioSystem.getAudioInputStream(HarpSamples.DECODE_FORMAT,
+        AudioSystem.getAudioInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+      bytes = HarpSamples.readAll(ais);
+    }
+    final ShortBuffer data = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+    final int frames = Math.min(data.remaining() / 2, Math.round(MAX_SECONDS * HarpSamples.FRAME_RATE));
+    final float[] left = new float[frames];
+    final float[] right = new float[frames];
+    for (int i = 0; i < frames; i++) {
+      left[i] = data.get(2 * i) / 32768.0f;
+      right[i] = data.get(2 * i + 1) / 32768.0f;
+    }
+    return new ConvolutionReverb(left, right);
+  }
+
+  /**
+   * Get the length of the impulse response.
+   *
+   * @return length in frames (a whole number of blocks)
+   */
+  int getLength() {
+    return partitions * BLOCK;
+  }
+
+  /**
+   * Find the spectrum of one partition of the impulse response (zero padded to SIZE).
+   *
+   * @param ir impulse response
+   * @param p partition
+   * @param scale scale factor
+   * @param re where the real parts go
+   * @param im where the imaginary parts go
+   */
+  private void partitionSpectrum(float[] ir, int p, float scale, float[] re, float[] im) {
+    for (int i = 0; i < SIZE; i++) {
+      final int j = p * BLOCK + i;
+      workRe[i] = ((i < BLOCK) && (j < ir.length)) ? scale * ir[j] : 0.0f;
+      workIm[i] = 0.0f;
+    }
+    fft.transform(workRe, workIm, false);
+    System.arraycopy(workRe, 0, re, p * BINS, BINS);
+    System.arraycopy(workIm, 0, im, p * BINS, BINS);
+  }
+
+  /**
+   * Add the reverb of one block of the mix to the mix.
+   *
+   * @param mix interleaved stereo mix of BLOCK frames
+   * @param level level of the reverb
+   */
+  void process(float[] mix, float level) {
+    // overlap-save: the previous block followed by this block
+    System.arraycopy(input, BLOCK, input, 0, BLOCK);
+    for (int f = 0; f < BLOCK; f++) {
+      input[BLOCK + f] = 0.5f * (mix[2 * f] + mix[2 * f + 1]);
+    }
+    System.arraycopy(input, 0, workRe, 0, SIZE);
+    Arrays.fill(workIm, 0.0f);
+    fft.transform(workRe, workIm, false);
+    newest = (newest + 1) % partitions;
+    System.arraycopy(workRe, 0, delayRe, newest * BINS, BINS);
+    System.arraycopy(workIm, 0, delayIm, newest * BINS, BINS);
+    // multiply each delayed block's spectrum by its partition's spectrum
+    Arrays.fill(sumLeftRe, 0.0f);
+    Arrays.fill(sumLeftIm, 0.0f);
+    Arrays.fill(sumRightRe, 0.0f);
+    Arrays.fill(sumRightIm, 0.0f);
+    for (int p = 0; p < partitions; p++) {
+      final int d = ((newest - p + partitions) % partitions) * BINS;
+      final int h = p * BINS;
+      for (int k = 0; k < BINS; k++) {
+        final float xr = delayRe[d + k];
+        final float xi = delayIm[d + k];
+        sumLeftRe[k] += xr * leftRe[h + k] - xi * leftIm[h + k];
+        sumLeftIm[k] += xr * leftIm[h + k] + xi * leftRe[h + k];
+        sumRightRe[k] += xr * rightRe[h + k] - xi * rightIm[h + k];
+        sumRightIm[k] += xr * rightIm[h + k] + xi * rightRe[h + k];
+      }
+    }
+    // left + i * right, with the upper bins from the conjugates of real signals
+    for (int k = 0; k < BINS; k++) {
+      workRe[k] = sumLeftRe[k] - sumRightIm[k];
+      workIm[k] = sumLeftIm[k] + sumRightRe[k];
+    }
+    for (int k = 1; k < BLOCK; k++) {
+      workRe[SIZE - k] = sumLeftRe[k] + sumRightIm[k];
+      workIm[SIZE - k] = sumRightRe[k] - sumLeftIm[k];
+    }
+    fft.transform(workRe, workIm, true);
+    // the last half is the part that didn't wrap around
+    final float scale = level / SIZE;
+    for (int f = 0; f < BLOCK; f++) {
+      mix[2 * f] += scale * workRe[BLOCK + f];
+      mix[2 * f + 1] += scale * workIm[BLOCK + f];
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package com.billooms.notes;
+
+/**
+ * Optional effects applied to each block of the mix: sympathetic resonance of
+ * the open strings and then a convolution reverb.
+ * Both are off until they are turned on, and can be changed from any thread
+ * while the render thread is running (it sees the change at the next block).
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class Effects {
+
+  /** Default level of the reverb. */
+  final static float DEFAULT_REVERB_LEVEL = 0.3f;
+  /** Default level of the sympathetic resonance. */
+  final static float DEFAULT_RESONANCE_LEVEL = 0.2f;
+
+  /** Reverb (null for none). */
+  private volatile ConvolutionReverb reverb = null;
+  /** Level of the reverb. */
+  private volatile float reverbLevel = DEFAULT_REVERB_LEVEL;
+  /** Sympathetic resonance of the open strings. */
+  private final SympatheticResonance resonance = new SympatheticResonance();
+  /** True if the sympathetic resonance is on. */
+  private volatile boolean resonanceOn = false;
+  /** Level of the sympathetic resonance. */
+  private volatile float resonanceLevel = DEFAULT_RESONANCE_LEVEL;
+
+  /**
+   * Apply the effects to one block of the mix.
+   *
+   * @param mix interleaved stereo mix of MixEngine.BLOCK frames
+   */
+  void process(float[] mix) {
+    if (resonanceOn) {
+      resonance.process(mix, MixEngine.BLOCK, resonanceLevel);
+    }
+    final ConvolutionReverb r = reverb;
+    if (r != null) {
+      r.process(mix, reverbLevel);
+    }
+  }
+
+  /**
+   * Set the reverb.
+   *
+   * @param reverb reverb (null for none)
+   */
+  void setReverb(ConvolutionReverb reverb) {
+    this.reverb = reverb;
+  }
+
+  /**
+   * Determine if there is a reverb.
+   *
+   * @return true: there is a reverb
+   */
+  boolean hasReverb() {
+    return reverb != null;
+  }
+
+  /**
+   * Get the level of the reverb.
+   *
+   * @return level (1.0 is about as loud as the dry sound)
+   */
+  float getReverbLevel() {
+    return reverbLevel;
+  }
+
+  /**
+   * Set the level of the reverb.
+   *
+   * @param level level (1.0 is about as loud as the dry sound)
+   */
+  void setReverbLevel(float level) {
+    reverbLevel = Math.max(0.0f, level);
+  }
+
+  /**
+   * Determine if the sympathetic resonance is on.
+   *
+   * @return true: on
+   */
+  boolean isResonance() {
+    return resonanceOn;
+  }
+
+  /**
+   * Turn the sympathetic resonance on or off.
+   *
+   * @param on true: on
+   */
+  void setResonance(boolean on) {
+    resonanceOn = on;
+  }
+
+  /**
+   * Get the level of the sympathetic resonance.
+   *
+   * @return level
+   */
+  float getResonanceLevel() {
+    return resonanceLevel;
+  }
+
+  /**
+   * Set the level of the sympathetic resonance.
+   *
+   * @param level level
+   */
+  void setResonanceLevel(float level) {
+    resonanceLevel = Math.max(0.0f, level);
+  }
+
+  /**
+   * Set the pitches of the open strings that resonate.
+   *
+   * @param notes note number relative to A2 of each string
+   */
+  void setOpenStrings(int[] notes) {
+    resonance.setStrings(notes);
+  }
+}
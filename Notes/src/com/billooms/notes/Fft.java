@@ -0,0 +1,105 @@
+package com.billooms.notes;
+
+/**
+ * In-place radix-2 complex FFT of a fixed size.
+ * The twiddle factors and the bit reversal are computed once, so a transform
+ * doesn't allocate anything (it can be used on the render thread).
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class Fft {
+
+  /** Number of points (a power of 2). */
+  private final int size;
+  /** Cosine of each twiddle angle. */
+  private final float[] cos;
+  /** Sine of each twiddle angle. */
+  private final float[] sin;
+  /** Bit-reversed index of each point. */
+  private final int[] reversed;
+
+  /**
+   * Construct an FFT of the given size.
+   *
+   * @param size number of points (a power of 2)
+   */
+  Fft(int size) {
+    if (Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("FFT size " + size + " is not a power of 2");
+    }
+    this.size = size;
+    cos = new float[size / 2];
+    sin = new float[size / 2];
+    for (int i = 0; i < size / 2; i++) {
+      cos[i] = (float) Math.cos(2.0 * Math.PI * i / size);
+      sin[i] = (float) Math.sin(2.0 * Math.PI * i / size);
+    }
+    reversed = new int[size];
+    final int bits = Integer.numberOfTrailingZeros(size);
+    for (int i = 0; i < size; i++) {
+      reversed[i] = Integer.reverse(i) >>> (32 - bits);
+    }
+  }
+
+  /**
+   * Get the number of points.
+   *
+   * @return number of points
+   */
+  int getSize() {
+    return size;
+  }
+
+  /**
+   * Transform in place.
+   * The inverse is not scaled (divide by the size to get the original back).
+   *
+   * @param re real parts
+   * @param im imaginary parts
+   * @param inverse true for the inverse transform
+   */
+  void transform(float[] re, float[] im, boolean inverse) {
+    for (int i = 0; i < size; i++) {
+      final int j = reversed[i];
+      if (j > i) {
+        float t = re[i];
+        re[i] = re[j];
+        re[j] = t;
+        t = im[i];
+        im[i] = im[j];
+        im[j] = t;
+      }
+    }
+    final float sign = inverse ? 1.0f : -1.0f;
+    for (int half = 1; half < size; half *= 2) {
+      final int step = size / (2 * half);
+      for (int start = 0; start < size; start += 2 * half) {
+        for (int k = 0; k < half; k++) {
+          final float wr = cos[k * step];
+          final float wi = sign * sin[k * step];
+          final int a = start + k;
+          final int b = a + half;
+          final float tr = wr * re[b] - wi * im[b];
+          final float ti = wr * im[b] + wi * re[b];
+          re[b] = re[a] - tr;
+          im[b] = im[a] - ti;
+          re[a] += tr;
+          im[a] += ti;
+        }
+      }
+    }
+  }
+}
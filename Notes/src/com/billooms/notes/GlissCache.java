@@ -0,0 +1,217 @@
+package com.billooms.notes;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Cache of glissandos that have been rendered into memory, so that playing
+ * the same glissando again is a single buffer with perfect timing instead of
+ * one trigger per note.
+ * A glissando is identified by its notes, the speed and the sound (the notes
+ * come from the pedals and the first note).
+ * The least recently used glissandos are dropped to stay within the memory budget.
+ * On a miss the glissando is rendered on a background thread, so the first
+ * play is never delayed.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class GlissCache {
+
+  /** Default memory budget in bytes. */
+  public final static long DEFAULT_BUDGET = 32L * 1024 * 1024;
+  /** Renders missing glissandos one at a time. */
+  private final static RequestProcessor RP = new RequestProcessor("GlissCache", 1);
+
+  /** Rendered glissandos in order of use (least recently used first). */
+  private final LinkedHashMap<GlissKey, ShortBuffer> map = new LinkedHashMap<>(16, 0.75f, true);
+  /** Glissandos being rendered. */
+  private final HashSet<GlissKey> rendering = new HashSet<>();
+  /** Memory budget in bytes. */
+  private final long budget;
+  /** Bytes used by the rendered glissandos. */
+  private long bytes = 0;
+  /** Number of lookups that found a rendered glissando. */
+  private long hits = 0;
+  /** Number of lookups that did not. */
+  private long misses = 0;
+
+  /**
+   * Construct a new cache.
+   *
+   * @param budget memory budget in bytes
+   */
+  public GlissCache(long budget) {
+    this.budget = budget;
+  }
+
+  /**
+   * Get the rendered glissando for the given notes.
+   * On a miss, the glissando is rendered in the background for next time.
+   *
+   * @param notes note number relative to A2 for each note
+   * @param speed delay in milliseconds between notes
+   * @param sound where the sound of each string comes from
+   * @return interleaved stereo 16 bit buffer (or null if it is not rendered yet)
+   */
+  public synchronized ShortBuffer get(int[] notes, int speed, HarpSound sound) {
+    final GlissKey key = new GlissKey(notes, speed, sound);
+    ShortBuffer data = map.get(key);
+    if (data != null) {
+      hits++;
+      return data.duplicate();
+    }
+    misses++;
+    if (rendering.add(key)) {
+      RP.post(() -> {
+        try {
+          put(key, OfflineRenderer.render(key.notes, NotePlayer.delays(key.notes.length, speed), sound));
+        } finally {
+          synchronized (this) {
+            rendering.remove(key);    // so a failed render can be tried again
+          }
+        }
+      });
+    }
+    return null;
+  }
+
+  /**
+   * Add a rendered glissando and drop the least recently used ones until it fits.
+   *
+   * @param key glissando
+   * @param data interleaved stereo 16 bit buffer
+   */
+  private synchronized void put(GlissKey key, ShortBuffer data) {
+    final long size = 2L * data.capacity();
+    if (size > budget) {
+      return;     // would never fit
+    }
+    map.put(key, data);
+    bytes += size;
+    Iterator<Map.Entry<GlissKey, ShortBuffer>> it = map.entrySet().iterator();
+    while (bytes > budget) {
+      bytes -= 2L * it.next().getValue().capacity();
+      it.remove();
+    }
+  }
+
+  /**
+   * Drop all of the rendered glissandos (the counts are kept).
+   */
+  public synchronized void clear() {
+    map.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Get the number of lookups that found a rendered glissando.
+   *
+   * @return number of hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Get the number of lookups that did not find a rendered glissando.
+   *
+   * @return number of misses
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Get the number of rendered glissandos.
+   *
+   * @return number of glissandos
+   */
+  public synchronized int size() {
+    return map.size();
+  }
+
+  /**
+   * Get the memory used by the rendered glissandos.
+   *
+   * @return bytes
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Get the memory budget.
+   *
+   * @return bytes
+   */
+  public long getBudget() {
+    return budget;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%d glissandos, %d/%d KB, %d hits, %d misses", 
+        map.size(), bytes / 1024, budget / 1024, hits, misses);
+  }
+
+  /**
+   * Identifies a glissando.
+   */
+  private static class GlissKey {
+
+    /** Note number relative to A2 for each note. */
+    private final int[] notes;
+    /** Delay in milliseconds between notes. */
+    private final int speed;
+    /** Where the sound of each string comes from. */
+    private final HarpSound sound;
+    /** Hash code (computed once). */
+    private final int hash;
+
+    /**
+     * Construct a new key.
+     *
+     * @param notes note number relative to A2 for each note
+     * @param speed delay in milliseconds between notes
+     * @param sound where the sound of each string comes from
+     */
+    private GlissKey(int[] notes, int speed, HarpSound sound) {
+      this.notes = notes.clone();
+      this.speed = speed;
+      this.sound = sound;
+      this.hash = (Arrays.hashCode(notes) * 31 + speed) * 31 + sound.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof GlissKey)) {
+        return false;
+      }
+      GlissKey other = (GlissKey) obj;
+      return (speed == other.speed) && (sound == other.sound) && Arrays.equals(notes, other.notes);
+    }
+  }
+}
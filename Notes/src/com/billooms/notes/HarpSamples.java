@@ -0,0 +1,250 @@
+package com.billooms.notes;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ShortBuffer;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Recorded samples of each string for the NoteMixer.
+ * Each sample is a read-only buffer of interleaved stereo 16 bit values
+ * (left, right) at FRAME_RATE frames per second.
+ * The samples come from the packed SampleBank that is made at build time
+ * (the AIFF files are only read to make the bank, and are not packaged).
+ * The samples are read once on a background thread (started when the mixer
+ * is chosen to play, or when audio is rendered) so that nothing waits for
+ * audio I/O. The bottom notes, which
+ * are used the most, are read first. Until a sample is ready, get() returns
+ * null and the note is simply not played.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class HarpSamples {
+
+  /** Frames per second of the samples (and the mixer). */
+  public final static float FRAME_RATE = 32000.0f;
+  /** Format of the samples: 16 bit stereo little-endian. */
+  final static AudioFormat DECODE_FORMAT = new AudioFormat(FRAME_RATE, 16, 2, true, false);
+
+  /**
+   * Files which contain the aiff of each string (read by SampleBankWriter).
+   * The range is 4 octaves from A2 to A6.
+   * Note that traditional piano pitch names are used here -- not harp string
+   * names.
+   */
+  final static String[] FILES = {
+    "com/billooms/notes/audio/A2.aiff",
+    "com/billooms/notes/audio/A2s.aiff",
+    "com/billooms/notes/audio/B2.aiff",
+    "com/billooms/notes/audio/C3.aiff",
+    "com/billooms/notes/audio/C3s.aiff",
+    "com/billooms/notes/audio/D3.aiff",
+    "com/billooms/notes/audio/D3s.aiff",
+    "com/billooms/notes/audio/E3.aiff",
+    "com/billooms/notes/audio/F3.aiff",
+    "com/billooms/notes/audio/F3s.aiff",
+    "com/billooms/notes/audio/G3.aiff",
+    "com/billooms/notes/audio/G3s.aiff",
+    "com/billooms/notes/audio/A3.aiff",
+    "com/billooms/notes/audio/A3s.aiff",
+    "com/billooms/notes/audio/B3.aiff",
+    "com/billooms/notes/audio/C4.aiff",
+    "com/billooms/notes/audio/C4s.aiff",
+    "com/billooms/notes/audio/D4.aiff",
+    "com/billooms/notes/audio/D4s.aiff",
+    "com/billooms/notes/audio/E4.aiff",
+    "com/billooms/notes/audio/F4.aiff",
+    "com/billooms/notes/audio/F4s.aiff",
+    "com/billooms/notes/audio/G4.aiff",
+    "com/billooms/notes/audio/G4s.aiff",
+    "com/billooms/notes/audio/A4.aiff",
+    "com/billooms/notes/audio/A4s.aiff",
+    "com/billooms/notes/audio/B4.aiff",
+    "com/billooms/notes/audio/C5.aiff",
+    "com/billooms/notes/audio/C5s.aiff",
+    "com/billooms/notes/audio/D5.aiff",
+    "com/billooms/notes/audio/D5s.aiff",
+    "com/billooms/notes/audio/E5.aiff",
+    "com/billooms/notes/audio/F5.aiff",
+    "com/billooms/notes/audio/F5s.aiff",
+    "com/billooms/notes/audio/G5.aiff",
+    "com/billooms/notes/audio/G5s.aiff",
+    "com/billooms/notes/audio/A5.aiff",
+    "com/billooms/notes/audio/A5s.aiff",
+    "com/billooms/notes/audio/B5.aiff",
+    "com/billooms/notes/audio/C6.aiff",
+    "com/billooms/notes/audio/C6s.aiff",
+    "com/billooms/notes/audio/D6.aiff",
+    "com/billooms/notes/audio/D6s.aiff",
+    "com/billooms/notes/audio/E6.aiff",
+    "com/billooms/notes/audio/F6.aiff",
+    "com/billooms/notes/audio/F6s.aiff",
+    "com/billooms/notes/audio/G6.aiff",
+    "com/billooms/notes/audio/G6s.aiff",
+    "com/billooms/notes/audio/A6.aiff"
+  };
+
+  /** Number of samples. */
+  public final static int SIZE = FILES.length;
+  /** Lowest note of a concert grand harp (C-flat 1) relative to A2. */
+  public final static int LOWEST = -22;
+  /** Highest note of a concert grand harp (G-sharp 7) relative to A2. */
+  public final static int HIGHEST = 59;
+
+  /** Sample for each string (null until it has been read). */
+  private final static AtomicReferenceArray<ShortBuffer> SAMPLES = new AtomicReferenceArray<>(SIZE);
+  /** Background thread for reading the samples. */
+  private final static RequestProcessor RP = new RequestProcessor("HarpSamples", 1);
+  /** Task that reads the samples (null until it is started). */
+  private static RequestProcessor.Task task = null;
+  /** True when all samples have been read. */
+  private static volatile boolean loaded = false;
+
+  /**
+   * This class only has static methods.
+   */
+  private HarpSamples() {
+  }
+
+  /**
+   * Start reading the samples on a background thread if not yet done.
+   * This returns right away and only starts reading once.
+   */
+  public static synchronized void startLoading() {
+    if (task == null) {
+      task = RP.post(HarpSamples::loadAll);
+    }
+  }
+
+  /**
+   * Read all of the samples and wait until they are ready.
+   * This should not be called on the event dispatch thread.
+   */
+  public static void load() {
+    RequestProcessor.Task t;
+    synchronized (HarpSamples.class) {
+      startLoading();
+      t = task;
+    }
+    t.waitFinished();
+  }
+
+  /**
+   * Determine if all of the samples have been read.
+   *
+   * @return true: all samples are ready
+   */
+  public static boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Determine if the sample for the given string is ready.
+   *
+   * @param i index of the sample (note number from A2)
+   * @return true: ready
+   */
+  public static boolean isReady(int i) {
+    return get(i) != null;
+  }
+
+  /**
+   * Get the recorded sample that is nearest to the given note.
+   *
+   * @param note note number relative to A2 (LOWEST through HIGHEST)
+   * @return index of the sample
+   */
+  public static int nearest(int note) {
+    return Math.max(0, Math.min(SIZE - 1, note));
+  }
+
+  /**
+   * Determine if the given note is in the range of a concert grand harp.
+   *
+   * @param note note number relative to A2
+   * @return true: in range
+   */
+  public static boolean inRange(int note) {
+    return (note >= LOWEST) && (note <= HIGHEST);
+  }
+
+  /**
+   * Read the samples from the bottom up.
+   * Scales, chords and glissandos all start in the bottom octave, so the most
+   * used notes are ready first.
+   */
+  private static void loadAll() {
+    final SampleBank bank = SampleBank.getDefault();
+    if (bank != null) {
+      for (int i = 0; i < SIZE; i++) {
+        SAMPLES.set(i, bank.getSample(i));
+      }
+    }
+    loaded = true;
+  }
+
+  /**
+   * Get the sample for the given string.
+   *
+   * @param i index of the sample (note number from A2)
+   * @return interleaved stereo 16 bit values (or null if it is not ready)
+   */
+  public static ShortBuffer get(int i) {
+    if ((i < 0) || (i >= SIZE)) {
+      return null;
+    }
+    return SAMPLES.get(i);
+  }
+
+  /**
+   * Decode an audio file to DECODE_FORMAT.
+   *
+   * @param in stream of the audio file
+   * @return decoded bytes
+   * @throws IOException if the stream can't be read
+   * @throws UnsupportedAudioFileException if the file is not audio
+   */
+  static byte[] decode(InputStream in) throws IOException, UnsupportedAudioFileException {
+    try (AudioInputStream ais = AudioSystem.getAudioInputStream(DECODE_FORMAT, 
+        AudioSystem.getAudioInputStream(new BufferedInputStream(in)))) {
+      return readAll(ais);
+    }
+  }
+
+  /**
+   * Read everything from the given stream.
+   *
+   * @param in input stream
+   * @return all bytes
+   * @throws IOException if the stream can't be read
+   */
+  static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[16384];
+    int n;
+    while ((n = in.read(buffer)) > 0) {
+      out.write(buffer, 0, n);
+    }
+    return out.toByteArray();
+  }
+}
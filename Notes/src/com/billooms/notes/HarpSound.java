@@ -0,0 +1,53 @@
+package com.billooms.notes;
+
+/**
+ * Where the sound of each string comes from when the NoteMixer is used.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public enum HarpSound {
+
+  /** Recorded samples (resampled outside of the recorded range). */
+  SAMPLED("Recorded samples"),
+  /** Plucked strings synthesized as they play (no sample files needed). */
+  SYNTHESIZED("Synthesized strings");
+
+  /** Name to display. */
+  private final String name;
+
+  /**
+   * Construct a sound.
+   *
+   * @param name name to display
+   */
+  private HarpSound(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Get the name to display.
+   *
+   * @return name
+   */
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
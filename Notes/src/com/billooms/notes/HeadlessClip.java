@@ -0,0 +1,202 @@
+package com.billooms.notes;
+
+import java.io.IOException;
+import java.util.Arrays;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineEvent;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Clip of the HeadlessMixer.
+ * Each start is recorded as an event; the clip's position then advances
+ * with the clock until the end (or the loop end).
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class HeadlessClip extends HeadlessLine implements Clip {
+
+  /** Data of the clip. */
+  private byte[] data = new byte[0];
+  /** Number of frames in the clip. */
+  private int length = 0;
+  /** First frame of the loop. */
+  private int loopStart = 0;
+  /** Last frame of the loop (-1 for the end of the clip). */
+  private int loopEnd = -1;
+  /** Number of times left to loop (LOOP_CONTINUOUSLY for ever). */
+  private int loops = 0;
+
+  /**
+   * Construct a new clip.
+   *
+   * @param mixer mixer that records for this clip
+   * @param format format of the data
+   */
+  HeadlessClip(HeadlessMixer mixer, AudioFormat format) {
+    super(mixer, format);
+  }
+
+  @Override
+  String getKind() {
+    return "Clip";
+  }
+
+  @Override
+  public void open(AudioFormat format, byte[] data, int offset, int bufferSize) throws LineUnavailableException {
+    if (!HeadlessMixer.isSupported(format)) {
+      throw new IllegalArgumentException("Format not supported: " + format);
+    }
+    synchronized (this) {
+      this.data = Arrays.copyOfRange(data, offset, offset + bufferSize);
+      length = bufferSize / format.getFrameSize();
+      loopStart = 0;
+      loopEnd = -1;
+      setClock(0);
+    }
+    opened(format);
+  }
+
+  @Override
+  public void open(AudioInputStream stream) throws LineUnavailableException, IOException {
+    AudioFormat f = stream.getFormat();
+    if (!HeadlessMixer.isSupported(f)) {
+      stream = AudioSystem.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, stream);
+      f = stream.getFormat();
+    }
+    byte[] bytes = HarpSamples.readAll(stream);
+    open(f, bytes, 0, bytes.length);
+  }
+
+  @Override
+  public void open() throws LineUnavailableException {
+    throw new IllegalArgumentException("A clip needs data to open");
+  }
+
+  @Override
+  public void start() {
+    final long frame = position();
+    super.start();
+    mixer.started(this, frame, length - frame);
+  }
+
+  /**
+   * Get the position in the clip, looping or stopping at the end.
+   *
+   * @return frame
+   */
+  private long position() {
+    long p;
+    boolean ended = false;
+    synchronized (this) {
+      p = clock();
+      final int end = (loopEnd < 0) ? length : loopEnd + 1;
+      while ((loops != 0) && (p >= end) && (end > loopStart)) {
+        p -= end - loopStart;
+        if (loops != LOOP_CONTINUOUSLY) {
+          loops--;
+        }
+        setClock(p);
+      }
+      if (p >= length) {
+        p = length;
+        ended = halt(p);
+      }
+    }
+    if (ended) {
+      fire(LineEvent.Type.STOP);
+    }
+    return p;
+  }
+
+  @Override
+  public synchronized int getFrameLength() {
+    return length;
+  }
+
+  @Override
+  public long getMicrosecondLength() {
+    return (long) (getFrameLength() * 1.0e6 / format.getFrameRate());
+  }
+
+  @Override
+  public synchronized void setFramePosition(int frames) {
+    setClock(Math.max(0, Math.min(frames, length)));
+  }
+
+  @Override
+  public void setMicrosecondPosition(long microseconds) {
+    setFramePosition((int) (microseconds * format.getFrameRate() / 1.0e6));
+  }
+
+  @Override
+  public synchronized void setLoopPoints(int start, int end) {
+    if ((start < 0) || (start >= length) || ((end != -1) && ((end < start) || (end >= length)))) {
+      throw new IllegalArgumentException("Invalid loop points " + start + " " + end);
+    }
+    loopStart = start;
+    loopEnd = end;
+  }
+
+  @Override
+  public void loop(int count) {
+    synchronized (this) {
+      loops = count;
+    }
+    start();
+  }
+
+  @Override
+  public void drain() {
+    while (isRunning() && (position() < length)) {
+      try {
+        Thread.sleep(millisUntil(length));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void flush() {
+    // nothing is buffered
+  }
+
+  @Override
+  public int getBufferSize() {
+    return data.length;
+  }
+
+  @Override
+  public int available() {
+    return 0;
+  }
+
+  @Override
+  public long getLongFramePosition() {
+    return position();
+  }
+
+  @Override
+  public Line.Info getLineInfo() {
+    return new DataLine.Info(Clip.class, format);
+  }
+}
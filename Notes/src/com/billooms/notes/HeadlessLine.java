@@ -0,0 +1,233 @@
+package com.billooms.notes;
+
+import java.util.ArrayList;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineEvent;
+import javax.sound.sampled.LineListener;
+
+/**
+ * A line of the HeadlessMixer that plays against the system clock.
+ * While running, the line's position advances at the frame rate of its format.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+abstract class HeadlessLine implements DataLine {
+
+  /** Mixer that records for this line. */
+  final HeadlessMixer mixer;
+  /** Listeners. */
+  private final ArrayList<LineListener> listeners = new ArrayList<>();
+  /** Format of the data. */
+  AudioFormat format;
+  /** True if the line is open. */
+  private boolean open = false;
+  /** True if the line is running. */
+  private boolean running = false;
+  /** Position when the clock was last started or set. */
+  private long base = 0;
+  /** System.nanoTime() when the clock was last started or set. */
+  private long baseTime = 0;
+
+  /**
+   * Construct a new line.
+   *
+   * @param mixer mixer that records for this line
+   * @param format format of the data
+   */
+  HeadlessLine(HeadlessMixer mixer, AudioFormat format) {
+    this.mixer = mixer;
+    this.format = format;
+  }
+
+  /**
+   * Get the kind of line for the events.
+   *
+   * @return kind of line
+   */
+  abstract String getKind();
+
+  /**
+   * Get the position of the clock.
+   *
+   * @return frame
+   */
+  synchronized long clock() {
+    if (!running) {
+      return base;
+    }
+    return base + (long) ((System.nanoTime() - baseTime) * (double) format.getFrameRate() / 1.0e9);
+  }
+
+  /**
+   * Set the position of the clock.
+   *
+   * @param frame frame
+   */
+  synchronized void setClock(long frame) {
+    base = frame;
+    baseTime = System.nanoTime();
+  }
+
+  /**
+   * Get the time until the clock reaches the given frame.
+   *
+   * @param frame frame
+   * @return milliseconds (at least 1)
+   */
+  long millisUntil(long frame) {
+    return Math.max(1, (long) ((frame - clock()) * 1000.0 / format.getFrameRate()));
+  }
+
+  /**
+   * Mark the line as open.
+   *
+   * @param format format of the data
+   */
+  void opened(AudioFormat format) {
+    this.format = format;
+    synchronized (this) {
+      open = true;
+    }
+    mixer.opened(this, true);
+    fire(LineEvent.Type.OPEN);
+  }
+
+  @Override
+  public void close() {
+    stop();
+    synchronized (this) {
+      if (!open) {
+        return;
+      }
+      open = false;
+    }
+    mixer.opened(this, false);
+    fire(LineEvent.Type.CLOSE);
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void start() {
+    synchronized (this) {
+      if (running) {
+        return;
+      }
+      baseTime = System.nanoTime();
+      running = true;
+    }
+    fire(LineEvent.Type.START);
+  }
+
+  @Override
+  public void stop() {
+    if (halt(clock())) {
+      fire(LineEvent.Type.STOP);
+    }
+  }
+
+  /**
+   * Stop the clock at the given frame (the caller fires the STOP event).
+   *
+   * @param frame frame
+   * @return true if the line was running
+   */
+  synchronized boolean halt(long frame) {
+    if (!running) {
+      return false;
+    }
+    base = frame;
+    running = false;
+    return true;
+  }
+
+  @Override
+  public synchronized boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public boolean isActive() {
+    return isRunning();
+  }
+
+  @Override
+  public AudioFormat getFormat() {
+    return format;
+  }
+
+  @Override
+  public int getFramePosition() {
+    return (int) getLongFramePosition();
+  }
+
+  @Override
+  public long getMicrosecondPosition() {
+    return (long) (getLongFramePosition() * 1.0e6 / format.getFrameRate());
+  }
+
+  @Override
+  public float getLevel() {
+    return AudioSystem.NOT_SPECIFIED;
+  }
+
+  @Override
+  public Control[] getControls() {
+    return new Control[0];
+  }
+
+  @Override
+  public boolean isControlSupported(Control.Type control) {
+    return false;
+  }
+
+  @Override
+  public Control getControl(Control.Type control) {
+    throw new IllegalArgumentException("Unsupported control type: " + control);
+  }
+
+  @Override
+  public synchronized void addLineListener(LineListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public synchronized void removeLineListener(LineListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Tell the listeners that something happened.
+   *
+   * @param type what happened
+   */
+  void fire(LineEvent.Type type) {
+    ArrayList<LineListener> copy;
+    synchronized (this) {
+      copy = new ArrayList<>(listeners);
+    }
+    LineEvent e = new LineEvent(this, type, getLongFramePosition());
+    for (LineListener listener : copy) {
+      listener.update(e);
+    }
+  }
+}
@@ -0,0 +1,511 @@
+package com.billooms.notes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Stand-in audio device for machines without one (tests and benchmarks).
+ * Its SourceDataLines and Clips play in real time against the system clock,
+ * so everything that writes to them is paced just like on a real device, but
+ * nothing is heard. Instead, every write to a SourceDataLine and every start
+ * of a Clip is recorded as an Event with a timestamp, and the data written to
+ * SourceDataLines is kept in memory or written to a file.
+ * In memory, only the newest MAX_EVENTS events and MAX_DATA bytes of data are
+ * kept, so a long benchmark doesn't run out of memory.
+ * In a file, the data is raw PCM in the format of the line, and the events
+ * are written as text to the same path with ".txt" added (in the background,
+ * so the lines that record them don't wait for the file). Nothing is kept in
+ * memory.
+ * See HeadlessMixerProvider for how it is turned on.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class HeadlessMixer implements Mixer {
+
+  /** Name of the mixer. */
+  final static String NAME = "HarpPedals headless";
+  /** Most events that are kept in memory. */
+  public final static int MAX_EVENTS = 100000;
+  /** Most bytes of data that are kept in memory (about 3 minutes of CD audio). */
+  public final static int MAX_DATA = 32 * 1024 * 1024;
+  /** Writes the events to the file. */
+  private final static RequestProcessor RP = new RequestProcessor("HeadlessMixer", 1);
+  /** Shared mixer (null if it is not turned on). */
+  private static HeadlessMixer instance = null;
+  /** True once the property has been checked. */
+  private static boolean checked = false;
+
+  /** Mixer information. */
+  private final Mixer.Info info = new Info();
+  /** Lines that are open. */
+  private final ArrayList<Line> lines = new ArrayList<>();
+  /** Newest events in the order they happened (only kept when recording to memory). */
+  private final ArrayDeque<Event> events = new ArrayDeque<>();
+  /** Ring of the newest data written to SourceDataLines (null if recording to a file). */
+  private byte[] memory;
+  /** File for the data (null if recording to memory). */
+  private final FileChannel file;
+  /** File for the events (null if recording to memory). */
+  private final PrintWriter eventFile;
+  /** Events waiting to be written to the file. */
+  private final ConcurrentLinkedQueue<Event> unwritten = new ConcurrentLinkedQueue<>();
+  /** True while writing the waiting events is posted. */
+  private final AtomicBoolean writing = new AtomicBoolean(false);
+  /** Number of bytes recorded. */
+  private long bytes = 0;
+
+  /**
+   * Get the shared mixer.
+   *
+   * @return mixer (or null if the HeadlessMixerProvider.PROPERTY is not set)
+   */
+  public static synchronized HeadlessMixer getDefault() {
+    if (!checked) {
+      checked = true;
+      final String where = System.getProperty(HeadlessMixerProvider.PROPERTY);
+      if (where != null) {
+        try {
+          instance = new HeadlessMixer(HeadlessMixerProvider.MEMORY.equals(where) ? null : new File(where));
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Construct a new mixer.
+   *
+   * @param path file to record to (null for memory)
+   * @throws IOException if the file can't be opened
+   */
+  private HeadlessMixer(File path) throws IOException {
+    if (path == null) {
+      memory = new byte[64 * 1024];     // grows up to MAX_DATA
+      file = null;
+      eventFile = null;
+    } else {
+      memory = null;
+      file = FileChannel.open(path.toPath(), 
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      eventFile = new PrintWriter(new File(path.getPath() + ".txt"), "UTF-8");
+      Runtime.getRuntime().addShutdownHook(new Thread(this::writeEvents, "HeadlessMixer"));   // the last events
+    }
+  }
+
+  /**
+   * Record data written to a SourceDataLine.
+   *
+   * @param line line
+   * @param frame frame of the line where the data starts
+   * @param b data
+   * @param off offset of the data
+   * @param len number of bytes
+   */
+  synchronized void write(HeadlessLine line, long frame, byte[] b, int off, int len) {
+    add(new Event(System.nanoTime(), line.getKind(), frame, len / line.getFormat().getFrameSize()));
+    if (memory != null) {
+      remember(b, off, len);
+    } else {
+      try {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+          file.write(buffer);
+        }
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+    bytes += len;
+  }
+
+  /**
+   * Keep data in the memory ring, growing it until it is MAX_DATA bytes.
+   *
+   * @param b data
+   * @param off offset of the data
+   * @param len number of bytes
+   */
+  private void remember(byte[] b, int off, int len) {
+    if ((bytes + len > memory.length) && (memory.length < MAX_DATA)) {
+      final byte[] bigger = new byte[(int) Math.min(MAX_DATA, Math.max(2L * memory.length, bytes + len))];
+      System.arraycopy(memory, 0, bigger, 0, (int) bytes);    // not wrapped yet
+      memory = bigger;
+    }
+    long pos = bytes;
+    if (len > memory.length) {      // only the end fits
+      off += len - memory.length;
+      pos += len - memory.length;
+      len = memory.length;
+    }
+    final int at = (int) (pos % memory.length);
+    final int first = Math.min(len, memory.length - at);
+    System.arraycopy(b, off, memory, at, first);
+    System.arraycopy(b, off + first, memory, 0, len - first);
+  }
+
+  /**
+   * Record the start of a line.
+   *
+   * @param line line
+   * @param frame frame of the line where it starts
+   * @param frames number of frames it will play (0 if not known)
+   */
+  synchronized void started(HeadlessLine line, long frame, long frames) {
+    add(new Event(System.nanoTime(), line.getKind() + " start", frame, frames));
+  }
+
+  /**
+   * Add an event.
+   *
+   * @param e event
+   */
+  private void add(Event e) {
+    if (eventFile == null) {
+      if (events.size() == MAX_EVENTS) {
+        events.removeFirst();
+      }
+      events.addLast(e);
+      return;
+    }
+    unwritten.add(e);
+    if (writing.compareAndSet(false, true)) {
+      RP.post(this::writeEvents);
+    }
+  }
+
+  /**
+   * Write the waiting events to the file (in the background).
+   */
+  private void writeEvents() {
+    writing.set(false);
+    Event e;
+    while ((e = unwritten.poll()) != null) {
+      eventFile.println(e);
+    }
+    eventFile.flush();
+  }
+
+  /**
+   * Get the newest events so far (at most MAX_EVENTS).
+   *
+   * @return copy of the events in the order they happened (empty if recording to a file)
+   */
+  public synchronized List<Event> getEvents() {
+    return new ArrayList<>(events);
+  }
+
+  /**
+   * Get the newest data written to SourceDataLines so far (at most MAX_DATA bytes).
+   *
+   * @return copy of the data (empty if recording to a file)
+   */
+  public synchronized byte[] getData() {
+    if (memory == null) {
+      return new byte[0];
+    }
+    final byte[] data = new byte[(int) Math.min(bytes, memory.length)];
+    final int at = (int) (bytes % memory.length);
+    if (data.length < memory.length) {
+      System.arraycopy(memory, 0, data, 0, data.length);
+    } else {
+      System.arraycopy(memory, at, data, 0, memory.length - at);    // oldest first
+      System.arraycopy(memory, 0, data, memory.length - at, at);
+    }
+    return data;
+  }
+
+  /**
+   * Get the number of bytes written to SourceDataLines so far (including any
+   * that are no longer kept).
+   *
+   * @return bytes
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Forget the events and data recorded in memory.
+   */
+  public synchronized void clear() {
+    events.clear();
+    if (memory != null) {
+      bytes = 0;
+    }
+  }
+
+  @Override
+  public Mixer.Info getMixerInfo() {
+    return info;
+  }
+
+  @Override
+  public Line.Info[] getSourceLineInfo() {
+    return new Line.Info[]{new DataLine.Info(SourceDataLine.class, (AudioFormat) null),
+      new DataLine.Info(Clip.class, (AudioFormat) null)};
+  }
+
+  @Override
+  public Line.Info[] getTargetLineInfo() {
+    return new Line.Info[0];
+  }
+
+  @Override
+  public Line.Info[] getSourceLineInfo(Line.Info lineInfo) {
+    return isLineSupported(lineInfo) ? new Line.Info[]{lineInfo} : new Line.Info[0];
+  }
+
+  @Override
+  public Line.Info[] getTargetLineInfo(Line.Info lineInfo) {
+    return new Line.Info[0];
+  }
+
+  @Override
+  public boolean isLineSupported(Line.Info lineInfo) {
+    if (!(lineInfo instanceof DataLine.Info)) {
+      return false;
+    }
+    Class<?> c = lineInfo.getLineClass();
+    if (!c.isAssignableFrom(SourceDataLine.class) && !c.isAssignableFrom(Clip.class)) {
+      return false;
+    }
+    for (AudioFormat format : ((DataLine.Info) lineInfo).getFormats()) {
+      if (!isSupported(format)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Determine if the given format can be played (any PCM format).
+   *
+   * @param format format
+   * @return true: supported
+   */
+  static boolean isSupported(AudioFormat format) {
+    return (format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED)
+        || (format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED);
+  }
+
+  @Override
+  public Line getLine(Line.Info lineInfo) throws LineUnavailableException {
+    if (!isLineSupported(lineInfo)) {
+      throw new IllegalArgumentException("Line not supported: " + lineInfo);
+    }
+    AudioFormat[] formats = ((DataLine.Info) lineInfo).getFormats();
+    AudioFormat format = (formats.length > 0) ? formats[0] : NoteMixer.FORMAT;
+    if (lineInfo.getLineClass().isAssignableFrom(SourceDataLine.class)) {
+      return new HeadlessSourceLine(this, format);
+    }
+    return new HeadlessClip(this, format);
+  }
+
+  /**
+   * Keep track of a line that was opened or closed.
+   *
+   * @param line line
+   * @param open true: opened
+   */
+  synchronized void opened(Line line, boolean open) {
+    if (open) {
+      lines.add(line);
+    } else {
+      lines.remove(line);
+    }
+  }
+
+  @Override
+  public int getMaxLines(Line.Info lineInfo) {
+    return isLineSupported(lineInfo) ? AudioSystem.NOT_SPECIFIED : 0;
+  }
+
+  @Override
+  public synchronized Line[] getSourceLines() {
+    return lines.toArray(new Line[lines.size()]);
+  }
+
+  @Override
+  public Line[] getTargetLines() {
+    return new Line[0];
+  }
+
+  @Override
+  public void synchronize(Line[] lines, boolean maintainSync) {
+    throw new IllegalArgumentException("Synchronization not supported");
+  }
+
+  @Override
+  public void unsynchronize(Line[] lines) {
+    throw new IllegalArgumentException("Synchronization not supported");
+  }
+
+  @Override
+  public boolean isSynchronizationSupported(Line[] lines, boolean maintainSync) {
+    return false;
+  }
+
+  @Override
+  public Line.Info getLineInfo() {
+    return new Line.Info(Mixer.class);
+  }
+
+  @Override
+  public void open() {
+    // always open
+  }
+
+  @Override
+  public void close() {
+    // always open
+  }
+
+  @Override
+  public boolean isOpen() {
+    return true;
+  }
+
+  @Override
+  public Control[] getControls() {
+    return new Control[0];
+  }
+
+  @Override
+  public boolean isControlSupported(Control.Type control) {
+    return false;
+  }
+
+  @Override
+  public Control getControl(Control.Type control) {
+    throw new IllegalArgumentException("Unsupported control type: " + control);
+  }
+
+  @Override
+  public void addLineListener(LineListener listener) {
+    // nothing happens to the mixer itself
+  }
+
+  @Override
+  public void removeLineListener(LineListener listener) {
+  }
+
+  /**
+   * Mixer information.
+   */
+  private static class Info extends Mixer.Info {
+
+    /**
+     * Construct the information.
+     */
+    private Info() {
+      super(NAME, "billooms", "Records what would have been played", "1.0");
+    }
+  }
+
+  /**
+   * Something that happened on a line.
+   */
+  public static class Event {
+
+    /** System.nanoTime() when it happened. */
+    private final long time;
+    /** What happened. */
+    private final String kind;
+    /** Frame of the line. */
+    private final long frame;
+    /** Number of frames. */
+    private final long frames;
+
+    /**
+     * Construct a new event.
+     *
+     * @param time System.nanoTime() when it happened
+     * @param kind what happened
+     * @param frame frame of the line
+     * @param frames number of frames
+     */
+    private Event(long time, String kind, long frame, long frames) {
+      this.time = time;
+      this.kind = kind;
+      this.frame = frame;
+      this.frames = frames;
+    }
+
+    /**
+     * Get the time it happened.
+     *
+     * @return System.nanoTime() when it happened
+     */
+    public long getTime() {
+      return time;
+    }
+
+    /**
+     * Get what happened ("SourceDataLine", "Clip start", etc).
+     *
+     * @return kind of event
+     */
+    public String getKind() {
+      return kind;
+    }
+
+    /**
+     * Get the frame of the line (where a write starts, or where a line starts playing).
+     *
+     * @return frame
+     */
+    public long getFrame() {
+      return frame;
+    }
+
+    /**
+     * Get the number of frames written (or to be played).
+     *
+     * @return frames
+     */
+    public long getFrames() {
+      return frames;
+    }
+
+    @Override
+    public String toString() {
+      return time + " " + kind + " " + frame + " " + frames;
+    }
+  }
+}
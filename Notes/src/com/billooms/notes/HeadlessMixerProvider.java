@@ -0,0 +1,66 @@
+package com.billooms.notes;
+
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.spi.MixerProvider;
+
+/**
+ * Provides the HeadlessMixer to javax.sound (registered in
+ * META-INF/services/javax.sound.sampled.spi.MixerProvider).
+ * The mixer only exists if the system property PROPERTY is set -- to
+ * "memory" to record in memory, or to the path of a file to record to --
+ * so a normal run never plays into it.
+ * When it exists it is made the default for SourceDataLines and Clips
+ * (unless those defaults are already set).
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class HeadlessMixerProvider extends MixerProvider {
+
+  /** System property that turns on the headless mixer. */
+  public final static String PROPERTY = "harppedals.headless";
+  /** Value of the property to record in memory. */
+  public final static String MEMORY = "memory";
+
+  /**
+   * Construct the provider (called by javax.sound).
+   */
+  public HeadlessMixerProvider() {
+    if (HeadlessMixer.getDefault() != null) {
+      final String name = getClass().getName() + "#" + HeadlessMixer.NAME;
+      if (System.getProperty("javax.sound.sampled.SourceDataLine") == null) {
+        System.setProperty("javax.sound.sampled.SourceDataLine", name);
+      }
+      if (System.getProperty("javax.sound.sampled.Clip") == null) {
+        System.setProperty("javax.sound.sampled.Clip", name);
+      }
+    }
+  }
+
+  @Override
+  public Mixer.Info[] getMixerInfo() {
+    final HeadlessMixer mixer = HeadlessMixer.getDefault();
+    return (mixer == null) ? new Mixer.Info[0] : new Mixer.Info[]{mixer.getMixerInfo()};
+  }
+
+  @Override
+  public Mixer getMixer(Mixer.Info info) {
+    final HeadlessMixer mixer = HeadlessMixer.getDefault();
+    if ((mixer != null) && ((info == null) || info.equals(mixer.getMixerInfo()))) {
+      return mixer;
+    }
+    throw new IllegalArgumentException("Mixer not supported: " + info);
+  }
+}
@@ -0,0 +1,168 @@
+package com.billooms.notes;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * SourceDataLine of the HeadlessMixer.
+ * Written frames are played against the clock from a buffer, so write()
+ * blocks just like on a real line. If the buffer runs dry the clock waits
+ * for more data (an underrun).
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class HeadlessSourceLine extends HeadlessLine implements SourceDataLine {
+
+  /** Default buffer size in seconds. */
+  private final static double DEFAULT_BUFFER = 0.5;
+
+  /** Size of the buffer in bytes. */
+  private int bufferSize = 0;
+  /** Number of frames written so far. */
+  private long written = 0;
+
+  /**
+   * Construct a new line.
+   *
+   * @param mixer mixer that records for this line
+   * @param format format of the data
+   */
+  HeadlessSourceLine(HeadlessMixer mixer, AudioFormat format) {
+    super(mixer, format);
+  }
+
+  @Override
+  String getKind() {
+    return "SourceDataLine";
+  }
+
+  /**
+   * Get the number of frames played so far.
+   * The clock can't get ahead of the data.
+   *
+   * @return frames
+   */
+  private synchronized long played() {
+    long p = clock();
+    if (p > written) {
+      setClock(written);    // underrun: wait for more data
+      p = written;
+    }
+    return p;
+  }
+
+  @Override
+  public void open(AudioFormat format, int bufferSize) throws LineUnavailableException {
+    if (!HeadlessMixer.isSupported(format)) {
+      throw new IllegalArgumentException("Format not supported: " + format);
+    }
+    final int frameSize = format.getFrameSize();
+    synchronized (this) {
+      this.bufferSize = (bufferSize == AudioSystem.NOT_SPECIFIED) ?
+          (int) (DEFAULT_BUFFER * format.getFrameRate()) * frameSize : (bufferSize / frameSize) * frameSize;
+      written = 0;
+      setClock(0);
+    }
+    opened(format);
+  }
+
+  @Override
+  public void open(AudioFormat format) throws LineUnavailableException {
+    open(format, AudioSystem.NOT_SPECIFIED);
+  }
+
+  @Override
+  public void open() throws LineUnavailableException {
+    open(format);
+  }
+
+  @Override
+  public int write(byte[] b, int off, int len) {
+    final int frameSize = format.getFrameSize();
+    len = (len / frameSize) * frameSize;
+    int done = 0;
+    while (done < len) {
+      final int n = Math.min(len - done, getBufferSize());   // write as much as possible at once
+      long frame = -1;
+      long room;      // frame the clock must reach for there to be room
+      synchronized (this) {
+        if (!isOpen()) {
+          return done;
+        }
+        if (available() >= n) {
+          frame = written;
+          written += n / frameSize;
+        }
+        room = written + (n - bufferSize) / frameSize;
+      }
+      try {
+        if (frame >= 0) {
+          mixer.write(this, frame, b, off + done, n);
+          done += n;
+        } else if (!isRunning()) {
+          Thread.sleep(10);     // full and stopped: wait for start (or close)
+        } else {
+          Thread.sleep(millisUntil(room));
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return done;
+      }
+    }
+    return done;
+  }
+
+  @Override
+  public void drain() {
+    while (isRunning() && (played() < written)) {
+      try {
+        Thread.sleep(millisUntil(written));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  @Override
+  public synchronized void flush() {
+    written = played();
+  }
+
+  @Override
+  public synchronized int getBufferSize() {
+    return bufferSize;
+  }
+
+  @Override
+  public synchronized int available() {
+    return bufferSize - (int) (written - played()) * format.getFrameSize();
+  }
+
+  @Override
+  public long getLongFramePosition() {
+    return played();
+  }
+
+  @Override
+  public Line.Info getLineInfo() {
+    return new DataLine.Info(SourceDataLine.class, format);
+  }
+}
@@ -0,0 +1,192 @@
+package com.billooms.notes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import javax.sound.midi.MidiChannel;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import org.openide.util.lookup.ServiceProvider;
+
+/**
+ * Plays notes on the default MIDI synthesizer with the General MIDI harp,
+ * started by the NoteScheduler.
+ * This needs no samples in memory and covers the whole harp.
+ * The latency is measured from the frames waiting in the line that the
+ * synthesizer opens (like the mixer's), so it can be compared with the other
+ * backends.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+@ServiceProvider(service = PlaybackBackend.class, position = 300)
+public class MidiBackend implements PlaybackBackend {
+
+  /** MIDI key number of A2. */
+  final static int A2_KEY = 45;
+  /** General MIDI program for the orchestral harp (0 based). */
+  final static int HARP_PROGRAM = 46;
+  /** Velocity of each note. */
+  final static int VELOCITY = 90;
+  /** Time for the synthesizer to fill its line before measuring in milliseconds. */
+  private final static int PRIME_MSEC = 50;
+  /** Number of times the line is measured. */
+  private final static int MEASURES = 5;
+
+  /** Synthesizer (null if it could not be opened). */
+  private Synthesizer synth = null;
+  /** Channel that plays the harp. */
+  private MidiChannel channel = null;
+  /** Line that the synthesizer plays on (null if it can't be seen). */
+  private SourceDataLine line = null;
+
+  @Override
+  public String getName() {
+    return "MIDI synthesizer";
+  }
+
+  @Override
+  public long probe() {
+    try {
+      final Set<Line> before = sourceLines();
+      synth = MidiSystem.getSynthesizer();
+      synth.open();
+      Thread.sleep(PRIME_MSEC);
+      line = null;
+      for (Line l : sourceLines()) {
+        if (!before.contains(l) && (l instanceof SourceDataLine)) {
+          line = (SourceDataLine) l;      // the line the synthesizer opened
+        }
+      }
+      if (line == null) {
+        return synth.getLatency();      // not a software synthesizer, so only the reported latency is known
+      }
+      long sum = 0;
+      for (int i = 0; i < MEASURES; i++) {
+        sum += queuedNanos();
+        Thread.sleep(1);
+      }
+      return sum / MEASURES / 1000;
+    } catch (MidiUnavailableException | IllegalArgumentException ex) {
+      synth = null;
+      return -1;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return -1;
+    }
+  }
+
+  /**
+   * Get the time to play the frames waiting in the synthesizer's line.
+   *
+   * @return nanoseconds
+   */
+  private long queuedNanos() {
+    final AudioFormat format = line.getFormat();
+    final int queued = (line.getBufferSize() - line.available()) / format.getFrameSize();
+    return Math.round(queued * 1.0e9 / format.getFrameRate());
+  }
+
+  /**
+   * Get the source lines that are open on every audio mixer.
+   *
+   * @return lines
+   */
+  private static Set<Line> sourceLines() {
+    final Set<Line> lines = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Mixer.Info info : AudioSystem.getMixerInfo()) {
+      lines.addAll(Arrays.asList(AudioSystem.getMixer(info).getSourceLines()));
+    }
+    return lines;
+  }
+
+  @Override
+  public void start() {
+    channel = synth.getChannels()[0];
+    channel.programChange(HARP_PROGRAM);
+  }
+
+  @Override
+  public void close() {
+    if (synth != null) {
+      synth.close();
+      synth = null;
+      channel = null;
+      line = null;
+    }
+  }
+
+  @Override
+  public int getLowest() {
+    return HarpSamples.LOWEST;
+  }
+
+  @Override
+  public int getHighest() {
+    return HarpSamples.HIGHEST;
+  }
+
+  @Override
+  public Phrase schedule(int[] notes, int[] delays) {
+    return NoteScheduler.getDefault().schedule(notes, delays, this::play);
+  }
+
+  @Override
+  public Phrase schedule(Timeline timeline) {
+    return NoteScheduler.getDefault().schedule(timeline, 
+        i -> play(timeline.getNote(i), Math.max(1, Math.min(127, Math.round(timeline.getVelocity(i) * VELOCITY)))));
+  }
+
+  /**
+   * Pluck the string for the given note.
+   * This is called on the scheduler's thread.
+   *
+   * @param note note number relative to A2
+   * @return time the note will be heard (System.nanoTime, -1 if it can't be found)
+   */
+  private long play(int note) {
+    return play(note, VELOCITY);
+  }
+
+  /**
+   * Pluck the string for the given note with the given velocity.
+   * This is called on the scheduler's thread.
+   *
+   * @param note note number relative to A2
+   * @param velocity MIDI velocity 1 through 127
+   * @return time the note will be heard (System.nanoTime, -1 if it can't be
+   * found): after the frames waiting in the synthesizer's line
+   */
+  private long play(int note, int velocity) {
+    if (channel == null) {
+      return -1;
+    }
+    channel.noteOff(A2_KEY + note);     // damp the string if it's already ringing
+    channel.noteOn(A2_KEY + note, velocity);
+    return (line != null) ? System.nanoTime() + queuedNanos() : -1;
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
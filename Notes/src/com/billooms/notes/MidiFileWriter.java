@@ -0,0 +1,297 @@
+package com.billooms.notes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Writes what the NotePlayer can play as Standard MIDI Files (format 0, one
+ * track on channel 1 with the harp program), so practice material can be used
+ * in other tools.
+ * The events are made straight from the arrays of a Timeline and streamed to
+ * the file through a buffer, so the memory that is used doesn't grow with the
+ * number of notes. Each note rings for RING_SECONDS (or until its string
+ * is played again).
+ * Like the OfflineRenderer, files can be added and then written all at once
+ * in parallel (for a whole catalogue of keys or chords).
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class MidiFileWriter {
+
+  /** Default tempo in beats per minute. */
+  public final static double DEFAULT_TEMPO = 120.0;
+  /** Ticks per beat (quarter note). */
+  private final static int PPQ = 480;
+  /** Seconds that each note rings before its note off. */
+  private final static double RING_SECONDS = 2.0;
+  /** Size of the header chunk and the track chunk's header. */
+  private final static int HEADER = 22;
+  /** Size of the buffer for writing to the file. */
+  private final static int BUFFER_SIZE = 64 * 1024;
+  /** Most bytes in one event (with its delta time). */
+  private final static int MAX_EVENT = 16;
+
+  /** Files waiting to be written. */
+  private final ArrayList<Job> jobs = new ArrayList<>();
+
+  /**
+   * Add a file with the chord with the given mask starting at the given note
+   * (same as NotePlayer.play).
+   *
+   * @param file MIDI file to write
+   * @param mask 12 bit mask
+   * @param start starting note
+   */
+  public void add(File file, int mask, int start) {
+    add(file, Pattern.ARPEGGIO, mask, start);
+  }
+
+  /**
+   * Add a file with two octaves of the chord with the given mask starting at
+   * the given note (same as NotePlayer.play2).
+   *
+   * @param file MIDI file to write
+   * @param mask 12 bit mask which is repeated (two octaves played)
+   * @param start starting note
+   */
+  public void add2(File file, int mask, int start) {
+    add(file, Pattern.ARPEGGIO2, mask, start);
+  }
+
+  /**
+   * Add a file with the chord with the given mask starting at the given note
+   * in the given pattern (same as NotePlayer.play).
+   *
+   * @param file MIDI file to write
+   * @param pattern pattern (its octaves repeat the chord's octave)
+   * @param mask 12 bit mask
+   * @param start starting note
+   */
+  public void add(File file, Pattern pattern, int mask, int start) {
+    add(file, pattern.compile(NotePlayer.chordNotes(mask, start, 1, HarpSamples.HIGHEST),
+        HarpSamples.LOWEST, HarpSamples.HIGHEST), DEFAULT_TEMPO);
+  }
+
+  /**
+   * Add a file with a glissando of the given notes (same as NotePlayer.playGliss).
+   *
+   * @param file MIDI file to write
+   * @param notes list of notes
+   */
+  public void addGliss(File file, ArrayList<Note> notes) {
+    add(file, Pattern.GLISS.compile(NotePlayer.noteNumbers(notes, HarpSamples.LOWEST, HarpSamples.HIGHEST),
+        HarpSamples.LOWEST, HarpSamples.HIGHEST), DEFAULT_TEMPO);
+  }
+
+  /**
+   * Add a file with the given timeline.
+   *
+   * @param file MIDI file to write
+   * @param timeline timeline
+   * @param tempo beats per minute (so the beats line up in other tools)
+   */
+  public void add(File file, Timeline timeline, double tempo) {
+    jobs.add(new Job(file, timeline, tempo));
+  }
+
+  /**
+   * Get the number of files waiting to be written.
+   *
+   * @return number of files
+   */
+  public int size() {
+    return jobs.size();
+  }
+
+  /**
+   * Write all of the files that were added (in parallel) and clear the list.
+   *
+   * @throws IOException if a file can't be written
+   */
+  public void writeAll() throws IOException {
+    ArrayList<Job> todo = new ArrayList<>(jobs);
+    jobs.clear();
+    try {
+      todo.parallelStream().forEach(job -> {
+        try {
+          write(job.file, job.timeline, job.tempo);
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+      });
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  /**
+   * Write the given timeline to a MIDI file.
+   *
+   * @param file MIDI file to write
+   * @param timeline timeline
+   * @param tempo beats per minute
+   * @throws IOException if the file can't be written
+   */
+  public static void write(File file, Timeline timeline, double tempo) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      channel.position(HEADER);
+      final double ticksPerFrame = PPQ * tempo / (60.0 * HarpSamples.FRAME_RATE);
+      final long ring = Math.round(RING_SECONDS * HarpSamples.FRAME_RATE);
+      final int[] lastOn = new int[128];      // index of the last note on each key (-1 if none is ringing)
+      Arrays.fill(lastOn, -1);
+      final int microsPerBeat = (int) Math.round(60.0e6 / tempo);
+      long tick = 0;
+      // tempo, then the harp program
+      buffer.put((byte) 0).put((byte) 0xFF).put((byte) 0x51).put((byte) 3)
+          .put((byte) (microsPerBeat >> 16)).put((byte) (microsPerBeat >> 8)).put((byte) microsPerBeat);
+      buffer.put((byte) 0).put((byte) 0xC0).put((byte) MidiBackend.HARP_PROGRAM);
+      int off = 0;      // next note to turn off (the offs come in the same order as the notes)
+      for (int i = 0; i <= timeline.size(); i++) {
+        final long frame = (i < timeline.size()) ? timeline.frames[i] : Long.MAX_VALUE;
+        for (; (off < i) && (timeline.frames[off] + ring <= frame); off++) {
+          final int key = key(timeline.notes[off]);
+          if (lastOn[key] == off) {
+            tick = event(channel, buffer, tick, Math.round((timeline.frames[off] + ring) * ticksPerFrame), 0x80, key, 0);
+            lastOn[key] = -1;
+          }
+        }
+        if (i == timeline.size()) {
+          break;
+        }
+        final int key = key(timeline.notes[i]);
+        final long at = Math.round(frame * ticksPerFrame);
+        if (lastOn[key] >= 0) {
+          tick = event(channel, buffer, tick, at, 0x80, key, 0);     // played again before it stopped ringing
+        }
+        final int velocity = Math.max(1, Math.min(127, Math.round(timeline.velocities[i] * MidiBackend.VELOCITY)));
+        tick = event(channel, buffer, tick, at, 0x90, key, velocity);
+        lastOn[key] = i;
+      }
+      buffer.put((byte) 0).put((byte) 0xFF).put((byte) 0x2F).put((byte) 0);    // end of track
+      final long length = channel.position() + buffer.position() - HEADER;
+      flush(channel, buffer);
+      buffer.put(header(length));
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, HEADER - buffer.remaining());
+      }
+    }
+  }
+
+  /**
+   * Put one channel event in the buffer (writing the buffer first if it is full).
+   *
+   * @param channel file channel
+   * @param buffer buffer
+   * @param tick tick of the event before
+   * @param at tick of this event
+   * @param status status byte (channel 1)
+   * @param key MIDI key number
+   * @param velocity velocity
+   * @return tick of this event
+   * @throws IOException if the file can't be written
+   */
+  private static long event(FileChannel channel, ByteBuffer buffer, long tick, long at,
+      int status, int key, int velocity) throws IOException {
+    if (buffer.remaining() < MAX_EVENT) {
+      flush(channel, buffer);
+    }
+    final long delta = Math.max(0, at - tick);
+    for (int shift = 28; shift > 0; shift -= 7) {     // variable-length quantity, most significant first
+      if (delta >= (1L << shift)) {
+        buffer.put((byte) (0x80 | ((delta >> shift) & 0x7F)));
+      }
+    }
+    buffer.put((byte) (delta & 0x7F));
+    buffer.put((byte) status).put((byte) key).put((byte) velocity);
+    return Math.max(tick, at);
+  }
+
+  /**
+   * Get the MIDI key of a note (the harp's range fits in 0 to 127).
+   *
+   * @param note note number relative to A2
+   * @return MIDI key number
+   */
+  private static int key(int note) {
+    return Math.max(0, Math.min(127, MidiBackend.A2_KEY + note));
+  }
+
+  /**
+   * Write the buffer to the channel and clear it.
+   *
+   * @param channel file channel
+   * @param buffer buffer
+   * @throws IOException if the file can't be written
+   */
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Make the header chunk and the track chunk's header.
+   *
+   * @param length number of bytes in the track
+   * @return header bytes
+   */
+  private static byte[] header(long length) {
+    ByteBuffer h = ByteBuffer.allocate(HEADER);    // MIDI files are big-endian
+    h.put(new byte[]{'M', 'T', 'h', 'd'}).putInt(6);
+    h.putShort((short) 0);      // format 0
+    h.putShort((short) 1);      // one track
+    h.putShort((short) PPQ);
+    h.put(new byte[]{'M', 'T', 'r', 'k'}).putInt((int) length);
+    return h.array();
+  }
+
+  /**
+   * A file waiting to be written.
+   */
+  private static class Job {
+
+    /** MIDI file to write. */
+    private final File file;
+    /** Notes to write. */
+    private final Timeline timeline;
+    /** Beats per minute. */
+    private final double tempo;
+
+    /**
+     * Construct a new job.
+     *
+     * @param file MIDI file to write
+     * @param timeline notes to write
+     * @param tempo beats per minute
+     */
+    private Job(File file, Timeline timeline, double tempo) {
+      this.file = file;
+      this.timeline = timeline;
+      this.tempo = tempo;
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package com.billooms.notes;
+
+import java.nio.ShortBuffer;
+import java.util.PriorityQueue;
+import java.util.function.LongSupplier;
+
+/**
+ * Mixes scheduled notes into blocks of 16 bit stereo little-endian frames.
+ * This is the part of the NoteMixer that doesn't depend on a line, so the
+ * same mixing can be done offline (see OfflineRenderer).
+ * Notes are scheduled by frame, so each note starts on the exact frame it
+ * was scheduled for, even in the middle of a block.
+ * Voices come from a fixed pool; when more than POLYPHONY notes are sounding
+ * the oldest one is faded out (stolen) to make room.
+ * Nothing is allocated while mixing.
+ * Notes whose samples have not been read yet are skipped.
+ *
+ * This is not thread safe -- it should only be used from one thread.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class MixEngine {
+
+  /** Number of frames mixed at a time. */
+  final static int BLOCK = 256;
+  /** Maximum number of notes sounding before the oldest is stolen. */
+  final static int POLYPHONY = 32;
+  /** Number of voices in the pool (extra voices let stolen notes fade out). */
+  private final static int POOL = POLYPHONY + 16;
+  /** Frames to fade out a stolen or stopped voice (about 10 msec). */
+  final static int RELEASE_FRAMES = 320;
+  /** Gain of each voice so that several voices don't clip. */
+  private final static float VOICE_GAIN = 0.5f;
+
+  /** Voice pool for recorded samples. */
+  private final SampleVoice[] sampleVoices = new SampleVoice[POOL];
+  /** Voice pool for synthesized strings. */
+  private final StringVoice[] stringVoices = new StringVoice[POOL];
+  /** Notes waiting for their frame. */
+  private final PriorityQueue<MixEvent> pending = new PriorityQueue<>();
+  /** Mix buffer (interleaved stereo). */
+  private final float[] mix = new float[2 * BLOCK];
+  /** First frame of the next block to be mixed. */
+  private volatile long frame = 0;
+  /** Where note onsets are recorded (null to not record them). */
+  private OnsetStats stats = null;
+  /** Frames of the output that have been heard (null if the output isn't a line). */
+  private LongSupplier clock = null;
+  /** Where note onsets are reported for visuals (null to not report them). */
+  private Transport transport = null;
+  /** Effects applied to the mix (null for none). */
+  private Effects effects = null;
+
+  /**
+   * Construct a new engine with its voice pools.
+   */
+  MixEngine() {
+    for (int i = 0; i < POOL; i++) {
+      sampleVoices[i] = new SampleVoice();
+      stringVoices[i] = new StringVoice();
+    }
+  }
+
+  /**
+   * Get the first frame of the next block to be mixed.
+   * This may be called from any thread.
+   *
+   * @return frame number
+   */
+  long getFrame() {
+    return frame;
+  }
+
+  /**
+   * Record the onset of every note that is started.
+   * The time a note is started is taken to be the time its block is mixed
+   * plus its offset in the block. The time it is heard is found from the
+   * clock of the line that the blocks are written to: the note is heard when
+   * the line has played up to the note's frame.
+   *
+   * @param stats where onsets are recorded (null to not record them)
+   * @param clock frames that the line has played, counting the engine's
+   * frames (null if the time a note is heard can't be found)
+   */
+  void setStats(OnsetStats stats, LongSupplier clock) {
+    this.stats = stats;
+    this.clock = clock;
+  }
+
+  /**
+   * Report the onset of every note to the transport (including the notes of
+   * a pre-rendered buffer). The engine's frames must be the transport's frames.
+   *
+   * @param transport where onsets are reported (null to not report them)
+   */
+  void setTransport(Transport transport) {
+    this.transport = transport;
+  }
+
+  /**
+   * Apply effects to every block after the voices are mixed.
+   *
+   * @param effects effects (null for none)
+   */
+  void setEffects(Effects effects) {
+    this.effects = effects;
+  }
+
+  /**
+   * Add a note to be started on its frame.
+   *
+   * @param e scheduled note
+   */
+  void add(MixEvent e) {
+    pending.add(e);
+  }
+
+  /**
+   * Fade out every note that is sounding.
+   */
+  void releaseAll() {
+    for (int i = 0; i < POOL; i++) {
+      sampleVoices[i].release(RELEASE_FRAMES);
+      stringVoices[i].release(RELEASE_FRAMES);
+    }
+  }
+
+  /**
+   * Determine if there is nothing more to mix.
+   *
+   * @return true: no notes are waiting or sounding
+   */
+  boolean isIdle() {
+    if (!pending.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < POOL; i++) {
+      if (sampleVoices[i].isActive() || stringVoices[i].isActive()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Mix the next block.
+   *
+   * @param out output buffer for BLOCK frames of 16 bit stereo little-endian
+   * @param sound where the sound of new notes comes from
+   */
+  void render(byte[] out, HarpSound sound) {
+    final long start = frame;
+    final long end = start + BLOCK;
+    final long now = (stats != null) ? System.nanoTime() : 0;
+    final long played = ((stats != null) && (clock != null)) ? clock.getAsLong() : -1;
+    for (int i = 0; i < mix.length; i++) {
+      mix[i] = 0.0f;
+    }
+    // start notes that are due in this block
+    while (!pending.isEmpty() && (pending.peek().frame < end)) {
+      MixEvent e = pending.poll();
+      if (e.data != null) {
+        if (!e.phrase.isCancelled()) {
+          final long bufferStart = Math.max(e.frame, start);
+          allocate(sampleVoices).start(e.data, e.phrase, (int) (bufferStart - start), bufferStart);
+          if (transport != null) {
+            for (int i = 0; i < e.notes.length; i++) {
+              transport.onset(e.phrase, e.notes[i], bufferStart + e.offsets[i]);
+            }
+          }
+        }
+        continue;
+      }
+      if (((e.phrase == null) || e.phrase.played()) && HarpSamples.inRange(e.note)) {
+        final int delay = (int) Math.max(e.frame - start, 0);
+        if (stats != null) {
+          stats.record((e.phrase != null) ? e.phrase.getId() : -1, e.note, e.time,
+              now + Math.round(delay * 1.0e9 / HarpSamples.FRAME_RATE),
+              (played < 0) ? -1 : now + Math.round((start + delay - played) * 1.0e9 / HarpSamples.FRAME_RATE));
+        }
+        if (transport != null) {
+          transport.onset(e.phrase, e.note, start + delay);
+        }
+        if (sound == HarpSound.SYNTHESIZED) {
+          allocate(stringVoices).start(e.note, VOICE_GAIN * e.velocity, delay, Math.max(e.frame, start));
+          continue;
+        }
+        final int nearest = HarpSamples.nearest(e.note);
+        ShortBuffer data = HarpSamples.get(nearest);
+        if (data != null) {
+          allocate(sampleVoices).start(data, e.note, VOICE_GAIN * e.velocity, delay, Math.max(e.frame, start), e.note - nearest);
+        }
+      }
+    }
+    for (int i = 0; i < POOL; i++) {
+      sampleVoices[i].mix(mix, BLOCK);
+      stringVoices[i].mix(mix, BLOCK);
+    }
+    if (effects != null) {
+      effects.process(mix);
+    }
+    for (int i = 0; i < mix.length; i++) {
+      float x = mix[i];
+      if (x > 1.0f) {
+        x = 1.0f;
+      } else if (x < -1.0f) {
+        x = -1.0f;
+      }
+      int s = (int) (x * 32767.0f);
+      out[2 * i] = (byte) s;
+      out[2 * i + 1] = (byte) (s >> 8);
+    }
+    frame = end;
+  }
+
+  /**
+   * Find a voice for a new note in the given pool.
+   * If too many notes are sounding, the oldest one is released.
+   * If no voice is free, the quietest releasing voice is taken.
+   *
+   * @param <V> type of voice
+   * @param voices voice pool
+   * @return voice
+   */
+  private static <V extends Voice> V allocate(V[] voices) {
+    int sounding = 0;
+    V oldest = null;
+    V free = null;
+    V quietest = null;
+    for (V v : voices) {
+      if (!v.isActive()) {
+        if (free == null) {
+          free = v;
+        }
+      } else if (v.isReleasing()) {
+        if ((quietest == null) || (v.getLevel() < quietest.getLevel())) {
+          quietest = v;
+        }
+      } else {
+        sounding++;
+        if ((oldest == null) || (v.getStartFrame() < oldest.getStartFrame())) {
+          oldest = v;
+        }
+      }
+    }
+    if ((sounding >= POLYPHONY) && (oldest != null)) {
+      oldest.release(RELEASE_FRAMES);    // steal the oldest note
+    }
+    if (free != null) {
+      return free;
+    }
+    if (quietest != null) {
+      quietest.stop();
+      return quietest;
+    }
+    oldest.stop();      // can only happen if every voice is sounding
+    return oldest;
+  }
+}
@@ -0,0 +1,95 @@
+package com.billooms.notes;
+
+import java.nio.ShortBuffer;
+
+/**
+ * A note (or a pre-rendered buffer) scheduled for a given frame in a MixEngine.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class MixEvent implements Comparable<MixEvent> {
+
+  /** Frame on which the note starts. */
+  final long frame;
+  /** Order in which the note was scheduled. */
+  final long sequence;
+  /** Note number relative to A2. */
+  final int note;
+  /** Phrase the note belongs to (may be null). */
+  final Phrase phrase;
+  /** Pre-rendered interleaved stereo buffer to play instead of a note (null for a note). */
+  final ShortBuffer data;
+  /** Time the note should start (System.nanoTime, 0 when rendering offline). */
+  final long time;
+  /** Velocity of the note (1.0 is the normal level). */
+  final float velocity;
+  /** Note number relative to A2 of each note in the buffer (null for a note). */
+  final int[] notes;
+  /** Frame of each note in the buffer from the start of the buffer (null for a note). */
+  final long[] offsets;
+
+  /**
+   * Construct a new event.
+   *
+   * @param frame frame on which the note starts
+   * @param sequence order in which the note was scheduled
+   * @param note note number relative to A2
+   * @param phrase phrase the note belongs to (may be null)
+   * @param time time the note should start (System.nanoTime, 0 when rendering offline)
+   * @param velocity velocity of the note (1.0 is the normal level)
+   */
+  MixEvent(long frame, long sequence, int note, Phrase phrase, long time, float velocity) {
+    this.frame = frame;
+    this.sequence = sequence;
+    this.note = note;
+    this.phrase = phrase;
+    this.data = null;
+    this.time = time;
+    this.velocity = velocity;
+    this.notes = null;
+    this.offsets = null;
+  }
+
+  /**
+   * Construct a new event for a pre-rendered buffer.
+   *
+   * @param frame frame on which the buffer starts
+   * @param sequence order in which the buffer was scheduled
+   * @param data interleaved stereo buffer
+   * @param phrase phrase for the notes in the buffer (cancelling it fades the buffer out)
+   * @param notes note number relative to A2 of each note in the buffer
+   * @param offsets frame of each note from the start of the buffer
+   */
+  MixEvent(long frame, long sequence, ShortBuffer data, Phrase phrase, int[] notes, long[] offsets) {
+    this.frame = frame;
+    this.sequence = sequence;
+    this.note = 0;
+    this.phrase = phrase;
+    this.data = data;
+    this.time = 0;
+    this.velocity = 1.0f;
+    this.notes = notes;
+    this.offsets = offsets;
+  }
+
+  @Override
+  public int compareTo(MixEvent other) {
+    if (frame != other.frame) {
+      return Long.compare(frame, other.frame);
+    }
+    return Long.compare(sequence, other.sequence);
+  }
+}
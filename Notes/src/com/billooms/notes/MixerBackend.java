@@ -0,0 +1,99 @@
+package com.billooms.notes;
+
+import javax.sound.sampled.LineUnavailableException;
+import org.openide.util.lookup.ServiceProvider;
+
+/**
+ * Plays every note through the NoteMixer on one line.
+ * This covers the whole harp and can synthesize the strings.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+@ServiceProvider(service = PlaybackBackend.class, position = 100)
+public class MixerBackend implements PlaybackBackend {
+
+  /** Time to let the mixer fill the line before measuring its latency in milliseconds. */
+  private final static int PRIME_MSEC = 50;
+
+  /** Mixer (null if it could not be opened). */
+  private NoteMixer mixer = null;
+
+  @Override
+  public String getName() {
+    return "Software mixer";
+  }
+
+  @Override
+  public long probe() {
+    try {
+      mixer = NoteMixer.getDefault();
+      Thread.sleep(PRIME_MSEC);
+      return mixer.getLatency();
+    } catch (LineUnavailableException | IllegalArgumentException ex) {
+      return -1;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return -1;
+    }
+  }
+
+  @Override
+  public void start() {
+    HarpSamples.startLoading();     // the mixer is already running, but wasn't needed until it won
+  }
+
+  @Override
+  public void close() {
+    if (mixer != null) {
+      mixer.close();
+      mixer = null;
+    }
+  }
+
+  /**
+   * Get the mixer (for the sound and cached glissandos).
+   *
+   * @return mixer (null if it was not opened)
+   */
+  public NoteMixer getMixer() {
+    return mixer;
+  }
+
+  @Override
+  public int getLowest() {
+    return HarpSamples.LOWEST;
+  }
+
+  @Override
+  public int getHighest() {
+    return HarpSamples.HIGHEST;
+  }
+
+  @Override
+  public Phrase schedule(int[] notes, int[] delays) {
+    return mixer.schedule(notes, delays);
+  }
+
+  @Override
+  public Phrase schedule(Timeline timeline) {
+    return mixer.schedule(timeline);
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
@@ -82,6 +82,22 @@ public class Note {
     pitchMask = MASK12 >> (number % 12);
   }
   
+  /**
+   * Create a note with the given number that is spelled with the given base note 
+   * and sharp/flat.
+   * The caller is responsible for the spelling having the same pitch as the number.
+   * 
+   * @param number note number based on 12 chromatic notes starting with A (may be octaves up)
+   * @param baseNote base note
+   * @param sharpFlat sharp/flat/natural
+   */
+  public Note(int number, BasicNote baseNote, SharpFlat sharpFlat) {
+    this.number = number;
+    this.baseNote = baseNote;
+    this.sharpFlat = sharpFlat;
+    pitchMask = MASK12 >> (number % 12);
+  }
+  
   /**
    * Create a note based on the 12-note chromatic scale starting with A. 
    * @param number note number
@@ -89,7 +105,7 @@ public class Note {
   public Note(int number) {
     this.number = number;
     int basicNum = number % 12;    // just in case we're given a larger number
-    pitchMask = MASK12 >> number;
+    pitchMask = MASK12 >> basicNum;
     for (BasicNote bn : BasicNote.values()) {
       if (basicNum == bn.getNum()) {    // look first for naturals
         baseNote = bn;
@@ -0,0 +1,375 @@
+package com.billooms.notes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Software mixer that plays every note through one SourceDataLine.
+ * A dedicated render thread mixes all voices into blocks of frames with a
+ * MixEngine and writes them to the line, which paces the thread.
+ * Notes are scheduled by frame, so each note starts on the exact frame it
+ * was scheduled for, even in the middle of a block.
+ * Notes cover the whole range of a concert grand harp; those outside of the
+ * recorded samples are resampled from the nearest one.
+ * Instead of samples, the strings can be synthesized (see HarpSound).
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class NoteMixer {
+
+  /** Size of the line's buffer in frames. */
+  private final static int LINE_FRAMES = 8 * MixEngine.BLOCK;
+  /** Maximum number of notes sounding before the oldest is stolen. */
+  public final static int POLYPHONY = MixEngine.POLYPHONY;
+  /** Output format: 16 bit stereo little-endian. */
+  final static AudioFormat FORMAT = new AudioFormat(HarpSamples.FRAME_RATE, 16, 2, true, false);
+  /** Shared mixer. */
+  private static NoteMixer instance = null;
+
+  /** Output line. */
+  private final SourceDataLine line;
+  /** Mixes the voices (only used by the render thread). */
+  private final MixEngine engine = new MixEngine();
+  /** Reverb and sympathetic resonance applied to the mix. */
+  private final Effects effects = new Effects();
+  /** Notes scheduled from other threads that the render thread has not seen yet. */
+  private final ConcurrentLinkedQueue<MixEvent> incoming = new ConcurrentLinkedQueue<>();
+  /** Output buffer. */
+  private final byte[] out = new byte[4 * MixEngine.BLOCK];
+  /** Where the sound of new notes comes from. */
+  private volatile HarpSound sound = HarpSound.SAMPLED;
+  /** False to stop the render thread. */
+  private volatile boolean running = true;
+  /** True to release every voice at the start of the next block. */
+  private volatile boolean releaseAll = false;
+  /** Number of notes scheduled so far (keeps the order of notes on the same frame). */
+  private long sequence = 0;
+  /** Transport clock: the frame that is being heard. */
+  private final LongSupplier lineClock;
+
+  /**
+   * Get the shared mixer (the line is opened and the thread is started the first time).
+   *
+   * @return shared mixer
+   * @throws LineUnavailableException if no line is available
+   */
+  public static synchronized NoteMixer getDefault() throws LineUnavailableException {
+    if (instance == null) {
+      instance = new NoteMixer();
+    }
+    return instance;
+  }
+
+  /**
+   * Construct a new mixer, open the line and start the render thread.
+   *
+   * @throws LineUnavailableException if no line is available
+   */
+  private NoteMixer() throws LineUnavailableException {
+    line = AudioSystem.getSourceDataLine(FORMAT);
+    line.open(FORMAT, 4 * LINE_FRAMES);
+    engine.setTransport(Transport.getDefault());
+    engine.setEffects(effects);
+    line.start();
+    lineClock = line::getLongFramePosition;
+    engine.setStats(OnsetStats.getDefault(), lineClock);
+    Transport.getDefault().setClock(lineClock);
+    Thread thread = new Thread(this::run, "NoteMixer");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MAX_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Get the first frame of the next block to be mixed.
+   * A note scheduled for this frame or later is played on time.
+   *
+   * @return frame number
+   */
+  public long getFrame() {
+    return engine.getFrame();
+  }
+
+  /**
+   * Measure the time from scheduling a note until it is heard: the frames
+   * waiting in the line plus the block that is being mixed.
+   *
+   * @return latency in microseconds
+   */
+  public long getLatency() {
+    final int queued = (line.getBufferSize() - line.available()) / FORMAT.getFrameSize();
+    return Math.round((queued + MixEngine.BLOCK) * 1.0e6 / HarpSamples.FRAME_RATE);
+  }
+
+  /**
+   * Stop the render thread and close the line.
+   * The next call to getDefault() opens a new mixer.
+   */
+  public void close() {
+    synchronized (NoteMixer.class) {
+      if (instance == this) {
+        instance = null;
+      }
+    }
+    Transport.getDefault().clearClock(lineClock);
+    running = false;
+  }
+
+  /**
+   * Get the number of frames in one second.
+   *
+   * @return frames per second
+   */
+  public float getFrameRate() {
+    return HarpSamples.FRAME_RATE;
+  }
+
+  /**
+   * Schedule a note to start on the given frame.
+   * A note scheduled for a frame that has already been mixed starts right away.
+   *
+   * @param note note number relative to A2 (HarpSamples.LOWEST through HarpSamples.HIGHEST)
+   * @param atFrame frame on which to start
+   * @param phrase phrase the note belongs to (may be null)
+   */
+  public void schedule(int note, long atFrame, Phrase phrase) {
+    schedule(note, atFrame, phrase, System.nanoTime() + toNanos(atFrame - getFrame()), 1.0f);
+  }
+
+  /**
+   * Schedule a note to start on the given frame.
+   *
+   * @param note note number relative to A2
+   * @param atFrame frame on which to start
+   * @param phrase phrase the note belongs to (may be null)
+   * @param time time the note should start (System.nanoTime) for the OnsetStats
+   * @param velocity velocity of the note (1.0 is the normal level)
+   */
+  private void schedule(int note, long atFrame, Phrase phrase, long time, float velocity) {
+    long seq;
+    synchronized (this) {
+      seq = sequence++;
+    }
+    incoming.add(new MixEvent(atFrame, seq, note, phrase, time, velocity));
+  }
+
+  /**
+   * Schedule a phrase of notes.
+   * The first note starts at the beginning of the next block.
+   *
+   * @param notes note number relative to A2 for each note
+   * @param delays delay of each note in milliseconds
+   * @return phrase that can be used to cancel the notes
+   */
+  public Phrase schedule(int[] notes, int[] delays) {
+    final Phrase phrase = new Phrase(null, notes.length);
+    final long now = System.nanoTime();
+    final long start = getFrame() + MixEngine.BLOCK;
+    final long time = now + toNanos(MixEngine.BLOCK);
+    for (int i = 0; i < notes.length; i++) {
+      schedule(notes[i], start + toFrames(delays[i]), phrase, time + delays[i] * 1000000L, 1.0f);
+    }
+    return phrase;
+  }
+
+  /**
+   * Schedule the notes of a timeline.
+   * The timeline starts at the beginning of the next block.
+   *
+   * @param timeline timeline
+   * @return phrase that can be used to cancel the notes
+   */
+  public Phrase schedule(Timeline timeline) {
+    final Phrase phrase = new Phrase(null, timeline.size());
+    final long now = System.nanoTime();
+    final long start = getFrame() + MixEngine.BLOCK;
+    final long time = now + toNanos(MixEngine.BLOCK);
+    for (int i = 0; i < timeline.size(); i++) {
+      schedule(timeline.notes[i], start + timeline.frames[i], phrase, time + toNanos(timeline.frames[i]), timeline.velocities[i]);
+    }
+    return phrase;
+  }
+
+  /**
+   * Play a pre-rendered buffer starting at the beginning of the next block.
+   *
+   * @param data interleaved stereo 16 bit buffer at the mixer's frame rate
+   * @param notes note number relative to A2 of each note in the buffer
+   * @param delays delay of each note in milliseconds from the start of the buffer
+   * @return phrase that can be used to fade out the buffer
+   */
+  Phrase play(ShortBuffer data, int[] notes, int[] delays) {
+    final Phrase phrase = new Phrase(null, notes.length);
+    final long[] offsets = new long[notes.length];
+    for (int i = 0; i < notes.length; i++) {
+      offsets[i] = toFrames(delays[i]);
+    }
+    long seq;
+    synchronized (this) {
+      seq = sequence++;
+    }
+    incoming.add(new MixEvent(getFrame() + MixEngine.BLOCK, seq, data, phrase, notes, offsets));
+    return phrase;
+  }
+
+  /**
+   * Get where the sound of new notes comes from.
+   *
+   * @return sound
+   */
+  public HarpSound getSound() {
+    return sound;
+  }
+
+  /**
+   * Set where the sound of new notes comes from.
+   * Notes that are already sounding are not changed.
+   *
+   * @param sound sound
+   */
+  public void setSound(HarpSound sound) {
+    this.sound = sound;
+  }
+
+  /**
+   * Use the impulse response in the given audio file for the reverb.
+   * The file is read and prepared on the calling thread.
+   *
+   * @param file audio file (mono or stereo, at most ConvolutionReverb.MAX_SECONDS 
+   * are used), or null for no reverb
+   * @throws IOException if the file can't be read
+   * @throws UnsupportedAudioFileException if the file is not audio the AudioSystem understands
+   */
+  public void setReverb(File file) throws IOException, UnsupportedAudioFileException {
+    effects.setReverb((file == null) ? null : ConvolutionReverb.load(file));
+  }
+
+  /**
+   * Determine if there is a reverb.
+   *
+   * @return true: there is a reverb
+   */
+  public boolean hasReverb() {
+    return effects.hasReverb();
+  }
+
+  /**
+   * Get the level of the reverb.
+   *
+   * @return level (1.0 is about as loud as the dry sound)
+   */
+  public float getReverbLevel() {
+    return effects.getReverbLevel();
+  }
+
+  /**
+   * Set the level of the reverb.
+   *
+   * @param level level (1.0 is about as loud as the dry sound)
+   */
+  public void setReverbLevel(float level) {
+    effects.setReverbLevel(level);
+  }
+
+  /**
+   * Determine if the sympathetic resonance of the open strings is on.
+   *
+   * @return true: on
+   */
+  public boolean isResonance() {
+    return effects.isResonance();
+  }
+
+  /**
+   * Turn the sympathetic resonance of the open strings on or off.
+   *
+   * @param on true: on
+   */
+  public void setResonance(boolean on) {
+    effects.setResonance(on);
+  }
+
+  /**
+   * Set the pitches of the open strings (from the pedals) that resonate.
+   *
+   * @param notes note number relative to A2 of each string
+   */
+  public void setOpenStrings(int[] notes) {
+    effects.setOpenStrings(notes);
+  }
+
+  /**
+   * Fade out every note that is sounding.
+   */
+  public void releaseAll() {
+    releaseAll = true;
+  }
+
+  /**
+   * Convert a delay in milliseconds to frames.
+   *
+   * @param msec delay in milliseconds
+   * @return frames
+   */
+  static long toFrames(int msec) {
+    return Math.round(msec * HarpSamples.FRAME_RATE / 1000.0);
+  }
+
+  /**
+   * Convert a number of frames to nanoseconds.
+   *
+   * @param frames frames
+   * @return nanoseconds
+   */
+  private static long toNanos(long frames) {
+    return Math.round(frames * 1.0e9 / HarpSamples.FRAME_RATE);
+  }
+
+  /**
+   * Mix blocks and write them to the line until the mixer is closed.
+   */
+  private void run() {
+    while (running) {
+      renderBlock();
+      line.write(out, 0, out.length);    // blocks until there is room in the line
+    }
+    line.stop();
+    line.close();
+  }
+
+  /**
+   * Mix the next block into the output buffer.
+   */
+  private void renderBlock() {
+    MixEvent e;
+    while ((e = incoming.poll()) != null) {
+      engine.add(e);
+    }
+    if (releaseAll) {
+      releaseAll = false;
+      engine.releaseAll();
+    }
+    engine.render(out, sound);
+  }
+}
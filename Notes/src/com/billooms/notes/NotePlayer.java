@@ -1,13 +1,13 @@
 package com.billooms.notes;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
-import java.util.TimerTask;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import org.openide.util.Exceptions;
+import org.openide.util.Lookup;
+import org.openide.util.RequestProcessor;
 
 /**
  * Plays sound for notes on the harp based on chords.
@@ -29,90 +29,131 @@ import org.openide.util.Exceptions;
  */
 public class NotePlayer {
 
-  /**
-   * Files which contain the aiff of each string. 
-   * The range is 3 octaves from A2 to G#5.
-   * Note that traditional piano pitch names are used here -- not harp string
-   * names.
-   */
-  private final static String[] FILES = {
-    "com/billooms/notes/audio/A2.aiff",
-    "com/billooms/notes/audio/A2s.aiff",
-    "com/billooms/notes/audio/B2.aiff",
-    "com/billooms/notes/audio/C3.aiff",
-    "com/billooms/notes/audio/C3s.aiff",
-    "com/billooms/notes/audio/D3.aiff",
-    "com/billooms/notes/audio/D3s.aiff",
-    "com/billooms/notes/audio/E3.aiff",
-    "com/billooms/notes/audio/F3.aiff",
-    "com/billooms/notes/audio/F3s.aiff",
-    "com/billooms/notes/audio/G3.aiff",
-    "com/billooms/notes/audio/G3s.aiff",
-    "com/billooms/notes/audio/A3.aiff",
-    "com/billooms/notes/audio/A3s.aiff",
-    "com/billooms/notes/audio/B3.aiff",
-    "com/billooms/notes/audio/C4.aiff",
-    "com/billooms/notes/audio/C4s.aiff",
-    "com/billooms/notes/audio/D4.aiff",
-    "com/billooms/notes/audio/D4s.aiff",
-    "com/billooms/notes/audio/E4.aiff",
-    "com/billooms/notes/audio/F4.aiff",
-    "com/billooms/notes/audio/F4s.aiff",
-    "com/billooms/notes/audio/G4.aiff",
-    "com/billooms/notes/audio/G4s.aiff",
-    "com/billooms/notes/audio/A4.aiff",
-    "com/billooms/notes/audio/A4s.aiff",
-    "com/billooms/notes/audio/B4.aiff",
-    "com/billooms/notes/audio/C5.aiff",
-    "com/billooms/notes/audio/C5s.aiff",
-    "com/billooms/notes/audio/D5.aiff",
-    "com/billooms/notes/audio/D5s.aiff",
-    "com/billooms/notes/audio/E5.aiff",
-    "com/billooms/notes/audio/F5.aiff",
-    "com/billooms/notes/audio/F5s.aiff",
-    "com/billooms/notes/audio/G5.aiff",
-    "com/billooms/notes/audio/G5s.aiff",
-    "com/billooms/notes/audio/A5.aiff",
-    "com/billooms/notes/audio/A5s.aiff",
-    "com/billooms/notes/audio/B5.aiff",
-    "com/billooms/notes/audio/C6.aiff",
-    "com/billooms/notes/audio/C6s.aiff",
-    "com/billooms/notes/audio/D6.aiff",
-    "com/billooms/notes/audio/D6s.aiff",
-    "com/billooms/notes/audio/E6.aiff",
-    "com/billooms/notes/audio/F6.aiff",
-    "com/billooms/notes/audio/F6s.aiff",
-    "com/billooms/notes/audio/G6.aiff",
-    "com/billooms/notes/audio/G6s.aiff",
-    "com/billooms/notes/audio/A6.aiff"
-  };
-
-  /** Clip for each sample. */
-  private final static Clip[] CLIPS = new Clip[FILES.length];
+  /** Probes the backends (which opens audio lines, so it is kept off the EDT). */
+  private final static RequestProcessor RP = new RequestProcessor("NotePlayer", 1);
+  /** Glissandos rendered for the mixer. */
+  private final static GlissCache GLISS_CACHE = new GlissCache(GlissCache.DEFAULT_BUDGET);
+  /** Latency that is good enough to stop probing backends in microseconds. */
+  private final static long GOOD_LATENCY = 100000;
 
   /** Delay between arpeggiated notes in milliseconds. */
-  private final static int SLOW_DELAY = 250;
+  final static int SLOW_DELAY = 250;
   /** Delay between glissando notes in milliseconds. */
-  private final static int FAST_DELAY = 50;
+  final static int FAST_DELAY = 50;
   /** Mask to find the 12th bit. */
   private final static int MASK12 = 0b100000000000;
-  /** Mask to find the 24th bit. */
-  private final static int MASK24 = 0b100000000000000000000000;
+  /** System property with an impulse response file for the reverb. */
+  public final static String PROP_REVERB = "harppedals.reverb";
+  /** System property that turns on the sympathetic resonance of the open strings. */
+  public final static String PROP_RESONANCE = "harppedals.resonance";
+  /** System property with the name of the HarpSound to start with (such as SYNTHESIZED). */
+  public final static String PROP_SOUND = "harppedals.sound";
+
+  /** Backend that plays the notes (null until it is chosen, or if none can play on this system). */
+  private volatile PlaybackBackend backend = null;
+  /** Mixer that plays all notes on one line (null if the backend is not the mixer). */
+  private volatile NoteMixer mixer = null;
+  /** Chooses the backend. */
+  private final RequestProcessor.Task choosing;
+  /** Where the sound of each string comes from (kept until there is a mixer). */
+  private volatile HarpSound sound = getSoundProperty();
+  /** True if the open strings resonate (kept until there is a mixer). */
+  private volatile boolean resonance = Boolean.getBoolean(PROP_RESONANCE);
+  /** Pitches of the open strings (kept until there is a mixer, null if not set). */
+  private volatile int[] openStrings = null;
 
   /**
    * Construct a new ChordPlayer.
+   * The backends registered in the Lookup are probed in the background in
+   * order and the first one with a good latency is used (or else the one with
+   * the lowest latency). Nothing is played until the backend is chosen.
    */
   public NotePlayer() {
-    if (CLIPS[0] == null) {    // initialize CLIPS if not yet done (it is static)
-      for (int i = 0; i < FILES.length; i++) {
+    choosing = RP.post(this::choose);
+  }
+
+  /**
+   * Choose the backend and set up the mixer (if it is the mixer).
+   */
+  private void choose() {
+    final PlaybackBackend b = chooseBackend();
+    if (b instanceof MixerBackend) {
+      final NoteMixer m = ((MixerBackend) b).getMixer();
+      final String reverb = System.getProperty(PROP_REVERB);
+      if (reverb != null) {
         try {
-          CLIPS[i] = AudioSystem.getClip();
-          CLIPS[i].open(AudioSystem.getAudioInputStream(getClass().getClassLoader().getResource(FILES[i]).openStream()));
-        } catch (IOException | UnsupportedAudioFileException | LineUnavailableException ex) {
+          m.setReverb(new File(reverb));
+        } catch (IOException | UnsupportedAudioFileException ex) {
           Exceptions.printStackTrace(ex);
         }
       }
+      mixer = m;
+      m.setSound(sound);    // settings made before there was a mixer
+      m.setResonance(resonance);
+      if (openStrings != null) {
+        m.setOpenStrings(openStrings);
+      }
+    }
+    backend = b;
+  }
+
+  /**
+   * Get the sound named by the PROP_SOUND system property.
+   *
+   * @return sound (SAMPLED if the property is not set or is not a sound)
+   */
+  private static HarpSound getSoundProperty() {
+    try {
+      return HarpSound.valueOf(System.getProperty(PROP_SOUND, HarpSound.SAMPLED.name()));
+    } catch (IllegalArgumentException ex) {
+      return HarpSound.SAMPLED;
+    }
+  }
+
+  /**
+   * Wait until the backend has been chosen (such as before playing from a
+   * command line tool). This should not be called on the EDT.
+   */
+  public void waitForBackend() {
+    choosing.waitFinished();
+  }
+
+  /**
+   * Probe the registered backends and start the one to use.
+   *
+   * @return backend (or null if none can play)
+   */
+  private static PlaybackBackend chooseBackend() {
+    PlaybackBackend best = null;
+    long bestLatency = Long.MAX_VALUE;
+    for (PlaybackBackend b : Lookup.getDefault().lookupAll(PlaybackBackend.class)) {   // in order of position
+      final long latency = b.probe();
+      if ((latency >= 0) && (latency < bestLatency)) {
+        if (best != null) {
+          best.close();
+        }
+        best = b;
+        bestLatency = latency;
+        if (latency <= GOOD_LATENCY) {
+          break;
+        }
+      } else {
+        b.close();
+      }
+    }
+    if (best != null) {
+      best.start();
     }
+    return best;
+  }
+
+  /**
+   * Get the backend that plays the notes.
+   *
+   * @return backend (or null if it isn't chosen yet or none can play on this system)
+   */
+  public PlaybackBackend getBackend() {
+    return backend;
   }
 
   /**
@@ -120,19 +161,10 @@ public class NotePlayer {
    *
    * @param mask 12 bit mask
    * @param start starting note
+   * @return phrase that can be used to cancel the notes
    */
-  public void play(int mask, int start) {
-    int delay = 0;
-    for (int i = start; i < start + 12; i++) {
-      if (i >= FILES.length) {    // just to make sure we don't go too far
-        break;
-      }
-      if ((mask & MASK12) != 0) {
-        playDelay(CLIPS[i], delay);
-        delay += SLOW_DELAY;
-      }
-      mask = mask << 1;   // shift right
-    }
+  public Phrase play(int mask, int start) {
+    return play(Pattern.ARPEGGIO, mask, start);
   }
 
   /**
@@ -141,20 +173,43 @@ public class NotePlayer {
    *
    * @param mask 12 bit mask which is repeated (two octaves played)
    * @param start starting note
+   * @return phrase that can be used to cancel the notes
    */
-  public void play2(int mask, int start) {
-    mask = (mask << 12) | mask;
-    int delay = 0;
-    for (int i = start; i < start + 24; i++) {
-      if (i >= FILES.length) {    // just to make sure we don't go too far
-        break;
-      }
-      if ((mask & MASK24) != 0) {
-        playDelay(CLIPS[i], delay);
-        delay += SLOW_DELAY;
-      }
-      mask = mask << 1;   // shift right
-    }
+  public Phrase play2(int mask, int start) {
+    return play(Pattern.ARPEGGIO2, mask, start);
+  }
+
+  /**
+   * Play the chord with the given mask starting at the given note in the given pattern.
+   *
+   * @param pattern pattern (its octaves repeat the chord's octave)
+   * @param mask 12 bit mask
+   * @param start starting note
+   * @return phrase that can be used to cancel the notes
+   */
+  public Phrase play(Pattern pattern, int mask, int start) {
+    return schedule(pattern.compile(chordNotes(mask, start, 1, getHighest()), getLowest(), getHighest()));
+  }
+
+  /**
+   * Play the given list of notes in the given pattern.
+   *
+   * @param pattern pattern (its octaves repeat the list an octave higher)
+   * @param notes list of notes going up
+   * @return phrase that can be used to cancel the notes
+   */
+  public Phrase play(Pattern pattern, ArrayList<Note> notes) {
+    return schedule(pattern.compile(noteNumbers(notes, getLowest(), getHighest()), getLowest(), getHighest()));
+  }
+
+  /**
+   * Play the given timeline, starting now.
+   *
+   * @param timeline timeline
+   * @return phrase that can be used to cancel the notes
+   */
+  public Phrase play(Timeline timeline) {
+    return schedule(timeline);
   }
 
   /**
@@ -162,19 +217,40 @@ public class NotePlayer {
    * Slow play speed is used.
    *
    * @param notes list of notes
+   * @return phrase that can be used to cancel the notes
    */
-  public void play(ArrayList<Note> notes) {
-    play(notes, SLOW_DELAY);
+  public Phrase play(ArrayList<Note> notes) {
+    return play(Pattern.ARPEGGIO, notes);
   }
 
   /**
    * Play the chord with the given list of notes.
    * Fast play speed is used.
+   * With the mixer, a glissando that was played before is played from the 
+   * GlissCache as one pre-rendered buffer.
    *
    * @param notes list of notes
+   * @return phrase that can be used to cancel the notes
+   */
+  public Phrase playGliss(ArrayList<Note> notes) {
+    final NoteMixer m = mixer;
+    if (m != null) {
+      int[] numbers = noteNumbers(notes, getLowest(), getHighest());
+      ShortBuffer data = GLISS_CACHE.get(numbers, FAST_DELAY, m.getSound());
+      if (data != null) {
+        return m.play(data, numbers, delays(numbers.length, FAST_DELAY));    // rendered the last time it was played
+      }
+    }
+    return play(Pattern.GLISS, notes);
+  }
+
+  /**
+   * Get the cache of rendered glissandos (for its hit and miss counts).
+   *
+   * @return cache
    */
-  public void playGliss(ArrayList<Note> notes) {
-    play(notes, FAST_DELAY);
+  public static GlissCache getGlissCache() {
+    return GLISS_CACHE;
   }
 
   /**
@@ -182,34 +258,198 @@ public class NotePlayer {
    *
    * @param notes list of notes
    * @param speed delay in milliseconds between notes
+   * @return phrase that can be used to cancel the notes
    */
-  public void play(ArrayList<Note> notes, int speed) {
-    int delay = 0;
-    for (Note note : notes) {
-      playDelay(CLIPS[note.getNumber()], delay);
-      delay += speed;
+  public Phrase play(ArrayList<Note> notes, int speed) {
+    return schedule(noteNumbers(notes, getLowest(), getHighest()), speed);
+  }
+
+  /**
+   * Get where the sound of each string comes from.
+   *
+   * @return sound (always SAMPLED if the backend is not the mixer)
+   */
+  public HarpSound getSound() {
+    final PlaybackBackend b = backend;
+    return ((b == null) || (b instanceof MixerBackend)) ? sound : HarpSound.SAMPLED;
+  }
+
+  /**
+   * Set where the sound of each string comes from.
+   * The strings can only be synthesized by the mixer, so this is ignored 
+   * if the backend is not the mixer.
+   *
+   * @param sound sound
+   */
+  public void setSound(HarpSound sound) {
+    this.sound = sound;
+    final NoteMixer m = mixer;
+    if (m != null) {
+      m.setSound(sound);
     }
   }
 
   /**
-   * Play the given clip after the specified time delay.
+   * Use the impulse response in the given audio file for the reverb.
+   * The reverb is only available with the mixer, so this is ignored 
+   * if the backend is not the mixer.
    *
-   * @param clip clip
-   * @param delay delay in milliseconds
+   * @param file audio file, or null for no reverb
+   * @throws IOException if the file can't be read
+   * @throws UnsupportedAudioFileException if the file is not audio the AudioSystem understands
    */
-  private void playDelay(final Clip clip, int delay) {
-    java.util.Timer t = new java.util.Timer();
-    t.schedule(new TimerTask() {
-      @Override
-      public void run() {
-        if (clip.isRunning()) {
-          clip.stop();      // Stop the clip if it's already playing (repeated notes)
-          clip.flush();     // flush anything in the buffer
-        }
-        clip.setFramePosition(0); // rewind to the beginning
-        clip.start();
+  public void setReverb(File file) throws IOException, UnsupportedAudioFileException {
+    final NoteMixer m = mixer;
+    if (m != null) {
+      m.setReverb(file);
+    }
+  }
+
+  /**
+   * Set the level of the reverb (ignored if the backend is not the mixer).
+   *
+   * @param level level (1.0 is about as loud as the dry sound)
+   */
+  public void setReverbLevel(float level) {
+    final NoteMixer m = mixer;
+    if (m != null) {
+      m.setReverbLevel(level);
+    }
+  }
+
+  /**
+   * Determine if the open strings resonate with the notes that are played.
+   *
+   * @return true: on (always false if the backend is not the mixer)
+   */
+  public boolean isResonance() {
+    final PlaybackBackend b = backend;
+    return ((b == null) || (b instanceof MixerBackend)) && resonance;
+  }
+
+  /**
+   * Turn the sympathetic resonance of the open strings on or off
+   * (ignored if the backend is not the mixer).
+   *
+   * @param on true: on
+   */
+  public void setResonance(boolean on) {
+    resonance = on;
+    final NoteMixer m = mixer;
+    if (m != null) {
+      m.setResonance(on);
+    }
+  }
+
+  /**
+   * Set the pitches of the open strings for the sympathetic resonance
+   * (ignored if the backend is not the mixer).
+   *
+   * @param notes note number relative to A2 of each string
+   */
+  public void setOpenStrings(int[] notes) {
+    openStrings = notes;
+    final NoteMixer m = mixer;
+    if (m != null) {
+      m.setOpenStrings(notes);
+    }
+  }
+
+  /**
+   * Get the lowest note that can be played by the backend.
+   *
+   * @return note number relative to A2
+   */
+  public int getLowest() {
+    final PlaybackBackend b = backend;
+    return (b != null) ? b.getLowest() : 0;
+  }
+
+  /**
+   * Get the highest note that can be played by the backend.
+   *
+   * @return note number relative to A2
+   */
+  public int getHighest() {
+    final PlaybackBackend b = backend;
+    return (b != null) ? b.getHighest() : HarpSamples.SIZE - 1;
+  }
+
+  /**
+   * Get the notes of a chord starting at the given note.
+   *
+   * @param mask 12 bit mask (repeated for each octave)
+   * @param start starting note
+   * @param octaves number of octaves
+   * @param highest highest note that can be played
+   * @return note numbers relative to A2
+   */
+  static int[] chordNotes(int mask, int start, int octaves, int highest) {
+    ArrayList<Integer> list = new ArrayList<>();
+    for (int i = start; i < start + 12 * octaves; i++) {
+      if (i > highest) {    // just to make sure we don't go too far
+        break;
+      }
+      if ((mask & (MASK12 >> ((i - start) % 12))) != 0) {
+        list.add(i);
       }
-    }, delay);
+    }
+    return list.stream().mapToInt(Integer::intValue).toArray();
   }
 
+  /**
+   * Get the note numbers of the given notes, skipping notes the harp doesn't have.
+   *
+   * @param notes list of notes
+   * @param lowest lowest note that can be played
+   * @param highest highest note that can be played
+   * @return note numbers relative to A2
+   */
+  static int[] noteNumbers(ArrayList<Note> notes, int lowest, int highest) {
+    return notes.stream().mapToInt(Note::getNumber).filter(n -> (n >= lowest) && (n <= highest)).toArray();
+  }
+
+  /**
+   * Get the delays for notes played one after another.
+   *
+   * @param count number of notes
+   * @param speed delay in milliseconds between notes
+   * @return delay of each note in milliseconds
+   */
+  static int[] delays(int count, int speed) {
+    int[] delays = new int[count];
+    for (int i = 0; i < count; i++) {
+      delays[i] = i * speed;
+    }
+    return delays;
+  }
+
+  /**
+   * Schedule the given notes to play one after another on the backend.
+   *
+   * @param notes note numbers relative to A2
+   * @param speed delay in milliseconds between notes
+   * @return phrase that can be used to cancel the notes
+   */
+  private Phrase schedule(int[] notes, int speed) {
+    final PlaybackBackend b = backend;
+    if (b == null) {
+      return new Phrase(null, 0);     // nothing can play (yet)
+    }
+    return b.schedule(notes, delays(notes.length, speed));
+  }
+
+  /**
+   * Schedule the notes of a timeline on the backend.
+   *
+   * @param timeline timeline that starts now
+   * @return phrase that can be used to cancel the notes
+   */
+  private Phrase schedule(Timeline timeline) {
+    final PlaybackBackend b = backend;
+    if (b == null) {
+      return new Phrase(null, 0);     // nothing can play (yet)
+    }
+    return b.schedule(timeline);
+  }
 }
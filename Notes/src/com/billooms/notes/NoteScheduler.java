@@ -0,0 +1,225 @@
+package com.billooms.notes;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.function.IntToLongFunction;
+
+/**
+ * One shared thread that plays notes at scheduled times.
+ * Notes are kept in a priority queue ordered by time, so any number of
+ * phrases can be scheduled without making more threads.
+ * Notes that are due at the same time (within a millisecond) are played
+ * together and a note scheduled more than once for the same time is only
+ * played once.
+ * Each call to schedule returns a Phrase that can be used to cancel the
+ * notes that have not been played yet.
+ * The onset of every note is recorded in the OnsetStats and reported to the Transport.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class NoteScheduler {
+
+  /** Notes due within this many nanoseconds of each other are played together. */
+  private final static long COALESCE_NANOS = 1000000L;
+  /** Shared scheduler. */
+  private static NoteScheduler instance = null;
+
+  /** Scheduled notes ordered by time. */
+  private final PriorityQueue<NoteEvent> queue = new PriorityQueue<>();
+  /** Number of notes scheduled so far (keeps the order of notes with equal times). */
+  private long sequence = 0;
+
+  /**
+   * Get the shared scheduler (the thread is started the first time).
+   *
+   * @return shared scheduler
+   */
+  public static synchronized NoteScheduler getDefault() {
+    if (instance == null) {
+      instance = new NoteScheduler();
+    }
+    return instance;
+  }
+
+  /**
+   * Construct a new scheduler and start its thread.
+   */
+  private NoteScheduler() {
+    Thread thread = new Thread(this::run, "NoteScheduler");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MAX_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Schedule a phrase of notes.
+   * The player is called on the scheduler's thread, so it should return quickly.
+   *
+   * @param notes index of each note (passed to the player)
+   * @param delays delay of each note in milliseconds from now
+   * @param player called with the index when each note is due, returns the
+   * time the note will be heard (System.nanoTime, or -1 if it can't be found)
+   * @return phrase that can be used to cancel the notes
+   */
+  public Phrase schedule(int[] notes, int[] delays, IntToLongFunction player) {
+    final long now = System.nanoTime();
+    final Phrase phrase = new Phrase(this, notes.length);
+    synchronized (queue) {
+      for (int i = 0; i < notes.length; i++) {
+        queue.add(new NoteEvent(now + delays[i] * 1000000L, sequence++, notes[i], notes[i], player, phrase));
+      }
+      queue.notifyAll();
+    }
+    return phrase;
+  }
+
+  /**
+   * Schedule the notes of a timeline.
+   * The player is called with the index of the note in the timeline (so that
+   * it can find the velocity) on the scheduler's thread.
+   *
+   * @param timeline timeline that starts now
+   * @param player called with the index when each note is due, returns the
+   * time the note will be heard (System.nanoTime, or -1 if it can't be found)
+   * @return phrase that can be used to cancel the notes
+   */
+  public Phrase schedule(Timeline timeline, IntToLongFunction player) {
+    final long now = System.nanoTime();
+    final long[] nanos = timeline.getNanos();
+    final Phrase phrase = new Phrase(this, nanos.length);
+    synchronized (queue) {
+      for (int i = 0; i < nanos.length; i++) {
+        queue.add(new NoteEvent(now + nanos[i], sequence++, timeline.notes[i], i, player, phrase));
+      }
+      queue.notifyAll();
+    }
+    return phrase;
+  }
+
+  /**
+   * Remove all notes of the given phrase from the queue.
+   *
+   * @param phrase phrase
+   */
+  void remove(Phrase phrase) {
+    synchronized (queue) {
+      queue.removeIf(e -> e.phrase == phrase);
+    }
+  }
+
+  /**
+   * Play notes as they come due.
+   */
+  private void run() {
+    final ArrayList<NoteEvent> batch = new ArrayList<>();
+    final OnsetStats stats = OnsetStats.getDefault();
+    final Transport transport = Transport.getDefault();
+    try {
+      while (true) {
+        synchronized (queue) {
+          while (queue.isEmpty()) {
+            queue.wait();
+          }
+          long wait = queue.peek().time - System.nanoTime();
+          if (wait > 0) {
+            queue.wait(wait / 1000000L, (int) (wait % 1000000L));
+            continue;       // something may have been added or removed
+          }
+          final long due = queue.peek().time + COALESCE_NANOS;
+          while (!queue.isEmpty() && (queue.peek().time <= due)) {
+            batch.add(queue.poll());
+          }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+          NoteEvent e = batch.get(i);
+          if (e.phrase.played() && !isDuplicate(batch, i)) {
+            final long dispatched = System.nanoTime();
+            final long heard = e.player.applyAsLong(e.arg);
+            stats.record(e.phrase.getId(), e.note, e.time, dispatched, heard);
+            transport.onset(e.phrase, e.note);
+          }
+        }
+        batch.clear();
+      }
+    } catch (InterruptedException ex) {
+      // the thread is only stopped when the application exits
+    }
+  }
+
+  /**
+   * Determine if the same note for the same player is earlier in the batch.
+   *
+   * @param batch notes that are due together
+   * @param i index in the batch
+   * @return true: the note was already played
+   */
+  private static boolean isDuplicate(ArrayList<NoteEvent> batch, int i) {
+    NoteEvent e = batch.get(i);
+    for (int j = 0; j < i; j++) {
+      NoteEvent other = batch.get(j);
+      if ((other.note == e.note) && (other.player == e.player) && !other.phrase.isCancelled()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A note scheduled for a given time.
+   */
+  private static class NoteEvent implements Comparable<NoteEvent> {
+
+    /** Time the note is due (System.nanoTime). */
+    private final long time;
+    /** Order in which the note was scheduled. */
+    private final long sequence;
+    /** Note number (for the OnsetStats and the Transport). */
+    private final int note;
+    /** Passed to the player. */
+    private final int arg;
+    /** Called to play the note. */
+    private final IntToLongFunction player;
+    /** Phrase the note belongs to. */
+    private final Phrase phrase;
+
+    /**
+     * Construct a new event.
+     *
+     * @param time time the note is due
+     * @param sequence order in which the note was scheduled
+     * @param note note number
+     * @param arg passed to the player
+     * @param player called to play the note
+     * @param phrase phrase the note belongs to
+     */
+    private NoteEvent(long time, long sequence, int note, int arg, IntToLongFunction player, Phrase phrase) {
+      this.time = time;
+      this.sequence = sequence;
+      this.note = note;
+      this.arg = arg;
+      this.player = player;
+      this.phrase = phrase;
+    }
+
+    @Override
+    public int compareTo(NoteEvent other) {
+      if (time != other.time) {
+        return Long.compare(time, other.time);
+      }
+      return Long.compare(sequence, other.sequence);
+    }
+  }
+}
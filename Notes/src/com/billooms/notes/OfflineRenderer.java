@@ -0,0 +1,314 @@
+package com.billooms.notes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Renders notes to WAV files as fast as they can be mixed (no line is needed).
+ * The notes are the same ones that NotePlayer plays, mixed by a MixEngine at
+ * the exact frame of each note and streamed to the file through a buffer.
+ * Files can be added as jobs and rendered in parallel -- each job has its own
+ * engine, so the jobs share nothing but the samples.
+ * Jobs should all be added from the same thread.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class OfflineRenderer {
+
+  /** Seconds that the notes can ring after the last note starts before they are faded out. */
+  private final static int TAIL_SECONDS = 4;
+  /** Size of a WAV header. */
+  private final static int WAV_HEADER = 44;
+  /** Size of the buffer for writing to the file. */
+  private final static int BUFFER_SIZE = 64 * 1024;
+
+  /** Where the sound of each string comes from. */
+  private final HarpSound sound;
+  /** Files waiting to be rendered. */
+  private final ArrayList<Job> jobs = new ArrayList<>();
+
+  /**
+   * Construct a new renderer.
+   *
+   * @param sound where the sound of each string comes from
+   */
+  public OfflineRenderer(HarpSound sound) {
+    this.sound = sound;
+  }
+
+  /**
+   * Add a file with the chord with the given mask starting at the given note
+   * (same as NotePlayer.play).
+   *
+   * @param file WAV file to write
+   * @param mask 12 bit mask
+   * @param start starting note
+   */
+  public void add(File file, int mask, int start) {
+    int[] notes = NotePlayer.chordNotes(mask, start, 1, HarpSamples.HIGHEST);
+    add(file, notes, NotePlayer.delays(notes.length, NotePlayer.SLOW_DELAY));
+  }
+
+  /**
+   * Add a file with two octaves of the chord with the given mask starting at
+   * the given note (same as NotePlayer.play2).
+   *
+   * @param file WAV file to write
+   * @param mask 12 bit mask which is repeated (two octaves played)
+   * @param start starting note
+   */
+  public void add2(File file, int mask, int start) {
+    int[] notes = NotePlayer.chordNotes(mask, start, 2, HarpSamples.HIGHEST);
+    add(file, notes, NotePlayer.delays(notes.length, NotePlayer.SLOW_DELAY));
+  }
+
+  /**
+   * Add a file with a glissando of the given notes (same as NotePlayer.playGliss).
+   *
+   * @param file WAV file to write
+   * @param notes list of notes
+   */
+  public void addGliss(File file, ArrayList<Note> notes) {
+    add(file, notes, NotePlayer.FAST_DELAY);
+  }
+
+  /**
+   * Add a file with the given notes played one after another (same as NotePlayer.play).
+   *
+   * @param file WAV file to write
+   * @param notes list of notes
+   * @param speed delay in milliseconds between notes
+   */
+  public void add(File file, ArrayList<Note> notes, int speed) {
+    int[] numbers = NotePlayer.noteNumbers(notes, HarpSamples.LOWEST, HarpSamples.HIGHEST);
+    add(file, numbers, NotePlayer.delays(numbers.length, speed));
+  }
+
+  /**
+   * Add a file with the given notes.
+   *
+   * @param file WAV file to write
+   * @param notes note number relative to A2 for each note
+   * @param delays delay of each note in milliseconds
+   */
+  public void add(File file, int[] notes, int[] delays) {
+    jobs.add(new Job(file, notes.clone(), delays.clone()));
+  }
+
+  /**
+   * Get the number of files waiting to be rendered.
+   *
+   * @return number of files
+   */
+  public int size() {
+    return jobs.size();
+  }
+
+  /**
+   * Render all of the files that were added (in parallel) and clear the list.
+   *
+   * @throws IOException if a file can't be written
+   */
+  public void renderAll() throws IOException {
+    ArrayList<Job> todo = new ArrayList<>(jobs);
+    jobs.clear();
+    try {
+      todo.parallelStream().forEach(job -> {
+        try {
+          render(job.file, job.notes, job.delays);
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+      });
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  /**
+   * Render the given notes to a WAV file.
+   * This waits for the samples to be read if they are needed.
+   *
+   * @param file WAV file to write
+   * @param notes note number relative to A2 for each note
+   * @param delays delay of each note in milliseconds
+   * @throws IOException if the file can't be written
+   */
+  public void render(File file, int[] notes, int[] delays) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    try (FileChannel channel = FileChannel.open(file.toPath(), 
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      channel.position(WAV_HEADER);
+      final long frames = mix(notes, delays, sound, block -> {
+        if (buffer.remaining() < block.length) {
+          write(channel, buffer);
+        }
+        buffer.put(block);
+      });
+      write(channel, buffer);
+      buffer.put(header(frames));
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, WAV_HEADER - buffer.remaining());
+      }
+    }
+  }
+
+  /**
+   * Render the given notes into memory.
+   * This waits for the samples to be read if they are needed.
+   *
+   * @param notes note number relative to A2 for each note
+   * @param delays delay of each note in milliseconds
+   * @param sound where the sound of each string comes from
+   * @return interleaved stereo 16 bit buffer
+   */
+  static ShortBuffer render(int[] notes, int[] delays, HarpSound sound) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      mix(notes, delays, sound, block -> bytes.write(block, 0, block.length));
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);    // can't happen in memory
+    }
+    return ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+  }
+
+  /**
+   * Mix the given notes block by block until they have all rung out.
+   * Notes that are still ringing TAIL_SECONDS after the last note starts are faded out.
+   *
+   * @param notes note number relative to A2 for each note
+   * @param delays delay of each note in milliseconds
+   * @param sound where the sound of each string comes from
+   * @param writer gets each block of 16 bit stereo little-endian frames
+   * @return number of frames
+   * @throws IOException if the writer fails
+   */
+  private static long mix(int[] notes, int[] delays, HarpSound sound, BlockWriter writer) throws IOException {
+    if (sound == HarpSound.SAMPLED) {
+      HarpSamples.load();
+    }
+    final MixEngine engine = new MixEngine();
+    long last = 0;
+    for (int i = 0; i < notes.length; i++) {
+      long frame = NoteMixer.toFrames(delays[i]);
+      engine.add(new MixEvent(frame, i, notes[i], null, 0, 1.0f));
+      last = Math.max(last, frame);
+    }
+    final long fadeFrame = last + (long) (TAIL_SECONDS * HarpSamples.FRAME_RATE);
+    final byte[] out = new byte[4 * MixEngine.BLOCK];
+    long frames = 0;
+    boolean faded = false;
+    while (!engine.isIdle()) {
+      if (!faded && (engine.getFrame() >= fadeFrame)) {
+        engine.releaseAll();    // don't wait for the lowest strings to ring out
+        faded = true;
+      }
+      engine.render(out, sound);
+      frames += MixEngine.BLOCK;
+      writer.write(out);
+    }
+    return frames;
+  }
+
+  /**
+   * Write the buffer to the channel and clear it.
+   *
+   * @param channel file channel
+   * @param buffer buffer
+   * @throws IOException if the file can't be written
+   */
+  private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Make a WAV header for the given number of frames.
+   *
+   * @param frames number of frames
+   * @return header bytes
+   */
+  private static byte[] header(long frames) {
+    final int channels = NoteMixer.FORMAT.getChannels();
+    final int frameSize = NoteMixer.FORMAT.getFrameSize();
+    final int rate = (int) NoteMixer.FORMAT.getFrameRate();
+    final int dataSize = (int) (frames * frameSize);
+    ByteBuffer h = ByteBuffer.allocate(WAV_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+    h.put(new byte[]{'R', 'I', 'F', 'F'}).putInt(WAV_HEADER - 8 + dataSize);
+    h.put(new byte[]{'W', 'A', 'V', 'E'});
+    h.put(new byte[]{'f', 'm', 't', ' '}).putInt(16);
+    h.putShort((short) 1);                // PCM
+    h.putShort((short) channels);
+    h.putInt(rate);
+    h.putInt(rate * frameSize);           // bytes per second
+    h.putShort((short) frameSize);
+    h.putShort((short) NoteMixer.FORMAT.getSampleSizeInBits());
+    h.put(new byte[]{'d', 'a', 't', 'a'}).putInt(dataSize);
+    return h.array();
+  }
+
+  /**
+   * Gets each block of mixed frames.
+   */
+  private interface BlockWriter {
+
+    /**
+     * Take a block (it is reused for the next block).
+     *
+     * @param block 16 bit stereo little-endian frames
+     * @throws IOException if the block can't be written
+     */
+    void write(byte[] block) throws IOException;
+  }
+
+  /**
+   * A file waiting to be rendered.
+   */
+  private static class Job {
+
+    /** WAV file to write. */
+    private final File file;
+    /** Note number relative to A2 for each note. */
+    private final int[] notes;
+    /** Delay of each note in milliseconds. */
+    private final int[] delays;
+
+    /**
+     * Construct a new job.
+     *
+     * @param file WAV file to write
+     * @param notes note number relative to A2 for each note
+     * @param delays delay of each note in milliseconds
+     */
+    private Job(File file, int[] notes, int[] delays) {
+      this.file = file;
+      this.notes = notes;
+      this.delays = delays;
+    }
+  }
+}
@@ -0,0 +1,534 @@
+package com.billooms.notes;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timing of every note onset, so that drift from the intended spacing
+ * (such as NotePlayer's SLOW_DELAY and FAST_DELAY) shows up as numbers.
+ * For each note the backend records when it was scheduled to start, when it
+ * was started (mixed, or sent to a clip or the synthesizer) and when it will
+ * be heard. The time it will be heard is found from the position of the
+ * output line or clip and the frames waiting ahead of the note, so the
+ * latency is the output latency and the jitter is the spacing that is heard.
+ * The records are kept in a lock-free ring buffer: writers never wait (the
+ * render and scheduler threads can't afford to) and a reader simply skips a
+ * record that is being overwritten while it is read.
+ * Latency and jitter histograms are built from the ring when they are asked for.
+ * A glissando played from the GlissCache is one pre-rendered buffer, so its
+ * notes are not recorded.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class OnsetStats {
+
+  /** Number of records kept in the ring (a power of 2). */
+  public final static int CAPACITY = 4096;
+  /** Mask to find a record's slot in the ring. */
+  private final static int MASK = CAPACITY - 1;
+  /** Number of values in each record. */
+  private final static int FIELDS = 5;
+  /** Width of a latency histogram bin in microseconds (output latency is tens of milliseconds). */
+  private final static long LATENCY_BIN = 5000;
+  /** Bins of the latency histogram below 0 (a note can be a little early). */
+  private final static int LATENCY_NEGATIVE = 1;
+  /** Width of a jitter histogram bin in microseconds. */
+  private final static long JITTER_BIN = 100;
+  /** Bins of the jitter histogram below 0 (the jitter is centered on 0). */
+  private final static int JITTER_NEGATIVE = 20;
+  /** Number of bins in each histogram. */
+  private final static int BINS = 40;
+  /** Shared statistics. */
+  private final static OnsetStats INSTANCE = new OnsetStats();
+
+  /** Sequence number of the next record. */
+  private final AtomicLong next = new AtomicLong();
+  /** Sequence number of the first record after the last clear. */
+  private volatile long first = 0;
+  /** Sequence number + 1 of the record in each slot (0 while it is being written). */
+  private final AtomicLongArray stamps = new AtomicLongArray(CAPACITY);
+  /** Values of each record: phrase, note, scheduled, dispatched, heard. */
+  private final AtomicLongArray values = new AtomicLongArray(CAPACITY * FIELDS);
+
+  /**
+   * Get the shared statistics that every backend records into.
+   *
+   * @return shared statistics
+   */
+  public static OnsetStats getDefault() {
+    return INSTANCE;
+  }
+
+  /**
+   * Record the onset of one note.
+   * This never blocks, so it may be called from the render thread.
+   *
+   * @param phrase id of the phrase the note belongs to (-1 if none)
+   * @param note note number relative to A2
+   * @param scheduled time the note should have started (System.nanoTime)
+   * @param dispatched time the note was started (System.nanoTime)
+   * @param heard time the note will be heard from the output (System.nanoTime, 
+   * or -1 if it can't be found)
+   */
+  void record(long phrase, int note, long scheduled, long dispatched, long heard) {
+    final long seq = next.getAndIncrement();
+    final int slot = (int) (seq & MASK);
+    final int base = slot * FIELDS;
+    stamps.set(slot, 0);
+    values.set(base, phrase);
+    values.set(base + 1, note);
+    values.set(base + 2, scheduled);
+    values.set(base + 3, dispatched);
+    values.set(base + 4, heard);
+    stamps.set(slot, seq + 1);
+  }
+
+  /**
+   * Forget every record made so far.
+   */
+  public void clear() {
+    first = next.get();
+  }
+
+  /**
+   * Get the number of notes recorded since the last clear.
+   * Only the last CAPACITY of them are still in the ring.
+   *
+   * @return number of notes
+   */
+  public long getCount() {
+    return next.get() - first;
+  }
+
+  /**
+   * Get the records that are in the ring, oldest first.
+   *
+   * @return list of onsets
+   */
+  public ArrayList<Onset> getOnsets() {
+    final long end = next.get();
+    final long start = Math.max(first, end - CAPACITY);
+    final ArrayList<Onset> list = new ArrayList<>((int) (end - start));
+    for (long seq = start; seq < end; seq++) {
+      final int slot = (int) (seq & MASK);
+      final int base = slot * FIELDS;
+      final long stamp = stamps.get(slot);
+      if (stamp != seq + 1) {
+        continue;     // still being written, or already overwritten
+      }
+      Onset onset = new Onset(values.get(base), (int) values.get(base + 1), values.get(base + 2),
+          values.get(base + 3), values.get(base + 4));
+      if (stamps.get(slot) == stamp) {
+        list.add(onset);
+      }
+    }
+    return list;
+  }
+
+  /**
+   * Get the statistics of each phrase that is in the ring, oldest first.
+   *
+   * @return list of phrase statistics
+   */
+  public ArrayList<PhraseStats> getPhrases() {
+    final LinkedHashMap<Long, PhraseStats> map = new LinkedHashMap<>();
+    for (Onset onset : getOnsets()) {
+      PhraseStats stats = map.get(onset.phrase);
+      if (stats == null) {
+        stats = new PhraseStats(onset.phrase);
+        map.put(onset.phrase, stats);
+      }
+      stats.add(onset);
+    }
+    return new ArrayList<>(map.values());
+  }
+
+  /**
+   * Get a histogram of the latency of every note in the ring.
+   *
+   * @return latency histogram
+   */
+  public Histogram getLatency() {
+    final Histogram h = new Histogram(LATENCY_BIN, LATENCY_NEGATIVE);
+    for (PhraseStats stats : getPhrases()) {
+      h.add(stats.latency);
+    }
+    return h;
+  }
+
+  /**
+   * Get a histogram of the jitter of every note in the ring.
+   *
+   * @return jitter histogram
+   */
+  public Histogram getJitter() {
+    final Histogram h = new Histogram(JITTER_BIN, JITTER_NEGATIVE);
+    for (PhraseStats stats : getPhrases()) {
+      h.add(stats.jitter);
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    final ArrayList<PhraseStats> phrases = getPhrases();
+    final Histogram latency = new Histogram(LATENCY_BIN, LATENCY_NEGATIVE);
+    final Histogram jitter = new Histogram(JITTER_BIN, JITTER_NEGATIVE);
+    for (PhraseStats stats : phrases) {
+      latency.add(stats.latency);
+      jitter.add(stats.jitter);
+    }
+    return String.format("%d notes in %d phrases, latency %s, jitter %s",
+        latency.getCount(), phrases.size(), latency, jitter);
+  }
+
+  /**
+   * Timing of one note.
+   */
+  public static class Onset {
+
+    /** Id of the phrase the note belongs to (-1 if none). */
+    private final long phrase;
+    /** Note number relative to A2. */
+    private final int note;
+    /** Time the note should have started (System.nanoTime). */
+    private final long scheduled;
+    /** Time the note was started (System.nanoTime). */
+    private final long dispatched;
+    /** Time the note will be heard (System.nanoTime, -1 if not known). */
+    private final long heard;
+
+    /**
+     * Construct a new onset.
+     *
+     * @param phrase id of the phrase
+     * @param note note number relative to A2
+     * @param scheduled time the note should have started
+     * @param dispatched time the note was started
+     * @param heard time the note will be heard (-1 if not known)
+     */
+    private Onset(long phrase, int note, long scheduled, long dispatched, long heard) {
+      this.phrase = phrase;
+      this.note = note;
+      this.scheduled = scheduled;
+      this.dispatched = dispatched;
+      this.heard = heard;
+    }
+
+    /**
+     * Get the id of the phrase the note belongs to.
+     *
+     * @return phrase id (-1 if none)
+     */
+    public long getPhrase() {
+      return phrase;
+    }
+
+    /**
+     * Get the note number.
+     *
+     * @return note number relative to A2
+     */
+    public int getNote() {
+      return note;
+    }
+
+    /**
+     * Get the time the note should have started.
+     *
+     * @return System.nanoTime
+     */
+    public long getScheduled() {
+      return scheduled;
+    }
+
+    /**
+     * Get the time the note was started.
+     *
+     * @return System.nanoTime
+     */
+    public long getDispatched() {
+      return dispatched;
+    }
+
+    /**
+     * Get the time the note will be heard from the output.
+     *
+     * @return System.nanoTime (-1 if it can't be found)
+     */
+    public long getHeard() {
+      return heard;
+    }
+
+    /**
+     * Get the time the note is heard, or the time it was started if that
+     * can't be found.
+     *
+     * @return System.nanoTime
+     */
+    private long getOnset() {
+      return (heard >= 0) ? heard : dispatched;
+    }
+
+    /**
+     * Get the time from when the note should have started until it is heard
+     * (or until it was started if the time it is heard can't be found).
+     *
+     * @return latency in microseconds (negative if it was early)
+     */
+    public long getLatency() {
+      return (getOnset() - scheduled) / 1000;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("phrase %d note %d latency %d us", phrase, note, getLatency());
+    }
+  }
+
+  /**
+   * Latency and jitter of the notes of one phrase.
+   * The jitter of a note is how far its spacing from the previous note of the
+   * phrase differs from the intended spacing. The spacing is measured between
+   * the times the notes are heard (or started, if that can't be found for both).
+   */
+  public static class PhraseStats {
+
+    /** Id of the phrase. */
+    private final long phrase;
+    /** Latency of each note. */
+    private final Histogram latency = new Histogram(LATENCY_BIN, LATENCY_NEGATIVE);
+    /** Jitter of each note after the first. */
+    private final Histogram jitter = new Histogram(JITTER_BIN, JITTER_NEGATIVE);
+    /** Previous note of the phrase (null before the first). */
+    private Onset previous = null;
+
+    /**
+     * Construct statistics for a phrase.
+     *
+     * @param phrase id of the phrase
+     */
+    private PhraseStats(long phrase) {
+      this.phrase = phrase;
+    }
+
+    /**
+     * Add the next note of the phrase.
+     *
+     * @param onset note
+     */
+    private void add(Onset onset) {
+      latency.add(onset.getLatency());
+      if (previous != null) {
+        final long intended = onset.scheduled - previous.scheduled;
+        final long actual = ((onset.heard >= 0) && (previous.heard >= 0))
+            ? onset.heard - previous.heard : onset.dispatched - previous.dispatched;
+        jitter.add((actual - intended) / 1000);
+      }
+      previous = onset;
+    }
+
+    /**
+     * Get the id of the phrase.
+     *
+     * @return phrase id (-1 for notes without a phrase)
+     */
+    public long getPhrase() {
+      return phrase;
+    }
+
+    /**
+     * Get the latency histogram.
+     *
+     * @return latency of each note in microseconds
+     */
+    public Histogram getLatency() {
+      return latency;
+    }
+
+    /**
+     * Get the jitter histogram.
+     *
+     * @return jitter of each note after the first in microseconds
+     */
+    public Histogram getJitter() {
+      return jitter;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("phrase %d: %d notes, latency %s, jitter %s", phrase, latency.getCount(), latency, jitter);
+    }
+  }
+
+  /**
+   * Histogram of times in microseconds with bins of equal width.
+   * Values beyond the end bins are counted in the end bins, but the mean and
+   * the extremes are exact.
+   */
+  public static class Histogram {
+
+    /** Width of each bin in microseconds. */
+    private final long width;
+    /** Number of bins below 0. */
+    private final int negative;
+    /** Number of values in each bin. */
+    private final int[] counts = new int[BINS];
+    /** Number of values. */
+    private int count = 0;
+    /** Sum of the values. */
+    private long sum = 0;
+    /** Smallest value. */
+    private long min = Long.MAX_VALUE;
+    /** Largest value. */
+    private long max = Long.MIN_VALUE;
+
+    /**
+     * Construct an empty histogram.
+     *
+     * @param width width of each bin in microseconds
+     * @param negative number of bins below 0
+     */
+    private Histogram(long width, int negative) {
+      this.width = width;
+      this.negative = negative;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param usec value in microseconds
+     */
+    private void add(long usec) {
+      final long bin = Math.floorDiv(usec, width) + negative;
+      counts[(int) Math.max(0, Math.min(BINS - 1, bin))]++;
+      count++;
+      sum += usec;
+      min = Math.min(min, usec);
+      max = Math.max(max, usec);
+    }
+
+    /**
+     * Add every value of another histogram with the same bins.
+     *
+     * @param other other histogram
+     */
+    private void add(Histogram other) {
+      for (int i = 0; i < BINS; i++) {
+        counts[i] += other.counts[i];
+      }
+      count += other.count;
+      sum += other.sum;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+    }
+
+    /**
+     * Get the number of values.
+     *
+     * @return count
+     */
+    public int getCount() {
+      return count;
+    }
+
+    /**
+     * Get the width of each bin.
+     *
+     * @return width in microseconds
+     */
+    public long getWidth() {
+      return width;
+    }
+
+    /**
+     * Get the number of values in each bin.
+     * Bin i counts the values from getBinStart(i) up to the next bin.
+     *
+     * @return copy of the counts
+     */
+    public int[] getCounts() {
+      return counts.clone();
+    }
+
+    /**
+     * Get the lowest value of the given bin.
+     *
+     * @param i bin
+     * @return value in microseconds
+     */
+    public long getBinStart(int i) {
+      return (i - negative) * width;
+    }
+
+    /**
+     * Get the mean value.
+     *
+     * @return mean in microseconds (0 if there are no values)
+     */
+    public long getMean() {
+      return (count == 0) ? 0 : sum / count;
+    }
+
+    /**
+     * Get the smallest value.
+     *
+     * @return value in microseconds (0 if there are no values)
+     */
+    public long getMin() {
+      return (count == 0) ? 0 : min;
+    }
+
+    /**
+     * Get the largest value.
+     *
+     * @return value in microseconds (0 if there are no values)
+     */
+    public long getMax() {
+      return (count == 0) ? 0 : max;
+    }
+
+    /**
+     * Get the value that the given fraction of the values are below.
+     * This is the upper edge of the bin, so it is only as exact as the bin width.
+     *
+     * @param fraction fraction 0.0 to 1.0
+     * @return value in microseconds (0 if there are no values)
+     */
+    public long getPercentile(double fraction) {
+      if (count == 0) {
+        return 0;
+      }
+      final double target = fraction * count;
+      int seen = 0;
+      for (int i = 0; i < BINS; i++) {
+        seen += counts[i];
+        if ((seen >= target) && (i < BINS - 1)) {
+          return Math.min(getBinStart(i + 1), max);
+        }
+      }
+      return max;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("mean %.2f ms, 99%% %.2f ms, range %.2f to %.2f ms", getMean() / 1000.0,
+          getPercentile(0.99) / 1000.0, getMin() / 1000.0, getMax() / 1000.0);
+    }
+  }
+}
@@ -0,0 +1,497 @@
+package com.billooms.notes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * How the notes of a chord or glissando are played: direction, octaves,
+ * spacing (with accelerando or ritardando), repeats and arpeggio figures.
+ * A pattern is written as a string of words separated by spaces:
+ * <pre>
+ *   up | down | updown | downup   direction (default up)
+ *   oct=N                         play the notes in N octaves (default 1)
+ *   ms=N                          milliseconds between the first notes (default 50)
+ *   to=N                          milliseconds between the last notes (default the same as ms)
+ *   xN                            play the whole pattern N times (default 1)
+ *   fig=DIGITS                    play each group of notes in this order (such as 0213)
+ *   vel=F                         velocity where 1.0 is the normal level (default 1.0)
+ *   accent=F                      velocity factor for the first note of each group or repeat (default 1.0)
+ * </pre>
+ * Velocities are limited to MAX_VELOCITY.
+ * For example "updown oct=2 ms=60 to=30 x2" is a gliss up and back down twice
+ * that gets faster, and "up ms=20" is a rolled chord.
+ * A pattern is compiled for a set of notes into a Timeline, and the timelines
+ * of the most recently used patterns are cached.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class Pattern {
+
+  /** Slow arpeggio of one octave. */
+  public final static Pattern ARPEGGIO = parse("up ms=" + NotePlayer.SLOW_DELAY);
+  /** Slow arpeggio of two octaves. */
+  public final static Pattern ARPEGGIO2 = parse("up oct=2 ms=" + NotePlayer.SLOW_DELAY);
+  /** Glissando up. */
+  public final static Pattern GLISS = parse("up ms=" + NotePlayer.FAST_DELAY);
+  /** Rolled chord. */
+  public final static Pattern ROLL = parse("up ms=20");
+  /** Highest velocity (1.0 is the normal level). */
+  public final static float MAX_VELOCITY = 1.5f;
+  /** Number of timelines that are cached. */
+  private final static int CACHE_SIZE = 256;
+  /** Cache of compiled timelines, least recently used first. */
+  private final static LinkedHashMap<TimelineKey, Timeline> CACHE = new LinkedHashMap<TimelineKey, Timeline>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<TimelineKey, Timeline> eldest) {
+      return size() > CACHE_SIZE;
+    }
+  };
+
+  /**
+   * Directions that the notes can be played in.
+   */
+  public enum Direction {
+
+    UP("up"), DOWN("down"), UP_DOWN("updown"), DOWN_UP("downup");
+
+    /** Word used in a pattern string. */
+    private final String word;
+
+    /**
+     * Construct a direction.
+     *
+     * @param word word used in a pattern string
+     */
+    private Direction(String word) {
+      this.word = word;
+    }
+
+    @Override
+    public String toString() {
+      return word;
+    }
+  }
+
+  /** Direction. */
+  private final Direction direction;
+  /** Number of octaves. */
+  private final int octaves;
+  /** Milliseconds between the first notes. */
+  private final double spacing;
+  /** Milliseconds between the last notes. */
+  private final double endSpacing;
+  /** Number of times the pattern is played. */
+  private final int repeats;
+  /** Order of the notes in each group (empty for no figure). */
+  private final int[] figure;
+  /** Velocity (1.0 is the normal level). */
+  private final float velocity;
+  /** Velocity factor for the first note of each group or repeat. */
+  private final float accent;
+
+  /**
+   * Construct a new pattern.
+   *
+   * @param direction direction
+   * @param octaves number of octaves (at least 1)
+   * @param spacing milliseconds between the first notes
+   * @param endSpacing milliseconds between the last notes
+   * @param repeats number of times the pattern is played (at least 1)
+   * @param figure order of the notes in each group (empty for no figure)
+   * @param velocity velocity (1.0 is the normal level)
+   * @param accent velocity factor for the first note of each group or repeat
+   */
+  public Pattern(Direction direction, int octaves, double spacing, double endSpacing, 
+      int repeats, int[] figure, float velocity, float accent) {
+    this.direction = direction;
+    this.octaves = Math.max(1, octaves);
+    this.spacing = Math.max(0.0, spacing);
+    this.endSpacing = Math.max(0.0, endSpacing);
+    this.repeats = Math.max(1, repeats);
+    this.figure = figure.clone();
+    this.velocity = Math.max(0.0f, Math.min(MAX_VELOCITY, velocity));
+    this.accent = Math.max(0.0f, accent);
+  }
+
+  /**
+   * Make a pattern from a pattern string.
+   *
+   * @param text pattern string such as "updown oct=2 ms=60 to=30 x2"
+   * @return new pattern
+   * @throws IllegalArgumentException if a word is not understood
+   */
+  public static Pattern parse(String text) {
+    Direction direction = Direction.UP;
+    int octaves = 1;
+    double spacing = NotePlayer.FAST_DELAY;
+    double endSpacing = -1.0;
+    int repeats = 1;
+    int[] figure = new int[0];
+    float velocity = 1.0f;
+    float accent = 1.0f;
+    for (String word : text.trim().toLowerCase().split("\\s+")) {
+      if (word.isEmpty()) {
+        continue;
+      }
+      final int eq = word.indexOf('=');
+      final String value = word.substring(eq + 1);
+      try {
+        if (eq < 0) {
+          if (word.matches("x\\d+")) {
+            repeats = Integer.parseInt(word.substring(1));
+            continue;
+          }
+          direction = findDirection(word, text);
+          continue;
+        }
+        switch (word.substring(0, eq)) {
+          case "oct":
+            octaves = Integer.parseInt(value);
+            break;
+          case "ms":
+            spacing = Double.parseDouble(value);
+            break;
+          case "to":
+            endSpacing = Double.parseDouble(value);
+            break;
+          case "fig":
+            figure = parseFigure(value);
+            break;
+          case "vel":
+            velocity = Float.parseFloat(value);
+            break;
+          case "accent":
+            accent = Float.parseFloat(value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown word \"" + word + "\" in pattern \"" + text + "\"");
+        }
+      } catch (NumberFormatException ex) {
+        throw new IllegalArgumentException("Bad number in \"" + word + "\" in pattern \"" + text + "\"", ex);
+      }
+    }
+    return new Pattern(direction, octaves, spacing, (endSpacing < 0.0) ? spacing : endSpacing, 
+        repeats, figure, velocity, accent);
+  }
+
+  /**
+   * Find the direction for the given word.
+   *
+   * @param word word
+   * @param text whole pattern string (for the error message)
+   * @return direction
+   * @throws IllegalArgumentException if it is not a direction
+   */
+  private static Direction findDirection(String word, String text) {
+    for (Direction d : Direction.values()) {
+      if (d.word.equals(word)) {
+        return d;
+      }
+    }
+    throw new IllegalArgumentException("Unknown word \"" + word + "\" in pattern \"" + text + "\"");
+  }
+
+  /**
+   * Parse a figure such as "0213".
+   * Every index from 0 up to the length of the figure must appear once.
+   *
+   * @param digits one digit for each note of the group
+   * @return order of the notes in each group
+   * @throws IllegalArgumentException if it is not a proper figure
+   */
+  private static int[] parseFigure(String digits) {
+    final int[] figure = new int[digits.length()];
+    final boolean[] seen = new boolean[digits.length()];
+    for (int i = 0; i < figure.length; i++) {
+      figure[i] = Character.digit(digits.charAt(i), 10);
+      if ((figure[i] < 0) || (figure[i] >= figure.length) || seen[figure[i]]) {
+        throw new IllegalArgumentException("Figure \"" + digits + "\" must use each of 0 to " + (figure.length - 1) + " once");
+      }
+      seen[figure[i]] = true;
+    }
+    return figure;
+  }
+
+  /**
+   * Get the direction.
+   *
+   * @return direction
+   */
+  public Direction getDirection() {
+    return direction;
+  }
+
+  /**
+   * Get the number of octaves.
+   *
+   * @return number of octaves
+   */
+  public int getOctaves() {
+    return octaves;
+  }
+
+  /**
+   * Get the number of times the pattern is played.
+   *
+   * @return number of repeats
+   */
+  public int getRepeats() {
+    return repeats;
+  }
+
+  /**
+   * Compile the pattern for the given notes.
+   * The notes are repeated an octave higher for each extra octave and notes
+   * outside of lowest through highest are skipped.
+   * The timeline is cached, so compiling the same pattern for the same notes
+   * again returns the same timeline.
+   *
+   * @param notes note numbers relative to A2 in the order they are played going up
+   * @param lowest lowest note that can be played
+   * @param highest highest note that can be played
+   * @return timeline
+   */
+  public Timeline compile(int[] notes, int lowest, int highest) {
+    final TimelineKey key = new TimelineKey(this, notes, lowest, highest);
+    synchronized (CACHE) {
+      Timeline timeline = CACHE.get(key);
+      if (timeline != null) {
+        return timeline;
+      }
+    }
+    final Timeline timeline = build(notes, lowest, highest);
+    synchronized (CACHE) {
+      CACHE.put(key, timeline);
+    }
+    return timeline;
+  }
+
+  /**
+   * Build the timeline for the given notes.
+   *
+   * @param notes note numbers relative to A2 in the order they are played going up
+   * @param lowest lowest note that can be played
+   * @param highest highest note that can be played
+   * @return new timeline
+   */
+  private Timeline build(int[] notes, int lowest, int highest) {
+    // the notes of every octave going up
+    final ArrayList<Integer> upList = new ArrayList<>();
+    for (int oct = 0; oct < octaves; oct++) {
+      for (int n : notes) {
+        if ((n + 12 * oct >= lowest) && (n + 12 * oct <= highest)) {
+          upList.add(n + 12 * oct);
+        }
+      }
+    }
+    final int[] up = upList.stream().mapToInt(Integer::intValue).toArray();
+    final int[] down = reverse(up);
+    // one pass in the pattern's direction, with the figure applied
+    final ArrayList<Integer> pass = new ArrayList<>();
+    final ArrayList<Boolean> groupStart = new ArrayList<>();
+    switch (direction) {
+      case DOWN:
+        addFigured(pass, groupStart, down);
+        break;
+      case UP_DOWN:
+        addFigured(pass, groupStart, up);
+        addFigured(pass, groupStart, Arrays.copyOfRange(down, Math.min(1, down.length), down.length));
+        break;
+      case DOWN_UP:
+        addFigured(pass, groupStart, down);
+        addFigured(pass, groupStart, Arrays.copyOfRange(up, Math.min(1, up.length), up.length));
+        break;
+      case UP:
+      default:
+        addFigured(pass, groupStart, up);
+        break;
+    }
+    // there and back again ends where it starts, so the repeats don't play that note twice
+    final boolean joined = (direction == Direction.UP_DOWN) || (direction == Direction.DOWN_UP);
+    final int skip = (joined && (pass.size() > 1)) ? 1 : 0;
+    final int size = pass.isEmpty() ? 0 : pass.size() + (repeats - 1) * (pass.size() - skip);
+    final long[] frames = new long[size];
+    final int[] out = new int[size];
+    final float[] velocities = new float[size];
+    int k = 0;
+    for (int r = 0; r < repeats; r++) {
+      final int first = (r == 0) ? 0 : skip;
+      for (int j = first; j < pass.size(); j++) {
+        out[k] = pass.get(j);
+        velocities[k] = (groupStart.get(j) || (j == first)) ? Math.min(MAX_VELOCITY, velocity * accent) : velocity;
+        k++;
+      }
+    }
+    // spacing changes smoothly (geometrically) from the first to the last gap
+    double ms = 0.0;
+    for (int i = 0; i < size; i++) {
+      frames[i] = Math.round(ms * HarpSamples.FRAME_RATE / 1000.0);
+      final double t = (size > 2) ? i / (double) (size - 2) : 0.0;
+      ms += (spacing > 0.0) ? spacing * Math.pow(endSpacing / spacing, t) : endSpacing * t;
+    }
+    return new Timeline(frames, out, velocities);
+  }
+
+  /**
+   * Add the given notes in groups ordered by the figure.
+   * The last group may be short, and then only the figure's indexes that fit are used.
+   *
+   * @param pass where the notes are added
+   * @param groupStart true is added for the first note of each group
+   * @param notes notes in order
+   */
+  private void addFigured(ArrayList<Integer> pass, ArrayList<Boolean> groupStart, int[] notes) {
+    if (figure.length == 0) {
+      for (int n : notes) {
+        pass.add(n);
+        groupStart.add(false);
+      }
+      return;
+    }
+    for (int g = 0; g < notes.length; g += figure.length) {
+      final int count = Math.min(figure.length, notes.length - g);
+      boolean first = true;
+      for (int f : figure) {
+        if (f < count) {
+          pass.add(notes[g + f]);
+          groupStart.add(first);
+          first = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * Make a reversed copy of an array.
+   *
+   * @param a array
+   * @return reversed copy
+   */
+  private static int[] reverse(int[] a) {
+    final int[] r = new int[a.length];
+    for (int i = 0; i < a.length; i++) {
+      r[i] = a[a.length - 1 - i];
+    }
+    return r;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Pattern)) {
+      return false;
+    }
+    final Pattern other = (Pattern) obj;
+    return (direction == other.direction) && (octaves == other.octaves) && (spacing == other.spacing)
+        && (endSpacing == other.endSpacing) && (repeats == other.repeats) && Arrays.equals(figure, other.figure)
+        && (velocity == other.velocity) && (accent == other.accent);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(direction, octaves, spacing, endSpacing, repeats, Arrays.hashCode(figure), velocity, accent);
+  }
+
+  /**
+   * Get the pattern string (which parse turns back into an equal pattern).
+   *
+   * @return pattern string
+   */
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder(direction.toString());
+    if (octaves != 1) {
+      sb.append(" oct=").append(octaves);
+    }
+    sb.append(" ms=").append(format(spacing));
+    if (endSpacing != spacing) {
+      sb.append(" to=").append(format(endSpacing));
+    }
+    if (repeats != 1) {
+      sb.append(" x").append(repeats);
+    }
+    if (figure.length > 0) {
+      sb.append(" fig=");
+      for (int f : figure) {
+        sb.append(f);
+      }
+    }
+    if (velocity != 1.0f) {
+      sb.append(" vel=").append(velocity);
+    }
+    if (accent != 1.0f) {
+      sb.append(" accent=").append(accent);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Format milliseconds without a needless ".0".
+   *
+   * @param ms milliseconds
+   * @return string
+   */
+  private static String format(double ms) {
+    return (ms == Math.rint(ms)) ? Long.toString((long) ms) : Double.toString(ms);
+  }
+
+  /**
+   * Identifies a compiled timeline.
+   */
+  private static class TimelineKey {
+
+    /** Pattern. */
+    private final Pattern pattern;
+    /** Notes the pattern was compiled for. */
+    private final int[] notes;
+    /** Lowest note that can be played. */
+    private final int lowest;
+    /** Highest note that can be played. */
+    private final int highest;
+
+    /**
+     * Construct a new key.
+     *
+     * @param pattern pattern
+     * @param notes notes the pattern is compiled for (copied)
+     * @param lowest lowest note that can be played
+     * @param highest highest note that can be played
+     */
+    private TimelineKey(Pattern pattern, int[] notes, int lowest, int highest) {
+      this.pattern = pattern;
+      this.notes = notes.clone();
+      this.lowest = lowest;
+      this.highest = highest;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof TimelineKey)) {
+        return false;
+      }
+      final TimelineKey other = (TimelineKey) obj;
+      return pattern.equals(other.pattern) && Arrays.equals(notes, other.notes)
+          && (lowest == other.lowest) && (highest == other.highest);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * (31 * pattern.hashCode() + Arrays.hashCode(notes)) + lowest) + highest;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package com.billooms.notes;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handle for a group of notes that were scheduled together (such as a
+ * glissando) so that the rest of it can be cancelled.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class Phrase {
+
+  /** Id of the next phrase. */
+  private final static AtomicLong NEXT_ID = new AtomicLong();
+
+  /** Id of the phrase (for the OnsetStats). */
+  private final long id = NEXT_ID.getAndIncrement();
+  /** Scheduler that holds the notes (null if the notes are dropped when they come due). */
+  private final NoteScheduler scheduler;
+  /** Number of notes that have not been played yet. */
+  private int pending;
+  /** True if the phrase was cancelled. */
+  private boolean cancelled = false;
+
+  /**
+   * Construct a new phrase.
+   *
+   * @param scheduler scheduler that holds the notes (may be null)
+   * @param pending number of notes in the phrase
+   */
+  Phrase(NoteScheduler scheduler, int pending) {
+    this.scheduler = scheduler;
+    this.pending = pending;
+  }
+
+  /**
+   * Get the id of the phrase.
+   * Each phrase gets the next number, starting at 0.
+   *
+   * @return id
+   */
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * Cancel all notes of the phrase that have not been played yet.
+   * Notes that are already sounding are not stopped.
+   */
+  public void cancel() {
+    synchronized (this) {
+      if (cancelled || (pending == 0)) {
+        return;
+      }
+      cancelled = true;
+      pending = 0;
+    }
+    if (scheduler != null) {
+      scheduler.remove(this);
+    }
+  }
+
+  /**
+   * Determine if the phrase was cancelled.
+   *
+   * @return true: cancelled
+   */
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Determine if there are no more notes to be played.
+   *
+   * @return true: all notes were played or the phrase was cancelled
+   */
+  public synchronized boolean isDone() {
+    return pending == 0;
+  }
+
+  /**
+   * Count one note as played.
+   *
+   * @return true: the note should be played (false if the phrase was cancelled)
+   */
+  synchronized boolean played() {
+    if (cancelled) {
+      return false;
+    }
+    pending--;
+    return true;
+  }
+
+  /**
+   * Count every note as played.
+   * This is used when the whole phrase was played as one pre-rendered buffer.
+   */
+  synchronized void finished() {
+    pending = 0;
+  }
+}
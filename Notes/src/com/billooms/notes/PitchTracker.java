@@ -0,0 +1,334 @@
+package com.billooms.notes;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the pitch of a single string with the YIN algorithm, for tuning.
+ * Each hop the newest SPAN_SECONDS of samples are compared with the samples
+ * from every period earlier (from the shortest to the longest period that is
+ * tracked), and the first period where the cumulative mean normalized
+ * difference dips below THRESHOLD is taken.
+ * The search stops at the bottom of the first dip, so high notes take much
+ * less work than low notes. Short periods are then measured again at a
+ * multiple of the period, so the pitch of high strings is as good (about a
+ * cent) as that of low strings.
+ * Only a span and a period of samples are needed, so a reading of a new note
+ * is ready in less than 30 ms (less for higher notes).
+ * Clear readings of the same note are smoothed with a time constant of
+ * SMOOTHING seconds, and a reading more than JUMP cents away starts again
+ * from the new pitch, so the first reading of a new note isn't held back.
+ * Strings below MIN_FREQ would need more samples than that, so they are not
+ * tracked reliably.
+ * Every buffer is allocated up front, so processing doesn't allocate anything.
+ *
+ * This is not thread safe -- samples should all be processed on the same thread.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class PitchTracker {
+
+  /** Length of the newest samples that are compared in seconds. */
+  private final static double SPAN_SECONDS = 0.0125;
+  /** Time between analyses in seconds. */
+  private final static double HOP_SECONDS = 0.004;
+  /** Most periods that a short period is measured over. */
+  private final static int MAX_MULTIPLE = 8;
+  /** Lowest frequency that is tracked (about C2). */
+  public final static double MIN_FREQ = 64.0;
+  /** Highest frequency that is tracked (above the harp's top string). */
+  public final static double MAX_FREQ = 4000.0;
+  /** A dip in the normalized difference below this is taken as the period. */
+  private final static float THRESHOLD = 0.15f;
+  /** Readings found less clearly than this aren't smoothed. */
+  private final static float CLEAR = 0.8f;
+  /** Time constant of the smoothing in seconds. */
+  private final static double SMOOTHING = 0.02;
+  /** Readings more than this many cents from the smoothed pitch start again. */
+  private final static double JUMP = 50.0;
+  /** Windows quieter than this (RMS) are taken as silence. */
+  private final static float SILENCE = 0.002f;
+
+  /** Samples per second of the input. */
+  private final float frameRate;
+  /** Number of samples in each analysis window (a span and the longest period). */
+  private final int window;
+  /** Number of samples between analyses. */
+  private final int hop;
+  /** Shortest period in samples. */
+  private final int minLag;
+  /** Longest period in samples. */
+  private final int maxLag;
+  /** Number of samples compared for each period. */
+  private final int span;
+  /** Ring of the most recent samples. */
+  private final float[] ring;
+  /** Next position to write in the ring. */
+  private int head = 0;
+  /** Number of samples since the last analysis. */
+  private int sinceHop = 0;
+  /** The window in order (oldest first). */
+  private final float[] x;
+  /** Cumulative mean normalized difference for each period. */
+  private final float[] diff;
+  /** Fraction of each new clear reading that is added to the smoothed pitch. */
+  private final float smoothing;
+  /** Largest ratio of a reading to the smoothed pitch that is smoothed. */
+  private final float jump;
+  /** Frequency of the most recent analysis (0 if no pitch was found). */
+  private float frequency = 0.0f;
+  /** Smoothed frequency of the clear readings (0 if none). */
+  private float smoothed = 0.0f;
+  /** How clearly the pitch was found (1 for a pure tone, 0 for none). */
+  private float clarity = 0.0f;
+
+  /**
+   * Construct a new tracker for input at the default frame rate.
+   */
+  public PitchTracker() {
+    this(HarpSamples.FRAME_RATE);
+  }
+
+  /**
+   * Construct a new tracker for input at the given rate.
+   *
+   * @param frameRate samples per second of the input
+   */
+  public PitchTracker(float frameRate) {
+    this.frameRate = frameRate;
+    hop = (int) Math.round(HOP_SECONDS * frameRate);
+    span = (int) Math.round(SPAN_SECONDS * frameRate);
+    minLag = Math.max(2, (int) Math.floor(frameRate / MAX_FREQ));
+    maxLag = (int) Math.ceil(frameRate / MIN_FREQ);
+    window = span + maxLag + 2;
+    smoothing = (float) (1.0 - Math.exp(-hop / (SMOOTHING * frameRate)));
+    jump = (float) Math.pow(2.0, JUMP / 1200.0);
+    ring = new float[window];
+    x = new float[window];
+    diff = new float[maxLag + 2];
+  }
+
+  /**
+   * Get the number of samples between analyses.
+   *
+   * @return number of samples
+   */
+  public int getHop() {
+    return hop;
+  }
+
+  /**
+   * Get the number of samples in each analysis window.
+   *
+   * @return number of samples
+   */
+  public int getWindow() {
+    return window;
+  }
+
+  /**
+   * Process samples of 16 bit signed little-endian mono audio.
+   *
+   * @param data audio bytes
+   * @param off offset of the first byte
+   * @param len number of bytes (a whole number of samples)
+   * @return number of analyses that were done
+   */
+  public int process(byte[] data, int off, int len) {
+    int n = 0;
+    for (int i = off; i + 1 < off + len; i += 2) {
+      if (add((short) ((data[i] & 0xFF) | (data[i + 1] << 8)) / 32768.0f)) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Process samples.
+   *
+   * @param samples samples from -1 to 1
+   * @param off offset of the first sample
+   * @param len number of samples
+   * @return number of analyses that were done
+   */
+  public int process(float[] samples, int off, int len) {
+    int n = 0;
+    for (int i = off; i < off + len; i++) {
+      if (add(samples[i])) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Get the frequency found by the most recent analysis (smoothed if it was
+   * found clearly).
+   *
+   * @return frequency in Hz (0 if no pitch was found)
+   */
+  public float getFrequency() {
+    return frequency;
+  }
+
+  /**
+   * Get how clearly the pitch was found by the most recent analysis.
+   *
+   * @return 1 for a pure tone down to 0 for no pitch
+   */
+  public float getClarity() {
+    return clarity;
+  }
+
+  /**
+   * Forget everything that was heard.
+   */
+  public void reset() {
+    Arrays.fill(ring, 0.0f);
+    head = 0;
+    sinceHop = 0;
+    frequency = 0.0f;
+    smoothed = 0.0f;
+    clarity = 0.0f;
+  }
+
+  /**
+   * Add one sample and analyze the window if a hop is finished.
+   *
+   * @param sample sample from -1 to 1
+   * @return true if the window was analyzed
+   */
+  private boolean add(float sample) {
+    ring[head] = sample;
+    head = (head + 1 == window) ? 0 : head + 1;
+    if (++sinceHop < hop) {
+      return false;
+    }
+    sinceHop = 0;
+    analyze();
+    return true;
+  }
+
+  /**
+   * Find the period of the window.
+   */
+  private void analyze() {
+    float energy = 0.0f;
+    for (int i = 0; i < window; i++) {
+      x[i] = ring[(head + i < window) ? head + i : head + i - window];   // oldest sample first
+      energy += x[i] * x[i];
+    }
+    if (energy < SILENCE * SILENCE * window) {
+      frequency = 0.0f;
+      smoothed = 0.0f;
+      clarity = 0.0f;
+      return;
+    }
+    float sum = 0.0f;
+    int best = -1;
+    diff[0] = 1.0f;
+    for (int lag = 1; lag <= maxLag + 1; lag++) {
+      final float d = difference(lag);
+      sum += d;
+      diff[lag] = (sum > 0.0f) ? d * lag / sum : 1.0f;
+      if ((lag > minLag + 1) && (diff[lag - 1] < THRESHOLD) && (diff[lag] >= diff[lag - 1])) {
+        best = lag - 1;     // bottom of the first dip below the threshold
+        break;
+      }
+    }
+    if (best < 0) {     // no clear dip: use the deepest one
+      best = minLag + 1;
+      for (int lag = minLag + 1; lag <= maxLag; lag++) {
+        if (diff[lag] < diff[best]) {
+          best = lag;
+        }
+      }
+    }
+    final float period = best + vertex(diff[best - 1], diff[best], diff[best + 1]);
+    clarity = Math.max(0.0f, 1.0f - diff[best]);
+    final int multiple = Math.max(1, Math.min(MAX_MULTIPLE, maxLag / (best + 1)));
+    if (multiple == 1) {
+      smooth(frameRate / period);
+      return;
+    }
+    // measure again at the bottom of the dip nearest the multiple of the period
+    int c = Math.max(minLag + 1, Math.min(maxLag, Math.round(multiple * period)));
+    float dl = difference(c - 1);
+    float dc = difference(c);
+    float dr = difference(c + 1);
+    for (int step = 0; (step < 2) && (dl < dc) && (c - 1 > minLag + 1); step++) {
+      c--;
+      dr = dc;
+      dc = dl;
+      dl = difference(c - 1);
+    }
+    for (int step = 0; (step < 2) && (dr < dc) && (c + 1 < maxLag); step++) {
+      c++;
+      dl = dc;
+      dc = dr;
+      dr = difference(c + 1);
+    }
+    smooth(frameRate * multiple / (c + vertex(dl, dc, dr)));
+  }
+
+  /**
+   * Smooth a new reading into the frequency.
+   *
+   * @param freq frequency of the new reading
+   */
+  private void smooth(float freq) {
+    if (clarity < CLEAR) {
+      frequency = freq;     // reported but not smoothed
+      return;
+    }
+    if ((smoothed <= 0.0f) || (freq > smoothed * jump) || (freq * jump < smoothed)) {
+      smoothed = freq;      // a new note
+    } else {
+      smoothed += smoothing * (freq - smoothed);
+    }
+    frequency = smoothed;
+  }
+
+  /**
+   * Find the squared difference between the newest span of samples and the
+   * samples the given number of samples earlier.
+   *
+   * @param lag number of samples earlier (at most maxLag + 1)
+   * @return sum of the squared differences
+   */
+  private float difference(int lag) {
+    float d = 0.0f;
+    for (int j = window - span; j < window; j++) {
+      final float delta = x[j] - x[j - lag];
+      d += delta * delta;
+    }
+    return d;
+  }
+
+  /**
+   * Find the bottom of the parabola through three values one sample apart.
+   *
+   * @param l value before
+   * @param c value in the middle
+   * @param r value after
+   * @return position of the bottom from the middle (from -0.5 to 0.5)
+   */
+  private static float vertex(float l, float c, float r) {
+    final float den = l - 2.0f * c + r;
+    final float shift = (den > 0.0f) ? 0.5f * (l - r) / den : 0.0f;
+    return Math.max(-0.5f, Math.min(0.5f, shift));
+  }
+}
@@ -0,0 +1,83 @@
+package com.billooms.notes;
+
+/**
+ * A way of playing notes.
+ * Backends are registered in the default Lookup with
+ * {@code @ServiceProvider(service = PlaybackBackend.class, position = ...)}.
+ * NotePlayer probes them in order of position and starts the first one
+ * whose latency is good enough (or else the one with the lowest latency).
+ * Every backend takes the same timed notes.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public interface PlaybackBackend {
+
+  /**
+   * Get the name to display.
+   *
+   * @return name
+   */
+  String getName();
+
+  /**
+   * Check that the backend can play on this system and measure its latency.
+   * This should not load anything that isn't needed to measure.
+   *
+   * @return latency in microseconds (or -1 if the backend can't play)
+   */
+  long probe();
+
+  /**
+   * Get ready to play (called once on the backend that was chosen).
+   */
+  void start();
+
+  /**
+   * Release anything that was opened by probe or start.
+   */
+  void close();
+
+  /**
+   * Get the lowest note that can be played.
+   *
+   * @return note number relative to A2
+   */
+  int getLowest();
+
+  /**
+   * Get the highest note that can be played.
+   *
+   * @return note number relative to A2
+   */
+  int getHighest();
+
+  /**
+   * Schedule a phrase of notes.
+   *
+   * @param notes note number relative to A2 for each note
+   * @param delays delay of each note in milliseconds
+   * @return phrase that can be used to cancel the notes
+   */
+  Phrase schedule(int[] notes, int[] delays);
+
+  /**
+   * Schedule the notes of a timeline (velocities are ignored by backends that can't vary them).
+   *
+   * @param timeline timeline that starts now
+   * @return phrase that can be used to cancel the notes
+   */
+  Phrase schedule(Timeline timeline);
+}
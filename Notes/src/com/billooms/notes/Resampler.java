@@ -0,0 +1,111 @@
+package com.billooms.notes;
+
+/**
+ * Band-limited polyphase filters for playing a sample at a different pitch.
+ * A sample is played up or down by a whole number of semitones by stepping
+ * through it at a fractional rate. Each output frame is a windowed-sinc 
+ * interpolation of TAPS input frames using the filter phase nearest to the
+ * fractional position. When the pitch goes up, the cutoff is lowered so that
+ * nothing above the output Nyquist frequency is folded back (aliased).
+ * The filter tables for every shift that can be needed are computed once.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class Resampler {
+
+  /** Number of input frames used for each output frame. */
+  final static int TAPS = 16;
+  /** Number of bits of the fractional position used to choose the phase. */
+  final static int PHASE_BITS = 7;
+  /** Number of filter phases. */
+  final static int PHASES = 1 << PHASE_BITS;
+  /** Lowest shift in semitones. */
+  private final static int MIN_SHIFT = HarpSamples.LOWEST;
+  /** Highest shift in semitones. */
+  private final static int MAX_SHIFT = HarpSamples.HIGHEST - (HarpSamples.SIZE - 1);
+  /** Fraction of the Nyquist frequency that is kept (leaves room for the filter to roll off). */
+  private final static double PASSBAND = 0.9;
+
+  /** Filter table for each shift (PHASES * TAPS coefficients, null for no shift). */
+  private final static float[][] TABLES = new float[MAX_SHIFT - MIN_SHIFT + 1][];
+  /** Step through the sample for each shift as a 32.32 fixed point number. */
+  private final static long[] STEPS = new long[MAX_SHIFT - MIN_SHIFT + 1];
+
+  static {
+    for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++) {
+      double ratio = Math.pow(2.0, shift / 12.0);
+      STEPS[shift - MIN_SHIFT] = Math.round(ratio * (1L << 32));
+      if (shift != 0) {
+        TABLES[shift - MIN_SHIFT] = makeTable(PASSBAND * Math.min(1.0, 1.0 / ratio));
+      }
+    }
+  }
+
+  /**
+   * This class only has static methods.
+   */
+  private Resampler() {
+  }
+
+  /**
+   * Get the filter table for the given shift.
+   *
+   * @param shift semitones up (negative is down)
+   * @return PHASES * TAPS coefficients (null if there is no shift)
+   */
+  static float[] getTable(int shift) {
+    return TABLES[shift - MIN_SHIFT];
+  }
+
+  /**
+   * Get the step through the sample for the given shift.
+   *
+   * @param shift semitones up (negative is down)
+   * @return step as a 32.32 fixed point number
+   */
+  static long getStep(int shift) {
+    return STEPS[shift - MIN_SHIFT];
+  }
+
+  /**
+   * Make a Blackman windowed-sinc table for the given cutoff.
+   * Tap k of a phase is applied to the input frame k - (TAPS / 2 - 1) from the
+   * integer position. Each phase is normalized so that it has a gain of 1.
+   *
+   * @param cutoff cutoff as a fraction of the input Nyquist frequency
+   * @return PHASES * TAPS coefficients
+   */
+  private static float[] makeTable(double cutoff) {
+    float[] table = new float[PHASES * TAPS];
+    for (int p = 0; p < PHASES; p++) {
+      final double frac = (double) p / PHASES;
+      double sum = 0.0;
+      double[] c = new double[TAPS];
+      for (int k = 0; k < TAPS; k++) {
+        double x = (k - (TAPS / 2 - 1)) - frac;     // distance from the position in input frames
+        double sinc = (x == 0.0) ? 1.0 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+        double w = (x + TAPS / 2.0) / TAPS;         // 0 to 1 across the window
+        double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * w) + 0.08 * Math.cos(4 * Math.PI * w);
+        c[k] = sinc * window;
+        sum += c[k];
+      }
+      for (int k = 0; k < TAPS; k++) {
+        table[p * TAPS + k] = (float) (c[k] / sum);
+      }
+    }
+    return table;
+  }
+}
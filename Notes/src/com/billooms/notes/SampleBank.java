@@ -0,0 +1,210 @@
+package com.billooms.notes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import org.openide.util.Exceptions;
+
+/**
+ * Packed bank of pre-decoded samples.
+ * The bank is one resource made at build time by SampleBankWriter.
+ * It is memory-mapped if it is a plain file, otherwise it is read once into
+ * a direct buffer. Either way the sample data is not on the heap and each
+ * sample is handed out as a read-only slice of the one buffer.
+ * 
+ * Format (all little-endian):
+ * <pre>
+ *   "HARPBANK"         8 bytes
+ *   version            int
+ *   frame rate         int (frames per second)
+ *   channels           int
+ *   number of samples  int
+ *   for each sample:   note (index from A2), byte offset of data, number of frames (3 ints)
+ *   sample data        16 bit signed, interleaved channels
+ * </pre>
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class SampleBank {
+
+  /** Resource name of the bank. */
+  public final static String RESOURCE = "com/billooms/notes/audio/harp.bank";
+  /** First bytes of a bank. */
+  final static byte[] MAGIC = {'H', 'A', 'R', 'P', 'B', 'A', 'N', 'K'};
+  /** Version of the format. */
+  final static int VERSION = 1;
+  /** Number of bytes in the header before the index. */
+  final static int HEADER_SIZE = MAGIC.length + 4 * 4;
+  /** Number of bytes in each index entry. */
+  final static int ENTRY_SIZE = 3 * 4;
+
+  /** Bank that is shared by the backends (null until it is first opened). */
+  private static SampleBank defaultBank = null;
+  /** True once an attempt has been made to open the shared bank. */
+  private static boolean opened = false;
+
+  /** The whole bank. */
+  private final ByteBuffer buffer;
+  /** Number of samples in the bank. */
+  private final int count;
+  /** Number of channels. */
+  private final int channels;
+
+  /**
+   * Get the bank that is shared by the backends, opening the bank resource
+   * the first time.
+   *
+   * @return bank (or null if there is no bank or it can't be read)
+   */
+  public static synchronized SampleBank getDefault() {
+    if (!opened) {
+      defaultBank = open();
+      opened = true;
+    }
+    return defaultBank;
+  }
+
+  /**
+   * Open the bank resource.
+   *
+   * @return bank (or null if there is no bank or it can't be read)
+   */
+  private static SampleBank open() {
+    URL url = SampleBank.class.getClassLoader().getResource(RESOURCE);
+    if (url == null) {
+      return null;
+    }
+    try {
+      ByteBuffer buf;
+      if ("file".equals(url.getProtocol())) {
+        try (FileChannel channel = FileChannel.open(new File(url.toURI()).toPath(), StandardOpenOption.READ)) {
+          buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+      } else {
+        buf = readDirect(url);     // in a jar
+      }
+      return new SampleBank(buf.order(ByteOrder.LITTLE_ENDIAN));
+    } catch (IOException | URISyntaxException | IllegalArgumentException ex) {
+      Exceptions.printStackTrace(ex);
+      return null;
+    }
+  }
+
+  /**
+   * Construct a bank from the given buffer.
+   *
+   * @param buffer whole bank in little-endian order
+   * @throws IOException if the buffer is not a bank this can read
+   */
+  private SampleBank(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (buffer.get(i) != MAGIC[i]) {
+        throw new IOException("Not a sample bank");
+      }
+    }
+    if ((buffer.getInt(MAGIC.length) != VERSION)
+        || (buffer.getInt(MAGIC.length + 4) != (int) HarpSamples.FRAME_RATE)) {
+      throw new IOException("Wrong sample bank version or frame rate");
+    }
+    channels = buffer.getInt(MAGIC.length + 8);
+    count = buffer.getInt(MAGIC.length + 12);
+  }
+
+  /**
+   * Get the number of samples in the bank.
+   *
+   * @return number of samples
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Get the sample for the given note.
+   * The result is a read-only slice of the bank, so it shares the memory
+   * of the bank and should only be read with absolute gets.
+   *
+   * @param note index of the note (from A2)
+   * @return interleaved stereo 16 bit values (or null if the note is not in the bank)
+   */
+  public ShortBuffer getSample(int note) {
+    final ByteBuffer data = getData(note);
+    return (data == null) ? null : data.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+  }
+
+  /**
+   * Get the bytes of the sample for the given note in HarpSamples.DECODE_FORMAT
+   * (such as for opening a Clip).
+   * The result is a read-only slice of the bank, so it shares the memory
+   * of the bank.
+   *
+   * @param note index of the note (from A2)
+   * @return interleaved stereo 16 bit little-endian bytes (or null if the note is not in the bank)
+   */
+  public ByteBuffer getData(int note) {
+    if (channels != 2) {
+      return null;
+    }
+    for (int i = 0; i < count; i++) {
+      int entry = HEADER_SIZE + i * ENTRY_SIZE;
+      if (buffer.getInt(entry) == note) {
+        int offset = buffer.getInt(entry + 4);
+        int frames = buffer.getInt(entry + 8);
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(offset);
+        dup.limit(offset + frames * 2 * channels);
+        return dup.slice().asReadOnlyBuffer();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Read the resource at the given URL into a direct buffer.
+   *
+   * @param url URL
+   * @return direct buffer
+   * @throws IOException if it can't be read
+   */
+  private static ByteBuffer readDirect(URL url) throws IOException {
+    URLConnection connection = url.openConnection();
+    try (InputStream in = connection.getInputStream()) {
+      byte[] chunk = new byte[65536];
+      ByteBuffer buf = ByteBuffer.allocateDirect(Math.max(connection.getContentLength(), chunk.length));
+      int n;
+      while ((n = in.read(chunk)) > 0) {
+        if (buf.remaining() < n) {      // length wasn't known -- grow
+          ByteBuffer bigger = ByteBuffer.allocateDirect(2 * buf.capacity() + n);
+          buf.flip();
+          bigger.put(buf);
+          buf = bigger;
+        }
+        buf.put(chunk, 0, n);
+      }
+      buf.flip();
+      return buf;
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.billooms.notes;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Build tool that decodes the AIFF samples and packs them into one SampleBank.
+ * This is run by the module's build (see build.xml) and is not used at runtime.
+ * <pre>
+ *   java com.billooms.notes.SampleBankWriter audioDir bankFile
+ * </pre>
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class SampleBankWriter {
+
+  /**
+   * This class only has static methods.
+   */
+  private SampleBankWriter() {
+  }
+
+  /**
+   * Write the bank.
+   *
+   * @param args directory with the AIFF files and the bank file to write
+   * @throws IOException if a file can't be read or written
+   * @throws UnsupportedAudioFileException if a file is not audio
+   */
+  public static void main(String[] args) throws IOException, UnsupportedAudioFileException {
+    if (args.length != 2) {
+      System.err.println("usage: SampleBankWriter audioDir bankFile");
+      System.exit(1);
+    }
+    write(new File(args[0]), new File(args[1]));
+  }
+
+  /**
+   * Decode all of the samples in the given directory and write the bank.
+   *
+   * @param audioDir directory with the AIFF files
+   * @param bankFile bank file to write
+   * @throws IOException if a file can't be read or written
+   * @throws UnsupportedAudioFileException if a file is not audio
+   */
+  static void write(File audioDir, File bankFile) throws IOException, UnsupportedAudioFileException {
+    ArrayList<byte[]> samples = new ArrayList<>();
+    for (String file : HarpSamples.FILES) {
+      File f = new File(audioDir, file.substring(file.lastIndexOf('/') + 1));
+      try (InputStream in = new FileInputStream(f)) {
+        samples.add(HarpSamples.decode(in));
+      }
+    }
+    final int frameSize = 2 * HarpSamples.DECODE_FORMAT.getChannels();
+    ByteBuffer header = ByteBuffer.allocate(SampleBank.HEADER_SIZE + samples.size() * SampleBank.ENTRY_SIZE)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    header.put(SampleBank.MAGIC);
+    header.putInt(SampleBank.VERSION);
+    header.putInt((int) HarpSamples.FRAME_RATE);
+    header.putInt(HarpSamples.DECODE_FORMAT.getChannels());
+    header.putInt(samples.size());
+    int offset = header.capacity();
+    for (int i = 0; i < samples.size(); i++) {
+      header.putInt(i);                           // note
+      header.putInt(offset);                      // byte offset of the data
+      header.putInt(samples.get(i).length / frameSize);   // frames
+      offset += samples.get(i).length;
+    }
+    File dir = bankFile.getParentFile();
+    if ((dir != null) && !dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Can't make " + dir);
+    }
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(bankFile))) {
+      out.write(header.array());
+      for (byte[] sample : samples) {
+        out.write(sample);      // already 16 bit little-endian
+      }
+    }
+  }
+}
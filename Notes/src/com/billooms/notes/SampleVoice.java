@@ -0,0 +1,125 @@
+package com.billooms.notes;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Voice that plays a recorded sample.
+ * Notes outside of the recorded range are played from the nearest recorded
+ * sample with the Resampler.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class SampleVoice extends Voice {
+
+  /** Scale from 16 bit values to -1 to 1. */
+  private final static float SCALE = 1.0f / 32768.0f;
+
+  /** Interleaved stereo sample being played (null if the voice is free). */
+  private ShortBuffer data = null;
+  /** Position in the sample as a 32.32 fixed point frame number. */
+  private long position = 0;
+  /** Step through the sample for each output frame as a 32.32 fixed point number. */
+  private long step = 1L << 32;
+  /** Resampling filter (null if the sample is played at its own pitch). */
+  private float[] table = null;
+  /** Phrase of a pre-rendered buffer (null for a single note). */
+  private Phrase phrase = null;
+
+  /**
+   * Start playing a sample.
+   *
+   * @param data interleaved stereo 16 bit sample (read with absolute gets only)
+   * @param note note number relative to A2
+   * @param gain gain
+   * @param delay frames to wait in the current block before starting
+   * @param startFrame frame on which the voice starts
+   * @param shift semitones to shift the pitch of the sample (0 for none)
+   */
+  void start(ShortBuffer data, int note, float gain, int delay, long startFrame, int shift) {
+    this.data = data;
+    this.table = Resampler.getTable(shift);
+    this.step = Resampler.getStep(shift);
+    position = 0;
+    phrase = null;
+    begin(note, gain, delay, startFrame);
+  }
+
+  /**
+   * Start playing a pre-rendered buffer at its own pitch.
+   * The buffer is faded out if the phrase is cancelled.
+   *
+   * @param data interleaved stereo 16 bit buffer (read with absolute gets only)
+   * @param phrase phrase for the notes in the buffer
+   * @param delay frames to wait in the current block before starting
+   * @param startFrame frame on which the voice starts
+   */
+  void start(ShortBuffer data, Phrase phrase, int delay, long startFrame) {
+    start(data, 0, 1.0f, delay, startFrame, 0);
+    this.phrase = phrase;
+  }
+
+  @Override
+  void stop() {
+    super.stop();
+    data = null;
+    if (phrase != null) {
+      phrase.finished();
+      phrase = null;
+    }
+  }
+
+  @Override
+  void mix(float[] mix, int frames) {
+    if (!isActive()) {
+      return;
+    }
+    if ((phrase != null) && !isReleasing() && phrase.isCancelled()) {
+      release(MixEngine.RELEASE_FRAMES);
+    }
+    final int length = data.limit() / 2;
+    for (int f = takeDelay(); f < frames; f++) {
+      final int ip = (int) (position >>> 32);
+      if (ip >= length) {
+        stop();       // end of the sample
+        return;
+      }
+      final float g = getGain() * SCALE;
+      if (table == null) {
+        mix[2 * f] += data.get(2 * ip) * g;
+        mix[2 * f + 1] += data.get(2 * ip + 1) * g;
+      } else {
+        final int base = (int) ((position >>> (32 - Resampler.PHASE_BITS)) & (Resampler.PHASES - 1)) * Resampler.TAPS;
+        final int first = ip - (Resampler.TAPS / 2 - 1);
+        float left = 0.0f;
+        float right = 0.0f;
+        for (int k = 0; k < Resampler.TAPS; k++) {
+          final int j = first + k;
+          if ((j >= 0) && (j < length)) {
+            final float c = table[base + k];
+            left += data.get(2 * j) * c;
+            right += data.get(2 * j + 1) * c;
+          }
+        }
+        mix[2 * f] += left * g;
+        mix[2 * f + 1] += right * g;
+      }
+      position += step;
+      if (!advance()) {
+        return;     // faded out
+      }
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package com.billooms.notes;
+
+/**
+ * Voice that synthesizes a plucked string (extended Karplus-Strong).
+ * A burst of filtered noise and a triangle (the finger's pluck) circulates in
+ * a delay line one period long. Each time around, a loss filter takes away a
+ * little energy -- more for the highest strings and the highest harmonics --
+ * and a first-order allpass tunes the fractional part of the period.
+ * The loss and tuning are matched exactly at the fundamental, so every string
+ * is in tune and its fundamental decays in the given time.
+ * The string is then passed through two resonators for the soundboard.
+ * The delay line is allocated once with the voice, so nothing is allocated
+ * per note or per block, and any pitch can be played.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class StringVoice extends Voice {
+
+  /** Size of the delay line (a power of 2 longer than the lowest string's period). */
+  private final static int LINE_SIZE = 2048;
+  /** Mask to wrap an index into the delay line. */
+  private final static int LINE_MASK = LINE_SIZE - 1;
+  /** Frequency of A2 in Hz. */
+  private final static double A2_FREQ = 110.0;
+  /** Time for the lowest string to decay by 60dB in seconds. */
+  private final static double LOW_DECAY = 8.0;
+  /** Time for the highest string to decay by 60dB in seconds. */
+  private final static double HIGH_DECAY = 1.0;
+  /** Loss filter weight of the previous sample for the lowest string (0.5 is the darkest). */
+  private final static double LOW_STRETCH = 0.5;
+  /** Loss filter weight of the previous sample for the highest string. */
+  private final static double HIGH_STRETCH = 0.1;
+  /** Largest loss per trip (this is also the gain at DC, which must not grow). */
+  private final static double MAX_RHO = 0.9995;
+  /** Peak amplitude of the pluck. */
+  private final static float PLUCK = 0.5f;
+  /** Fraction of the pluck that is noise (the rest is the triangle). */
+  private final static float NOISE = 0.2f;
+  /** Smoothing of the pluck (a soft finger rather than a pick). */
+  private final static float SOFTNESS = 0.5f;
+  /** Level below which a block is silent and the voice stops. */
+  private final static float SILENCE = 1.0e-4f;
+  /** Resonant frequencies of the soundboard in Hz. */
+  private final static double[] BODY_FREQ = {200.0, 480.0};
+  /** Q of the soundboard resonances. */
+  private final static double[] BODY_Q = {4.0, 5.0};
+  /** Amount of the soundboard added to the string. */
+  private final static float BODY_MIX = 0.6f;
+  /** Soundboard bandpass coefficients: b0 (b2 = -b0), a1, a2 for each resonance (normalized). */
+  private final static float[] BODY = new float[3 * BODY_FREQ.length];
+
+  static {
+    for (int i = 0; i < BODY_FREQ.length; i++) {
+      double w0 = 2.0 * Math.PI * BODY_FREQ[i] / HarpSamples.FRAME_RATE;
+      double alpha = Math.sin(w0) / (2.0 * BODY_Q[i]);
+      BODY[3 * i] = (float) (alpha / (1.0 + alpha));
+      BODY[3 * i + 1] = (float) (-2.0 * Math.cos(w0) / (1.0 + alpha));
+      BODY[3 * i + 2] = (float) ((1.0 - alpha) / (1.0 + alpha));
+    }
+  }
+
+  /** Delay line holding one period of the string. */
+  private final float[] line = new float[LINE_SIZE];
+  /** Next position to write in the delay line. */
+  private int write = 0;
+  /** Whole number of samples in the delay line. */
+  private int period = 2;
+  /** Loss per trip around the string. */
+  private float rho = 1.0f;
+  /** Loss filter weight of the previous sample. */
+  private float stretch = 0.5f;
+  /** Allpass coefficient for the fractional part of the period. */
+  private float allpass = 0.0f;
+  /** Previous input to the allpass. */
+  private float apIn = 0.0f;
+  /** Previous output of the allpass. */
+  private float apOut = 0.0f;
+  /** State of the first soundboard resonance (transposed direct form II). */
+  private float z1a = 0.0f, z2a = 0.0f;
+  /** State of the second soundboard resonance. */
+  private float z1b = 0.0f, z2b = 0.0f;
+  /** Gain of the left channel (the bass is to the left). */
+  private float left = 1.0f;
+  /** Gain of the right channel. */
+  private float right = 1.0f;
+  /** State of the noise generator (xorshift). */
+  private int seed = 0x2545F491;
+
+  /**
+   * Pluck a string.
+   *
+   * @param note note number relative to A2 (any pitch)
+   * @param gain gain
+   * @param delay frames to wait in the current block before starting
+   * @param startFrame frame on which the voice starts
+   */
+  void start(int note, float gain, int delay, long startFrame) {
+    final double t = Math.max(0.0, Math.min(1.0, 
+        (note - HarpSamples.LOWEST) / (double) (HarpSamples.HIGHEST - HarpSamples.LOWEST)));
+    final double p = HarpSamples.FRAME_RATE / (A2_FREQ * Math.pow(2.0, note / 12.0));
+    final double w = 2.0 * Math.PI / p;     // fundamental in radians per sample
+    final double decay = LOW_DECAY * Math.pow(HIGH_DECAY / LOW_DECAY, t);
+    stretch = (float) (LOW_STRETCH + (HIGH_STRETCH - LOW_STRETCH) * t);
+    // gain and delay of the loss filter at the fundamental
+    final double re = (1.0 - stretch) + stretch * Math.cos(w);
+    final double im = stretch * Math.sin(w);
+    final double lossDelay = Math.atan2(im, re) / w;
+    period = Math.max(1, Math.min(LINE_SIZE - 2, (int) Math.floor(p - lossDelay - 0.1)));
+    final double frac = p - period - lossDelay;
+    allpass = (float) (Math.sin(w * (1.0 - frac) / 2.0) / Math.sin(w * (1.0 + frac) / 2.0));
+    rho = (float) Math.min(MAX_RHO, 
+        Math.pow(10.0, -3.0 * p / (decay * HarpSamples.FRAME_RATE)) / Math.hypot(re, im));
+    final double angle = Math.PI * (1.0 + t) / 4.0 - Math.PI / 8.0;
+    left = (float) Math.cos(angle);
+    right = (float) Math.sin(angle);
+    apIn = apOut = 0.0f;
+    z1a = z2a = z1b = z2b = 0.0f;
+    pluck();
+    begin(note, gain, delay, startFrame);
+  }
+
+  /**
+   * Fill one period of the delay line with the pluck.
+   */
+  private void pluck() {
+    float y = 0.0f;
+    float sum = 0.0f;
+    for (int i = 0; i < period; i++) {
+      seed ^= seed << 13;
+      seed ^= seed >>> 17;
+      seed ^= seed << 5;
+      final float noise = seed * (1.0f / Integer.MAX_VALUE);
+      final float tri = 1.0f - Math.abs(2.0f * i / period - 1.0f);
+      y += SOFTNESS * (((1.0f - NOISE) * tri + NOISE * noise) - y);
+      line[i] = y;
+      sum += y;
+    }
+    final float mean = sum / period;
+    for (int i = 0; i < period; i++) {
+      line[i] = PLUCK * (line[i] - mean);   // no DC
+    }
+    line[LINE_MASK] = 0.0f;     // read as the previous sample on the first trip
+    write = period;
+  }
+
+  @Override
+  void mix(float[] mix, int frames) {
+    if (!isActive()) {
+      return;
+    }
+    final float b0a = BODY[0], a1a = BODY[1], a2a = BODY[2];
+    final float b0b = BODY[3], a1b = BODY[4], a2b = BODY[5];
+    float peak = 0.0f;
+    for (int f = takeDelay(); f < frames; f++) {
+      final int r = (write - period) & LINE_MASK;
+      final float s = rho * ((1.0f - stretch) * line[r] + stretch * line[(r - 1) & LINE_MASK]);
+      final float x = allpass * s + apIn - allpass * apOut;
+      apIn = s;
+      apOut = x;
+      line[write] = x;
+      write = (write + 1) & LINE_MASK;
+      // soundboard
+      final float ya = b0a * x + z1a;
+      z1a = -a1a * ya + z2a;
+      z2a = -b0a * x - a2a * ya;
+      final float yb = b0b * x + z1b;
+      z1b = -a1b * yb + z2b;
+      z2b = -b0b * x - a2b * yb;
+      final float out = (x + BODY_MIX * (ya + yb)) * getGain();
+      mix[2 * f] += out * left;
+      mix[2 * f + 1] += out * right;
+      peak = Math.max(peak, Math.abs(x));
+      if (!advance()) {
+        return;     // faded out
+      }
+    }
+    if (peak < SILENCE) {
+      stop();     // rung out
+    }
+  }
+}
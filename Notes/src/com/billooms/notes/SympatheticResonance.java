@@ -0,0 +1,181 @@
+package com.billooms.notes;
+
+/**
+ * Sympathetic resonance of the strings that are not being played.
+ * Each open string is a lossy delay line tuned to its pitch (as in
+ * StringVoice), so it rings when the mix has energy at its pitch or any of
+ * its harmonics. The strings are fed with the mono sum of the mix and their
+ * sound is added back, panned like the played strings.
+ * The pitches of the strings come from the pedals, and can be changed at any
+ * time from any thread: a new tuning is made and picked up by the render
+ * thread at the next block (what is ringing carries on at the new pitch).
+ * The delay lines are all allocated up front.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class SympatheticResonance {
+
+  /** Most strings that can resonate (a pedal harp has 47). */
+  final static int MAX_STRINGS = 48;
+  /** Size of each delay line (a power of 2 longer than the lowest string's period). */
+  private final static int LINE_SIZE = 2048;
+  /** Mask to wrap an index into a delay line. */
+  private final static int LINE_MASK = LINE_SIZE - 1;
+  /** Frequency of A2 in Hz. */
+  private final static double A2_FREQ = 110.0;
+  /** Time for the lowest string to decay by 60dB in seconds (shorter than a plucked string). */
+  private final static double LOW_DECAY = 3.0;
+  /** Time for the highest string to decay by 60dB in seconds. */
+  private final static double HIGH_DECAY = 0.6;
+  /** Loss filter weight of the previous sample (the same for every string). */
+  private final static double STRETCH = 0.3;
+  /** Largest loss per trip. */
+  private final static double MAX_RHO = 0.9995;
+
+  /** Delay line of each string. */
+  private final float[][] lines = new float[MAX_STRINGS][LINE_SIZE];
+  /** Next position to write in each delay line. */
+  private final int[] writes = new int[MAX_STRINGS];
+  /** Previous input to each string's allpass. */
+  private final float[] apIns = new float[MAX_STRINGS];
+  /** Previous output of each string's allpass. */
+  private final float[] apOuts = new float[MAX_STRINGS];
+  /** Mono input of the current block. */
+  private final float[] input = new float[MixEngine.BLOCK];
+  /** Tuning of the strings (replaced as a whole when the pedals change). */
+  private volatile Tuning tuning = new Tuning(new int[0]);
+
+  /**
+   * Set the pitches of the open strings.
+   * Notes outside of HarpSamples.LOWEST through HarpSamples.HIGHEST are
+   * skipped, and only the lowest MAX_STRINGS are used.
+   *
+   * @param notes note number relative to A2 of each string
+   */
+  void setStrings(int[] notes) {
+    tuning = new Tuning(notes);
+  }
+
+  /**
+   * Get the number of strings that resonate.
+   *
+   * @return number of strings
+   */
+  int getStrings() {
+    return tuning.count;
+  }
+
+  /**
+   * Add the resonance of the open strings for one block of the mix to the mix.
+   *
+   * @param mix interleaved stereo mix
+   * @param frames number of frames
+   * @param level level of the resonance
+   */
+  void process(float[] mix, int frames, float level) {
+    final Tuning t = tuning;
+    for (int f = 0; f < frames; f++) {
+      input[f] = 0.5f * (mix[2 * f] + mix[2 * f + 1]);
+    }
+    for (int s = 0; s < t.count; s++) {
+      final float[] line = lines[s];
+      final int period = t.periods[s];
+      final float rho = t.rhos[s];
+      final float allpass = t.allpasses[s];
+      final float in = t.inputs[s];
+      final float left = level * t.lefts[s];
+      final float right = level * t.rights[s];
+      int write = writes[s];
+      float apIn = apIns[s];
+      float apOut = apOuts[s];
+      for (int f = 0; f < frames; f++) {
+        final int r = (write - period) & LINE_MASK;
+        final float x = rho * ((float) (1.0 - STRETCH) * line[r] + (float) STRETCH * line[(r - 1) & LINE_MASK]);
+        final float y = allpass * x + apIn - allpass * apOut;
+        apIn = x;
+        apOut = y;
+        line[write] = y + in * input[f];
+        write = (write + 1) & LINE_MASK;
+        mix[2 * f] += y * left;
+        mix[2 * f + 1] += y * right;
+      }
+      writes[s] = write;
+      apIns[s] = apIn;
+      apOuts[s] = apOut;
+    }
+  }
+
+  /**
+   * Tuning of every open string.
+   */
+  private static class Tuning {
+
+    /** Number of strings. */
+    private final int count;
+    /** Whole number of samples in each delay line. */
+    private final int[] periods = new int[MAX_STRINGS];
+    /** Loss per trip of each string. */
+    private final float[] rhos = new float[MAX_STRINGS];
+    /** Allpass coefficient of each string for the fractional part of the period. */
+    private final float[] allpasses = new float[MAX_STRINGS];
+    /** Gain of the input to each string (so every string peaks at about the same level). */
+    private final float[] inputs = new float[MAX_STRINGS];
+    /** Left gain of each string (the bass is to the left). */
+    private final float[] lefts = new float[MAX_STRINGS];
+    /** Right gain of each string. */
+    private final float[] rights = new float[MAX_STRINGS];
+
+    /**
+     * Tune the strings to the given notes.
+     *
+     * @param notes note number relative to A2 of each string
+     */
+    private Tuning(int[] notes) {
+      int n = 0;
+      for (int note : notes) {
+        if ((n < MAX_STRINGS) && HarpSamples.inRange(note)) {
+          tune(n++, note);
+        }
+      }
+      count = n;
+    }
+
+    /**
+     * Tune one string (the same way as StringVoice, so the pitch is exact).
+     *
+     * @param s string
+     * @param note note number relative to A2
+     */
+    private void tune(int s, int note) {
+      final double t = (note - HarpSamples.LOWEST) / (double) (HarpSamples.HIGHEST - HarpSamples.LOWEST);
+      final double p = HarpSamples.FRAME_RATE / (A2_FREQ * Math.pow(2.0, note / 12.0));
+      final double w = 2.0 * Math.PI / p;
+      final double decay = LOW_DECAY * Math.pow(HIGH_DECAY / LOW_DECAY, t);
+      final double re = (1.0 - STRETCH) + STRETCH * Math.cos(w);
+      final double im = STRETCH * Math.sin(w);
+      final double lossDelay = Math.atan2(im, re) / w;
+      periods[s] = Math.max(1, Math.min(LINE_SIZE - 2, (int) Math.floor(p - lossDelay - 0.1)));
+      final double frac = p - periods[s] - lossDelay;
+      allpasses[s] = (float) (Math.sin(w * (1.0 - frac) / 2.0) / Math.sin(w * (1.0 + frac) / 2.0));
+      final double loss = Math.pow(10.0, -3.0 * p / (decay * HarpSamples.FRAME_RATE));
+      rhos[s] = (float) Math.min(MAX_RHO, loss / Math.hypot(re, im));
+      inputs[s] = (float) (1.0 - loss);     // a comb peaks at 1 / (1 - loss)
+      final double angle = Math.PI * (1.0 + t) / 4.0 - Math.PI / 8.0;
+      lefts[s] = (float) Math.cos(angle);
+      rights[s] = (float) Math.sin(angle);
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.billooms.notes;
+
+/**
+ * Compiled pattern: the frame offset, note and velocity of each note held in
+ * primitive arrays, ready to be handed to a PlaybackBackend.
+ * Timelines are made (and cached) by Pattern.compile, or made from arrays
+ * with Timeline.of, and never change.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class Timeline {
+
+  /** Frame of each note from the start of the timeline (at HarpSamples.FRAME_RATE). */
+  final long[] frames;
+  /** Note number relative to A2 of each note. */
+  final int[] notes;
+  /** Velocity of each note (1.0 is the normal level). */
+  final float[] velocities;
+
+  /**
+   * Construct a new timeline (the arrays are not copied).
+   *
+   * @param frames frame of each note from the start
+   * @param notes note number relative to A2 of each note
+   * @param velocities velocity of each note
+   */
+  Timeline(long[] frames, int[] notes, float[] velocities) {
+    this.frames = frames;
+    this.notes = notes;
+    this.velocities = velocities;
+  }
+
+  /**
+   * Make a timeline from the given arrays (they are copied).
+   *
+   * @param frames frame of each note from the start at HarpSamples.FRAME_RATE (in order)
+   * @param notes note number relative to A2 of each note
+   * @param velocities velocity of each note (1.0 is the normal level)
+   * @return new timeline
+   * @throws IllegalArgumentException if the arrays are different lengths or 
+   * the frames are negative or out of order
+   */
+  public static Timeline of(long[] frames, int[] notes, float[] velocities) {
+    if ((frames.length != notes.length) || (frames.length != velocities.length)) {
+      throw new IllegalArgumentException("Timeline arrays must be the same length");
+    }
+    final float[] v = new float[velocities.length];
+    for (int i = 0; i < frames.length; i++) {
+      if ((frames[i] < 0) || ((i > 0) && (frames[i] < frames[i - 1]))) {
+        throw new IllegalArgumentException("Timeline frames must be in order starting at 0 or later");
+      }
+      v[i] = Math.max(0.0f, Math.min(Pattern.MAX_VELOCITY, velocities[i]));
+    }
+    return new Timeline(frames.clone(), notes.clone(), v);
+  }
+
+  /**
+   * Get the number of notes.
+   *
+   * @return number of notes
+   */
+  public int size() {
+    return notes.length;
+  }
+
+  /**
+   * Get the frame of the given note from the start of the timeline.
+   *
+   * @param i index of the note
+   * @return frame at HarpSamples.FRAME_RATE
+   */
+  public long getFrame(int i) {
+    return frames[i];
+  }
+
+  /**
+   * Get the given note.
+   *
+   * @param i index of the note
+   * @return note number relative to A2
+   */
+  public int getNote(int i) {
+    return notes[i];
+  }
+
+  /**
+   * Get the velocity of the given note.
+   *
+   * @param i index of the note
+   * @return velocity (1.0 is the normal level, at most Pattern.MAX_VELOCITY)
+   */
+  public float getVelocity(int i) {
+    return velocities[i];
+  }
+
+  /**
+   * Get the time of each note in nanoseconds from the start.
+   *
+   * @return time of each note in nanoseconds
+   */
+  long[] getNanos() {
+    final long[] nanos = new long[frames.length];
+    for (int i = 0; i < frames.length; i++) {
+      nanos[i] = Math.round(frames[i] * 1.0e9 / HarpSamples.FRAME_RATE);
+    }
+    return nanos;
+  }
+
+  @Override
+  public String toString() {
+    final long last = (frames.length == 0) ? 0 : frames[frames.length - 1];
+    return String.format("%d notes over %.3f seconds", notes.length, last / HarpSamples.FRAME_RATE);
+  }
+}
@@ -0,0 +1,286 @@
+package com.billooms.notes;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
+import javax.swing.Timer;
+
+/**
+ * Transport clock that tells where playback is, so that visuals can follow the audio.
+ * With the mixer the clock is the output line's frame position (the frame
+ * being heard). Otherwise it counts frames at the same rate from the system
+ * clock, and a note is taken to be heard when the scheduler starts it.
+ * The backends report every note onset with its frame. On each display
+ * refresh a Swing timer fires one PROP_ONSETS property change on the EDT with
+ * all of the onsets that were heard since the last refresh (rather than one
+ * invokeLater per note).
+ * Onsets are only tracked while there is at least one listener.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class Transport {
+
+  /** Transport can fire propertyChanges. */
+  private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+  /** Property name used when notes are heard (the new value is a List of Transport.Event). */
+  public final static String PROP_ONSETS = "Onsets";
+
+  /** Refresh rate used when the display's is not known. */
+  private final static int DEFAULT_REFRESH = 60;
+  /** Shared transport. */
+  private final static Transport INSTANCE = new Transport();
+
+  /** Clock from the system time (used when no line is playing). */
+  private final LongSupplier systemClock;
+  /** Frame that is being heard now. */
+  private volatile LongSupplier clock;
+  /** True while there are listeners. */
+  private volatile boolean tracking = false;
+  /** Onsets reported by the backends that the EDT has not seen yet. */
+  private final ConcurrentLinkedQueue<Event> incoming = new ConcurrentLinkedQueue<>();
+  /** Onsets that have not been heard yet (only used on the EDT). */
+  private final PriorityQueue<Event> pending = new PriorityQueue<>();
+  /** Most recent onset that was heard (only used on the EDT). */
+  private Event sounding = null;
+  /** Fires the onsets on each display refresh. */
+  private final Timer timer;
+
+  /**
+   * Get the shared transport.
+   *
+   * @return shared transport
+   */
+  public static Transport getDefault() {
+    return INSTANCE;
+  }
+
+  /**
+   * Construct a new transport on the system clock.
+   */
+  private Transport() {
+    final long origin = System.nanoTime();
+    systemClock = () -> Math.round((System.nanoTime() - origin) * (HarpSamples.FRAME_RATE / 1.0e9));
+    clock = systemClock;
+    timer = new Timer(1000 / getRefreshRate(), e -> refresh());
+    timer.setCoalesce(true);
+  }
+
+  /**
+   * Get the frame that is being heard now.
+   *
+   * @return frame position
+   */
+  public long getPosition() {
+    return clock.getAsLong();
+  }
+
+  /**
+   * Get the number of frames in one second.
+   *
+   * @return frames per second
+   */
+  public float getFrameRate() {
+    return HarpSamples.FRAME_RATE;
+  }
+
+  /**
+   * Get the most recent onset that was heard (its note is the one that is sounding).
+   * This must be called on the EDT.
+   *
+   * @return onset (null if nothing was heard while there were listeners)
+   */
+  public Event getSounding() {
+    return sounding;
+  }
+
+  /**
+   * Use the given clock (such as the output line's frame position).
+   *
+   * @param lineClock frame that is being heard now
+   */
+  void setClock(LongSupplier lineClock) {
+    clock = lineClock;
+  }
+
+  /**
+   * Go back to the system clock if the given clock is in use.
+   *
+   * @param lineClock clock that is going away
+   */
+  void clearClock(LongSupplier lineClock) {
+    if (clock == lineClock) {
+      clock = systemClock;
+    }
+  }
+
+  /**
+   * Report a note that is heard on the given frame.
+   * This never blocks, so it may be called from the render thread.
+   *
+   * @param phrase phrase the note belongs to (may be null)
+   * @param note note number relative to A2
+   * @param frame frame on the transport clock
+   */
+  void onset(Phrase phrase, int note, long frame) {
+    if (tracking) {
+      incoming.add(new Event(phrase, note, frame));
+    }
+  }
+
+  /**
+   * Report a note that is heard now.
+   *
+   * @param phrase phrase the note belongs to (may be null)
+   * @param note note number relative to A2
+   */
+  void onset(Phrase phrase, int note) {
+    if (tracking) {
+      incoming.add(new Event(phrase, note, getPosition()));
+    }
+  }
+
+  /**
+   * Fire the onsets that have been heard since the last refresh.
+   * Onsets of a cancelled phrase that were not heard yet are dropped.
+   */
+  private void refresh() {
+    Event e;
+    while ((e = incoming.poll()) != null) {
+      pending.add(e);
+    }
+    final long position = getPosition();
+    final ArrayList<Event> heard = new ArrayList<>();
+    while (!pending.isEmpty() && (pending.peek().frame <= position)) {
+      e = pending.poll();
+      if ((e.phrase == null) || !e.phrase.isCancelled()) {
+        heard.add(e);
+      }
+    }
+    pending.removeIf(p -> (p.phrase != null) && p.phrase.isCancelled());
+    if (!heard.isEmpty()) {
+      sounding = heard.get(heard.size() - 1);
+      pcs.firePropertyChange(PROP_ONSETS, null, Collections.unmodifiableList(heard));
+    }
+  }
+
+  /**
+   * Get the refresh rate of the default screen.
+   *
+   * @return refreshes per second
+   */
+  private static int getRefreshRate() {
+    if (GraphicsEnvironment.isHeadless()) {
+      return DEFAULT_REFRESH;
+    }
+    final int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+    return (rate == DisplayMode.REFRESH_RATE_UNKNOWN) ? DEFAULT_REFRESH : rate;
+  }
+
+  /**
+   * Add the given listener to this object.
+   * Onsets are tracked (and the timer runs) while there are listeners.
+   *
+   * @param listener listener
+   */
+  public synchronized void addPropertyChangeListener(PropertyChangeListener listener) {
+    pcs.addPropertyChangeListener(listener);
+    tracking = true;
+    timer.start();
+  }
+
+  /**
+   * Remove the given listener to this object.
+   *
+   * @param listener listener
+   */
+  public synchronized void removePropertyChangeListener(PropertyChangeListener listener) {
+    pcs.removePropertyChangeListener(listener);
+    if (pcs.getPropertyChangeListeners().length == 0) {
+      tracking = false;
+      timer.stop();
+      incoming.clear();
+    }
+  }
+
+  /**
+   * A note that is heard on a given frame.
+   */
+  public static class Event implements Comparable<Event> {
+
+    /** Phrase the note belongs to (may be null). */
+    private final Phrase phrase;
+    /** Note number relative to A2. */
+    private final int note;
+    /** Frame on the transport clock. */
+    private final long frame;
+
+    /**
+     * Construct a new event.
+     *
+     * @param phrase phrase the note belongs to (may be null)
+     * @param note note number relative to A2
+     * @param frame frame on the transport clock
+     */
+    private Event(Phrase phrase, int note, long frame) {
+      this.phrase = phrase;
+      this.note = note;
+      this.frame = frame;
+    }
+
+    /**
+     * Get the phrase the note belongs to.
+     *
+     * @return phrase (may be null)
+     */
+    public Phrase getPhrase() {
+      return phrase;
+    }
+
+    /**
+     * Get the note number.
+     *
+     * @return note number relative to A2
+     */
+    public int getNote() {
+      return note;
+    }
+
+    /**
+     * Get the frame on which the note is heard.
+     *
+     * @return frame on the transport clock
+     */
+    public long getFrame() {
+      return frame;
+    }
+
+    @Override
+    public int compareTo(Event other) {
+      return Long.compare(frame, other.frame);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("note %d at frame %d", note, frame);
+    }
+  }
+}
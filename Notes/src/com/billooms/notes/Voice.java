@@ -0,0 +1,170 @@
+package com.billooms.notes;
+
+/**
+ * One sounding note in the NoteMixer.
+ * The sound itself comes from a subclass (a recorded sample or a synthesized
+ * string); this keeps track of the start delay and the release envelope.
+ * Voices are allocated once in a pool and reused, so nothing is allocated
+ * while mixing.
+ * This is only used from the mixer's render thread.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+abstract class Voice {
+
+  /** True while the voice is playing (or waiting to start). */
+  private boolean active = false;
+  /** Note number relative to A2 (-1 if free). */
+  private int note = -1;
+  /** Number of frames to wait in the current block before starting. */
+  private int delay = 0;
+  /** Gain. */
+  private float gain = 1.0f;
+  /** Envelope level (1 until the voice is released). */
+  private float level = 1.0f;
+  /** Amount the level drops each frame while releasing (0 if not releasing). */
+  private float releaseStep = 0.0f;
+  /** Frame on which the voice was started (for choosing a voice to steal). */
+  private long startFrame = 0;
+
+  /**
+   * Start the voice.
+   * This is called by the subclass when a note starts.
+   *
+   * @param note note number relative to A2
+   * @param gain gain
+   * @param delay frames to wait in the current block before starting
+   * @param startFrame frame on which the voice starts
+   */
+  void begin(int note, float gain, int delay, long startFrame) {
+    this.note = note;
+    this.gain = gain;
+    this.delay = delay;
+    this.startFrame = startFrame;
+    level = 1.0f;
+    releaseStep = 0.0f;
+    active = true;
+  }
+
+  /**
+   * Start fading out the voice.
+   *
+   * @param frames number of frames to fade out over
+   */
+  void release(int frames) {
+    if (active && (releaseStep == 0.0f)) {
+      releaseStep = level / Math.max(frames, 1);
+    }
+  }
+
+  /**
+   * Stop the voice immediately.
+   */
+  void stop() {
+    active = false;
+    note = -1;
+  }
+
+  /**
+   * Determine if the voice is playing.
+   *
+   * @return true: playing (or waiting to start)
+   */
+  boolean isActive() {
+    return active;
+  }
+
+  /**
+   * Determine if the voice is fading out.
+   *
+   * @return true: releasing
+   */
+  boolean isReleasing() {
+    return releaseStep > 0.0f;
+  }
+
+  /**
+   * Get the note number.
+   *
+   * @return note number relative to A2 (-1 if free)
+   */
+  int getNote() {
+    return note;
+  }
+
+  /**
+   * Get the frame on which the voice was started.
+   *
+   * @return frame
+   */
+  long getStartFrame() {
+    return startFrame;
+  }
+
+  /**
+   * Get the current envelope level.
+   *
+   * @return level 0 to 1
+   */
+  float getLevel() {
+    return level;
+  }
+
+  /**
+   * Get the gain for the next frame (including the envelope).
+   *
+   * @return gain
+   */
+  final float getGain() {
+    return gain * level;
+  }
+
+  /**
+   * Get the first frame to mix in the current block.
+   * The start delay only applies to the first block.
+   *
+   * @return frame in the block
+   */
+  final int takeDelay() {
+    final int d = delay;
+    delay = 0;
+    return d;
+  }
+
+  /**
+   * Advance the envelope by one frame.
+   *
+   * @return false if the voice has faded out (it is stopped)
+   */
+  final boolean advance() {
+    if (releaseStep > 0.0f) {
+      level -= releaseStep;
+      if (level <= 0.0f) {
+        stop();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Add this voice into the mix buffer.
+   *
+   * @param mix interleaved stereo mix buffer
+   * @param frames number of frames in the buffer
+   */
+  abstract void mix(float[] mix, int frames);
+}
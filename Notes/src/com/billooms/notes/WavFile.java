@@ -0,0 +1,201 @@
+package com.billooms.notes;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A WAV file that is read by memory-mapping only the part that is needed, so
+ * files of any length can be read with a bounded amount of memory.
+ * PCM of 8, 16, 24 or 32 bits and 32 bit float are understood (including the
+ * extensible format). The channels are mixed down to mono as they are read.
+ * Reads don't change any state, so one file can be read by several threads.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class WavFile implements Closeable {
+
+  /** Format code of integer PCM. */
+  private final static int PCM = 1;
+  /** Format code of floating point samples. */
+  private final static int FLOAT = 3;
+  /** Format code of the extensible format (the real code is in the sub-format). */
+  private final static int EXTENSIBLE = 0xFFFE;
+  /** Number of bytes of the header that are mapped to find the chunks. */
+  private final static int HEADER_MAP = 64 * 1024;
+
+  /** Channel of the open file. */
+  private final FileChannel channel;
+  /** Samples per second. */
+  private final float frameRate;
+  /** Number of channels. */
+  private final int channels;
+  /** Bytes per sample of one channel. */
+  private final int bytesPerSample;
+  /** True for floating point samples. */
+  private final boolean isFloat;
+  /** Bytes per frame (all channels). */
+  private final int blockAlign;
+  /** Position of the first sample in the file. */
+  private final long dataStart;
+  /** Number of frames. */
+  private final long frames;
+
+  /**
+   * Open a WAV file and read its header.
+   *
+   * @param file WAV file
+   * @throws IOException if the file can't be read or is not a WAV file this understands
+   */
+  public WavFile(File file) throws IOException {
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      final long size = channel.size();
+      final MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_MAP));
+      head.order(ByteOrder.LITTLE_ENDIAN);
+      if ((head.remaining() < 12) || (head.getInt(0) != 0x46464952) || (head.getInt(8) != 0x45564157)) {
+        throw new IOException(file + " is not a WAV file");    // "RIFF" and "WAVE"
+      }
+      int format = -1;
+      int numChannels = 0;
+      int rate = 0;
+      int bits = 0;
+      long start = -1;
+      long length = 0;
+      long next = 12;
+      while ((start < 0) && (next + 8 <= head.limit())) {
+        final int pos = (int) next;
+        final int id = head.getInt(pos);
+        final long chunk = head.getInt(pos + 4) & 0xFFFFFFFFL;
+        if (id == 0x20746D66) {    // "fmt "
+          format = head.getShort(pos + 8) & 0xFFFF;
+          numChannels = head.getShort(pos + 10) & 0xFFFF;
+          rate = head.getInt(pos + 12);
+          bits = head.getShort(pos + 22) & 0xFFFF;
+          if ((format == EXTENSIBLE) && (chunk >= 26)) {
+            format = head.getShort(pos + 32) & 0xFFFF;    // first 2 bytes of the sub-format GUID
+          }
+        } else if (id == 0x61746164) {     // "data"
+          start = pos + 8;
+          length = Math.min(chunk, size - start);    // streamed files may not have the size filled in
+        }
+        next = pos + 8 + chunk + (chunk & 1);
+      }
+      if ((start < 0) || (numChannels <= 0) || (rate <= 0)
+          || !(((format == PCM) && (bits >= 8) && (bits <= 32) && (bits % 8 == 0)) || ((format == FLOAT) && (bits == 32)))) {
+        throw new IOException(file + " is not a PCM or float WAV file with a data chunk");
+      }
+      frameRate = rate;
+      channels = numChannels;
+      bytesPerSample = bits / 8;
+      isFloat = (format == FLOAT);
+      blockAlign = channels * bytesPerSample;
+      dataStart = start;
+      frames = length / blockAlign;
+    } catch (IOException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Get the number of samples per second.
+   *
+   * @return samples per second
+   */
+  public float getFrameRate() {
+    return frameRate;
+  }
+
+  /**
+   * Get the number of channels.
+   *
+   * @return number of channels
+   */
+  public int getChannels() {
+    return channels;
+  }
+
+  /**
+   * Get the number of frames.
+   *
+   * @return number of frames
+   */
+  public long getFrames() {
+    return frames;
+  }
+
+  /**
+   * Read frames mixed down to mono.
+   * Only the bytes of these frames are mapped.
+   *
+   * @param first first frame
+   * @param dest where the samples go (from -1 to 1)
+   * @param count number of frames to read
+   * @return number of frames read (fewer at the end of the file)
+   * @throws IOException if the file can't be read
+   */
+  public int read(long first, float[] dest, int count) throws IOException {
+    final int n = (int) Math.max(0, Math.min(count, frames - first));
+    if (n == 0) {
+      return 0;
+    }
+    final ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + first * blockAlign, (long) n * blockAlign);
+    buf.order(ByteOrder.LITTLE_ENDIAN);
+    final float scale = 1.0f / channels;
+    for (int f = 0; f < n; f++) {
+      float sum = 0.0f;
+      for (int c = 0; c < channels; c++) {
+        sum += sample(buf, f * blockAlign + c * bytesPerSample);
+      }
+      dest[f] = sum * scale;
+    }
+    return n;
+  }
+
+  /**
+   * Decode one sample.
+   *
+   * @param buf mapped bytes
+   * @param pos position of the sample
+   * @return sample from -1 to 1
+   */
+  private float sample(ByteBuffer buf, int pos) {
+    if (isFloat) {
+      return buf.getFloat(pos);
+    }
+    switch (bytesPerSample) {
+      case 1:
+        return ((buf.get(pos) & 0xFF) - 128) / 128.0f;     // 8 bit is unsigned
+      case 2:
+        return buf.getShort(pos) / 32768.0f;
+      case 3:
+        return ((buf.get(pos) & 0xFF) | ((buf.get(pos + 1) & 0xFF) << 8) | (buf.get(pos + 2) << 16)) / 8388608.0f;
+      default:
+        return buf.getInt(pos) / 2147483648.0f;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
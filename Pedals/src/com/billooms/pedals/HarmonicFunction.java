@@ -0,0 +1,176 @@
+package com.billooms.pedals;
+
+import com.billooms.chords.Ninth;
+
+/**
+ * Harmonic functions within a key that can be set up as a glissando.
+ * Diatonic functions are defined by a set of scale degrees of the key.
+ * Chromatic functions are defined by a chord built on a root that is offset
+ * from a scale degree.
+ * New functions can be added here as data -- the pedal settings are found
+ * by PedalPresets.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public enum HarmonicFunction {
+
+  /**
+   * Diatonic functions: root degree (0-6) and the set of scale degrees to sound.
+   * The left-most of the 7 bits represents the 1st degree of the scale.
+   */
+  TONIC("I", "tonic", 0, 0b1110110),
+  SUBDOMINANT("IV", "subdominant", 3, 0b1101110),
+  DOMINANT("V", "dominant", 4, 0b0110111),
+  V7("V7", "dominant 7th", 4, 0b0101111),
+  VII7("vii\u00b07", "leading-tone 7th", 6, 0b0101011),
+  /** Chromatic functions: root degree (0-6), semitones above it, and the chord on that root. */
+  V_OF_II("V/ii", "secondary dominant of ii", 1, 7, Ninth.DOMINANT9.getChordMask()),
+  V_OF_III("V/iii", "secondary dominant of iii", 2, 7, Ninth.DOMINANT9.getChordMask()),
+  V_OF_IV("V/IV", "secondary dominant of IV", 3, 7, Ninth.DOMINANT9.getChordMask()),
+  V_OF_V("V/V", "secondary dominant of V", 4, 7, Ninth.DOMINANT9.getChordMask()),
+  V_OF_VI("V/vi", "secondary dominant of vi", 5, 7, Ninth.DOMINANT9.getChordMask()),
+  NEAPOLITAN("N", "Neapolitan", 0, 1, Ninth.MAJ69.getChordMask());
+
+  /** The number of harmonic functions. */
+  public final static int SIZE = HarmonicFunction.values().length;
+
+  /** Abbreviation. */
+  private final String abbreviation;
+  /** Full name. */
+  private final String name;
+  /** Scale degree (0 through 6) that the root is based on. */
+  private final int degree;
+  /** Semitones from the scale degree to the root. */
+  private final int offset;
+  /** Set of 7 scale degrees (0 for chromatic functions). */
+  private final int degreeMask;
+  /** 12 bit chord mask on the root (0 for diatonic functions). */
+  private final int chordMask;
+
+  /**
+   * Construct a diatonic function.
+   *
+   * @param abbreviation abbreviation
+   * @param name full name
+   * @param degree scale degree (0 through 6) of the root
+   * @param degreeMask set of 7 scale degrees with the 1st degree left-most
+   */
+  private HarmonicFunction(String abbreviation, String name, int degree, int degreeMask) {
+    this(abbreviation, name, degree, 0, degreeMask, 0);
+  }
+
+  /**
+   * Construct a chromatic function.
+   *
+   * @param abbreviation abbreviation
+   * @param name full name
+   * @param degree scale degree (0 through 6) that the root is based on
+   * @param offset semitones from the scale degree to the root
+   * @param chordMask 12 bit chord mask on the root
+   */
+  private HarmonicFunction(String abbreviation, String name, int degree, int offset, int chordMask) {
+    this(abbreviation, name, degree, offset, 0, chordMask);
+  }
+
+  /**
+   * Construct a function.
+   *
+   * @param abbreviation abbreviation
+   * @param name full name
+   * @param degree scale degree (0 through 6) that the root is based on
+   * @param offset semitones from the scale degree to the root
+   * @param degreeMask set of 7 scale degrees with the 1st degree left-most
+   * @param chordMask 12 bit chord mask on the root
+   */
+  private HarmonicFunction(String abbreviation, String name, int degree, int offset, int degreeMask, int chordMask) {
+    this.abbreviation = abbreviation;
+    this.name = name;
+    this.degree = degree;
+    this.offset = offset;
+    this.degreeMask = degreeMask;
+    this.chordMask = chordMask;
+  }
+
+  /**
+   * Get the abbreviation such as "V7".
+   *
+   * @return abbreviation
+   */
+  public String getAbbreviation() {
+    return abbreviation;
+  }
+
+  /**
+   * Get the full name.
+   *
+   * @return full name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get the scale degree (0 through 6) that the root is based on.
+   *
+   * @return scale degree
+   */
+  public int getDegree() {
+    return degree;
+  }
+
+  /**
+   * Get the number of semitones from the scale degree to the root.
+   *
+   * @return semitones
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * Determine if this function only uses notes of the scale.
+   *
+   * @return true: diatonic
+   */
+  public boolean isDiatonic() {
+    return degreeMask != 0;
+  }
+
+  /**
+   * Get the set of scale degrees to sound.
+   * The left-most of the 7 bits represents the 1st degree of the scale.
+   *
+   * @return 7 bit degree mask (0 for chromatic functions)
+   */
+  public int getDegreeMask() {
+    return degreeMask;
+  }
+
+  /**
+   * Get the chord to sound on the root.
+   * The left-most of the 12 bits represents the root.
+   *
+   * @return 12 bit chord mask (0 for diatonic functions)
+   */
+  public int getChordMask() {
+    return chordMask;
+  }
+
+  @Override
+  public String toString() {
+    return abbreviation;
+  }
+}
@@ -0,0 +1,94 @@
+package com.billooms.pedals;
+
+import com.billooms.chords.Chord;
+import com.billooms.chords.Ninth;
+import com.billooms.chords.Seventh;
+import com.billooms.chords.Triad;
+import com.billooms.keysignature.Key;
+import com.billooms.keysignature.KeySignature;
+import com.billooms.keysignature.Scale;
+import com.billooms.notes.MidiFileWriter;
+import com.billooms.notes.Note;
+import com.billooms.notes.SharpFlat;
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Exports whole catalogues of practice material as MIDI files: a glissando
+ * for the pedals of every key, and an arpeggio of every triad, seventh and
+ * ninth chord on every root.
+ * The files are added to a MidiFileWriter and written in parallel.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class MidiCatalog {
+
+  /**
+   * This class only has static methods.
+   */
+  private MidiCatalog() {
+  }
+
+  /**
+   * Add a glissando for the pedals of every key (such as FLAT3-MAJOR.mid)
+   * starting on the key's first note.
+   *
+   * @param writer writer to add the files to
+   * @param dir directory for the files
+   */
+  public static void addKeys(MidiFileWriter writer, File dir) {
+    final Pedals pedals = new Pedals();
+    for (KeySignature keySig : KeySignature.values()) {
+      for (Scale scale : Scale.values()) {
+        final Key key = new Key(keySig, scale);
+        pedals.setPedals(key);
+        writer.addGliss(new File(dir, keySig.name() + "-" + scale.name() + ".mid"),
+            pedals.getGlissNotes(key.getFirstNote()));
+      }
+    }
+  }
+
+  /**
+   * Add an arpeggio of every triad, seventh and ninth chord on every root
+   * (such as C-sharp-MAJOR.mid).
+   *
+   * @param writer writer to add the files to
+   * @param dir directory for the files
+   */
+  public static void addChords(MidiFileWriter writer, File dir) {
+    final ArrayList<Chord> chords = new ArrayList<>();
+    final ArrayList<String> names = new ArrayList<>();
+    for (Triad triad : Triad.values()) {
+      chords.add(new Chord(triad));
+      names.add(triad.name());
+    }
+    for (Seventh seventh : Seventh.values()) {
+      chords.add(new Chord(seventh));
+      names.add(seventh.name());
+    }
+    for (Ninth ninth : Ninth.values()) {
+      chords.add(new Chord(ninth));
+      names.add(ninth.name());
+    }
+    for (int i = 0; i < 12; i++) {
+      final Note root = new Note(i);
+      final String rootName = root.getBaseNote().name() + ((root.getSharpFlat() == SharpFlat.SHARP) ? "-sharp" : "");
+      for (int c = 0; c < chords.size(); c++) {
+        writer.add(new File(dir, rootName + "-" + names.get(c) + ".mid"), chords.get(c).getChordMask(), i);
+      }
+    }
+  }
+}
@@ -0,0 +1,379 @@
+package com.billooms.pedals;
+
+import com.billooms.keysignature.Key;
+import com.billooms.keysignature.KeyEstimator;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Transmitter;
+import javax.swing.SwingUtilities;
+
+/**
+ * Follows the chords held on a MIDI keyboard and suggests pedals for them.
+ * The held keys are kept as a 128 bit mask (two longs) and folded into a 12
+ * bit pitch mask. When the pitches change, the chord is named (see
+ * Pedals.findChordName -- each name is remembered for its mask) and the
+ * allowed combination that sounds all of them with the fewest changes from
+ * the current pedals is looked up in the PedalTable, all on the MIDI thread.
+ * Every key that is pressed is also added to a KeyEstimator, and the
+ * estimated key (such as after a modulation) goes with each suggestion.
+ * The newest Suggestion is handed to the EDT, and a burst of events (such as a
+ * chord whose notes arrive one at a time) makes only one update there.
+ * A PROP_SUGGESTION property change is fired on the EDT with each new
+ * Suggestion, and the pedals are set to it if applying is on.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class MidiChordInput implements Receiver {
+
+  /** MidiChordInput can fire propertyChanges. */
+  private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+  /** Property name used for a new suggestion (the new value is a Suggestion). */
+  public final static String PROP_SUGGESTION = "MidiSuggestion";
+
+  /** MIDI key number of A2. */
+  private final static int A2_KEY = 45;
+  /** MIDI controller number for all notes off. */
+  private final static int ALL_NOTES_OFF = 123;
+  /** Mask to find the 12th bit. */
+  private final static int MASK12 = 0b100000000000;
+  /** Names of the chord for each pitch mask (filled in as they are first needed). */
+  private final static String[] NAMES = new String[4096];
+  /** Keys of each pitch (A first) in each half of the 128 keys. */
+  private final static long[][] PITCH_KEYS = new long[12][2];
+
+  static {
+    for (int key = 0; key < 128; key++) {
+      PITCH_KEYS[Math.floorMod(key - A2_KEY, 12)][key >> 6] |= 1L << (key & 63);
+    }
+  }
+
+  /** Pedals that suggestions start from (and are applied to). */
+  private final Pedals pedals;
+  /** Keys 0 to 63 that are held (only used on the MIDI thread). */
+  private long keysLow = 0;
+  /** Keys 64 to 127 that are held (only used on the MIDI thread). */
+  private long keysHigh = 0;
+  /** Pitches that are held (only used on the MIDI thread). */
+  private int held = 0;
+  /** Estimates the key from the keys that are pressed (only used on the MIDI thread). */
+  private final KeyEstimator estimator = new KeyEstimator();
+  /** Key that was last estimated (only used on the MIDI thread). */
+  private Key estimated = null;
+  /** Key of the last suggestion (only used on the MIDI thread). */
+  private Key heldKey = null;
+  /** Code of the pedals that suggestions start from. */
+  private volatile int from;
+  /** Newest suggestion. */
+  private final AtomicReference<Suggestion> latest = new AtomicReference<>(null);
+  /** True while a delivery of the newest suggestion is waiting on the EDT. */
+  private final AtomicBoolean pending = new AtomicBoolean(false);
+  /** Suggestion that was last delivered (only used on the EDT). */
+  private Suggestion delivered = null;
+  /** True to set the pedals to each suggestion (only used on the EDT). */
+  private boolean apply = true;
+  /** Transmitter that this is connected to (null if none). */
+  private Transmitter transmitter = null;
+
+  /**
+   * Construct a new input that suggests pedals starting from the given pedals.
+   * This should be constructed on the EDT.
+   *
+   * @param pedals pedals
+   */
+  public MidiChordInput(Pedals pedals) {
+    this.pedals = pedals;
+    from = PedalTable.getCode(pedals.getPedalPositions());
+    pedals.addPropertyChangeListener((PropertyChangeEvent evt) -> {
+      if (evt.getPropertyName().equals(Pedals.PROP_PEDALS)) {
+        from = PedalTable.getCode(pedals.getPedalPositions());
+      }
+    });
+    estimator.addPropertyChangeListener((PropertyChangeEvent evt) -> {
+      if (evt.getPropertyName().equals(KeyEstimator.PROP_KEY)) {
+        estimated = (Key) evt.getNewValue();
+      }
+    });
+  }
+
+  /**
+   * Connect to the default MIDI input (such as a keyboard), closing any
+   * other connection.
+   *
+   * @throws MidiUnavailableException if there is no MIDI input
+   */
+  public void connect() throws MidiUnavailableException {
+    connect(MidiSystem.getTransmitter());
+  }
+
+  /**
+   * Connect to the given transmitter, closing any other connection.
+   *
+   * @param t transmitter
+   */
+  public void connect(Transmitter t) {
+    if (transmitter != null) {
+      transmitter.close();
+    }
+    transmitter = t;
+    t.setReceiver(this);
+  }
+
+  /**
+   * Set whether the pedals are set to each suggestion.
+   *
+   * @param apply true: set the pedals
+   */
+  public void setApply(boolean apply) {
+    this.apply = apply;
+  }
+
+  /**
+   * Determine whether the pedals are set to each suggestion.
+   *
+   * @return true: the pedals are set
+   */
+  public boolean isApply() {
+    return apply;
+  }
+
+  /**
+   * Get the newest suggestion.
+   *
+   * @return suggestion (or null if nothing has been held yet)
+   */
+  public Suggestion getSuggestion() {
+    return latest.get();
+  }
+
+  @Override
+  public void send(MidiMessage message, long timeStamp) {
+    if (!(message instanceof ShortMessage)) {
+      return;
+    }
+    final ShortMessage sm = (ShortMessage) message;
+    switch (sm.getCommand()) {
+      case ShortMessage.NOTE_ON:
+        setKey(sm.getData1(), sm.getData2() > 0);    // velocity 0 is the same as off
+        break;
+      case ShortMessage.NOTE_OFF:
+        setKey(sm.getData1(), false);
+        break;
+      case ShortMessage.CONTROL_CHANGE:
+        if (sm.getData1() == ALL_NOTES_OFF) {
+          keysLow = 0;
+          keysHigh = 0;
+          update();
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Press or release a key.
+   *
+   * @param key MIDI key number
+   * @param down true: pressed
+   */
+  private void setKey(int key, boolean down) {
+    if (down) {
+      estimator.addNote(key - A2_KEY);
+    }
+    final long bit = 1L << (key & 63);
+    if (key < 64) {
+      keysLow = down ? (keysLow | bit) : (keysLow & ~bit);
+    } else {
+      keysHigh = down ? (keysHigh | bit) : (keysHigh & ~bit);
+    }
+    update();
+  }
+
+  /**
+   * Fold the held keys into pitches and make a new suggestion if they (or
+   * the estimated key) changed.
+   */
+  private void update() {
+    int mask = 0;
+    for (int p = 0; p < 12; p++) {
+      if (((keysLow & PITCH_KEYS[p][0]) | (keysHigh & PITCH_KEYS[p][1])) != 0) {
+        mask |= MASK12 >> p;
+      }
+    }
+    if ((mask == held) && (estimated == heldKey)) {
+      return;
+    }
+    held = mask;
+    heldKey = estimated;
+    final int code = (mask == 0) ? -1 : PedalTable.findClosestContaining(mask, from);
+    String name = NAMES[mask];
+    if (name == null) {
+      name = Pedals.findChordName(mask);
+      NAMES[mask] = name;     // the same for every thread, so a race only finds it twice
+    }
+    latest.set(new Suggestion(mask, name, code, estimated));
+    if (pending.compareAndSet(false, true)) {
+      SwingUtilities.invokeLater(this::deliver);
+    }
+  }
+
+  /**
+   * Deliver the newest suggestion on the EDT.
+   */
+  private void deliver() {
+    pending.set(false);
+    final Suggestion s = latest.get();
+    if (s == delivered) {
+      return;
+    }
+    final Suggestion old = delivered;
+    delivered = s;
+    if (apply && (s.getPedals() != null)) {
+      pedals.setPedals(s.getPedals());
+    }
+    pcs.firePropertyChange(PROP_SUGGESTION, old, s);
+  }
+
+  @Override
+  public void close() {
+    if (transmitter != null) {
+      transmitter.close();
+      transmitter = null;
+    }
+  }
+
+  /**
+   * Add the given listener to this object.
+   *
+   * @param listener listener
+   */
+  public void addPropertyChangeListener(PropertyChangeListener listener) {
+    pcs.addPropertyChangeListener(listener);
+  }
+
+  /**
+   * Remove the given listener to this object.
+   *
+   * @param listener listener
+   */
+  public void removePropertyChangeListener(PropertyChangeListener listener) {
+    pcs.removePropertyChangeListener(listener);
+  }
+
+  /**
+   * Pedals suggested for the pitches that were held.
+   */
+  public static class Suggestion {
+
+    /** Pitches that were held. */
+    private final int pitchMask;
+    /** Names of the chord (one on each line, or empty). */
+    private final String chordName;
+    /** Code of the suggested combination (-1 if there is none). */
+    private final int code;
+    /** Key estimated from the keys pressed so far (null if not enough yet). */
+    private final Key key;
+
+    /**
+     * Construct a new suggestion.
+     *
+     * @param pitchMask pitches that were held
+     * @param chordName names of the chord
+     * @param code code of the suggested combination (-1 if there is none)
+     * @param key estimated key (null if none)
+     */
+    Suggestion(int pitchMask, String chordName, int code, Key key) {
+      this.pitchMask = pitchMask;
+      this.chordName = chordName;
+      this.code = code;
+      this.key = key;
+    }
+
+    /**
+     * Get the pitches that were held.
+     *
+     * @return 12 bit pitch mask with A-natural being the left-most bit
+     */
+    public int getPitchMask() {
+      return pitchMask;
+    }
+
+    /**
+     * Get the names of the chord.
+     *
+     * @return names (one on each line, or empty if the chord has no name)
+     */
+    public String getChordName() {
+      return chordName;
+    }
+
+    /**
+     * Get the key estimated from all the keys pressed so far (see
+     * KeyEstimator), such as for resetting the pedals after a modulation.
+     *
+     * @return key (or null if not enough keys have been pressed yet)
+     */
+    public Key getKey() {
+      return key;
+    }
+
+    /**
+     * Get the suggested pedals: the allowed combination that sounds all the
+     * pitches with the fewest changes from the pedals at the time.
+     *
+     * @return pedal setting (or null if no combination sounds all the pitches)
+     */
+    public PedalPosition getPedals() {
+      return (code < 0) ? null : PedalTable.getPedalPosition(code);
+    }
+
+    /**
+     * Get every allowed combination that sounds all the pitches, the
+     * suggestion first and the others by the number of changes from it.
+     *
+     * @return pedal settings (empty if there are none)
+     */
+    public ArrayList<PedalPosition> getAlternatives() {
+      final ArrayList<PedalPosition> list = new ArrayList<>();
+      if (code < 0) {
+        return list;
+      }
+      final short[] codes = PedalTable.getContaining(pitchMask);
+      for (int changes = 0; changes <= 7; changes++) {
+        for (short c : codes) {
+          if (PedalTable.countChanges(c, code) == changes) {
+            list.add(PedalTable.getPedalPosition(c));
+          }
+        }
+      }
+      return list;
+    }
+
+    @Override
+    public String toString() {
+      return chordName.replace('\n', '/') + " " + getPedals();
+    }
+  }
+}
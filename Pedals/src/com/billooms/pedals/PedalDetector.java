@@ -0,0 +1,235 @@
+package com.billooms.pedals;
+
+import com.billooms.notes.AudioInput;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import javax.swing.Timer;
+
+/**
+ * Infers the pedal setting that a harp is played with from the chroma of its
+ * sound (see ChromaAnalyzer), so a teacher can check a student's pedals.
+ * Every allowed combination of the PedalTable is scored by how much of the
+ * chroma falls on the pitches it sounds, less a small cost for each pedal that
+ * is different from the current estimate (so the estimate doesn't flicker
+ * between combinations that sound the same pitches).
+ * The chroma sums are looked up in two tables of 64 (one for each half of the
+ * pitch mask), so scoring every combination takes a fixed amount of work and
+ * allocates nothing.
+ * A PROP_PEDALS property change is fired when the estimate changes.
+ *
+ * This is not thread safe -- it should only be used on the EDT.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class PedalDetector {
+
+  /** PedalDetector can fire propertyChanges. */
+  private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+  /** Property name used when the detected pedals change (the new value is a PedalPosition). */
+  public final static String PROP_PEDALS = "DetectedPedals";
+
+  /** Pitches with less than this fraction of the strongest pitch's chroma are taken as not heard. */
+  private final static float PITCH_FLOOR = 0.1f;
+  /** Cost of each pedal change from the current estimate (as a fraction of the chroma). */
+  private final static float CHANGE_COST = 0.002f;
+  /** Chroma (the sum of all pitches) below this is taken as silence. */
+  private final static float MIN_CHROMA = 0.01f;
+  /** Milliseconds between reads of the live input. */
+  private final static int REFRESH = 1000 / 30;
+  /** Mask to find the 12th bit. */
+  private final static int MASK12 = 0b100000000000;
+
+  /** Chroma read from the live input. */
+  private final float[] raw = new float[12];
+  /** Chroma of each pitch, normalized so the strongest is 1. */
+  private final float[] chroma = new float[12];
+  /** Sum of the chroma for each 6 bit mask of the first 6 pitches (A through D). */
+  private final float[] high = new float[64];
+  /** Sum of the chroma for each 6 bit mask of the last 6 pitches (D-sharp through G-sharp). */
+  private final float[] low = new float[64];
+  /** Code of the current estimate (-1 if nothing has been heard). */
+  private int current = -1;
+  /** Pitches that were heard in the last update. */
+  private int heard = 0;
+  /** Live input that is being read (null if none). */
+  private AudioInput input = null;
+  /** Reads the live input. */
+  private final Timer timer;
+
+  /**
+   * Construct a new detector.
+   */
+  public PedalDetector() {
+    timer = new Timer(REFRESH, e -> readInput());
+    timer.setCoalesce(true);
+  }
+
+  /**
+   * Start reading the given live input (stopping any other input).
+   *
+   * @param input live input
+   */
+  public void start(AudioInput input) {
+    stop();
+    this.input = input;
+    timer.start();
+  }
+
+  /**
+   * Stop reading the live input (the input itself is not closed).
+   */
+  public void stop() {
+    timer.stop();
+    input = null;
+  }
+
+  /**
+   * Update the estimate from the given chroma.
+   * This fires a PROP_PEDALS property change if the estimate changes.
+   *
+   * @param newChroma chroma of each of the 12 pitches (A first)
+   * @return code of the estimated combination (or -1 if nothing has been heard)
+   */
+  public int update(float[] newChroma) {
+    float max = 0.0f;
+    for (int p = 0; p < 12; p++) {
+      max = Math.max(max, newChroma[p]);
+    }
+    if (max <= 0.0f) {
+      return current;     // silence: keep the estimate
+    }
+    float total = 0.0f;
+    heard = 0;
+    for (int p = 0; p < 12; p++) {
+      chroma[p] = newChroma[p] / max;
+      total += chroma[p];
+      if (chroma[p] >= PITCH_FLOOR) {
+        heard |= MASK12 >> p;
+      }
+    }
+    if (total * max < MIN_CHROMA) {
+      return current;
+    }
+    sums(chroma, 0, high);
+    sums(chroma, 6, low);
+    int best = -1;
+    float bestScore = -Float.MAX_VALUE;
+    for (int code = 0; code < PedalTable.SIZE; code++) {
+      if (!PedalTable.isValid(code)) {
+        continue;
+      }
+      final int mask = PedalTable.getPitchMask(code);
+      float score = high[mask >> 6] + low[mask & 0b111111];
+      if (current >= 0) {
+        score -= CHANGE_COST * total * PedalTable.countChanges(code, current);
+      }
+      if (score > bestScore) {    // the first one wins a tie
+        best = code;
+        bestScore = score;
+      }
+    }
+    if (best != current) {
+      final PedalPosition old = getPedals();
+      current = best;
+      pcs.firePropertyChange(PROP_PEDALS, old, getPedals());
+    }
+    return current;
+  }
+
+  /**
+   * Get the estimated pedal setting.
+   *
+   * @return pedal setting (or null if nothing has been heard)
+   */
+  public PedalPosition getPedals() {
+    return (current < 0) ? null : PedalTable.getPedalPosition(current);
+  }
+
+  /**
+   * Get the pitches that were heard in the last update.
+   *
+   * @return 12 bit pitch mask with A-natural being the left-most bit
+   */
+  public int getHeardPitches() {
+    return heard;
+  }
+
+  /**
+   * Count the pedals of the given setting that are different from the estimate.
+   *
+   * @param expected pedal setting that should be used
+   * @return number of pedals that are different (0 if nothing has been heard)
+   */
+  public int countWrong(PedalPosition expected) {
+    return (current < 0) ? 0 : expected.countChanges(getPedals());
+  }
+
+  /**
+   * Forget the estimate.
+   */
+  public void reset() {
+    current = -1;
+    heard = 0;
+  }
+
+  /**
+   * Read the chroma of the live input and update the estimate.
+   */
+  private void readInput() {
+    if (input == null) {
+      return;
+    }
+    input.getChroma(raw);
+    update(raw);
+    if (!input.isRunning()) {
+      stop();
+    }
+  }
+
+  /**
+   * Fill in the chroma sum for every 6 bit mask of 6 pitches.
+   * The left-most of the 6 bits is the first pitch.
+   *
+   * @param c chroma of each pitch
+   * @param first first pitch
+   * @param table 64 sums
+   */
+  private static void sums(float[] c, int first, float[] table) {
+    table[0] = 0.0f;
+    for (int m = 1; m < 64; m++) {
+      final int bit = 31 - Integer.numberOfLeadingZeros(m);   // highest bit set
+      table[m] = table[m & ~(1 << bit)] + c[first + 5 - bit];
+    }
+  }
+
+  /**
+   * Add the given listener to this object.
+   *
+   * @param listener listener
+   */
+  public void addPropertyChangeListener(PropertyChangeListener listener) {
+    pcs.addPropertyChangeListener(listener);
+  }
+
+  /**
+   * Remove the given listener to this object.
+   *
+   * @param listener listener
+   */
+  public void removePropertyChangeListener(PropertyChangeListener listener) {
+    pcs.removePropertyChangeListener(listener);
+  }
+}
@@ -0,0 +1,280 @@
+package com.billooms.pedals;
+
+import com.billooms.chords.Progression;
+import com.billooms.keysignature.Key;
+import com.billooms.notes.Note;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Find the pedal settings for a sequence of pitch masks that need the fewest
+ * pedal changes.
+ * Each step (a chord or a melody note) can use any allowed pedal combination
+ * of the PedalTable that sounds all of its pitches.
+ * The best path through the steps is found by dynamic programming over the
+ * combinations of each step. When there are few combinations every pair is
+ * compared, otherwise the costs are spread over all 2187 combinations with one
+ * pass per pedal, so each step takes a bounded amount of work.
+ * Steps that the harp can't sound are skipped and reported as infeasible.
+ * The first setting is chosen to be close to the pedals of the key, but
+ * setting up the pedals before the start is not counted as pedal changes.
+ *
+ * gliss would be in the wrong order.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class PedalOptimizer {
+
+  /** Cost of one pedal change (more than setting up all 7 pedals at the start). */
+  private final static int CHANGE_COST = 8;
+  /** Cost of a combination that can't be used. */
+  private final static int INFINITE = Integer.MAX_VALUE / 2;
+  /** Mask to find all 12 bits. */
+  private final static int MASK12ALL = 0b111111111111;
+  /** Value of each pedal's digit in the code (A is the most significant). */
+  private final static int[] PLACE = {729, 243, 81, 27, 9, 3, 1};
+  /** Compare every pair of combinations if there are no more pairs than this. */
+  private final static int DIRECT_LIMIT = 8192;
+  /** Low bit of each 2 bit field of a packed code. */
+  private final static int PACKED_LOW = 0b01010101010101;
+  /** Each code with 2 bits per pedal so that changes can be counted with bit operations. */
+  private final static int[] PACKED = new int[PedalTable.SIZE];
+
+  static {
+    for (int code = 0; code < PedalTable.SIZE; code++) {
+      for (int p : PLACE) {
+        PACKED[code] = (PACKED[code] << 2) | ((code / p) % 3);
+      }
+    }
+  }
+
+  /**
+   * This class only has static methods.
+   */
+  private PedalOptimizer() {
+  }
+
+  /**
+   * Get the pitch mask for each chord of a progression.
+   *
+   * @param prog progression
+   * @return array of 12 bit pitch masks
+   */
+  public static int[] getMasks(Progression prog) {
+    int[] masks = new int[prog.size()];
+    for (int i = 0; i < masks.length; i++) {
+      masks[i] = prog.getPitchMask(i);
+    }
+    return masks;
+  }
+
+  /**
+   * Get the pitch mask for each note of a melody.
+   *
+   * @param melody list of notes
+   * @return array of 12 bit pitch masks
+   */
+  public static int[] getMasks(ArrayList<Note> melody) {
+    int[] masks = new int[melody.size()];
+    for (int i = 0; i < masks.length; i++) {
+      masks[i] = melody.get(i).getPitchMask();
+    }
+    return masks;
+  }
+
+  /**
+   * Find the pedal settings with the fewest pedal changes for a sequence of pitch masks.
+   *
+   * @param masks 12 bit pitch mask for each step
+   * @param key key (the first setting is chosen to be close to the pedals for this key)
+   * @return pedal plan
+   */
+  public static PedalPlan solve(int[] masks, Key key) {
+    return solve(masks, key, 0);
+  }
+
+  /**
+   * Find the pedal plan for all 12 transpositions of a progression.
+   *
+   * @param prog progression
+   * @param key key of the progression
+   * @return list of 12 plans with the best one first
+   */
+  public static ArrayList<PedalPlan> rankTranspositions(Progression prog, Key key) {
+    return rankTranspositions(getMasks(prog), key);
+  }
+
+  /**
+   * Find the pedal plan for all 12 transpositions of a melody.
+   *
+   * @param melody list of notes
+   * @param key key of the melody
+   * @return list of 12 plans with the best one first
+   */
+  public static ArrayList<PedalPlan> rankTranspositions(ArrayList<Note> melody, Key key) {
+    return rankTranspositions(getMasks(melody), key);
+  }
+
+  /**
+   * Find the pedal plan for all 12 transpositions of a sequence of pitch masks.
+   * The transpositions are solved in parallel.
+   * Plans are ranked by the number of infeasible steps, then the total number
+   * of pedal changes, then the most changes at any one spot.
+   *
+   * @param masks 12 bit pitch mask for each step
+   * @param key key of the original
+   * @return list of 12 plans with the best one first
+   */
+  public static ArrayList<PedalPlan> rankTranspositions(int[] masks, Key key) {
+    ArrayList<PedalPlan> list = IntStream.range(0, 12).parallel()
+        .mapToObj(s -> solve(masks, key, s))
+        .collect(Collectors.toCollection(ArrayList::new));
+    Collections.sort(list);
+    return list;
+  }
+
+  /**
+   * Find the pedal settings for a transposition of a sequence of pitch masks.
+   *
+   * @param masks 12 bit pitch mask for each step of the original
+   * @param key key of the original
+   * @param semitones semitones up (0 through 11)
+   * @return pedal plan for the transposed key
+   */
+  private static PedalPlan solve(int[] masks, Key key, int semitones) {
+    final Key target = key.transpose(semitones);
+    final int keyCode = Transposer.getKeyPedals(target);
+    final int n = masks.length;
+    // feasible combinations and the combination used before each of them
+    final short[][] feasible = new short[n][];
+    final short[][] parents = new short[n][];
+    final int[] cost = new int[PedalTable.SIZE];
+    final int[] from = new int[PedalTable.SIZE];
+    final short[][] containing = new short[4096][];   // each pitch mask is looked up once
+    int[] prevCost = null;    // cost of each feasible combination at the last feasible step
+    int last = -1;            // last feasible step
+    for (int k = 0; k < n; k++) {
+      final int mask = Transposer.rotate(masks[k] & MASK12ALL, semitones);
+      if (containing[mask] == null) {
+        containing[mask] = PedalTable.getContaining(mask);
+      }
+      final short[] codes = containing[mask];
+      if (codes.length == 0) {
+        continue;     // the harp can't sound this step
+      }
+      final int count = codes.length;
+      final int[] curCost = new int[count];
+      final short[] par = new short[count];
+      if (last < 0) {   // first feasible step: cost of setting up from the key's pedals
+        for (int i = 0; i < count; i++) {
+          curCost[i] = PedalTable.countChanges(codes[i], keyCode);
+          par[i] = -1;
+        }
+      } else if (codes == feasible[last]) {   // same pitches: no need to change anything
+        System.arraycopy(prevCost, 0, curCost, 0, count);
+        System.arraycopy(codes, 0, par, 0, count);
+      } else if (feasible[last].length * count <= DIRECT_LIMIT) {   // compare every pair
+        final short[] prevCodes = feasible[last];
+        for (int i = 0; i < count; i++) {
+          final int packed = PACKED[codes[i]];
+          int best = INFINITE;
+          for (int j = 0; j < prevCodes.length; j++) {
+            final int x = packed ^ PACKED[prevCodes[j]];
+            final int c = prevCost[j] + CHANGE_COST * Integer.bitCount((x | (x >>> 1)) & PACKED_LOW);
+            if (c < best) {
+              best = c;
+              par[i] = prevCodes[j];
+            }
+          }
+          curCost[i] = best;
+        }
+      } else {          // relax one pedal at a time over all combinations
+        Arrays.fill(cost, INFINITE);
+        for (int j = 0; j < prevCost.length; j++) {
+          cost[feasible[last][j]] = prevCost[j];
+        }
+        for (int code = 0; code < PedalTable.SIZE; code++) {
+          from[code] = code;
+        }
+        for (int p : PLACE) {
+          relax(cost, from, p);
+        }
+        for (int i = 0; i < count; i++) {
+          curCost[i] = cost[codes[i]];
+          par[i] = (short) from[codes[i]];
+        }
+      }
+      feasible[k] = codes;
+      parents[k] = par;
+      prevCost = curCost;
+      last = k;
+    }
+    // trace back from the cheapest combination at the last feasible step
+    final int[] codes = new int[n];
+    Arrays.fill(codes, -1);
+    if (last >= 0) {
+      int best = feasible[last][0];
+      int bestCost = prevCost[0];
+      for (int i = 1; i < prevCost.length; i++) {
+        if (prevCost[i] < bestCost) {
+          best = feasible[last][i];
+          bestCost = prevCost[i];
+        }
+      }
+      for (int k = last; k >= 0; k--) {
+        if (feasible[k] != null) {
+          codes[k] = best;
+          best = parents[k][Arrays.binarySearch(feasible[k], (short) best)];
+        }
+      }
+    }
+    return new PedalPlan(target, semitones, codes, keyCode);
+  }
+
+  /**
+   * Allow one pedal to change for the given cost.
+   * After this is done for every pedal, each cost is the cheapest way of 
+   * reaching that combination from any combination.
+   *
+   * @param cost cost of each combination
+   * @param from combination where each cost came from
+   * @param place value of the pedal's digit in the code
+   */
+  private static void relax(int[] cost, int[] from, int place) {
+    final int group = 3 * place;
+    for (int high = 0; high < PedalTable.SIZE; high += group) {
+      for (int code = high; code < high + place; code++) {    // the pedal's digit is 0
+        int min = code;
+        if (cost[code + place] < cost[min]) {
+          min = code + place;
+        }
+        if (cost[code + 2 * place] < cost[min]) {
+          min = code + 2 * place;
+        }
+        final int c = cost[min] + CHANGE_COST;
+        for (int v = code; v < code + group; v += place) {
+          if (c < cost[v]) {
+            cost[v] = c;
+            from[v] = from[min];
+          }
+        }
+      }
+    }
+  }
+}
@@ -3,12 +3,14 @@ package com.billooms.pedals;
 import static com.billooms.notes.BasicNote.*;
 import com.billooms.notes.Note;
 import com.billooms.notes.NotePlayer;
+import com.billooms.notes.Phrase;
 import com.billooms.notes.SharpFlat;
 import static com.billooms.notes.SharpFlat.NATURAL;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 /**
  * Panel for displaying and changing harp pedals.
@@ -38,6 +40,10 @@ public class PedalPanel extends JPanel implements PropertyChangeListener {
   private NotePlayer player;
   /** First note to play on glissando. */
   private Note firstNote;
+  /** Glissando that is playing (cancelled when a new one is started). */
+  private Phrase gliss = null;
+  /** True while an update of the form is waiting on the EDT. */
+  private boolean updatePending = false;
 
   /** Creates new form PedalPanel */
   public PedalPanel() {
@@ -55,6 +61,7 @@ public class PedalPanel extends JPanel implements PropertyChangeListener {
     updateForm();
     findAlternates();     // initialize the alternateCombo
     pedals.addPropertyChangeListener(this);
+    player.setOpenStrings(pedals.getStringNotes(player.getLowest(), player.getHighest()));
   }
 
   /**
@@ -128,22 +135,31 @@ public class PedalPanel extends JPanel implements PropertyChangeListener {
    * Play a glissando based on the current pedal positions.
    */
   private void playPedalGliss() {
-    ArrayList<Note> notes = pedals.getNotes(firstNote);
-    ArrayList<Note> notes2 = new ArrayList<>();
-    for (Note note : notes) {
-      notes2.add(new Note(note.getNumber() + 12));   // add a 2nd octave
+    ArrayList<Note> notes = pedals.getGlissNotes(firstNote);
+    if (gliss != null) {
+      gliss.cancel();     // stop the rest of the previous glissando
     }
-    for (Note note : notes) {
-      notes2.add(new Note(note.getNumber() + 24));   // add a 3rd octave
-    }
-    notes.addAll(notes2);
-    player.playGliss(notes);
+    gliss = player.playGliss(notes);
 //    player.play(notes);     // slow for debugging
   }
 
+  /**
+   * Changes are coalesced: a burst of changes (such as all 7 pedals being set,
+   * or chords coming in from a MIDI keyboard) updates the form only once.
+   * 
+   * @param evt property change
+   */
   @Override
   public void propertyChange(PropertyChangeEvent evt) {
-    updateForm();
+    if (updatePending) {
+      return;
+    }
+    updatePending = true;
+    SwingUtilities.invokeLater(() -> {
+      updatePending = false;
+      player.setOpenStrings(pedals.getStringNotes(player.getLowest(), player.getHighest()));
+      updateForm();
+    });
   }
 
   /** This method is called from within the constructor to initialize the form.
@@ -0,0 +1,224 @@
+package com.billooms.pedals;
+
+import com.billooms.keysignature.Key;
+import java.util.ArrayList;
+
+/**
+ * Pedal settings for a sequence of steps (chords or melody notes) found by 
+ * the PedalOptimizer.
+ * This is immutable once it is made.
+ *
+ * gliss would be in the wrong order.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class PedalPlan implements Comparable<PedalPlan> {
+
+  /** Key of the plan. */
+  private final Key key;
+  /** Semitones up from the original (0 through 11). */
+  private final int semitones;
+  /** PedalTable code for each step (-1 if the step is infeasible). */
+  private final int[] codes;
+  /** Number of pedal changes going into each step. */
+  private final int[] changes;
+  /** Number of pedals changed from the key's pedals before the start. */
+  private final int setup;
+  /** Total number of pedal changes. */
+  private final int total;
+  /** Step with the most pedal changes (-1 if there are no steps). */
+  private final int hardest;
+  /** First and last step of each run of infeasible steps. */
+  private final ArrayList<int[]> infeasible = new ArrayList<>();
+  /** Number of infeasible steps. */
+  private final int numInfeasible;
+
+  /**
+   * Make a plan from the given settings.
+   *
+   * @param key key
+   * @param semitones semitones up from the original
+   * @param codes PedalTable code for each step (-1 if the step is infeasible)
+   * @param keyCode PedalTable code of the key's pedals
+   */
+  PedalPlan(Key key, int semitones, int[] codes, int keyCode) {
+    this.key = key;
+    this.semitones = semitones;
+    this.codes = codes;
+    this.changes = new int[codes.length];
+    int prev = -1;
+    int sum = 0;
+    int hard = (codes.length > 0) ? 0 : -1;
+    int bad = 0;
+    int startSetup = 0;
+    for (int k = 0; k < codes.length; k++) {
+      if (codes[k] < 0) {
+        if ((k == 0) || (codes[k - 1] >= 0)) {
+          infeasible.add(new int[]{k, k});
+        } else {
+          infeasible.get(infeasible.size() - 1)[1] = k;
+        }
+        bad++;
+        continue;
+      }
+      if (prev < 0) {
+        startSetup = PedalTable.countChanges(codes[k], keyCode);
+      } else {
+        changes[k] = PedalTable.countChanges(prev, codes[k]);
+        sum += changes[k];
+        if (changes[k] > changes[hard]) {
+          hard = k;
+        }
+      }
+      prev = codes[k];
+    }
+    this.setup = startSetup;
+    this.total = sum;
+    this.hardest = hard;
+    this.numInfeasible = bad;
+  }
+
+  /**
+   * Get the key of the plan.
+   *
+   * @return key
+   */
+  public Key getKey() {
+    return key;
+  }
+
+  /**
+   * Get the number of semitones up from the original.
+   *
+   * @return semitones 0 through 11
+   */
+  public int getSemitones() {
+    return semitones;
+  }
+
+  /**
+   * Get the number of steps.
+   *
+   * @return number of steps
+   */
+  public int size() {
+    return codes.length;
+  }
+
+  /**
+   * Get the pedal setting for the given step.
+   *
+   * @param k step
+   * @return pedal setting (or null if the step is infeasible)
+   */
+  public PedalPosition getPedals(int k) {
+    return (codes[k] < 0) ? null : PedalTable.getPedalPosition(codes[k]);
+  }
+
+  /**
+   * Get the number of pedal changes going into the given step.
+   *
+   * @param k step
+   * @return number of pedal changes
+   */
+  public int getChanges(int k) {
+    return changes[k];
+  }
+
+  /**
+   * Get the number of pedals changed from the key's pedals before the start.
+   *
+   * @return number of pedals
+   */
+  public int getSetupChanges() {
+    return setup;
+  }
+
+  /**
+   * Get the total number of pedal changes after the start.
+   *
+   * @return number of pedal changes
+   */
+  public int getTotalChanges() {
+    return total;
+  }
+
+  /**
+   * Get the step that needs the most pedal changes.
+   *
+   * @return step (or -1 if there are no steps)
+   */
+  public int getHardestStep() {
+    return hardest;
+  }
+
+  /**
+   * Get the runs of steps that the harp can't sound.
+   *
+   * @return list of {first, last} step of each run
+   */
+  public ArrayList<int[]> getInfeasible() {
+    ArrayList<int[]> list = new ArrayList<>();
+    for (int[] run : infeasible) {
+      list.add(run.clone());
+    }
+    return list;
+  }
+
+  /**
+   * Get the number of steps that the harp can't sound.
+   *
+   * @return number of steps
+   */
+  public int getNumInfeasible() {
+    return numInfeasible;
+  }
+
+  @Override
+  public int compareTo(PedalPlan other) {
+    if (numInfeasible != other.numInfeasible) {
+      return Integer.compare(numInfeasible, other.numInfeasible);
+    }
+    if (total != other.total) {
+      return Integer.compare(total, other.total);
+    }
+    int myMost = (hardest < 0) ? 0 : changes[hardest];
+    int otherMost = (other.hardest < 0) ? 0 : other.changes[other.hardest];
+    if (myMost != otherMost) {
+      return Integer.compare(myMost, otherMost);
+    }
+    if (setup != other.setup) {
+      return Integer.compare(setup, other.setup);
+    }
+    return Integer.compare(semitones, other.semitones);
+  }
+
+  @Override
+  public String toString() {
+    String str = key.toString() + ": " + total + " pedal changes";
+    if ((hardest >= 0) && (changes[hardest] > 0)) {
+      str += ", hardest at " + (hardest + 1) + " (" + changes[hardest] + ")";
+    }
+    for (int[] run : infeasible) {
+      if (run[0] == run[1]) {
+        str += ", can't play " + (run[0] + 1);
+      } else {
+        str += ", can't play " + (run[0] + 1) + "-" + (run[1] + 1);
+      }
+    }
+    return str;
+  }
+}
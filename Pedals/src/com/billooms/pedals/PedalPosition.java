@@ -71,4 +71,20 @@ public class PedalPosition {
     }
     return pos[i];
   }
+  
+  /**
+   * Count the number of pedals that are different from the given pedal positions.
+   * 
+   * @param other other pedal positions
+   * @return number of pedal changes (0 through 7)
+   */
+  public int countChanges(PedalPosition other) {
+    int n = 0;
+    for (int i = 0; i < pos.length; i++) {
+      if (pos[i] != other.getPos(i)) {
+        n++;
+      }
+    }
+    return n;
+  }
 }
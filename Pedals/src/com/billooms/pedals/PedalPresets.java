@@ -0,0 +1,194 @@
+package com.billooms.pedals;
+
+import com.billooms.keysignature.Key;
+import com.billooms.keysignature.KeySignature;
+import com.billooms.keysignature.Scale;
+import com.billooms.notes.BasicNote;
+import com.billooms.notes.Note;
+import java.util.ArrayList;
+
+/**
+ * Table of pedal settings for every harmonic function in every key.
+ * The table covers all key signatures and scales and is computed once.
+ * Each entry is the pedal setting that sounds only the pitches of the function
+ * and needs the fewest pedal changes from the pedals for the key.
+ * Unwanted notes are removed by setting pedals to enharmonics of wanted notes.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class PedalPresets {
+
+  /** Mask to find the 12th bit. */
+  private final static int MASK12 = 0b100000000000;
+  /** Mask to find all 12 bits. */
+  private final static int MASK12ALL = 0b111111111111;
+  /** Mask to find the 7th bit of a degree mask. */
+  private final static int MASK7 = 0b1000000;
+  /** Number of letter names (steps) spanned by an interval of 0 through 11 semitones. */
+  private final static int[] STEPS = {0, 1, 1, 2, 2, 3, 3, 4, 5, 5, 6, 6};
+  /** Number of entries in the table. */
+  private final static int SIZE = KeySignature.SIZE * Scale.SIZE * HarmonicFunction.SIZE;
+
+  /** Pedal setting for each entry (null if there is none). */
+  private final static PedalPosition[] PEDALS = new PedalPosition[SIZE];
+  /** First note of the glissando for each entry (null if there are no pedals). */
+  private final static Note[] FIRST_NOTES = new Note[SIZE];
+  /** Pitch mask for each entry. */
+  private final static int[] PITCH_MASKS = new int[SIZE];
+
+  static {
+    final Pedals pedals = new Pedals();
+    for (KeySignature keySig : KeySignature.values()) {
+      for (Scale scale : Scale.values()) {
+        Key key = new Key(keySig, scale);
+        ArrayList<Note> notes = key.getNotes();
+        pedals.setPedals(key);
+        PedalPosition keyPedals = pedals.getPedalPositions();
+        for (HarmonicFunction function : HarmonicFunction.values()) {
+          int i = index(keySig, scale, function);
+          int root = (notes.get(function.getDegree()).getNumber() + function.getOffset()) % 12;
+          PITCH_MASKS[i] = pitchMask(function, notes, root);
+          PEDALS[i] = closest(pedals.pedalsForPitchMask(PITCH_MASKS[i]), keyPedals);
+          if (PEDALS[i] != null) {
+            Note degreeNote = notes.get(function.getDegree());
+            BasicNote preferred = BasicNote.values()[(degreeNote.getBaseNote().ordinal() + STEPS[function.getOffset()]) % 7];
+            FIRST_NOTES[i] = stringForPitch(PEDALS[i], root, preferred);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * This class only has static methods.
+   */
+  private PedalPresets() {
+  }
+
+  /**
+   * Get the pedal setting for the given function in the given key.
+   *
+   * @param key key
+   * @param function harmonic function
+   * @return pedal setting (or null if it is not possible)
+   */
+  public static PedalPosition getPedals(Key key, HarmonicFunction function) {
+    return PEDALS[index(key.getKeySignature(), key.getScale(), function)];
+  }
+
+  /**
+   * Get the first note (string) of the glissando for the given function in the given key.
+   * This is the string sounding the root with the preset pedals.
+   *
+   * @param key key
+   * @param function harmonic function
+   * @return first note (or null if there is no pedal setting)
+   */
+  public static Note getFirstNote(Key key, HarmonicFunction function) {
+    return FIRST_NOTES[index(key.getKeySignature(), key.getScale(), function)];
+  }
+
+  /**
+   * Get the pitches that are sounded for the given function in the given key.
+   *
+   * @param key key
+   * @param function harmonic function
+   * @return 12 bit pitch mask with A-natural being the left-most bit
+   */
+  public static int getPitchMask(Key key, HarmonicFunction function) {
+    return PITCH_MASKS[index(key.getKeySignature(), key.getScale(), function)];
+  }
+
+  /**
+   * Get the index into the tables.
+   *
+   * @param keySig key signature
+   * @param scale scale
+   * @param function harmonic function
+   * @return index
+   */
+  private static int index(KeySignature keySig, Scale scale, HarmonicFunction function) {
+    return (keySig.ordinal() * Scale.SIZE + scale.ordinal()) * HarmonicFunction.SIZE + function.ordinal();
+  }
+
+  /**
+   * Get the pitch mask for the given function.
+   *
+   * @param function harmonic function
+   * @param notes notes of the key's scale
+   * @param root pitch of the root (0 through 11)
+   * @return 12 bit pitch mask
+   */
+  private static int pitchMask(HarmonicFunction function, ArrayList<Note> notes, int root) {
+    if (function.isDiatonic()) {
+      int mask = 0;
+      int degrees = function.getDegreeMask();
+      for (int i = 0; i < 7; i++) {
+        if ((degrees & MASK7) != 0) {
+          mask = mask | (MASK12 >> (notes.get(i).getNumber() % 12));
+        }
+        degrees = degrees << 1;
+      }
+      return mask;
+    }
+    // make a 24 bit copy of the chord mask and shift it by the root
+    final int chordMask = function.getChordMask();
+    return (((chordMask << 12) | chordMask) >> root) & MASK12ALL;
+  }
+
+  /**
+   * Find the pedal setting in the list that needs the fewest changes from the given setting.
+   *
+   * @param list list of pedal settings
+   * @param from current pedal setting
+   * @return closest setting (or null if the list is empty)
+   */
+  private static PedalPosition closest(ArrayList<PedalPosition> list, PedalPosition from) {
+    PedalPosition best = null;
+    int bestChanges = Integer.MAX_VALUE;
+    for (PedalPosition pedPos : list) {
+      int changes = pedPos.countChanges(from);
+      if (changes < bestChanges) {    // the first one wins a tie
+        best = pedPos;
+        bestChanges = changes;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Find the string that sounds the given pitch with the given pedals.
+   * The preferred string is used if it sounds the pitch.
+   * 
+   * @param pedPos pedal setting
+   * @param pitch pitch (0 through 11)
+   * @param preferred preferred string
+   * @return note for the string (or the pitch with default spelling if no string sounds it)
+   */
+  private static Note stringForPitch(PedalPosition pedPos, int pitch, BasicNote preferred) {
+    Note note = new Note(preferred, pedPos.getPos(preferred.ordinal()));
+    if ((note.getNumber() % 12) == pitch) {
+      return note;
+    }
+    for (BasicNote bn : BasicNote.values()) {
+      note = new Note(bn, pedPos.getPos(bn.ordinal()));
+      if ((note.getNumber() % 12) == pitch) {
+        return note;
+      }
+    }
+    return new Note(pitch);
+  }
+}
@@ -0,0 +1,273 @@
+package com.billooms.pedals;
+
+import com.billooms.notes.BasicNote;
+import com.billooms.notes.SharpFlat;
+import static com.billooms.notes.SharpFlat.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Table of every combination of the 7 pedals.
+ * Each combination is encoded as a number from 0 to 2186 with one base-3 digit
+ * per pedal (the A pedal is the most significant digit) using the ordinal of
+ * the pedal position (sharp, natural, flat).
+ * The pitch mask of every combination is computed once, and the valid
+ * combinations are indexed by pitch mask so that a lookup does not need to
+ * search through all of the combinations.
+ * B-sharp with C-flat and E-sharp with F-flat are not valid because the
+ * gliss would be in the wrong order.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class PedalTable {
+
+  /** Number of pedal combinations (3 positions for each of 7 pedals). */
+  public final static int SIZE = 2187;
+  /** Number of possible 12 bit pitch masks. */
+  private final static int NUM_MASKS = 4096;
+  /** Mask to find all 12 bits. */
+  private final static int MASK12ALL = 0b111111111111;
+  /** Value of each pedal's digit in the code (A is the most significant). */
+  private final static int[] PLACE = {729, 243, 81, 27, 9, 3, 1};
+
+  /** Pitch mask for each combination. */
+  private final static int[] PITCH_MASKS = new int[SIZE];
+  /** True if the combination is allowed. */
+  private final static boolean[] VALID = new boolean[SIZE];
+  /** PedalPosition for each combination. */
+  private final static PedalPosition[] POSITIONS = new PedalPosition[SIZE];
+  /** Start of each pitch mask's combinations in CODES (NUM_MASKS + 1 entries). */
+  private final static int[] START = new int[NUM_MASKS + 1];
+  /** Valid combinations ordered by pitch mask and then by code. */
+  private final static short[] CODES;
+  /** Start of each pitch mask's containing combinations in CONTAINING (NUM_MASKS + 1 entries). */
+  private final static int[] START_CONTAINING = new int[NUM_MASKS + 1];
+  /** Valid combinations that contain each pitch mask, ordered by pitch mask and then by code. */
+  private final static short[] CONTAINING;
+
+  static {
+    final SharpFlat[] sf = SharpFlat.values();    // for convenience
+    final int[][] masks = new int[7][];
+    for (BasicNote bn : BasicNote.values()) {
+      masks[bn.ordinal()] = new Pedal(bn).getAllPitchMasks();
+    }
+    int numValid = 0;
+    for (int code = 0; code < SIZE; code++) {
+      int[] p = digits(code);
+      int mask = 0;
+      for (int i = 0; i < 7; i++) {
+        mask = mask | masks[i][p[i]];
+      }
+      PITCH_MASKS[code] = mask;
+      VALID[code] = !((p[1] == SHARP.ordinal()) && (p[2] == FLAT.ordinal()))
+          && !((p[4] == SHARP.ordinal()) && (p[5] == FLAT.ordinal()));
+      POSITIONS[code] = new PedalPosition(sf[p[0]], sf[p[1]], sf[p[2]], sf[p[3]], sf[p[4]], sf[p[5]], sf[p[6]]);
+      if (VALID[code]) {
+        START[mask + 1]++;
+        numValid++;
+      }
+    }
+    for (int mask = 0; mask < NUM_MASKS; mask++) {
+      START[mask + 1] += START[mask];
+    }
+    CODES = new short[numValid];
+    final int[] next = Arrays.copyOf(START, NUM_MASKS);
+    for (int code = 0; code < SIZE; code++) {    // increasing code keeps each mask in order
+      if (VALID[code]) {
+        CODES[next[PITCH_MASKS[code]]++] = (short) code;
+      }
+    }
+    // same again for every subset of each combination's pitches
+    for (int code = 0; code < SIZE; code++) {
+      if (VALID[code]) {
+        int sub = PITCH_MASKS[code];
+        do {
+          START_CONTAINING[sub + 1]++;
+          sub = (sub - 1) & PITCH_MASKS[code];
+        } while (sub != PITCH_MASKS[code]);
+      }
+    }
+    for (int mask = 0; mask < NUM_MASKS; mask++) {
+      START_CONTAINING[mask + 1] += START_CONTAINING[mask];
+    }
+    CONTAINING = new short[START_CONTAINING[NUM_MASKS]];
+    final int[] nextContaining = Arrays.copyOf(START_CONTAINING, NUM_MASKS);
+    for (int code = 0; code < SIZE; code++) {
+      if (VALID[code]) {
+        int sub = PITCH_MASKS[code];
+        do {
+          CONTAINING[nextContaining[sub]++] = (short) code;
+          sub = (sub - 1) & PITCH_MASKS[code];
+        } while (sub != PITCH_MASKS[code]);
+      }
+    }
+  }
+
+  /**
+   * This class only has static methods.
+   */
+  private PedalTable() {
+  }
+
+  /**
+   * Get the code for the given pedal positions.
+   *
+   * @param pedPos pedal positions
+   * @return code 0 through 2186
+   */
+  public static int getCode(PedalPosition pedPos) {
+    int code = 0;
+    for (int i = 0; i < 7; i++) {
+      code = code * 3 + Math.min(pedPos.getPos(i).ordinal(), FLAT.ordinal());
+    }
+    return code;
+  }
+
+  /**
+   * Get the pedal positions for the given code.
+   *
+   * @param code code 0 through 2186
+   * @return pedal positions
+   */
+  public static PedalPosition getPedalPosition(int code) {
+    return POSITIONS[code];
+  }
+
+  /**
+   * Get the pitches sounded by the given combination.
+   *
+   * @param code code 0 through 2186
+   * @return 12 bit pitch mask with A-natural being the left-most bit
+   */
+  public static int getPitchMask(int code) {
+    return PITCH_MASKS[code];
+  }
+
+  /**
+   * Determine if the given combination is allowed.
+   *
+   * @param code code 0 through 2186
+   * @return true: allowed
+   */
+  public static boolean isValid(int code) {
+    return VALID[code];
+  }
+
+  /**
+   * Get a list of all allowed pedal positions that sound exactly the given pitches.
+   * The list is in the same order as the codes.
+   *
+   * @param pitchMask 12 bit pitch mask with A-natural being the left-most bit
+   * @return list of pedal positions (or empty list if there are none)
+   */
+  public static ArrayList<PedalPosition> getPedalPositions(int pitchMask) {
+    final int mask = pitchMask & MASK12ALL;
+    ArrayList<PedalPosition> list = new ArrayList<>(START[mask + 1] - START[mask]);
+    for (int i = START[mask]; i < START[mask + 1]; i++) {
+      list.add(POSITIONS[CODES[i]]);
+    }
+    return list;
+  }
+
+  /**
+   * Count the number of pedals that are different between two combinations.
+   *
+   * @param code1 first code
+   * @param code2 second code
+   * @return number of pedal changes (0 through 7)
+   */
+  public static int countChanges(int code1, int code2) {
+    int n = 0;
+    for (int i = 0; i < 7; i++) {
+      if ((code1 / PLACE[i]) % 3 != (code2 / PLACE[i]) % 3) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Find the allowed combination that sounds exactly the given pitches
+   * and needs the fewest pedal changes from the given combination.
+   *
+   * @param pitchMask 12 bit pitch mask with A-natural being the left-most bit
+   * @param from code of the current combination
+   * @return code of the closest combination (or -1 if there is none)
+   */
+  public static int findClosest(int pitchMask, int from) {
+    final int mask = pitchMask & MASK12ALL;
+    int best = -1;
+    int bestChanges = Integer.MAX_VALUE;
+    for (int i = START[mask]; i < START[mask + 1]; i++) {
+      int changes = countChanges(CODES[i], from);
+      if (changes < bestChanges) {    // the first one wins a tie
+        best = CODES[i];
+        bestChanges = changes;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Find the allowed combination that sounds all of the given pitches (and
+   * possibly others) and needs the fewest pedal changes from the given combination.
+   * Ties go to the combination with the fewest extra pitches.
+   *
+   * @param pitchMask 12 bit pitch mask with A-natural being the left-most bit
+   * @param from code of the current combination
+   * @return code of the closest combination (or -1 if there is none)
+   */
+  public static int findClosestContaining(int pitchMask, int from) {
+    final int mask = pitchMask & MASK12ALL;
+    int best = -1;
+    int bestScore = Integer.MAX_VALUE;
+    for (int i = START_CONTAINING[mask]; i < START_CONTAINING[mask + 1]; i++) {
+      int code = CONTAINING[i];
+      int score = countChanges(code, from) * 16 + Integer.bitCount(PITCH_MASKS[code] & ~mask);
+      if (score < bestScore) {    // the first one wins a tie
+        best = code;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Get the codes of all allowed combinations that sound all of the given
+   * pitches (and possibly others) in increasing order.
+   *
+   * @param pitchMask 12 bit pitch mask with A-natural being the left-most bit
+   * @return array of codes (may be empty)
+   */
+  public static short[] getContaining(int pitchMask) {
+    final int mask = pitchMask & MASK12ALL;
+    return Arrays.copyOfRange(CONTAINING, START_CONTAINING[mask], START_CONTAINING[mask + 1]);
+  }
+
+  /**
+   * Split the given code into the 7 pedal positions.
+   *
+   * @param code code 0 through 2186
+   * @return array of 7 position ordinals (A first)
+   */
+  private static int[] digits(int code) {
+    int[] p = new int[7];
+    for (int i = 0; i < 7; i++) {
+      p[i] = (code / PLACE[i]) % 3;
+    }
+    return p;
+  }
+}
@@ -0,0 +1,273 @@
+package com.billooms.pedals;
+
+import com.billooms.keysignature.Key;
+import com.billooms.notes.BasicNote;
+import com.billooms.notes.ChromaBatch;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Timeline of the pedal settings inferred from a recording of a whole piece.
+ * The chroma of each block of the recording is found with a ChromaBatch
+ * (in parallel, with bounded memory), and the strongest pitches of each block
+ * (at most 7) become a pitch mask. The PedalOptimizer then finds the pedal
+ * settings for the sequence of masks with the fewest pedal changes, and
+ * blocks in a row with the same pedals are joined into one region.
+ * Only the pitch mask of each block is kept, so the memory grows by a few
+ * bytes per block no matter how the recording is encoded.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class PedalTimeline {
+
+  /** Default length of each block in seconds. */
+  public final static double DEFAULT_BLOCK_SECONDS = 0.5;
+  /** Pitches with less than this fraction of the block's strongest pitch are taken as not heard. */
+  private final static float PITCH_FLOOR = 0.15f;
+  /** Blocks whose strongest pitch is below this are taken as silence. */
+  private final static float SILENCE = 0.05f;
+  /** Most pitches that one pedal setting can sound. */
+  private final static int MAX_PITCHES = 7;
+  /** Mask to find the 12th bit. */
+  private final static int MASK12 = 0b100000000000;
+
+  /** Regions in order. */
+  private final ArrayList<Region> regions = new ArrayList<>();
+  /** Plan that the regions come from. */
+  private final PedalPlan plan;
+
+  /**
+   * Make a timeline from the given plan.
+   *
+   * @param plan pedal plan with one step for each block
+   * @param masks pitch mask heard in each block
+   * @param blockSeconds length of each block in seconds
+   */
+  private PedalTimeline(PedalPlan plan, int[] masks, double blockSeconds) {
+    this.plan = plan;
+    int first = 0;
+    for (int k = 1; k <= plan.size(); k++) {
+      if ((k == plan.size()) || !same(plan.getPedals(k), plan.getPedals(first))) {
+        int heard = 0;
+        for (int i = first; i < k; i++) {
+          heard |= masks[i];
+        }
+        regions.add(new Region(first * blockSeconds, k * blockSeconds, plan.getPedals(first), heard));
+        first = k;
+      }
+    }
+  }
+
+  /**
+   * Analyze a WAV recording with the default block length.
+   *
+   * @param file WAV file
+   * @param key key of the piece (the first pedals are chosen to be close to the pedals for this key)
+   * @return timeline
+   * @throws IOException if the file can't be read or is not a WAV file
+   */
+  public static PedalTimeline analyze(File file, Key key) throws IOException {
+    return analyze(file, key, DEFAULT_BLOCK_SECONDS);
+  }
+
+  /**
+   * Analyze a WAV recording.
+   *
+   * @param file WAV file
+   * @param key key of the piece (the first pedals are chosen to be close to the pedals for this key)
+   * @param blockSeconds length of each block in seconds
+   * @return timeline
+   * @throws IOException if the file can't be read or is not a WAV file
+   */
+  public static PedalTimeline analyze(File file, Key key, double blockSeconds) throws IOException {
+    final ChromaBatch batch = new ChromaBatch(file, blockSeconds);
+    final int[] masks = new int[batch.getBlocks()];
+    final int[] n = {0};
+    batch.analyze(chroma -> masks[n[0]++] = pitchMask(chroma));
+    return new PedalTimeline(PedalOptimizer.solve(masks, key), masks, batch.getBlockSeconds());
+  }
+
+  /**
+   * Get the pitches heard in a block: the strongest (at most 7) that are
+   * not much weaker than the strongest.
+   *
+   * @param chroma chroma of each pitch (A first)
+   * @return 12 bit pitch mask with A-natural being the left-most bit (0 for silence)
+   */
+  static int pitchMask(float[] chroma) {
+    float max = 0.0f;
+    for (float c : chroma) {
+      max = Math.max(max, c);
+    }
+    if (max < SILENCE) {
+      return 0;
+    }
+    final float[] sorted = chroma.clone();
+    Arrays.sort(sorted);
+    final float floor = Math.max(PITCH_FLOOR * max, sorted[12 - MAX_PITCHES]);
+    int mask = 0;
+    for (int p = 0; p < 12; p++) {
+      if ((chroma[p] >= floor) && (Integer.bitCount(mask) < MAX_PITCHES)) {
+        mask |= MASK12 >> p;
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * Get the number of regions.
+   *
+   * @return number of regions
+   */
+  public int size() {
+    return regions.size();
+  }
+
+  /**
+   * Get the given region.
+   *
+   * @param i index of the region
+   * @return region
+   */
+  public Region getRegion(int i) {
+    return regions.get(i);
+  }
+
+  /**
+   * Get the plan that the regions come from (one step for each block).
+   *
+   * @return pedal plan
+   */
+  public PedalPlan getPlan() {
+    return plan;
+  }
+
+  /**
+   * Write the timeline as comma separated values: the start and end in
+   * seconds, the position of each pedal (A through G) and the number of
+   * pedals changed from the region before.
+   * Regions that the harp can't sound have empty pedal positions.
+   *
+   * @param out where to write
+   */
+  public void write(Writer out) {
+    final PrintWriter pw = new PrintWriter(out);
+    pw.print("start,end");
+    for (BasicNote bn : BasicNote.values()) {
+      pw.print("," + bn.name());
+    }
+    pw.println(",changes");
+    PedalPosition prev = null;
+    for (Region r : regions) {
+      pw.printf(Locale.ROOT, "%.3f,%.3f", r.getStart(), r.getEnd());
+      for (int i = 0; i < 7; i++) {
+        pw.print("," + ((r.getPedals() == null) ? "" : r.getPedals().getPos(i).name()));
+      }
+      pw.println("," + (((prev == null) || (r.getPedals() == null)) ? 0 : prev.countChanges(r.getPedals())));
+      if (r.getPedals() != null) {
+        prev = r.getPedals();
+      }
+    }
+    pw.flush();
+  }
+
+  /**
+   * Determine if two pedal settings are the same (null for infeasible is only the same as null).
+   *
+   * @param a first setting
+   * @param b second setting
+   * @return true: same
+   */
+  private static boolean same(PedalPosition a, PedalPosition b) {
+    return (a == null) ? (b == null) : ((b != null) && (a.countChanges(b) == 0));
+  }
+
+  /**
+   * A stretch of the recording played with one pedal setting.
+   */
+  public static class Region {
+
+    /** Start in seconds. */
+    private final double start;
+    /** End in seconds. */
+    private final double end;
+    /** Pedal setting (null if the harp can't sound what was heard). */
+    private final PedalPosition pedals;
+    /** Pitches that were heard. */
+    private final int heard;
+
+    /**
+     * Construct a new region.
+     *
+     * @param start start in seconds
+     * @param end end in seconds
+     * @param pedals pedal setting (null if the harp can't sound what was heard)
+     * @param heard pitches that were heard
+     */
+    Region(double start, double end, PedalPosition pedals, int heard) {
+      this.start = start;
+      this.end = end;
+      this.pedals = pedals;
+      this.heard = heard;
+    }
+
+    /**
+     * Get the start.
+     *
+     * @return start in seconds
+     */
+    public double getStart() {
+      return start;
+    }
+
+    /**
+     * Get the end.
+     *
+     * @return end in seconds
+     */
+    public double getEnd() {
+      return end;
+    }
+
+    /**
+     * Get the pedal setting.
+     *
+     * @return pedal setting (or null if the harp can't sound what was heard)
+     */
+    public PedalPosition getPedals() {
+      return pedals;
+    }
+
+    /**
+     * Get the pitches that were heard.
+     *
+     * @return 12 bit pitch mask with A-natural being the left-most bit
+     */
+    public int getHeardPitches() {
+      return heard;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%.1f-%.1f s %s", start, end, pedals);
+    }
+  }
+}
@@ -2,6 +2,8 @@ package com.billooms.pedals;
 
 import com.billooms.chords.Ninth;
 import com.billooms.chords.Seventh;
+import com.billooms.chords.Triad;
+import com.billooms.keysignature.Key;
 import com.billooms.keysignature.Scale;
 import com.billooms.notes.BasicNote;
 import com.billooms.notes.Note;
@@ -10,6 +12,7 @@ import static com.billooms.notes.SharpFlat.*;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Object containing 7 harp pedals.
@@ -126,6 +129,26 @@ public class Pedals {
     return notes;
   }
 
+  /**
+   * Get the notes of a glissando for the pedals.
+   * This is 3 octaves starting with the string for the given first note.
+   *
+   * @param firstNote first pedal to use
+   * @return list of notes for the glissando
+   */
+  public ArrayList<Note> getGlissNotes(Note firstNote) {
+    ArrayList<Note> notes = getNotes(firstNote);
+    ArrayList<Note> notes2 = new ArrayList<>();
+    for (Note note : notes) {
+      notes2.add(new Note(note.getNumber() + 12));   // add a 2nd octave
+    }
+    for (Note note : notes) {
+      notes2.add(new Note(note.getNumber() + 24));   // add a 3rd octave
+    }
+    notes.addAll(notes2);
+    return notes;
+  }
+
   /**
    * Set the pedal position of for the given note.
    * This fires a PROP_PEDALS property change with the old and new positions
@@ -184,6 +207,51 @@ public class Pedals {
     }
   }
   
+  /**
+   * Set all pedals for the given key.
+   * Keys with double sharps (harmonic and melodic minors) use the first 
+   * pedal setting that gives the pitches of the key. 
+   * Otherwise the notes of the key are used which gives the preferred setting.
+   * This fires a PROP_PEDALS property change with the old and new positions
+   * 
+   * @param key key
+   */
+  public void setPedals(Key key) {
+    PedalPosition old = getPedalPositions();
+    ArrayList<Note> notes = key.getNotes();
+    for (Pedal pedal : pedals) {
+      pedal.setPosition(NATURAL);
+    }
+    if (hasDoubleSharps(notes)) {   // handle double sharps differently
+      ArrayList<PedalPosition> list = pedalsForPitchMask(key.getPitchMask());
+      if (!list.isEmpty()) {
+        for (int i = 0; i < pedals.length; i++) {
+          pedals[i].setPosition(list.get(0).getPos(i));
+        }
+      }
+    } else {
+      for (Note note : notes) {
+        pedals[note.getBaseNote().ordinal()].setPosition(note.getSharpFlat());
+      }
+    }
+    pcs.firePropertyChange(PROP_PEDALS, old, getPedalPositions());
+  }
+  
+  /**
+   * Determine if the given list of notes contains a double sharp.
+   * 
+   * @param notes list of notes
+   * @return true: contains a double sharp
+   */
+  private boolean hasDoubleSharps(ArrayList<Note> notes) {
+    for (Note note : notes) {
+      if (note.getSharpFlat() == DOUBLESHARP) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
   /**
    * Set the pedals from the given PedalPosition array. 
    * This fires a PROP_PEDALS property change with the old and new positions
@@ -247,70 +315,59 @@ public class Pedals {
     return mask;
   }
   
+  /**
+   * Get the pitch of every string from the lowest to the highest note with 
+   * the current pedals (as the open strings sound on the harp).
+   *
+   * @param lowest lowest note number
+   * @param highest highest note number
+   * @return note numbers of the strings in increasing order
+   */
+  public int[] getStringNotes(int lowest, int highest) {
+    Note[] strings = getStrings(lowest, highest);
+    int[] notes = new int[strings.length];
+    for (int i = 0; i < notes.length; i++) {
+      notes[i] = strings[i].getNumber();
+    }
+    return notes;
+  }
+
+  /**
+   * Get every string from the lowest to the highest note with the current
+   * pedals, with the pedal that sets it.
+   *
+   * @param lowest lowest note number
+   * @param highest highest note number
+   * @return notes of the strings in increasing order
+   */
+  public Note[] getStrings(int lowest, int highest) {
+    ArrayList<Note> list = new ArrayList<>();
+    for (Pedal pedal : pedals) {
+      int pitch = new Note(pedal.getBasicNote(), pedal.getPosition()).getNumber();
+      int n = lowest + (((pitch - lowest) % 12) + 12) % 12;     // lowest string for this pedal
+      for (; n <= highest; n += 12) {
+        list.add(new Note(n, pedal.getBasicNote(), pedal.getPosition()));
+      }
+    }
+    Note[] notes = list.toArray(new Note[list.size()]);
+    Arrays.sort(notes, (Note n1, Note n2) -> Integer.compare(n1.getNumber(), n2.getNumber()));
+    return notes;
+  }
+
   /**
    * Get a list of possible pedal positions for the given pitch mask.
    * The pitchMask should have 4 to 7 bits set or nothing will be found.
+   * The combinations are looked up in the PedalTable.
    * 
    * @param pitchMask desired pitch pitchMask
    * @return list of possible pedal positions (or empty list if there are none)
    */
   public ArrayList<PedalPosition> pedalsForPitchMask(int pitchMask) {
-    ArrayList<PedalPosition> list = new ArrayList<>();
     final int n = countMaskBits(pitchMask);    // number of bits set in pitchMask
     if ((n < 4) || (n > 7)) {
-      return list;    // must be at least 4 and no more than 7
+      return new ArrayList<>();    // must be at least 4 and no more than 7
     }
-    // Loop through all pedal combinations
-    // Make a pitchMask for each combination
-    final SharpFlat[] sf = SharpFlat.values();    // for convenience
-    for (int a = 0; a < 3; a++) {
-      int maskA = aPedal.getAllPitchMasks()[a];
-      if ((maskA & pitchMask) != 0) {  // don't bother doing more if this note is not in the pitchMask
-        for (int b = 0; b < 3; b++) {
-          int maskB = bPedal.getAllPitchMasks()[b];
-          if ((maskB & pitchMask) != 0) {
-            for (int c = 0; c < 3; c++) {
-              if ((b == SHARP.ordinal()) && (c == FLAT.ordinal())) {
-                continue;   // don't allow B-sharp and C-flat because the gliss would be in wrong order
-              }
-              int maskC = cPedal.getAllPitchMasks()[c];
-              if ((maskC & pitchMask) != 0) {
-                for (int d = 0; d < 3; d++) {
-                  int maskD = dPedal.getAllPitchMasks()[d];
-                  if ((maskD & pitchMask) != 0) {
-                    for (int e = 0; e < 3; e++) {
-                      int maskE = ePedal.getAllPitchMasks()[e];
-                      if ((maskE & pitchMask) != 0) {
-                        for (int f = 0; f < 3; f++) {
-                          if ((e == SHARP.ordinal()) && (f == FLAT.ordinal())) {
-                            continue;   // don't allow E-sharp and F-flat because the gliss would be in wrong order
-                          }
-                          int maskF = fPedal.getAllPitchMasks()[f];
-                          if ((maskF & pitchMask) != 0) {
-                            for (int g = 0; g < 3; g++) {
-                              int maskG = gPedal.getAllPitchMasks()[g];
-                              if ((maskG & pitchMask) != 0) {
-                                // You can't assume success at this point
-                                // Need to make sure that all of the notes are present
-                                int cumMask = maskA | maskB | maskC | maskD | maskE | maskF | maskG;
-                                if (pitchMask == cumMask) {
-                                  list.add(new PedalPosition(sf[a], sf[b], sf[c], sf[d], sf[e], sf[f], sf[g]));
-                                }
-                              }
-                            }
-                          }
-                        }
-                      }
-                    }
-                  }
-                }
-              }
-            }
-          }
-        }
-      }
-    }
-    return list;
+    return PedalTable.getPedalPositions(pitchMask);
   }
   
   /**
@@ -337,9 +394,30 @@ public class Pedals {
    * @return string with possible chord/ninth names
    */
   public String findChordName() {
+    return findChordName(getPitchMask());
+  }
+
+  /**
+   * Search for matches for a scale, triad, chord or ninth name for the given pitches.
+   * 
+   * @param mask 12 bit pitch mask with A-natural being the left-most bit
+   * @return string with possible names (one on each line, or empty if none)
+   */
+  public static String findChordName(int mask) {
     String str = "";
-    int pitchMask = getPitchMask();
+    int pitchMask = mask;
     str += Scale.getNameByMask(pitchMask);
+    for (Triad triad : Triad.values()) {    // search through the Triads
+      for (int i = 0; i < 12; i++) {
+        if (pitchMask == triad.getChordMask()) {
+          if (!str.isEmpty()) {
+            str += "\n";      // start another line
+          }
+          str += new Note(i).toString2() + triad.getAbbreviation();
+        }
+        pitchMask = rotateLeft(pitchMask);
+      }
+    }
     for (Seventh seventh : Seventh.values()) {    // search through the Sevenths
       for (int i = 0; i < 12; i++) {
         if (pitchMask == seventh.getChordMask()) {
@@ -371,7 +449,7 @@ public class Pedals {
    * @param mask mask
    * @return new mask
    */
-  private int rotateLeft(int mask) {
+  private static int rotateLeft(int mask) {
     int msb = mask & 0b100000000000;    // save bit 12
     int newMask = (mask << 1) & 0b111111111111;   // shift left and mask off only 12 bits
     if (msb != 0) {
@@ -0,0 +1,73 @@
+package com.billooms.pedals;
+
+import com.billooms.keysignature.Key;
+import com.billooms.keysignature.KeySignature;
+import com.billooms.keysignature.Scale;
+import com.billooms.notes.HarpSound;
+import com.billooms.notes.OfflineRenderer;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes practice audio: a WAV file with the glissando for the preset pedals
+ * of every harmonic function in every key.
+ * The files are rendered offline (in parallel), so this runs headless and
+ * much faster than real time.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class PracticeAudio {
+
+  /**
+   * This class only has static methods.
+   */
+  private PracticeAudio() {
+  }
+
+  /**
+   * Render the glissando for every harmonic function in every key.
+   * Files are named KEYSIGNATURE-SCALE-FUNCTION.wav.
+   * Functions that have no pedal setting are skipped.
+   *
+   * @param dir directory for the WAV files
+   * @param sound where the sound of each string comes from
+   * @return number of files written
+   * @throws IOException if a file can't be written
+   */
+  public static int write(File dir, HarpSound sound) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Can't make " + dir);
+    }
+    final OfflineRenderer renderer = new OfflineRenderer(sound);
+    final Pedals pedals = new Pedals();
+    for (KeySignature keySig : KeySignature.values()) {
+      for (Scale scale : Scale.values()) {
+        Key key = new Key(keySig, scale);
+        for (HarmonicFunction function : HarmonicFunction.values()) {
+          PedalPosition pedPos = PedalPresets.getPedals(key, function);
+          if (pedPos != null) {
+            pedals.setPedals(pedPos);
+            File file = new File(dir, keySig.name() + "-" + scale.name() + "-" + function.name() + ".wav");
+            renderer.addGliss(file, pedals.getGlissNotes(PedalPresets.getFirstNote(key, function)));
+          }
+        }
+      }
+    }
+    final int n = renderer.size();
+    renderer.renderAll();
+    return n;
+  }
+}
@@ -0,0 +1,565 @@
+package com.billooms.pedals;
+
+import com.billooms.chords.Progression;
+import com.billooms.keysignature.Key;
+import com.billooms.notes.BasicNote;
+import com.billooms.notes.Note;
+import com.billooms.notes.NotePlayer;
+import com.billooms.notes.Pattern;
+import com.billooms.notes.Phrase;
+import com.billooms.notes.Timeline;
+import com.billooms.notes.Transport;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.Timer;
+
+/**
+ * Plays a chord progression at a given tempo and gives a cue for each change
+ * of the pedals a given number of beats before the chord that needs it.
+ * The pedals come from the PedalOptimizer. The whole progression (with a click
+ * on each cue if wanted) is compiled up front into one Timeline, and the cues
+ * into primitive arrays of frames and steps.
+ * The cues are timed by the Transport clock (the output line's position) from
+ * the frame on which the first chord was heard, so they never drift from the music.
+ * Cues are fired as PROP_CUE property changes.
+ *
+ * This must only be used on the EDT.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class ProgressionPlayer {
+
+  /** ProgressionPlayer can fire propertyChanges. */
+  private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+  /** Property name used for a cue (the new value is a ProgressionPlayer.Cue). */
+  public final static String PROP_CUE = "Cue";
+  /** Property name used when playing starts or stops. */
+  public final static String PROP_PLAYING = "Playing";
+
+  /** Default tempo in beats per minute. */
+  public final static double DEFAULT_TEMPO = 72.0;
+  /** Default number of beats for each chord. */
+  public final static int DEFAULT_BEATS = 4;
+  /** Default number of beats that a cue comes before its chord. */
+  public final static double DEFAULT_LEAD = 2.0;
+  /** Velocity of the click for a cue. */
+  private final static float CLICK_VELOCITY = 0.6f;
+  /** Milliseconds between checks of the clock for cues. */
+  private final static int REFRESH = 1000 / 60;
+
+  /** Plays the notes. */
+  private final NotePlayer player;
+  /** Clock that the cues are timed by. */
+  private final Transport transport = Transport.getDefault();
+  /** Checks the clock for cues. */
+  private final Timer timer;
+  /** Finds the frame on which the first chord was heard. */
+  private final PropertyChangeListener onsetListener = this::onsets;
+
+  /** Tempo in beats per minute. */
+  private double tempo = DEFAULT_TEMPO;
+  /** Number of beats for each chord. */
+  private int beats = DEFAULT_BEATS;
+  /** Number of beats that a cue comes before its chord. */
+  private double lead = DEFAULT_LEAD;
+  /** True: click on each cue. */
+  private boolean click = false;
+
+  /** Plan for the progression that is playing (null if not playing). */
+  private PedalPlan plan = null;
+  /** Notes of the progression that is playing. */
+  private Phrase phrase = null;
+  /** Frame of each cue from the start of the music (in order). */
+  private long[] cueFrames = new long[0];
+  /** Step of each cue. */
+  private int[] cueSteps = new int[0];
+  /** Frame from the start of the music when the last chord is finished. */
+  private long endFrame = 0;
+  /** Frame on the Transport clock of the start of the music (-1 until it is heard). */
+  private long start = -1;
+  /** Frame on the Transport clock when the progression was started. */
+  private long started = 0;
+  /** Next cue to fire. */
+  private int nextCue = 0;
+
+  /**
+   * Construct a new progression player.
+   *
+   * @param player plays the notes
+   */
+  public ProgressionPlayer(NotePlayer player) {
+    this.player = player;
+    timer = new Timer(REFRESH, e -> refresh());
+    timer.setCoalesce(true);
+  }
+
+  /**
+   * Get the tempo.
+   *
+   * @return beats per minute
+   */
+  public double getTempo() {
+    return tempo;
+  }
+
+  /**
+   * Set the tempo (used the next time a progression is played).
+   *
+   * @param tempo beats per minute
+   */
+  public void setTempo(double tempo) {
+    this.tempo = Math.max(1.0, tempo);
+  }
+
+  /**
+   * Get the number of beats for each chord.
+   *
+   * @return number of beats
+   */
+  public int getBeats() {
+    return beats;
+  }
+
+  /**
+   * Set the number of beats for each chord (used the next time a progression is played).
+   *
+   * @param beats number of beats
+   */
+  public void setBeats(int beats) {
+    this.beats = Math.max(1, beats);
+  }
+
+  /**
+   * Get the number of beats that a cue comes before its chord.
+   *
+   * @return number of beats
+   */
+  public double getLead() {
+    return lead;
+  }
+
+  /**
+   * Set the number of beats that a cue comes before its chord
+   * (used the next time a progression is played).
+   *
+   * @param lead number of beats
+   */
+  public void setLead(double lead) {
+    this.lead = Math.max(0.0, lead);
+  }
+
+  /**
+   * Determine if there is a click on each cue.
+   *
+   * @return true: click
+   */
+  public boolean isClick() {
+    return click;
+  }
+
+  /**
+   * Set whether there is a click on each cue (used the next time a progression is played).
+   *
+   * @param click true: click
+   */
+  public void setClick(boolean click) {
+    this.click = click;
+  }
+
+  /**
+   * Determine if a progression is playing.
+   *
+   * @return true: playing
+   */
+  public boolean isPlaying() {
+    return plan != null;
+  }
+
+  /**
+   * Play the given progression, stopping anything that this is playing.
+   * A cue for setting up the pedals from the key's pedals is fired right away.
+   *
+   * @param prog progression
+   * @param key key (the first pedals are chosen to be close to the pedals for this key)
+   * @return pedal plan that the cues come from
+   */
+  public PedalPlan play(Progression prog, Key key) {
+    stop();
+    final PedalPlan newPlan = PedalOptimizer.solve(PedalOptimizer.getMasks(prog), key);
+    if (player.getBackend() == null) {
+      return newPlan;     // nothing can play
+    }
+    final long[] chordFrames = chordFrames(prog.size());
+    cueSteps = cueSteps(newPlan);
+    cueFrames = cueFrames(cueSteps, chordFrames);
+    endFrame = Math.round((double) prog.size() * beats * framesPerBeat());
+    final Timeline timeline = compileMusic(prog, chordFrames, click ? cueFrames : new long[0]);
+    if (timeline.size() == 0) {
+      return newPlan;     // nothing to play
+    }
+    plan = newPlan;
+    start = -1;
+    started = transport.getPosition();
+    nextCue = 0;
+    transport.addPropertyChangeListener(onsetListener);    // before the notes, so the first onset is seen
+    phrase = player.play(timeline);
+    pcs.firePropertyChange(PROP_PLAYING, false, true);
+    final int first = firstFeasible(newPlan, 0);
+    if (first >= 0) {
+      final PedalPosition keyPedals = PedalTable.getPedalPosition(Transposer.getKeyPedals(key));
+      pcs.firePropertyChange(PROP_CUE, null, new Cue(first, keyPedals, newPlan.getPedals(first), 0.0));
+    }
+    timer.start();
+    return newPlan;
+  }
+
+  /**
+   * Stop the progression that is playing (if any).
+   */
+  public void stop() {
+    if (plan == null) {
+      return;
+    }
+    timer.stop();
+    transport.removePropertyChangeListener(onsetListener);
+    phrase.cancel();
+    plan = null;
+    phrase = null;
+    pcs.firePropertyChange(PROP_PLAYING, true, false);
+  }
+
+  /**
+   * Compile the given progression into one timeline without playing it (such
+   * as for a MidiFileWriter), with the same chords and clicks as play.
+   *
+   * @param prog progression
+   * @param key key (the first pedals are chosen to be close to the pedals for this key)
+   * @return timeline of the whole progression (at the tempo)
+   */
+  public Timeline compile(Progression prog, Key key) {
+    final PedalPlan newPlan = PedalOptimizer.solve(PedalOptimizer.getMasks(prog), key);
+    final long[] chordFrames = chordFrames(prog.size());
+    return compileMusic(prog, chordFrames, click ? cueFrames(cueSteps(newPlan), chordFrames) : new long[0]);
+  }
+
+  /**
+   * Get the number of frames in each beat at the tempo.
+   *
+   * @return frames per beat
+   */
+  private double framesPerBeat() {
+    return transport.getFrameRate() * 60.0 / tempo;
+  }
+
+  /**
+   * Find the frame of each chord from the start.
+   *
+   * @param n number of chords
+   * @return frame of each chord
+   */
+  private long[] chordFrames(int n) {
+    final double framesPerBeat = framesPerBeat();
+    final long[] chordFrames = new long[n];
+    for (int k = 0; k < n; k++) {
+      chordFrames[k] = Math.round((double) k * beats * framesPerBeat);
+    }
+    return chordFrames;
+  }
+
+  /**
+   * Find the steps that need a cue: each step that needs pedal changes from
+   * the previous step that the harp can sound.
+   *
+   * @param newPlan pedal plan
+   * @return step of each cue (in order)
+   */
+  private static int[] cueSteps(PedalPlan newPlan) {
+    final int[] steps = new int[newPlan.size()];
+    int n = 0;
+    for (int k = firstFeasible(newPlan, 0) + 1; (k > 0) && (k < newPlan.size()); k++) {
+      if ((newPlan.getPedals(k) != null) && (newPlan.getChanges(k) > 0)) {
+        steps[n] = k;
+        n++;
+      }
+    }
+    return Arrays.copyOf(steps, n);
+  }
+
+  /**
+   * Find the frame of each cue: the lead before its chord.
+   *
+   * @param steps step of each cue
+   * @param chordFrames frame of each chord from the start
+   * @return frame of each cue from the start
+   */
+  private long[] cueFrames(int[] steps, long[] chordFrames) {
+    final long leadFrames = Math.round(lead * framesPerBeat());
+    final long[] frames = new long[steps.length];
+    for (int c = 0; c < steps.length; c++) {
+      frames[c] = Math.max(0, chordFrames[steps[c]] - leadFrames);
+    }
+    return frames;
+  }
+
+  /**
+   * Compile the music: each chord rolled over its root an octave below,
+   * and a click at each of the given frames.
+   *
+   * @param prog progression
+   * @param chordFrames frame of each chord from the start
+   * @param clickFrames frame of each click from the start
+   * @return timeline of the whole progression
+   */
+  private Timeline compileMusic(Progression prog, long[] chordFrames, long[] clickFrames) {
+    final int lowest = player.getLowest();
+    final int highest = player.getHighest();
+    final Timeline[] chords = new Timeline[prog.size()];
+    int size = clickFrames.length;
+    for (int k = 0; k < chords.length; k++) {
+      final List<Note> notes = prog.getNotes(k);
+      final int[] numbers = new int[notes.size() + 1];
+      numbers[0] = prog.getRoot(k).getNumber();
+      for (int i = 0; i < notes.size(); i++) {
+        numbers[i + 1] = notes.get(i).getNumber() + 12;
+      }
+      chords[k] = Pattern.ROLL.compile(numbers, lowest, highest);
+      size += chords[k].size();
+    }
+    // sort every note by frame, with the index in the low bits
+    final long[] keys = new long[size];
+    final int[] notes = new int[size];
+    final float[] velocities = new float[size];
+    int n = 0;
+    for (int k = 0; k < chords.length; k++) {
+      for (int i = 0; i < chords[k].size(); i++) {
+        notes[n] = chords[k].getNote(i);
+        velocities[n] = chords[k].getVelocity(i);
+        keys[n] = ((chordFrames[k] + chords[k].getFrame(i)) << 20) | n;
+        n++;
+      }
+    }
+    for (int c = 0; c < clickFrames.length; c++) {
+      notes[n] = highest;
+      velocities[n] = CLICK_VELOCITY;
+      keys[n] = (clickFrames[c] << 20) | n;
+      n++;
+    }
+    Arrays.sort(keys);
+    final long[] sortedFrames = new long[size];
+    final int[] sortedNotes = new int[size];
+    final float[] sortedVelocities = new float[size];
+    for (int i = 0; i < size; i++) {
+      final int j = (int) (keys[i] & 0xFFFFF);
+      sortedFrames[i] = keys[i] >> 20;
+      sortedNotes[i] = notes[j];
+      sortedVelocities[i] = velocities[j];
+    }
+    return Timeline.of(sortedFrames, sortedNotes, sortedVelocities);
+  }
+
+  /**
+   * Find the first step at or after the given step that the harp can sound.
+   *
+   * @param p pedal plan
+   * @param from first step to look at
+   * @return step (or -1 if there is none)
+   */
+  private static int firstFeasible(PedalPlan p, int from) {
+    for (int k = from; k < p.size(); k++) {
+      if (p.getPedals(k) != null) {
+        return k;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Find the pedals of the last step before the given step that the harp can sound.
+   *
+   * @param k step
+   * @return pedal setting (or null if there is none)
+   */
+  private PedalPosition previousPedals(int k) {
+    for (int i = k - 1; i >= 0; i--) {
+      if (plan.getPedals(i) != null) {
+        return plan.getPedals(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Note the frame on which the first chord was heard.
+   *
+   * @param evt PROP_ONSETS property change from the Transport
+   */
+  @SuppressWarnings("unchecked")
+  private void onsets(PropertyChangeEvent evt) {
+    if ((start >= 0) || (phrase == null)) {
+      return;
+    }
+    for (Transport.Event e : (List<Transport.Event>) evt.getNewValue()) {
+      if (e.getPhrase() == phrase) {
+        start = e.getFrame();   // onsets are in order and the first note is at frame 0
+        refresh();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Fire the cues that are due and stop at the end of the progression.
+   */
+  private void refresh() {
+    if (plan == null) {
+      return;
+    }
+    if (phrase.isCancelled()) {
+      stop();
+      return;
+    }
+    if (start < 0) {
+      if (transport.getPosition() - started >= endFrame) {
+        stop();     // the music was never heard
+      }
+      return;
+    }
+    final long position = transport.getPosition() - start;
+    final double framesPerBeat = transport.getFrameRate() * 60.0 / tempo;
+    while ((nextCue < cueFrames.length) && (cueFrames[nextCue] <= position)) {
+      final int k = cueSteps[nextCue];
+      final double ahead = (k * beats * framesPerBeat - cueFrames[nextCue]) / framesPerBeat;
+      pcs.firePropertyChange(PROP_CUE, null, new Cue(k, previousPedals(k), plan.getPedals(k), ahead));
+      nextCue++;
+    }
+    if (position >= endFrame) {
+      stop();
+    }
+  }
+
+  /**
+   * Add the given listener to this object.
+   *
+   * @param listener listener
+   */
+  public void addPropertyChangeListener(PropertyChangeListener listener) {
+    pcs.addPropertyChangeListener(listener);
+  }
+
+  /**
+   * Remove the given listener to this object.
+   *
+   * @param listener listener
+   */
+  public void removePropertyChangeListener(PropertyChangeListener listener) {
+    pcs.removePropertyChangeListener(listener);
+  }
+
+  /**
+   * A change of the pedals that is coming up.
+   */
+  public static class Cue {
+
+    /** Pedals in the order the feet see them (D C B for the left, E F G A for the right). */
+    private final static int[] FOOT_ORDER = {3, 2, 1, 4, 5, 6, 0};
+
+    /** Step of the progression that needs the pedals. */
+    private final int step;
+    /** Pedals before the change (the key's pedals for the setup). */
+    private final PedalPosition from;
+    /** Pedals after the change. */
+    private final PedalPosition to;
+    /** Number of beats before the step. */
+    private final double beats;
+
+    /**
+     * Construct a new cue.
+     *
+     * @param step step of the progression that needs the pedals
+     * @param from pedals before the change
+     * @param to pedals after the change
+     * @param beats number of beats before the step
+     */
+    Cue(int step, PedalPosition from, PedalPosition to, double beats) {
+      this.step = step;
+      this.from = from;
+      this.to = to;
+      this.beats = beats;
+    }
+
+    /**
+     * Get the step of the progression that needs the pedals.
+     *
+     * @return step
+     */
+    public int getStep() {
+      return step;
+    }
+
+    /**
+     * Get the pedals after the change.
+     *
+     * @return pedal setting
+     */
+    public PedalPosition getPedals() {
+      return to;
+    }
+
+    /**
+     * Get the number of beats until the step that needs the pedals.
+     *
+     * @return number of beats (0 for the setup before the start)
+     */
+    public double getBeats() {
+      return beats;
+    }
+
+    /**
+     * Get the number of pedals that change.
+     *
+     * @return number of pedals
+     */
+    public int getChanges() {
+      return (from == null) ? 0 : to.countChanges(from);
+    }
+
+    /**
+     * Get the pedals that change, left foot first, such as C-sharp then E-flat.
+     *
+     * @return new position of each pedal that changes
+     */
+    public String getChangedPedals() {
+      final StringBuilder str = new StringBuilder();
+      for (int i : FOOT_ORDER) {
+        if ((from == null) || (from.getPos(i) != to.getPos(i))) {
+          if (str.length() > 0) {
+            str.append(' ');
+          }
+          str.append(new Note(BasicNote.values()[i], to.getPos(i)).toString());
+        }
+      }
+      return str.toString();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s in %.1f beats (step %d)", getChangedPedals(), beats, step + 1);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.billooms.pedals;
+
+import com.billooms.keysignature.Key;
+import com.billooms.keysignature.KeySignature;
+import com.billooms.keysignature.Scale;
+import com.billooms.notes.HarpSound;
+import com.billooms.notes.MidiFileWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Command line tools for making files without the GUI (not part of the
+ * module's API).
+ * <pre>
+ *   java com.billooms.pedals.Tools practice outputDir [SAMPLED|SYNTHESIZED]
+ *   java com.billooms.pedals.Tools timeline input.wav output.csv [KEYSIGNATURE SCALE]
+ *   java com.billooms.pedals.Tools midi outputDir
+ * </pre>
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+class Tools {
+
+  /** Usage of every tool. */
+  private final static String USAGE = "usage: Tools practice outputDir [SAMPLED|SYNTHESIZED]\n"
+      + "       Tools timeline input.wav output.csv [KEYSIGNATURE SCALE]\n"
+      + "       Tools midi outputDir";
+
+  /**
+   * This class only has static methods.
+   */
+  private Tools() {
+  }
+
+  /**
+   * Run a tool.
+   *
+   * @param args name of the tool and its arguments
+   * @throws IOException if a file can't be read or written
+   */
+  public static void main(String[] args) throws IOException {
+    final int n = args.length;
+    if ((n >= 2) && (n <= 3) && args[0].equals("practice")) {
+      practice(new File(args[1]), (n > 2) ? HarpSound.valueOf(args[2]) : HarpSound.SAMPLED);
+    } else if (((n == 3) || (n == 5)) && args[0].equals("timeline")) {
+      timeline(new File(args[1]), new File(args[2]), (n == 5)
+          ? new Key(KeySignature.valueOf(args[3]), Scale.valueOf(args[4]))
+          : new Key(KeySignature.NONE, Scale.MAJOR));
+    } else if ((n == 2) && args[0].equals("midi")) {
+      midi(new File(args[1]));
+    } else {
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Write the practice audio (see PracticeAudio).
+   *
+   * @param dir directory for the WAV files
+   * @param sound where the sound of each string comes from
+   * @throws IOException if a file can't be written
+   */
+  private static void practice(File dir, HarpSound sound) throws IOException {
+    System.out.println(PracticeAudio.write(dir, sound) + " files written");
+  }
+
+  /**
+   * Write the pedal timeline of a WAV recording (see PedalTimeline).
+   *
+   * @param wav WAV recording
+   * @param csv CSV file to write
+   * @param key key of the piece
+   * @throws IOException if a file can't be read or written
+   */
+  private static void timeline(File wav, File csv, Key key) throws IOException {
+    final PedalTimeline timeline = PedalTimeline.analyze(wav, key);
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(csv), StandardCharsets.UTF_8)) {
+      timeline.write(out);
+    }
+    System.out.println(timeline.size() + " regions, " + timeline.getPlan().getTotalChanges() + " pedal changes");
+  }
+
+  /**
+   * Write the MIDI catalogues of keys and chords (see MidiCatalog).
+   *
+   * @param dir directory for the MIDI files
+   * @throws IOException if a file can't be written
+   */
+  private static void midi(File dir) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Can't make the directory " + dir);
+    }
+    final MidiFileWriter writer = new MidiFileWriter();
+    MidiCatalog.addKeys(writer, dir);
+    MidiCatalog.addChords(writer, dir);
+    final int n = writer.size();
+    writer.writeAll();
+    System.out.println(n + " files written to " + dir);
+  }
+}
@@ -0,0 +1,178 @@
+package com.billooms.pedals;
+
+import com.billooms.chords.Chord;
+import com.billooms.chords.Progression;
+import com.billooms.keysignature.Key;
+import com.billooms.keysignature.KeySignature;
+import com.billooms.keysignature.Scale;
+import com.billooms.keysignature.Spelling;
+import com.billooms.notes.Note;
+import java.util.ArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Transpose notes, chords, progressions and pedal settings to another key.
+ * Notes are spelled for the target key with the Spelling table and pedal
+ * settings are looked up in the PedalTable.
+ * All 12 transpositions of a progression can be made at once in parallel.
+ * Semitones are always taken as moving up (mod 12).
+ *
+ * gliss would be in the wrong order.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class Transposer {
+
+  /** Mask to find all 12 bits. */
+  private final static int MASK12ALL = 0b111111111111;
+  /** PedalTable code for the pedals of each key -- index is keySig.ordinal() * Scale.SIZE + scale.ordinal(). */
+  private final static int[] KEY_PEDALS = new int[KeySignature.SIZE * Scale.SIZE];
+
+  static {
+    final Pedals pedals = new Pedals();
+    for (KeySignature keySig : KeySignature.values()) {
+      for (Scale scale : Scale.values()) {
+        pedals.setPedals(new Key(keySig, scale));
+        KEY_PEDALS[keySig.ordinal() * Scale.SIZE + scale.ordinal()] = PedalTable.getCode(pedals.getPedalPositions());
+      }
+    }
+  }
+
+  /**
+   * This class only has static methods.
+   */
+  private Transposer() {
+  }
+
+  /**
+   * Get the PedalTable code for the pedals of the given key.
+   *
+   * @param key key
+   * @return code 0 through 2186
+   */
+  public static int getKeyPedals(Key key) {
+    return KEY_PEDALS[key.getKeySignature().ordinal() * Scale.SIZE + key.getScale().ordinal()];
+  }
+
+  /**
+   * Transpose a note up and spell it for the target key.
+   *
+   * @param note note
+   * @param semitones semitones
+   * @param target target key
+   * @return new note
+   */
+  public static Note transpose(Note note, int semitones, Key target) {
+    return Spelling.spell(target, note.getNumber() + shift(semitones));
+  }
+
+  /**
+   * Transpose a list of notes up and spell them for the target key.
+   *
+   * @param notes list of notes
+   * @param semitones semitones
+   * @param target target key
+   * @return new list of notes
+   */
+  public static ArrayList<Note> transpose(ArrayList<Note> notes, int semitones, Key target) {
+    ArrayList<Note> list = new ArrayList<>(notes.size());
+    for (Note note : notes) {
+      list.add(transpose(note, semitones, target));
+    }
+    return list;
+  }
+
+  /**
+   * Transpose a chord on the given root up and spell its notes for the target key.
+   * The root is spelled for the key and the other notes by their interval above the root.
+   *
+   * @param chord chord
+   * @param root root note
+   * @param semitones semitones
+   * @param target target key
+   * @return list of notes of the chord starting with the root
+   */
+  public static ArrayList<Note> transpose(Chord chord, Note root, int semitones, Key target) {
+    final Note newRoot = transpose(root, semitones, target);
+    return Spelling.spell(target, newRoot, chord.getNotes(newRoot));
+  }
+
+  /**
+   * Transpose a pedal setting up.
+   * Of the settings that sound the transposed pitches, the one with the fewest
+   * changes from the pedals of the target key is used.
+   *
+   * @param pedPos pedal setting
+   * @param semitones semitones
+   * @param target target key
+   * @return new pedal setting (or null if the harp can't sound the transposed pitches)
+   */
+  public static PedalPosition transpose(PedalPosition pedPos, int semitones, Key target) {
+    final int mask = PedalTable.getPitchMask(PedalTable.getCode(pedPos));
+    final int code = PedalTable.findClosest(rotate(mask, shift(semitones)), getKeyPedals(target));
+    return (code < 0) ? null : PedalTable.getPedalPosition(code);
+  }
+
+  /**
+   * Transpose a progression up.
+   * The target key is the given key moved up by the same amount.
+   *
+   * @param prog progression
+   * @param from key of the progression
+   * @param semitones semitones
+   * @return transposition with spelled roots and pedal settings
+   */
+  public static Transposition transpose(Progression prog, Key from, int semitones) {
+    return new Transposition(prog, from, shift(semitones));
+  }
+
+  /**
+   * Make all 12 transpositions of a progression.
+   * The transpositions are computed in parallel.
+   *
+   * @param prog progression
+   * @param from key of the progression
+   * @return list of 12 transpositions (index is the number of semitones)
+   */
+  public static ArrayList<Transposition> transposeAll(Progression prog, Key from) {
+    return IntStream.range(0, 12).parallel()
+        .mapToObj(s -> new Transposition(prog, from, s))
+        .collect(Collectors.toCollection(ArrayList::new));
+  }
+
+  /**
+   * Normalize the number of semitones to 0 through 11.
+   *
+   * @param semitones semitones
+   * @return semitones 0 through 11
+   */
+  static int shift(int semitones) {
+    return ((semitones % 12) + 12) % 12;
+  }
+
+  /**
+   * Rotate the given pitch mask up by the given number of semitones.
+   *
+   * @param mask 12 bit pitch mask
+   * @param semitones semitones 0 through 11
+   * @return new pitch mask
+   */
+  static int rotate(int mask, int semitones) {
+    // make a 24 bit copy of the mask and shift it
+    return (((mask << 12) | mask) >> semitones) & MASK12ALL;
+  }
+}
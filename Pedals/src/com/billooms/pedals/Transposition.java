@@ -0,0 +1,133 @@
+package com.billooms.pedals;
+
+import com.billooms.chords.Progression;
+import com.billooms.keysignature.Key;
+import com.billooms.keysignature.Spelling;
+import com.billooms.notes.Note;
+import java.util.ArrayList;
+
+/**
+ * One transposition of a progression with spelled notes and pedal settings.
+ * Each chord's pedal setting sounds all of the chord's pitches and needs the
+ * fewest changes from the setting before it, starting from the pedals of the key.
+ * This is immutable once it is made.
+ *
+ * gliss would be in the wrong order.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class Transposition {
+
+  /** Semitones up from the original (0 through 11). */
+  private final int semitones;
+  /** Target key. */
+  private final Key key;
+  /** Transposed progression with roots spelled for the target key. */
+  private final Progression progression;
+  /** PedalTable code for each chord (-1 if the harp can't sound the chord). */
+  private final int[] codes;
+  /** Total number of pedal changes. */
+  private final int changes;
+
+  /**
+   * Transpose the given progression.
+   *
+   * @param prog progression
+   * @param from key of the progression
+   * @param semitones semitones up (0 through 11)
+   */
+  Transposition(Progression prog, Key from, int semitones) {
+    this.semitones = semitones;
+    this.key = from.transpose(semitones);
+    this.progression = new Progression();
+    this.codes = new int[prog.size()];
+    int prev = Transposer.getKeyPedals(key);
+    int n = 0;
+    for (int i = 0; i < prog.size(); i++) {
+      Note root = Spelling.spell(key, prog.getRoot(i).getNumber() + semitones);
+      progression.add(root, prog.getChord(i));
+      codes[i] = PedalTable.findClosestContaining(progression.getPitchMask(i), prev);
+      if (codes[i] >= 0) {
+        n += PedalTable.countChanges(prev, codes[i]);
+        prev = codes[i];
+      }
+    }
+    this.changes = n;
+  }
+
+  /**
+   * Get the number of semitones up from the original.
+   *
+   * @return semitones 0 through 11
+   */
+  public int getSemitones() {
+    return semitones;
+  }
+
+  /**
+   * Get the target key.
+   *
+   * @return key
+   */
+  public Key getKey() {
+    return key;
+  }
+
+  /**
+   * Get the transposed progression with roots spelled for the target key.
+   *
+   * @return progression
+   */
+  public Progression getProgression() {
+    return progression;
+  }
+
+  /**
+   * Get the notes of the given chord spelled for the target key.
+   * The notes are spelled by their interval above the root.
+   *
+   * @param i index of the chord
+   * @return list of notes
+   */
+  public ArrayList<Note> getNotes(int i) {
+    return Spelling.spell(key, progression.getRoot(i), progression.getNotes(i));
+  }
+
+  /**
+   * Get the pedal setting for the given chord.
+   *
+   * @param i index of the chord
+   * @return pedal setting (or null if the harp can't sound the chord)
+   */
+  public PedalPosition getPedals(int i) {
+    return (codes[i] < 0) ? null : PedalTable.getPedalPosition(codes[i]);
+  }
+
+  /**
+   * Get the total number of pedal changes from the pedals of the key
+   * through the end of the progression.
+   *
+   * @return number of pedal changes
+   */
+  public int getChanges() {
+    return changes;
+  }
+
+  @Override
+  public String toString() {
+    return key.toString() + ": " + changes + " pedal changes";
+  }
+}
@@ -0,0 +1,228 @@
+package com.billooms.pedals;
+
+import com.billooms.notes.AudioInput;
+import com.billooms.notes.HarpSamples;
+import com.billooms.notes.Note;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import javax.swing.Timer;
+
+/**
+ * Tuner for one string at a time.
+ * The pitch that is heard (see PitchTracker) is matched to the nearest string
+ * as the strings sound with the current pedals, so a string with its pedal
+ * sharp is tuned to its sharp. The reading is how many cents the string is
+ * sharp (positive) or flat (negative).
+ * The strings are only found again when the pedals change, so a reading is
+ * just a binary search.
+ * Unclear pitches (such as the noise of a pluck) don't change the reading, so
+ * the last reading stays while the string dies away.
+ * A PROP_READING property change is fired when the reading changes.
+ *
+ * This is not thread safe -- it should only be used on the EDT.
+ *
+ * @author Bill Ooms. Copyright 2016 Studio of Bill Ooms. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+public class Tuner {
+
+  /** Tuner can fire propertyChanges. */
+  private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+  /** Property name used for a new reading (the new value is the cents as a Float). */
+  public final static String PROP_READING = "TunerReading";
+
+  /** Pitches found less clearly than this are ignored. */
+  private final static float MIN_CLARITY = 0.8f;
+  /** Frequency of A2 (note number 0). */
+  private final static double A2_FREQ = 110.0;
+  /** Milliseconds between reads of the live input. */
+  private final static int REFRESH = 1000 / 60;
+
+  /** Pedals that the strings are tuned for. */
+  private final Pedals pedals;
+  /** Each string in increasing order. */
+  private Note[] strings;
+  /** Note number of each string. */
+  private int[] numbers;
+  /** Index of the string of the last reading (-1 if none). */
+  private int string = -1;
+  /** Cents of the last reading. */
+  private float cents = 0.0f;
+  /** Frequency of the last reading. */
+  private float frequency = 0.0f;
+  /** Live input that is being read (null if none). */
+  private AudioInput input = null;
+  /** Reads the live input. */
+  private final Timer timer;
+
+  /**
+   * Construct a new tuner for the strings of the given pedals.
+   * The tuner follows any changes to the pedals.
+   *
+   * @param pedals pedals
+   */
+  public Tuner(Pedals pedals) {
+    this.pedals = pedals;
+    findStrings();
+    pedals.addPropertyChangeListener((PropertyChangeEvent evt) -> {
+      if (evt.getPropertyName().equals(Pedals.PROP_PEDALS)) {
+        findStrings();
+      }
+    });
+    timer = new Timer(REFRESH, e -> readInput());
+    timer.setCoalesce(true);
+  }
+
+  /**
+   * Start reading the given live input (which should analyze PITCH), stopping
+   * any other input.
+   *
+   * @param input live input
+   */
+  public void start(AudioInput input) {
+    stop();
+    this.input = input;
+    timer.start();
+  }
+
+  /**
+   * Stop reading the live input (the input itself is not closed).
+   */
+  public void stop() {
+    timer.stop();
+    input = null;
+  }
+
+  /**
+   * Update the reading from a pitch that was heard.
+   * This fires a PROP_READING property change if the reading changes.
+   *
+   * @param freq frequency in Hz (0 if no pitch was found)
+   * @param clarity how clearly the pitch was found (from 0 to 1)
+   * @return true if there is a new reading
+   */
+  public boolean update(float freq, float clarity) {
+    if ((freq <= 0.0f) || (clarity < MIN_CLARITY) || (strings.length == 0)) {
+      return false;
+    }
+    final double note = 12.0 * Math.log(freq / A2_FREQ) / Math.log(2.0);
+    int lo = 0;
+    int hi = numbers.length - 1;
+    while (hi - lo > 1) {     // binary search for the strings on either side
+      final int mid = (lo + hi) >>> 1;
+      if (numbers[mid] <= note) {
+        lo = mid;
+      } else {
+        hi = mid;
+      }
+    }
+    string = (Math.abs(note - numbers[lo]) <= Math.abs(note - numbers[hi])) ? lo : hi;
+    final Float old = cents;
+    cents = (float) (100.0 * (note - numbers[string]));
+    frequency = freq;
+    pcs.firePropertyChange(PROP_READING, old, (Float) cents);
+    return true;
+  }
+
+  /**
+   * Determine if there is a reading.
+   *
+   * @return true: there is a reading
+   */
+  public boolean hasReading() {
+    return string >= 0;
+  }
+
+  /**
+   * Get the string of the last reading, as it sounds with the current pedals.
+   *
+   * @return note of the string (null if there is no reading)
+   */
+  public Note getString() {
+    return (string < 0) ? null : strings[string];
+  }
+
+  /**
+   * Get how far the string of the last reading is out of tune.
+   *
+   * @return cents sharp (positive) or flat (negative)
+   */
+  public float getCents() {
+    return cents;
+  }
+
+  /**
+   * Get the frequency of the last reading.
+   *
+   * @return frequency in Hz (0 if there is no reading)
+   */
+  public float getFrequency() {
+    return frequency;
+  }
+
+  /**
+   * Forget the last reading.
+   */
+  public void reset() {
+    string = -1;
+    cents = 0.0f;
+    frequency = 0.0f;
+  }
+
+  /**
+   * Find the pitch of every string with the current pedals.
+   * This forgets the last reading because its string may have changed.
+   */
+  private void findStrings() {
+    strings = pedals.getStrings(HarpSamples.LOWEST, HarpSamples.HIGHEST);
+    numbers = new int[strings.length];
+    for (int i = 0; i < strings.length; i++) {
+      numbers[i] = strings[i].getNumber();
+    }
+    reset();
+  }
+
+  /**
+   * Read the pitch of the live input and update the reading.
+   */
+  private void readInput() {
+    if (input == null) {
+      return;
+    }
+    update(input.getFrequency(), input.getClarity());
+    if (!input.isRunning()) {
+      stop();
+    }
+  }
+
+  /**
+   * Add the given listener to this object.
+   *
+   * @param listener listener
+   */
+  public void addPropertyChangeListener(PropertyChangeListener listener) {
+    pcs.addPropertyChangeListener(listener);
+  }
+
+  /**
+   * Remove the given listener to this object.
+   *
+   * @param listener listener
+   */
+  public void removePropertyChangeListener(PropertyChangeListener listener) {
+    pcs.removePropertyChangeListener(listener);
+  }
+}